@@ -4,7 +4,11 @@ package robot;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.torontocodingcollective.profiler.TLoopProfiler;
+import com.torontocodingcollective.profiler.TLoopTimer;
+import com.torontocodingcollective.sensors.TSensorSnapshot;
 import com.torontocodingcollective.subsystem.TSubsystem;
+import com.torontocodingcollective.trajectory.TTrajectoryCache;
 
 import edu.wpi.first.wpilibj.IterativeRobot;
 import edu.wpi.first.wpilibj.command.Command;
@@ -35,8 +39,20 @@ public class Robot extends IterativeRobot {
 
     public static OI                        oi;
 
+    public static final TLoopProfiler       loopProfiler        = new TLoopProfiler();
+
+    public static final TSensorSnapshot     sensorSnapshot      = TSensorSnapshot.getInstance();
+
+    public static final TTrajectoryCache    trajectoryCache     = new TTrajectoryCache();
+
     private Command                         autoCommand;
 
+    // Loop timers used to find where the loop time is spent
+    private TLoopTimer                      sensorTimer;
+    private TLoopTimer                      oiTimer;
+    private TLoopTimer                      schedulerTimer;
+    private TLoopTimer[]                    subsystemTimers;
+
     // Add all of the subsystems to the subsystem list
     static {
         subsystemLs.add(driveSubsystem);
@@ -60,6 +76,20 @@ public class Robot extends IterativeRobot {
         }
         
         AutoSelector.init();
+
+        // Generate any auto trajectories that are not in the cache
+        // so that autonomousInit only has to load them
+        AutonomousCommand.initTrajectories();
+
+        // Initialize all loop timers before the first loop
+        sensorTimer = loopProfiler.addTimer("Sensors");
+        oiTimer = loopProfiler.addTimer("OI");
+        schedulerTimer = loopProfiler.addTimer("Scheduler");
+
+        subsystemTimers = new TLoopTimer[subsystemLs.size()];
+        for (int i = 0; i < subsystemLs.size(); i++) {
+            subsystemTimers[i] = loopProfiler.addTimer(subsystemLs.get(i).getClass().getSimpleName());
+        }
     }
 
     /**
@@ -75,10 +105,19 @@ public class Robot extends IterativeRobot {
     @Override
     public void disabledPeriodic() {
 
-        oi.updatePeriodic();
+        loopProfiler.startLoop();
 
-        Scheduler.getInstance().run();
+        // Read all sensors once at the start of the loop
+        updateSensors();
+
+        updateOi();
+
+        runScheduler();
         updatePeriodic();
+
+        sensorSnapshot.clear();
+
+        loopProfiler.endLoop();
     }
 
     /**
@@ -103,6 +142,9 @@ public class Robot extends IterativeRobot {
         Robot.driveSubsystem.setGyroAngle(0);
         Robot.driveSubsystem.resetEncoders();
 
+        // Start the field position at the origin
+        Robot.driveSubsystem.resetPose(0, 0, 0);
+
         // Initialize the robot command after initializing the game data
         // because the game data will be used in the auto command.
         autoCommand = new AutonomousCommand();
@@ -115,13 +157,22 @@ public class Robot extends IterativeRobot {
     @Override
     public void autonomousPeriodic() {
 
+        loopProfiler.startLoop();
+
+        // Read all sensors once at the start of the loop
+        updateSensors();
+
         // Update the OI before running the commands
-        oi.updatePeriodic();
+        updateOi();
 
-        Scheduler.getInstance().run();
+        runScheduler();
 
         // Update all subsystems after running commands
         updatePeriodic();
+
+        sensorSnapshot.clear();
+
+        loopProfiler.endLoop();
     }
 
     @Override
@@ -145,13 +196,22 @@ public class Robot extends IterativeRobot {
     @Override
     public void teleopPeriodic() {
 
+        loopProfiler.startLoop();
+
+        // Read all sensors once at the start of the loop
+        updateSensors();
+
         // Update the OI before running the commands
-        oi.updatePeriodic();
+        updateOi();
 
-        Scheduler.getInstance().run();
+        runScheduler();
 
         // Update all subsystems after running commands
         updatePeriodic();
+
+        sensorSnapshot.clear();
+
+        loopProfiler.endLoop();
     }
 
     /**
@@ -161,14 +221,47 @@ public class Robot extends IterativeRobot {
     public void testPeriodic() {
     }
 
+    /**
+     * Take the sensor snapshot
+     */
+    private void updateSensors() {
+
+        sensorTimer.start();
+        sensorSnapshot.update();
+        sensorTimer.stop();
+    }
+
+    /**
+     * Update the OI
+     */
+    private void updateOi() {
+
+        oiTimer.start();
+        oi.updatePeriodic();
+        oiTimer.stop();
+    }
+
+    /**
+     * Run the command scheduler
+     */
+    private void runScheduler() {
+
+        schedulerTimer.start();
+        Scheduler.getInstance().run();
+        schedulerTimer.stop();
+    }
+
     /**
      * Update periodic
      */
     private void updatePeriodic() {
 
         // Update all subsystems
-        for (TSubsystem subsystem : subsystemLs) {
-            subsystem.updatePeriodic();
+        // Use an indexed loop so that no iterator is created each loop
+        for (int i = 0; i < subsystemLs.size(); i++) {
+            subsystemTimers[i].start();
+            subsystemLs.get(i).updatePeriodic();
+            subsystemTimers[i].stop();
         }
     }
 }
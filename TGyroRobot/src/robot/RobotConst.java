@@ -17,8 +17,41 @@ public class RobotConst {
     public static final double  DRIVE_GYRO_PID_KI;
     public static final double  DRIVE_MAX_ROTATION_OUTPUT     = 0.6;
 
+    // Gyro glitch filter limits. A median window of 3 also removes
+    // single sample spikes that pass the velocity and rate checks,
+    // but delays the gyro angle by one robot loop.
+    public static final double  GYRO_MAX_ANGULAR_VELOCITY     = 720.0; // degrees/sec
+    public static final double  GYRO_RATE_TOLERANCE           = 90.0;  // degrees/sec
+    public static final int     GYRO_MEDIAN_WINDOW            = 1;
+
+    // Gears used to select the PID gain schedule
+    public static final int     DRIVE_LOW_GEAR                = 0;
+    public static final int     DRIVE_HIGH_GEAR               = 1;
+
     public static final double  DRIVE_SPEED_PID_KP;
     public static final double  DRIVE_SPEED_PID_KI;
+
+    // Speed PID feed forward model. The default model (0, 1.0, 0)
+    // uses the speed setpoint as the feed forward.
+    public static final double  DRIVE_SPEED_KS;
+    public static final double  DRIVE_SPEED_KV;
+    public static final double  DRIVE_SPEED_KA;
+
+    // Motion profile limits for the distance commands
+    public static final double  DRIVE_MAX_ACCELERATION        = 100.0; // inches/sec^2
+    public static final double  DRIVE_MAX_JERK                = 500.0; // inches/sec^3
+
+    // Number of robot loops used to estimate the encoder rates
+    public static final int     DRIVE_VELOCITY_WINDOW         = 8;
+
+    // CAN drive control frame period, once per robot loop
+    public static final int     DRIVE_CONTROL_FRAME_MS        = 20;
+
+    // Trajectory limits for the path following commands
+    public static final double  DRIVE_TRACK_WIDTH             = 25.0;  // inches
+    public static final double  TRAJECTORY_MAX_VELOCITY       = 60.0;  // inches/sec
+    public static final double  TRAJECTORY_MAX_ACCELERATION   = 60.0;  // inches/sec^2
+    public static final double  TRAJECTORY_MAX_CENTRIPETAL    = 40.0;  // inches/sec^2
     
     public static final double  ENCODER_COUNTS_PER_INCH;
 
@@ -58,6 +91,12 @@ public class RobotConst {
 
             DRIVE_SPEED_PID_KP = 0.5;
             DRIVE_SPEED_PID_KI = DRIVE_SPEED_PID_KP / 20.0;
+
+            // Characterize the drive to set the feed forward. With
+            // an accurate model, the speed PID gains can be lowered.
+            DRIVE_SPEED_KS = 0.0;
+            DRIVE_SPEED_KV = 1.0;
+            DRIVE_SPEED_KA = 0.0;
  
             ENCODER_COUNTS_PER_INCH = 55.6;
 
@@ -2,11 +2,21 @@ package robot.commands;
 
 import com.torontocodingcollective.TConst;
 import com.torontocodingcollective.commands.drive.TDriveTimeCommand;
+import com.torontocodingcollective.commands.gyroDrive.TAutoTuneGyroPidCommand;
+import com.torontocodingcollective.commands.gyroDrive.TCharacterizeDriveCommand;
 import com.torontocodingcollective.commands.gyroDrive.TDriveOnHeadingDistanceCommand;
+import com.torontocodingcollective.commands.gyroDrive.TFollowTrajectoryCommand;
 import com.torontocodingcollective.commands.gyroDrive.TRotateToHeadingCommand;
+import com.torontocodingcollective.odometry.TPose;
+import com.torontocodingcollective.pid.TTuningRule;
+import com.torontocodingcollective.sysid.TDriveCharacterizationTest;
+import com.torontocodingcollective.trajectory.TTrajectory;
+import com.torontocodingcollective.trajectory.TTrajectoryConfig;
 
 import edu.wpi.first.wpilibj.command.CommandGroup;
+import edu.wpi.first.wpilibj.command.WaitCommand;
 import robot.Robot;
+import robot.RobotConst;
 import robot.oi.AutoSelector;
 
 /**
@@ -21,6 +31,17 @@ public class AutonomousCommand extends CommandGroup {
     public static final char RIGHT  = 'R';
     public static final char CENTER = 'C';
 
+    // Trajectory limits for all auto paths
+    private static final TTrajectoryConfig TRAJECTORY_CONFIG = new TTrajectoryConfig(
+            RobotConst.TRAJECTORY_MAX_VELOCITY,
+            RobotConst.TRAJECTORY_MAX_ACCELERATION,
+            RobotConst.TRAJECTORY_MAX_CENTRIPETAL);
+
+    // Drive forward 10 ft while moving 4 ft to the right
+    private static final TPose[] S_CURVE_WAYPOINTS = {
+            new TPose(0, 0, 0),
+            new TPose(120, 48, 0) };
+
     /**
      * Autonomous Command
      * <p>
@@ -104,5 +125,63 @@ public class AutonomousCommand extends CommandGroup {
 
             this.addSequential(new TRotateToHeadingCommand(0, Robot.oi, Robot.driveSubsystem));
         }
+
+        if (pattern.equals(AutoSelector.PATTERN_S_CURVE)) {
+
+            TTrajectory trajectory = Robot.trajectoryCache.get(S_CURVE_WAYPOINTS, TRAJECTORY_CONFIG);
+
+            // Follow the path from the start position set in autonomousInit
+            this.addSequential(
+                    new TFollowTrajectoryCommand(trajectory, RobotConst.DRIVE_TRACK_WIDTH, 10,
+                            TConst.BRAKE_WHEN_FINISHED, Robot.oi, Robot.driveSubsystem));
+        }
+
+        if (pattern.equals(AutoSelector.PATTERN_CHARACTERIZE)) {
+            addCharacterizationTests();
+        }
+
+        if (pattern.equals(AutoSelector.PATTERN_TUNE_GYRO)) {
+            // Rotate back and forth on the spot to measure the gyro
+            // response, then apply and save the new gyro PID gains
+            this.addSequential(
+                    new TAutoTuneGyroPidCommand(TTuningRule.TYREUS_LUYBEN, 
+                            Robot.oi, Robot.driveSubsystem));
+        }
+    }
+
+    /**
+     * Add the drive characterization tests
+     * <p>
+     * The tests take about 25 seconds. Run this pattern with the Driver Station
+     * in Autonomous mode (not Practice mode) with at least 10 ft of room in
+     * front of and behind the robot. Cancel the command if the robot gets too
+     * close to a wall.
+     */
+    private void addCharacterizationTests() {
+
+        for (TDriveCharacterizationTest test : TDriveCharacterizationTest.values()) {
+
+            // Quasistatic ramps are slow, dynamic steps are short
+            double voltage = test.dynamic ? TCharacterizeDriveCommand.DEFAULT_STEP_VOLTAGE
+                    : TCharacterizeDriveCommand.DEFAULT_RAMP_RATE;
+            double timeout = test.dynamic ? 1.5 : 6.0;
+
+            this.addSequential(new TCharacterizeDriveCommand(test, voltage, timeout, 
+                    Robot.oi, Robot.driveSubsystem));
+
+            // Let the robot come to a stop before the next test
+            this.addSequential(new WaitCommand(1.0));
+        }
+    }
+
+    /**
+     * Initialize the auto trajectories
+     * <p>
+     * Trajectories that are not already saved are generated and saved in the
+     * trajectory cache. This should be called from robotInit so that the
+     * trajectories do not have to be generated when autonomous starts.
+     */
+    public static void initTrajectories() {
+        Robot.trajectoryCache.get(S_CURVE_WAYPOINTS, TRAJECTORY_CONFIG);
     }
 }
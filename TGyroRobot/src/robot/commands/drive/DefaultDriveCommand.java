@@ -4,7 +4,6 @@ import com.torontocodingcollective.commands.TDefaultDriveCommand;
 import com.torontocodingcollective.commands.TDifferentialDrive;
 import com.torontocodingcollective.oi.TStick;
 import com.torontocodingcollective.oi.TStickPosition;
-import com.torontocodingcollective.speedcontroller.TSpeeds;
 
 import robot.Robot;
 import robot.oi.OI;
@@ -68,30 +67,30 @@ public class DefaultDriveCommand extends TDefaultDriveCommand {
 
         // Drive according to the type of drive selected in the
         // operator input.
-        TStickPosition leftStickPosition = oi.getDriveStickPosition(TStick.LEFT);
-        TStickPosition rightStickPosition = oi.getDriveStickPosition(TStick.RIGHT);
+        // The stick positions and motor speeds are filled into the
+        // buffers owned by the TDefaultDriveCommand.
+        TStickPosition leftStick = oi.getDriveStickPosition(TStick.LEFT, leftStickPosition);
+        TStickPosition rightStick = oi.getDriveStickPosition(TStick.RIGHT, rightStickPosition);
 
         TStick singleStickSide = oi.getSelectedSingleStickSide();
 
-        TSpeeds motorSpeeds;
-
         switch (oi.getSelectedDriveType()) {
 
         case SINGLE_STICK:
-            TStickPosition singleStickPosition = rightStickPosition;
+            TStickPosition singleStickPosition = rightStick;
             if (singleStickSide == TStick.LEFT) {
-                singleStickPosition = leftStickPosition;
+                singleStickPosition = leftStick;
             }
-            motorSpeeds = differentialDrive.arcadeDrive(singleStickPosition);
+            differentialDrive.arcadeDrive(singleStickPosition, motorSpeeds);
             break;
 
         case TANK:
-            motorSpeeds = differentialDrive.tankDrive(leftStickPosition, rightStickPosition);
+            differentialDrive.tankDrive(leftStick, rightStick, motorSpeeds);
             break;
 
         case ARCADE:
         default:
-            motorSpeeds = differentialDrive.arcadeDrive(leftStickPosition, rightStickPosition);
+            differentialDrive.arcadeDrive(leftStick, rightStick, motorSpeeds);
             break;
         }
 
@@ -16,6 +16,9 @@ public class AutoSelector {
     public static final String            PATTERN_STRAIGHT  = "Straight";
     public static final String            PATTERN_STR_NP    = "Straight No PID";
     public static final String            PATTERN_BOX       = "Box";
+    public static final String            PATTERN_S_CURVE   = "S Curve";
+    public static final String            PATTERN_CHARACTERIZE = "Characterize Drive";
+    public static final String            PATTERN_TUNE_GYRO = "Tune Gyro PID";
 
     static {
 
@@ -32,6 +35,9 @@ public class AutoSelector {
         pattern.addObject(PATTERN_STRAIGHT, PATTERN_STRAIGHT);
         pattern.addDefault(PATTERN_BOX, PATTERN_BOX);
         pattern.addObject(PATTERN_STR_NP, PATTERN_STR_NP);
+        pattern.addObject(PATTERN_S_CURVE, PATTERN_S_CURVE);
+        pattern.addObject(PATTERN_CHARACTERIZE, PATTERN_CHARACTERIZE);
+        pattern.addObject(PATTERN_TUNE_GYRO, PATTERN_TUNE_GYRO);
 
         SmartDashboard.putData("Auto Pattern", pattern);
     }
@@ -39,7 +45,8 @@ public class AutoSelector {
     /**
      * Get the auto pattern.
      * 
-     * @return "Straight" or "Box"
+     * @return "Straight", "Straight No PID", "Box", "S Curve",
+     *         "Characterize Drive" or "Tune Gyro PID"
      */
     public static String getPattern() {
 
@@ -8,8 +8,9 @@ import com.torontocodingcollective.oi.TRumbleManager;
 import com.torontocodingcollective.oi.TStick;
 import com.torontocodingcollective.oi.TStickPosition;
 import com.torontocodingcollective.oi.TToggle;
-
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import com.torontocodingcollective.telemetry.TTelemetry;
+import com.torontocodingcollective.telemetry.TTelemetryBoolean;
+import com.torontocodingcollective.telemetry.TTelemetryString;
 
 /**
  * This class is the glue that binds the controls on the physical operator
@@ -40,6 +41,13 @@ public class OI extends TOi {
 
     private DriveSelector   driveSelector    = new DriveSelector();
 
+    private TTelemetry        telemetry                 = TTelemetry.getInstance();
+    private TTelemetryBoolean speedPidToggleTelemetry   = telemetry.addBoolean("Speed PID Toggle");
+    private TTelemetryBoolean compressorToggleTelemetry = telemetry.addBoolean("Compressor Toggle");
+
+    // The controller String is only built 4 times per second
+    private TTelemetryString  driverControllerTelemetry = telemetry.addString("Driver Controller", 0.25);
+
     @Override
     public boolean getCancelCommand() {
         return driverController.getButton(TButton.BACK);
@@ -54,6 +62,11 @@ public class OI extends TOi {
         return driverController.getStickPosition(stick);
     }
 
+    @Override
+    public TStickPosition getDriveStickPosition(TStick stick, TStickPosition stickPosition) {
+        return driverController.getStickPosition(stick, stickPosition);
+    }
+
     @Override
     public boolean getReset() {
         return driverController.getButton(TButton.START);
@@ -111,8 +124,11 @@ public class OI extends TOi {
         driverRumble.updatePeriodic();
 
         // Update all SmartDashboard values
-        SmartDashboard.putBoolean("Speed PID Toggle", getSpeedPidEnabled());
-        SmartDashboard.putBoolean("Compressor Toggle", getCompressorEnabled());
-        SmartDashboard.putString("Driver Controller", driverController.toString());
+        speedPidToggleTelemetry.set(getSpeedPidEnabled());
+        compressorToggleTelemetry.set(getCompressorEnabled());
+
+        if (driverControllerTelemetry.isDue()) {
+            driverControllerTelemetry.set(driverController.toString());
+        }
     }
 }
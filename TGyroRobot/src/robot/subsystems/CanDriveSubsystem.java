@@ -2,7 +2,9 @@ package robot.subsystems;
 
 import com.torontocodingcollective.sensors.encoder.TEncoder;
 import com.torontocodingcollective.sensors.gyro.TAnalogGyro;
+import com.torontocodingcollective.sensors.gyro.TGyroFilter;
 import com.torontocodingcollective.speedcontroller.TCanSpeedController;
+import com.torontocodingcollective.speedcontroller.TCanSpeedController.TCanStatusFrameUsage;
 import com.torontocodingcollective.subsystem.TGyroDriveSubsystem;
 
 import edu.wpi.first.wpilibj.Solenoid;
@@ -62,12 +64,60 @@ public class CanDriveSubsystem extends TGyroDriveSubsystem {
                 RobotConst.ENCODER_COUNTS_PER_INCH, 
                 RobotConst.DRIVE_SPEED_PID_KP,
                 RobotConst.DRIVE_SPEED_PID_KI,
-                RobotConst.MAX_LOW_GEAR_SPEED);
+                RobotConst.MAX_LOW_GEAR_SPEED,
+                RobotConst.DRIVE_SPEED_KS,
+                RobotConst.DRIVE_SPEED_KV,
+                RobotConst.DRIVE_SPEED_KA);
+
+        // Accelerate and decelerate the distance commands on a motion profile
+        setMotionProfileLimits(RobotConst.DRIVE_MAX_ACCELERATION, RobotConst.DRIVE_MAX_JERK);
+
+        // Uncomment these lines (and import TGainSchedule) to scale the speed
+        // PID gains by gear and speed (encoder counts/sec). The scales below
+        // are all 1.0, tune the scales for each gear and speed on the robot.
+        // A schedule can also be set on the gyro PID with setGyroPidSchedule().
+        // setSpeedPidSchedule(new TGainSchedule(2, 2)
+        //         .add(RobotConst.DRIVE_LOW_GEAR,  0,                              1.0, 1.0)
+        //         .add(RobotConst.DRIVE_LOW_GEAR,  RobotConst.MAX_LOW_GEAR_SPEED,  1.0, 1.0)
+        //         .add(RobotConst.DRIVE_HIGH_GEAR, 0,                              1.0, 1.0)
+        //         .add(RobotConst.DRIVE_HIGH_GEAR, RobotConst.MAX_HIGH_GEAR_SPEED, 1.0, 1.0));
+
+        // The CAN encoder rate is measured over 100ms and is delayed
+        // and noisy, estimate the rates from the encoder counts instead.
+        leftEncoder.enableVelocityEstimator(RobotConst.DRIVE_VELOCITY_WINDOW);
+        rightEncoder.enableVelocityEstimator(RobotConst.DRIVE_VELOCITY_WINDOW);
+
+        // Reject glitches in the analog gyro angle before they reach the gyro PID
+        gyro.setFilter(new TGyroFilter(
+                RobotConst.GYRO_MAX_ANGULAR_VELOCITY,
+                RobotConst.GYRO_RATE_TOLERANCE,
+                RobotConst.GYRO_MEDIAN_WINDOW));
+
+        // Uncomment this line to correct the gyro drift with the
+        // heading measured by the drive encoders
+        // enableHeadingFusion(RobotConst.DRIVE_TRACK_WIDTH);
+
+        // The encoders on the speed controllers are used for feedback, send
+        // the encoder status quickly and slow down the unused status frames.
+        // Send the control frame at the rate the drive outputs are set.
+        ((TCanSpeedController) getSpeedController(TSide.LEFT))
+            .configureStatusFrames(TCanStatusFrameUsage.ENCODER_FEEDBACK, RobotConst.DRIVE_CONTROL_FRAME_MS);
+        ((TCanSpeedController) getSpeedController(TSide.RIGHT))
+            .configureStatusFrames(TCanStatusFrameUsage.ENCODER_FEEDBACK, RobotConst.DRIVE_CONTROL_FRAME_MS);
     }
 
     @Override
     public void init() {
         shifter.set(LOW_GEAR);
+
+        // Use the gyro PID gains saved by the gyro PID auto tune
+        // instead of the RobotConst gains if they have been saved
+        loadGyroPidGain();
+
+        // Uncomment this line to run the drive PIDs on a dedicated
+        // 200Hz control thread instead of in the 50Hz robot loop, and
+        // set RobotConst.DRIVE_CONTROL_FRAME_MS to the 5ms control period
+        // enableControlThread(0.005);
     }
 
     // Initialize the default command for the Chassis subsystem.
@@ -82,12 +132,14 @@ public class CanDriveSubsystem extends TGyroDriveSubsystem {
     public void enableTurbo() {
         turboEnabled = true;
         setMaxEncoderSpeed(RobotConst.MAX_HIGH_GEAR_SPEED);
+        setGear(RobotConst.DRIVE_HIGH_GEAR);
         shifter.set(HIGH_GEAR);
     }
 
     public void disableTurbo() {
         turboEnabled = false;
         setMaxEncoderSpeed(RobotConst.MAX_LOW_GEAR_SPEED);
+        setGear(RobotConst.DRIVE_LOW_GEAR);
         shifter.set(LOW_GEAR);
     }
 
@@ -2,6 +2,7 @@ package robot.subsystems;
 
 import com.torontocodingcollective.sensors.encoder.TDioQuadEncoder;
 import com.torontocodingcollective.sensors.gyro.TAnalogGyro;
+import com.torontocodingcollective.sensors.gyro.TGyroFilter;
 import com.torontocodingcollective.speedcontroller.TPwmSpeedController;
 import com.torontocodingcollective.subsystem.TGyroDriveSubsystem;
 
@@ -70,11 +71,36 @@ public class PwmDriveSubsystem extends TGyroDriveSubsystem {
                 RobotConst.DRIVE_GYRO_PID_KP, 
                 RobotConst.DRIVE_GYRO_PID_KI, 
                 RobotConst.DRIVE_MAX_ROTATION_OUTPUT);
+
+        // Speed PID feed forward model
+        setSpeedFeedForward(RobotConst.DRIVE_SPEED_KS, RobotConst.DRIVE_SPEED_KV, RobotConst.DRIVE_SPEED_KA);
+
+        // Accelerate and decelerate the distance commands on a motion profile
+        setMotionProfileLimits(RobotConst.DRIVE_MAX_ACCELERATION, RobotConst.DRIVE_MAX_JERK);
+
+        // Uncomment these lines to estimate the encoder rates from the encoder
+        // counts if the DIO encoder rates are noisy at low speeds
+        // getEncoder(TSide.LEFT).enableVelocityEstimator(RobotConst.DRIVE_VELOCITY_WINDOW);
+        // getEncoder(TSide.RIGHT).enableVelocityEstimator(RobotConst.DRIVE_VELOCITY_WINDOW);
+
+        // Reject glitches in the analog gyro angle before they reach the gyro PID
+        gyro.setFilter(new TGyroFilter(
+                RobotConst.GYRO_MAX_ANGULAR_VELOCITY,
+                RobotConst.GYRO_RATE_TOLERANCE,
+                RobotConst.GYRO_MEDIAN_WINDOW));
+
+        // Uncomment this line to correct the gyro drift with the
+        // heading measured by the drive encoders
+        // enableHeadingFusion(RobotConst.DRIVE_TRACK_WIDTH);
     }
 
     @Override
     public void init() {
         shifter.set(LOW_GEAR);
+
+        // Use the gyro PID gains saved by the gyro PID auto tune
+        // instead of the RobotConst gains if they have been saved
+        loadGyroPidGain();
     }
 
     // Initialize the default command for the Chassis subsystem.
@@ -89,12 +115,14 @@ public class PwmDriveSubsystem extends TGyroDriveSubsystem {
     public void enableTurbo() {
         turboEnabled = true;
         setMaxEncoderSpeed(RobotConst.MAX_HIGH_GEAR_SPEED);
+        setGear(RobotConst.DRIVE_HIGH_GEAR);
         shifter.set(HIGH_GEAR);
     }
 
     public void disableTurbo() {
         turboEnabled = false;
         setMaxEncoderSpeed(RobotConst.MAX_LOW_GEAR_SPEED);
+        setGear(RobotConst.DRIVE_LOW_GEAR);
         shifter.set(LOW_GEAR);
     }
 
@@ -0,0 +1,20 @@
+package com.torontocodingcollective.benchmark;
+
+/**
+ * TBenchmarkCase is one operation measured by the {@link TBenchmarkRunner}.
+ */
+public interface TBenchmarkCase {
+
+    /**
+     * Run the operation once.
+     * <p>
+     * The operation should use the iteration to select its inputs from a fixed
+     * trace so that every run of the benchmark measures the same inputs.
+     * 
+     * @param iteration
+     *            the number of the call, starting at 0
+     * @return a value calculated by the operation. The value is consumed by the
+     *         runner so that the JIT compiler cannot remove the operation.
+     */
+    double run(int iteration);
+}
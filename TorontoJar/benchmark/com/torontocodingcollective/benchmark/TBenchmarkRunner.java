@@ -0,0 +1,186 @@
+package com.torontocodingcollective.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sun.management.ThreadMXBean;
+import com.torontocodingcollective.profiler.TLoopTimer;
+
+/**
+ * TBenchmarkRunner measures the throughput, allocation rate and latency of a
+ * set of {@link TBenchmarkCase}s.
+ * <p>
+ * Each case is measured in three phases:
+ * <ol>
+ * <li>Warmup: the case is run for the warmup time so that the JIT compiler has
+ * compiled the case before it is measured.</li>
+ * <li>Throughput: the case is run in batches for the measurement time. The
+ * operations per second and the bytes allocated per operation (from the
+ * thread allocation counter of the JVM) are calculated over all batches.</li>
+ * <li>Latency: each operation is timed individually and recorded in a
+ * {@link TLoopTimer} to report the median and tail latency. Individual
+ * timings include the cost of reading the clock, which is measured and
+ * reported as the timer overhead.</li>
+ * </ol>
+ * The runner is not a replacement for a statistically rigorous harness. It is
+ * intended to catch a framework change that makes the robot loop slower or
+ * causes it to allocate memory, so results should be compared between runs on
+ * the same machine.
+ */
+public class TBenchmarkRunner {
+
+    private static final int           BATCH_SIZE = 1000;
+
+    private final List<String>         nameLs     = new ArrayList<String>();
+    private final List<TBenchmarkCase> caseLs     = new ArrayList<TBenchmarkCase>();
+
+    private final double               warmupSec;
+    private final double               measureSec;
+    private final int                  latencySamples;
+
+    private final ThreadMXBean         threadMXBean;
+
+    /** Results are summed into the sink so that the cases are not optimized away */
+    private volatile double            sink       = 0;
+
+    /**
+     * Construct a benchmark runner
+     * 
+     * @param warmupSec
+     *            time to run each case before it is measured
+     * @param measureSec
+     *            time to measure the throughput of each case
+     * @param latencySamples
+     *            the number of individually timed operations used for the
+     *            latency percentiles
+     */
+    public TBenchmarkRunner(double warmupSec, double measureSec, int latencySamples) {
+
+        this.warmupSec = warmupSec;
+        this.measureSec = measureSec;
+        this.latencySamples = latencySamples;
+
+        // The allocation counter is only available on HotSpot based JVMs
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (bean instanceof ThreadMXBean && ((ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            this.threadMXBean = (ThreadMXBean) bean;
+            this.threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            this.threadMXBean = null;
+        }
+    }
+
+    /**
+     * Add a case to the benchmark
+     * 
+     * @param name
+     *            used to identify the case in the results
+     * @param benchmarkCase
+     *            to measure
+     */
+    public void add(String name, TBenchmarkCase benchmarkCase) {
+        nameLs.add(name);
+        caseLs.add(benchmarkCase);
+    }
+
+    /**
+     * Run all of the cases in the order they were added and print the results
+     */
+    public void runAll() {
+
+        System.out.println("Timer overhead " + measureTimerOverhead() + " ns (included in latencies)");
+        System.out.println();
+
+        System.out.println(String.format("%-36s %14s %10s %8s %8s %8s %8s %10s",
+                "Case", "ops/s", "ns/op", "p50", "p99", "p99.9", "max", "bytes/op"));
+
+        for (int i = 0; i < caseLs.size(); i++) {
+            run(nameLs.get(i), caseLs.get(i));
+        }
+
+        // Print the sink so that it is used
+        System.out.println();
+        System.out.println("(sink " + sink + ")");
+    }
+
+    private long getAllocatedBytes() {
+
+        if (threadMXBean == null) {
+            return 0;
+        }
+
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private long measureTimerOverhead() {
+
+        TLoopTimer timer = new TLoopTimer("overhead");
+
+        for (int i = 0; i < latencySamples; i++) {
+            timer.start();
+            timer.stop();
+        }
+
+        return timer.getPercentileNanos(50);
+    }
+
+    private void run(String name, TBenchmarkCase benchmarkCase) {
+
+        double result = 0;
+        int iteration = 0;
+
+        // Warmup
+        long endNanos = System.nanoTime() + (long) (warmupSec * 1000000000L);
+
+        while (System.nanoTime() < endNanos) {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                result += benchmarkCase.run(iteration++);
+            }
+        }
+
+        // Throughput and allocation
+        long operations = 0;
+        long startBytes = getAllocatedBytes();
+        long startNanos = System.nanoTime();
+        endNanos = startNanos + (long) (measureSec * 1000000000L);
+
+        long nowNanos = startNanos;
+
+        while (nowNanos < endNanos) {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                result += benchmarkCase.run(iteration++);
+            }
+            operations += BATCH_SIZE;
+            nowNanos = System.nanoTime();
+        }
+
+        long elapsedNanos = nowNanos - startNanos;
+        long allocatedBytes = getAllocatedBytes() - startBytes;
+
+        // Latency
+        TLoopTimer timer = new TLoopTimer(name);
+
+        for (int i = 0; i < latencySamples; i++) {
+            timer.start();
+            result += benchmarkCase.run(iteration++);
+            timer.stop();
+        }
+
+        sink += result;
+
+        String bytesPerOperation = threadMXBean == null ? "n/a"
+                : String.format("%.2f", (double) allocatedBytes / operations);
+
+        System.out.println(String.format("%-36s %14.0f %10.2f %8d %8d %8d %8d %10s",
+                name,
+                operations / (elapsedNanos / 1.0e9),
+                (double) elapsedNanos / operations,
+                timer.getPercentileNanos(50),
+                timer.getPercentileNanos(99),
+                timer.getPercentileNanos(99.9),
+                timer.getMaxNanos(),
+                bytesPerOperation));
+    }
+}
@@ -0,0 +1,246 @@
+package com.torontocodingcollective.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+import com.torontocodingcollective.TUtil;
+import com.torontocodingcollective.clock.TClock;
+import com.torontocodingcollective.clock.TFakeClock;
+import com.torontocodingcollective.commands.TDifferentialDrive;
+import com.torontocodingcollective.log.TLogger;
+import com.torontocodingcollective.odometry.TPose;
+import com.torontocodingcollective.oi.TStickPosition;
+import com.torontocodingcollective.pid.TGyroPID;
+import com.torontocodingcollective.pid.TSpeedPID;
+import com.torontocodingcollective.sensors.encoder.TVelocityEstimator;
+import com.torontocodingcollective.sensors.gyro.TGyroFilter;
+import com.torontocodingcollective.speedcontroller.TSpeeds;
+import com.torontocodingcollective.trajectory.TMotionProfile;
+import com.torontocodingcollective.trajectory.TQuinticHermiteSpline;
+import com.torontocodingcollective.trajectory.TTrajectory;
+import com.torontocodingcollective.trajectory.TTrajectoryConfig;
+import com.torontocodingcollective.trajectory.TTrajectoryGenerator;
+import com.torontocodingcollective.trajectory.TTrajectoryState;
+
+/**
+ * TControlMathBenchmark measures the per loop math of the TorontoJar.
+ * <p>
+ * The cases cover the driver input path ({@link TDifferentialDrive}), the
+ * sensor path ({@link TGyroFilter} and {@link TVelocityEstimator}), the
+ * control path ({@link TSpeedPID} and {@link TGyroPID}), the path following
+ * math ({@link TMotionProfile}, {@link TQuinticHermiteSpline} and
+ * {@link TTrajectory}) and the {@link TLogger}. Each case plays back a fixed
+ * trace shaped like a real match: stick values quantized to the driver station
+ * resolution with periods of resting in the deadband, a gyro angle that winds
+ * through several turns in both directions and a noisy encoder rate. The
+ * traces are generated from a fixed seed so every run measures the same
+ * inputs.
+ * <p>
+ * To run the benchmark, run the {@code benchmark} target of the TorontoJar
+ * {@code build.xml}, which compiles the {@code src} and {@code benchmark}
+ * folders against the wpilib and CTRE jars and runs this class. The cases do
+ * not construct any wpilib objects, so the wpilib native libraries are not
+ * needed and the benchmark runs on a development machine.
+ * <p>
+ * Optional arguments: warmup seconds, measurement seconds and latency samples
+ * per case (default 1, 2 and 200000).
+ */
+public class TControlMathBenchmark {
+
+    /** Trace length in loops (about 80 seconds at 50Hz), must be a power of 2 */
+    private static final int    TRACE_LENGTH = 4096;
+    private static final int    TRACE_MASK   = TRACE_LENGTH - 1;
+
+    private static final double LOOP_SEC     = 0.02;
+
+    private final double[]      stickX       = new double[TRACE_LENGTH];
+    private final double[]      stickY       = new double[TRACE_LENGTH];
+    private final double[]      gyroAngle    = new double[TRACE_LENGTH];
+    private final double[]      encoderRate  = new double[TRACE_LENGTH];
+    private final double[]      encoderCount = new double[TRACE_LENGTH];
+
+    public static void main(String[] args) {
+
+        double warmupSec = args.length > 0 ? Double.parseDouble(args[0]) : 1.0;
+        double measureSec = args.length > 1 ? Double.parseDouble(args[1]) : 2.0;
+        int latencySamples = args.length > 2 ? Integer.parseInt(args[2]) : 200000;
+
+        TBenchmarkRunner runner = new TBenchmarkRunner(warmupSec, measureSec, latencySamples);
+
+        new TControlMathBenchmark().addCases(runner);
+
+        runner.runAll();
+    }
+
+    /**
+     * Construct the benchmark and generate the traces
+     */
+    public TControlMathBenchmark() {
+
+        Random random = new Random(2019);
+
+        double heading = 0;
+        double count = 0;
+
+        for (int i = 0; i < TRACE_LENGTH; i++) {
+
+            double t = i * LOOP_SEC;
+
+            // The driver alternates between resting in the deadband
+            // and driving with slow sweeps and fast corrections.
+            double x;
+            double y;
+
+            if ((i / 256) % 4 == 0) {
+                x = random.nextGaussian() * 0.03;
+                y = random.nextGaussian() * 0.03;
+            } else {
+                x = 0.6 * Math.sin(t * 0.9) + 0.3 * Math.sin(t * 4.1) + random.nextGaussian() * 0.02;
+                y = -Math.min(1.0, Math.max(-1.0, 1.1 * Math.cos(t * 0.5))) + random.nextGaussian() * 0.02;
+            }
+
+            stickX[i] = quantize(x);
+            stickY[i] = quantize(y);
+
+            // The gyro winds through several turns in both directions
+            heading += 400 * Math.sin(t * 0.25) * LOOP_SEC + random.nextGaussian() * 0.05;
+            gyroAngle[i] = heading;
+
+            // Normalized encoder rate tracking a changing setpoint with noise
+            encoderRate[i] = 0.8 * Math.sin(t * 0.7) + random.nextGaussian() * 0.03;
+
+            // Whole encoder counts from a 2000 counts/sec encoder
+            count += encoderRate[i] * 2000 * LOOP_SEC;
+            encoderCount[i] = Math.floor(count);
+        }
+    }
+
+    /**
+     * Add all cases to the runner
+     * 
+     * @param runner
+     *            benchmark runner
+     */
+    public void addCases(TBenchmarkRunner runner) {
+
+        // Driver input
+
+        final TDifferentialDrive differentialDrive = new TDifferentialDrive();
+        final TStickPosition stickPosition = new TStickPosition();
+        final TSpeeds motorSpeeds = new TSpeeds();
+
+        runner.add("TDifferentialDrive.arcadeDrive", i -> {
+            stickPosition.set(stickX[i & TRACE_MASK], stickY[i & TRACE_MASK]);
+            TSpeeds speeds = differentialDrive.arcadeDrive(stickPosition);
+            return speeds.left + speeds.right;
+        });
+
+        runner.add("TDifferentialDrive.arcadeDrive(out)", i -> {
+            stickPosition.set(stickX[i & TRACE_MASK], stickY[i & TRACE_MASK]);
+            differentialDrive.arcadeDrive(stickPosition, motorSpeeds);
+            return motorSpeeds.left + motorSpeeds.right;
+        });
+
+        // Sensors
+
+        final TFakeClock clock = new TFakeClock();
+
+        final TGyroFilter gyroFilter = new TGyroFilter(720, 0, 3);
+        gyroFilter.setClock(clock);
+
+        runner.add("TGyroFilter.filter", i -> {
+            clock.advance(LOOP_SEC);
+            return gyroFilter.filter(gyroAngle[i & TRACE_MASK]);
+        });
+
+        final TVelocityEstimator velocityEstimator = new TVelocityEstimator(8);
+        final long loopNanos = Math.round(LOOP_SEC * TClock.NANOS_PER_SECOND);
+
+        runner.add("TVelocityEstimator.add", i -> {
+            velocityEstimator.add(i * loopNanos, encoderCount[i & TRACE_MASK]);
+            return velocityEstimator.getVelocity();
+        });
+
+        // Control
+
+        final TSpeedPID speedPid = new TSpeedPID(0.5, 0.05);
+        speedPid.setClock(clock);
+        speedPid.enable();
+
+        runner.add("TSpeedPID.calculate", i -> {
+            clock.advance(LOOP_SEC);
+            if ((i & 63) == 0) {
+                speedPid.setSetpoint(((i >> 6) & 7) / 8.0);
+            }
+            return speedPid.calculate(encoderRate[i & TRACE_MASK]);
+        });
+
+        final TGyroPID gyroPid = new TGyroPID(0.02, 0.001);
+        gyroPid.setClock(clock);
+        gyroPid.setSetpoint(350);
+        gyroPid.enable();
+
+        runner.add("TGyroPID.getError", i -> gyroPid.getError(gyroAngle[i & TRACE_MASK]));
+
+        runner.add("TGyroPID.calculate", i -> {
+            clock.advance(LOOP_SEC);
+            return gyroPid.calculate(gyroAngle[i & TRACE_MASK]);
+        });
+
+        runner.add("TUtil.round", i -> TUtil.round(gyroAngle[i & TRACE_MASK], 3));
+
+        // Path following
+
+        final TMotionProfile motionProfile = new TMotionProfile();
+        motionProfile.generate(120, 100, 150, 1000);
+        final double profileTime = motionProfile.getTotalTime();
+
+        runner.add("TMotionProfile.calculate", i -> {
+            motionProfile.calculate((i & TRACE_MASK) * profileTime / TRACE_LENGTH);
+            return motionProfile.getVelocity();
+        });
+
+        final TQuinticHermiteSpline spline = new TQuinticHermiteSpline(new TPose(0, 0, 0), new TPose(96, 48, 45));
+
+        runner.add("TQuinticHermiteSpline.getCurvature",
+                i -> spline.getCurvature((i & TRACE_MASK) / (double) TRACE_MASK));
+
+        final TTrajectory trajectory = TTrajectoryGenerator.generate(
+                new TPose[] { new TPose(0, 0, 0), new TPose(96, 48, 45), new TPose(144, 120, 90) },
+                new TTrajectoryConfig(100, 80, 60));
+        final double trajectoryTime = trajectory.getTotalTime();
+        final TTrajectoryState trajectoryState = new TTrajectoryState();
+
+        runner.add("TTrajectory.getState", i -> {
+            trajectory.getState((i & TRACE_MASK) * trajectoryTime / TRACE_LENGTH, trajectoryState);
+            return trajectoryState.velocity;
+        });
+
+        // Logging, the drained messages are discarded
+
+        final TLogger logger = new TLogger(4096, LOOP_SEC);
+        logger.setOutput(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+
+        runner.add("TLogger.log", i -> {
+            logger.log(this, "angle {} rate {}", gyroAngle[i & TRACE_MASK], encoderRate[i & TRACE_MASK]);
+            return i;
+        });
+    }
+
+    /**
+     * Quantize a stick value to the 8 bit resolution of the driver station
+     */
+    private static double quantize(double value) {
+        value = Math.max(-1.0, Math.min(1.0, value));
+        return Math.round(value * 127) / 127.0;
+    }
+}
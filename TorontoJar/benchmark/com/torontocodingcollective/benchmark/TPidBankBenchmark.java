@@ -0,0 +1,154 @@
+package com.torontocodingcollective.benchmark;
+
+import java.util.Random;
+
+import com.torontocodingcollective.clock.TFakeClock;
+import com.torontocodingcollective.pid.TPidBank;
+import com.torontocodingcollective.pid.TSpeedPID;
+
+/**
+ * TPidBankBenchmark compares a {@link TPidBank} with the same number of
+ * individual {@link TSpeedPID}s.
+ * <p>
+ * Each operation calculates every PID once, the work done in one robot loop.
+ * The cases are run for 4, 12 and 32 mechanisms. Every mechanism plays back its
+ * own noisy rate trace and changes its setpoint at a different time, and both
+ * the individual PIDs and the bank use the same gains and feed forward models,
+ * so both cases calculate the same outputs.
+ * <p>
+ * To run the benchmark, run the {@code benchmark} target of the TorontoJar
+ * {@code build.xml} with
+ * {@code -Dbenchmark.class=com.torontocodingcollective.benchmark.TPidBankBenchmark}.
+ * <p>
+ * Optional arguments: warmup seconds, measurement seconds and latency samples
+ * per case (default 1, 2 and 200000).
+ */
+public class TPidBankBenchmark {
+
+    /** Trace length in loops (about 80 seconds at 50Hz), must be a power of 2 */
+    private static final int    TRACE_LENGTH     = 4096;
+    private static final int    TRACE_MASK       = TRACE_LENGTH - 1;
+
+    private static final double LOOP_SEC         = 0.02;
+
+    private static final int[]  MECHANISM_COUNTS = { 4, 12, 32 };
+
+    private static final int    MAX_MECHANISMS   = 32;
+
+    private final double[][]    rate             = new double[MAX_MECHANISMS][TRACE_LENGTH];
+
+    public static void main(String[] args) {
+
+        double warmupSec = args.length > 0 ? Double.parseDouble(args[0]) : 1.0;
+        double measureSec = args.length > 1 ? Double.parseDouble(args[1]) : 2.0;
+        int latencySamples = args.length > 2 ? Integer.parseInt(args[2]) : 200000;
+
+        TBenchmarkRunner runner = new TBenchmarkRunner(warmupSec, measureSec, latencySamples);
+
+        new TPidBankBenchmark().addCases(runner);
+
+        runner.runAll();
+    }
+
+    /**
+     * Construct the benchmark and generate the traces
+     */
+    public TPidBankBenchmark() {
+
+        Random random = new Random(2019);
+
+        for (int m = 0; m < MAX_MECHANISMS; m++) {
+
+            double frequency = 0.3 + 0.1 * m;
+
+            for (int i = 0; i < TRACE_LENGTH; i++) {
+                rate[m][i] = 0.8 * Math.sin(i * LOOP_SEC * frequency) + random.nextGaussian() * 0.03;
+            }
+        }
+    }
+
+    /**
+     * Add all cases to the runner
+     *
+     * @param runner
+     *            benchmark runner
+     */
+    public void addCases(TBenchmarkRunner runner) {
+
+        for (int count : MECHANISM_COUNTS) {
+            addIndividualCase(runner, count);
+            addBankCase(runner, count);
+        }
+    }
+
+    private void addBankCase(TBenchmarkRunner runner, final int count) {
+
+        final TFakeClock clock = new TFakeClock();
+
+        final TPidBank bank = new TPidBank(count);
+        bank.setClock(clock);
+
+        for (int m = 0; m < count; m++) {
+            bank.add(0.5, 0.05, 0.05, 0.95, 0.1);
+            bank.enable(m);
+        }
+
+        runner.add("TPidBank x " + count, i -> {
+
+            clock.advance(LOOP_SEC);
+
+            double sum = 0;
+
+            for (int m = 0; m < count; m++) {
+                if (((i + m) & 63) == 0) {
+                    bank.setSetpoint(m, getSetpoint(i, m));
+                }
+                bank.setMeasurement(m, rate[m][i & TRACE_MASK]);
+            }
+
+            bank.calculate();
+
+            for (int m = 0; m < count; m++) {
+                sum += bank.get(m);
+            }
+
+            return sum;
+        });
+    }
+
+    private void addIndividualCase(TBenchmarkRunner runner, final int count) {
+
+        final TFakeClock clock = new TFakeClock();
+
+        final TSpeedPID[] pids = new TSpeedPID[count];
+
+        for (int m = 0; m < count; m++) {
+            pids[m] = new TSpeedPID(0.5, 0.05, 0.05, 0.95, 0.1);
+            pids[m].setClock(clock);
+            pids[m].enable();
+        }
+
+        runner.add("TSpeedPID x " + count, i -> {
+
+            clock.advance(LOOP_SEC);
+
+            double sum = 0;
+
+            for (int m = 0; m < count; m++) {
+                if (((i + m) & 63) == 0) {
+                    pids[m].setSetpoint(getSetpoint(i, m));
+                }
+                sum += pids[m].calculate(rate[m][i & TRACE_MASK]);
+            }
+
+            return sum;
+        });
+    }
+
+    /**
+     * Get the setpoint of a mechanism, the setpoint steps through 8 values
+     */
+    private static double getSetpoint(int iteration, int mechanism) {
+        return (((iteration + mechanism) >> 6) & 7) / 8.0;
+    }
+}
@@ -0,0 +1,33 @@
+package com.torontocodingcollective.clock;
+
+/**
+ * TClock is the time source used by the TorontoJar control loops.
+ * <p>
+ * A TClock returns a monotonic time in nanoseconds. The value has no relation
+ * to the wall clock time and is only useful to measure elapsed time.
+ * <p>
+ * Known implementations: {@link TSystemClock} for use on the robot, and
+ * {@link TFakeClock} which can be advanced manually when testing control code
+ * off the robot.
+ */
+public abstract class TClock {
+
+    /** Nanoseconds in one second */
+    public static final long NANOS_PER_SECOND = 1000000000L;
+
+    /**
+     * Get the current monotonic time
+     * 
+     * @return time in nanoseconds
+     */
+    public abstract long getNanos();
+
+    /**
+     * Get the current monotonic time in seconds
+     * 
+     * @return time in seconds
+     */
+    public double getSeconds() {
+        return getNanos() / (double) NANOS_PER_SECOND;
+    }
+}
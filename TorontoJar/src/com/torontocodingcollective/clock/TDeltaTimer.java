@@ -0,0 +1,122 @@
+package com.torontocodingcollective.clock;
+
+/**
+ * TDeltaTimer measures the time between successive calls of a periodic routine
+ * (the dt of a control loop).
+ * <p>
+ * The first call after construction or {@link #reset()} returns the nominal
+ * period, since there is no previous call to measure from. Measured periods
+ * are limited to a maximum value so that a long pause (ie. the robot being
+ * disabled) does not produce a very large step in an integral term.
+ */
+public class TDeltaTimer {
+
+    /** The period of the IterativeRobot main loop */
+    public static final double DEFAULT_NOMINAL_PERIOD_SEC = 0.02;
+
+    /** The longest period is limited to this multiple of the nominal period */
+    public static final double MAX_PERIOD_FACTOR          = 5.0;
+
+    private TClock             clock;
+    private final double       nominalPeriodSec;
+    private final double       maxPeriodSec;
+
+    private long               lastNanos                  = 0;
+    private boolean            started                    = false;
+    private double             lastPeriodSec;
+
+    /**
+     * Construct a delta timer on the system clock with the default nominal
+     * period of {@value #DEFAULT_NOMINAL_PERIOD_SEC} seconds.
+     */
+    public TDeltaTimer() {
+        this(TSystemClock.getInstance(), DEFAULT_NOMINAL_PERIOD_SEC);
+    }
+
+    /**
+     * Construct a delta timer
+     * 
+     * @param clock
+     *            the time source
+     * @param nominalPeriodSec
+     *            the expected period between calls
+     */
+    public TDeltaTimer(TClock clock, double nominalPeriodSec) {
+        this.clock = clock;
+        this.nominalPeriodSec = nominalPeriodSec;
+        this.maxPeriodSec = nominalPeriodSec * MAX_PERIOD_FACTOR;
+        this.lastPeriodSec = nominalPeriodSec;
+    }
+
+    /**
+     * Get the time since the last call to this routine
+     * 
+     * @return period in seconds. The nominal period is returned on the first call
+     *         after a reset, and the period is limited to
+     *         {@value #MAX_PERIOD_FACTOR} times the nominal period.
+     */
+    public double getDeltaSeconds() {
+
+        long now = clock.getNanos();
+
+        double periodSec = nominalPeriodSec;
+
+        if (started) {
+            periodSec = (now - lastNanos) / (double) TClock.NANOS_PER_SECOND;
+
+            if (periodSec < 0) {
+                periodSec = 0;
+            }
+
+            if (periodSec > maxPeriodSec) {
+                periodSec = maxPeriodSec;
+            }
+        }
+
+        lastNanos = now;
+        started = true;
+        lastPeriodSec = periodSec;
+
+        return periodSec;
+    }
+
+    /**
+     * Get the period returned by the last call to {@link #getDeltaSeconds()}
+     * 
+     * @return period in seconds
+     */
+    public double getLastPeriod() {
+        return lastPeriodSec;
+    }
+
+    /**
+     * Get the nominal period of this timer
+     * 
+     * @return period in seconds
+     */
+    public double getNominalPeriod() {
+        return nominalPeriodSec;
+    }
+
+    /**
+     * Restart the period measurement. The next call to
+     * {@link #getDeltaSeconds()} will return the nominal period.
+     */
+    public void reset() {
+        started = false;
+        lastPeriodSec = nominalPeriodSec;
+    }
+
+    /**
+     * Set the time source for this timer
+     * <p>
+     * This routine also resets the timer.
+     * 
+     * @param clock
+     *            the time source
+     */
+    public void setClock(TClock clock) {
+        this.clock = clock;
+        reset();
+    }
+}
@@ -0,0 +1,58 @@
+package com.torontocodingcollective.clock;
+
+/**
+ * TFakeClock is a {@link TClock} that only moves when it is advanced.
+ * <p>
+ * The fake clock is used to run control code off the robot (in tests or a
+ * simulation) with exact and repeatable time steps.
+ */
+public class TFakeClock extends TClock {
+
+    private volatile long nanos;
+
+    /**
+     * Construct a fake clock starting at time 0
+     */
+    public TFakeClock() {
+        this(0);
+    }
+
+    /**
+     * Construct a fake clock starting at the given time
+     * 
+     * @param startNanos
+     *            the starting time in nanoseconds
+     */
+    public TFakeClock(long startNanos) {
+        this.nanos = startNanos;
+    }
+
+    /**
+     * Advance the clock by the given time
+     * 
+     * @param seconds
+     *            to advance the clock. Negative values are ignored since the
+     *            clock must be monotonic.
+     */
+    public void advance(double seconds) {
+        advanceNanos(Math.round(seconds * NANOS_PER_SECOND));
+    }
+
+    /**
+     * Advance the clock by the given time
+     * 
+     * @param deltaNanos
+     *            to advance the clock. Negative values are ignored since the
+     *            clock must be monotonic.
+     */
+    public void advanceNanos(long deltaNanos) {
+        if (deltaNanos > 0) {
+            nanos += deltaNanos;
+        }
+    }
+
+    @Override
+    public long getNanos() {
+        return nanos;
+    }
+}
@@ -0,0 +1,28 @@
+package com.torontocodingcollective.clock;
+
+/**
+ * TSystemClock is a {@link TClock} backed by {@link System#nanoTime()}.
+ * <p>
+ * There is only one system clock, use {@link #getInstance()} to get it.
+ */
+public class TSystemClock extends TClock {
+
+    private static final TSystemClock instance = new TSystemClock();
+
+    private TSystemClock() {
+    }
+
+    /**
+     * Get the system clock
+     * 
+     * @return TSystemClock
+     */
+    public static TSystemClock getInstance() {
+        return instance;
+    }
+
+    @Override
+    public long getNanos() {
+        return System.nanoTime();
+    }
+}
@@ -3,6 +3,8 @@ package com.torontocodingcollective.commands;
 import com.torontocodingcollective.TConst;
 import com.torontocodingcollective.commands.gyroDrive.TRotateToHeadingCommand;
 import com.torontocodingcollective.oi.TOi;
+import com.torontocodingcollective.oi.TStickPosition;
+import com.torontocodingcollective.speedcontroller.TSpeeds;
 import com.torontocodingcollective.subsystem.TDriveSubsystem;
 import com.torontocodingcollective.subsystem.TGyroDriveSubsystem;
 
@@ -28,6 +30,12 @@ public class TDefaultDriveCommand extends TSafeCommand {
     private final TDriveSubsystem     driveSubsystem;
     private final TGyroDriveSubsystem gyroDriveSubsystem;
 
+    // Buffers reused every loop by the drive calculations so that
+    // driving the robot does not create any objects.
+    protected final TStickPosition    leftStickPosition  = new TStickPosition();
+    protected final TStickPosition    rightStickPosition = new TStickPosition();
+    protected final TSpeeds           motorSpeeds        = new TSpeeds();
+
     public TDefaultDriveCommand(TOi oi, TDriveSubsystem driveSubsystem) {
 
         super(TConst.NO_COMMAND_TIMEOUT, oi);
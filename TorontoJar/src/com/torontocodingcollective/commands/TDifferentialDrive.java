@@ -1,10 +1,15 @@
 package com.torontocodingcollective.commands;
 
+import com.torontocodingcollective.log.TLogger;
 import com.torontocodingcollective.oi.TStickPosition;
 import com.torontocodingcollective.speedcontroller.TSpeeds;
 
 /**
  * This class provides a calculator for a differential drive system.
+ * <p>
+ * Each drive calculation has an overload that fills a caller owned
+ * {@link TSpeeds} object. These overloads do not create any objects and should
+ * be used by commands that drive every loop.
  */
 public class TDifferentialDrive {
 
@@ -28,29 +33,27 @@ public class TDifferentialDrive {
     public TDifferentialDrive(double inputDeadband, double motorSpeedDeadband) {
 
         if (Math.abs(inputDeadband) > MAX_DEADBAND) {
-            System.out.println(
-                    "Invalid input deadband (" + inputDeadband + "). Default value " + DEFAULT_INPUT_DEADBAND
-                            + " used.");
+            TLogger.getInstance().log(this,
+                    "Invalid input deadband ({}). Default value {} used.",
+                    inputDeadband, DEFAULT_INPUT_DEADBAND);
             inputDeadband = DEFAULT_INPUT_DEADBAND;
         }
         setInputDeadband(inputDeadband);
 
         if (Math.abs(motorSpeedDeadband) > MAX_DEADBAND) {
-            System.out.println(
-                    "Invalid motor deadband (" + motorSpeedDeadband + "). Default value " + DEFAULT_INPUT_DEADBAND
-                            + " used.");
+            TLogger.getInstance().log(this,
+                    "Invalid motor deadband ({}). Default value {} used.",
+                    motorSpeedDeadband, DEFAULT_INPUT_DEADBAND);
             motorSpeedDeadband = DEFAULT_INPUT_DEADBAND;
         }
         setMotorDeadband(motorSpeedDeadband);
     }
 
-    private TSpeeds arcadeDrive(double speed, double rotation) {
-
-        TSpeeds motorSpeeds = new TSpeeds();
+    private TSpeeds arcadeDrive(double speed, double rotation, TSpeeds motorSpeeds) {
 
         // Check for a speed or rotation greater than the deadband
         if (!(Math.abs(speed) > inputDeadband || Math.abs(rotation) > inputDeadband)) {
-            return motorSpeeds;
+            return motorSpeeds.set(0, 0);
         }
 
         double scaledSpeed = scale(speed);
@@ -125,10 +128,7 @@ public class TDifferentialDrive {
             rightSpeed = 0;
         }
 
-        motorSpeeds.left = leftSpeed;
-        motorSpeeds.right = rightSpeed;
-
-        return motorSpeeds;
+        return motorSpeeds.set(leftSpeed, rightSpeed);
     }
 
     /**
@@ -148,9 +148,29 @@ public class TDifferentialDrive {
      *         speeds.
      */
     public TSpeeds arcadeDrive(TStickPosition singleStickPosition) {
+        return arcadeDrive(singleStickPosition, new TSpeeds());
+    }
+
+    /**
+     * Arcade Drive
+     * <p>
+     * Calculate the motor speeds required for arcade feel into an existing
+     * TSpeeds object. This routine does not create any objects.
+     * <p>
+     * See {@link #arcadeDrive(TStickPosition)}
+     * 
+     * @param singleStickPostion
+     *            for the stick position to be used in the calculation. If the
+     *            single stick position is {@code null}, then the calculated motor
+     *            speeds will be zero.
+     * @param motorSpeeds
+     *            object to update with the calculated left and right motor speeds
+     * @return the passed in motorSpeeds object
+     */
+    public TSpeeds arcadeDrive(TStickPosition singleStickPosition, TSpeeds motorSpeeds) {
 
         if (singleStickPosition == null) {
-            return new TSpeeds();
+            return motorSpeeds.set(0, 0);
         }
         
         // When driving using a single stick, an axis value of 1, 1 cannot be
@@ -178,7 +198,7 @@ public class TDifferentialDrive {
                 scaledX = magnitude * Math.abs(x/y) * Math.signum(x);
             }
         }
-        return arcadeDrive(scaledY, scaledX);
+        return arcadeDrive(scaledY, scaledX, motorSpeeds);
     }
 
     /**
@@ -205,13 +225,34 @@ public class TDifferentialDrive {
      *         speeds.
      */
     public TSpeeds arcadeDrive(TStickPosition leftStickPosition, TStickPosition rightStickPosition) {
+        return arcadeDrive(leftStickPosition, rightStickPosition, new TSpeeds());
+    }
+
+    /**
+     * Arcade Drive
+     * <p>
+     * Calculate the motor speeds required for arcade feel into an existing
+     * TSpeeds object. This routine does not create any objects.
+     * <p>
+     * See {@link #arcadeDrive(TStickPosition, TStickPosition)}
+     * 
+     * @param leftStickPostion
+     *            for the stick position to be used for the speed calculation.
+     * @param rightStickPostion
+     *            for the stick position to be used for the rotational calculation.
+     * @param motorSpeeds
+     *            object to update with the calculated left and right motor speeds
+     * @return the passed in motorSpeeds object
+     */
+    public TSpeeds arcadeDrive(TStickPosition leftStickPosition, TStickPosition rightStickPosition,
+            TSpeeds motorSpeeds) {
 
         if (leftStickPosition == null || rightStickPosition == null) {
-            return new TSpeeds();
+            return motorSpeeds.set(0, 0);
         }
 
         // By convention the y axis of a joystick is inverted
-        return arcadeDrive(-leftStickPosition.y, rightStickPosition.x);
+        return arcadeDrive(-leftStickPosition.y, rightStickPosition.x, motorSpeeds);
     }
 
     /**
@@ -237,9 +278,32 @@ public class TDifferentialDrive {
      *         speeds.
      */
     public TSpeeds tankDrive(TStickPosition leftStickPosition, TStickPosition rightStickPosition) {
+        return tankDrive(leftStickPosition, rightStickPosition, new TSpeeds());
+    }
+
+    /**
+     * Tank Drive
+     * <p>
+     * Calculate the motor speeds required for tank feel into an existing TSpeeds
+     * object. This routine does not create any objects.
+     * <p>
+     * See {@link #tankDrive(TStickPosition, TStickPosition)}
+     * 
+     * @param leftStickPostion
+     *            for the stick position to be used for the left side speed
+     *            calculation.
+     * @param rightStickPostion
+     *            for the stick position to be used for the right side speed
+     *            calculation.
+     * @param motorSpeeds
+     *            object to update with the calculated left and right motor speeds
+     * @return the passed in motorSpeeds object
+     */
+    public TSpeeds tankDrive(TStickPosition leftStickPosition, TStickPosition rightStickPosition,
+            TSpeeds motorSpeeds) {
 
         if (leftStickPosition == null || rightStickPosition == null) {
-            return new TSpeeds();
+            return motorSpeeds.set(0, 0);
         }
 
         double leftSpeed = -leftStickPosition.y;
@@ -253,7 +317,7 @@ public class TDifferentialDrive {
             rightSpeed = 0;
         }
 
-        return new TSpeeds(leftSpeed, rightSpeed);
+        return motorSpeeds.set(leftSpeed, rightSpeed);
     }
 
     // This routine scales a joystick value to make the
@@ -294,7 +358,7 @@ public class TDifferentialDrive {
      */
     public void setInputDeadband(double inputDeadband) {
         if (Math.abs(inputDeadband) > MAX_DEADBAND) {
-            System.out.println("Invalid input deadband (" + inputDeadband + "). setInputDeadband ignored");
+            TLogger.getInstance().log(this, "Invalid input deadband ({}). setInputDeadband ignored", inputDeadband);
             return;
         }
         this.inputDeadband = Math.abs(inputDeadband);
@@ -311,8 +375,8 @@ public class TDifferentialDrive {
      */
     public void setMotorDeadband(double motorSpeedDeadband) {
         if (Math.abs(motorSpeedDeadband) > MAX_DEADBAND) {
-            System.out
-                    .println("Invalid motorSpeed deadband (" + motorSpeedDeadband + "). setMotorSpeedDeadband ignored");
+            TLogger.getInstance().log(this, "Invalid motorSpeed deadband ({}). setMotorSpeedDeadband ignored",
+                    motorSpeedDeadband);
             return;
         }
         this.motorSpeedDeadband = motorSpeedDeadband;
@@ -2,9 +2,9 @@ package com.torontocodingcollective.commands;
 
 import com.torontocodingcollective.TConst;
 import com.torontocodingcollective.TUtil;
+import com.torontocodingcollective.log.TLogger;
 import com.torontocodingcollective.oi.TOi;
 
-import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.command.Command;
 
 /**
@@ -17,8 +17,9 @@ import edu.wpi.first.wpilibj.command.Command;
  */
 public abstract class TSafeCommand extends Command {
 
-    private final TOi oi;
-    private final double timeout;
+    private final TOi     oi;
+    private final double  timeout;
+    private final TLogger logger = TLogger.getInstance();
 
     /**
      * TSafeCommand
@@ -74,45 +75,67 @@ public abstract class TSafeCommand extends Command {
      * Log a message generated by any command
      * <p>
      * The message will be marked with the current period
-     * and the estimated time remaining in the period
+     * and the estimated time remaining in the period.
+     * <p>
+     * The message is written by the {@link TLogger} on a background
+     * thread, this routine does not block.
      * @param message to log
      */
     protected void logMessage(String message) {
+        logger.log(getCommandName(), message);
+    }
 
-        DriverStation driverStation = DriverStation.getInstance();
-
-        // Mark the message with the time and command name
-        StringBuilder sb = new StringBuilder();
-        if (driverStation.isAutonomous()) {
-            sb.append("Auto: ");
-        }
-        else {
-            sb.append("Teleop: ");
-        }
-
-        // Round the match time to one decimal
-        double matchTime = TUtil.round(driverStation.getMatchTime(), 2);
-        sb.append(matchTime).append(' ');
-
-        sb.append(getCommandName()).append(" : ");
+    /**
+     * Log a message with a parameter generated by any command
+     * <p>
+     * The placeholder {@code {}} in the message is replaced by the
+     * parameter when the message is written (see {@link TLogger}).
+     * Use this routine instead of building a String in
+     * the {@link #execute()} or {@link #isFinished()} methods.
+     * @param message format to log
+     * @param p0 parameter value
+     */
+    protected void logMessage(String message, double p0) {
+        logger.log(getCommandName(), message, p0);
+    }
 
-        sb.append(message);
+    /**
+     * Log a message with two parameters generated by any command
+     * <p>
+     * See {@link #logMessage(String, double)}
+     * @param message format to log
+     * @param p0 first parameter value
+     * @param p1 second parameter value
+     */
+    protected void logMessage(String message, double p0, double p1) {
+        logger.log(getCommandName(), message, p0, p1);
+    }
 
-        System.out.println(sb.toString());
+    /**
+     * Log a message with three parameters generated by any command
+     * <p>
+     * See {@link #logMessage(String, double)}
+     * @param message format to log
+     * @param p0 first parameter value
+     * @param p1 second parameter value
+     * @param p2 third parameter value
+     */
+    protected void logMessage(String message, double p0, double p1, double p2) {
+        logger.log(getCommandName(), message, p0, p1, p2);
     }
 
     @Override
     protected boolean isFinished() {
 
         if (isCancelled()) {
-            logMessage("command cancelled by user after "
-                    + TUtil.round(timeSinceInitialized(), 2) + "s");
+            logMessage("command cancelled by user after {}s",
+                    TUtil.round(timeSinceInitialized(), 2));
             return true;
         }
 
         if (super.isTimedOut()) {
-            logMessage("command timed out after "
-                    + TUtil.round(timeSinceInitialized(), 2) + "s");
+            logMessage("command timed out after {}s",
+                    TUtil.round(timeSinceInitialized(), 2));
             return true;
         }
 
@@ -0,0 +1,183 @@
+package com.torontocodingcollective.commands.gyroDrive;
+
+import com.torontocodingcollective.TConst;
+import com.torontocodingcollective.TUtil;
+import com.torontocodingcollective.clock.TClock;
+import com.torontocodingcollective.clock.TDeltaTimer;
+import com.torontocodingcollective.commands.TSafeCommand;
+import com.torontocodingcollective.oi.TOi;
+import com.torontocodingcollective.pid.TRelayAutoTuner;
+import com.torontocodingcollective.pid.TTuningRule;
+import com.torontocodingcollective.sensors.TSensorSnapshot;
+import com.torontocodingcollective.subsystem.TGyroDriveSubsystem;
+
+/**
+ * Auto tune the gyro PID of a drive subsystem
+ * <p>
+ * The robot is rotated back and forth on the spot around the heading at the
+ * start of the command by a relay (bang-bang) controller
+ * {@see TRelayAutoTuner}. The ultimate gain and period of the oscillation are
+ * measured and the gyro PI gains are calculated with the selected
+ * {@link TTuningRule}.
+ * <p>
+ * When the test completes, the gains are applied to the drive subsystem
+ * {@see TGyroDriveSubsystem#setGyroPidGain(double, double)} and saved
+ * {@see TGyroDriveSubsystem#saveGyroPidGain()}. If the command times out or is
+ * cancelled, the gains are not changed.
+ * <p>
+ * The test rotates the robot on the spot, so the gains are tuned for rotating
+ * to a heading. The rotate to heading control applies half of the gyro PID
+ * output to each side, so the calculated gains are doubled.
+ */
+public class TAutoTuneGyroPidCommand extends TSafeCommand {
+
+    private static final String COMMAND_NAME = 
+            TAutoTuneGyroPidCommand.class.getSimpleName();
+
+    /** Default relay output, large enough to overcome the drive friction */
+    public static final double        DEFAULT_RELAY_OUTPUT = 0.3;
+
+    /** Default relay hysteresis */
+    public static final double        DEFAULT_HYSTERESIS   = 1.0;   // degrees
+
+    /** Default number of oscillations to measure */
+    public static final int           DEFAULT_CYCLES       = 4;
+
+    public static final double        DEFAULT_TIMEOUT      = 15.0;
+
+    private final TTuningRule         rule;
+    private final TGyroDriveSubsystem driveSubsystem;
+    private final TRelayAutoTuner     tuner;
+
+    private final TClock              clock                = TSensorSnapshot.getInstance().getClock();
+
+    private double                    heading              = 0;
+    private long                      startNanos           = 0;
+
+    /**
+     * Auto tune the gyro PID
+     * 
+     * @param rule
+     *            used to calculate the gains from the measured oscillation
+     * @param relayOutput
+     *            output used to rotate the robot (0 < relayOutput <= 1.0)
+     * @param timeout
+     *            the time after which this command will end automatically. A value
+     *            of {@link TConst#NO_COMMAND_TIMEOUT} will be used as an infinite
+     *            timeout.
+     * @param oi
+     *            that extend the TOi operator input class
+     * @param driveSubsystem
+     *            that extends the TGyroDriveSubsystem
+     */
+    public TAutoTuneGyroPidCommand(TTuningRule rule, double relayOutput, double timeout, 
+            TOi oi, TGyroDriveSubsystem driveSubsystem) {
+
+        super(timeout, oi);
+
+        this.rule = rule;
+        this.driveSubsystem = driveSubsystem;
+        this.tuner = new TRelayAutoTuner(relayOutput, DEFAULT_HYSTERESIS, DEFAULT_CYCLES);
+
+        requires(driveSubsystem);
+    }
+
+    /**
+     * Auto tune the gyro PID with the default relay output and timeout
+     * 
+     * @param rule
+     *            used to calculate the gains from the measured oscillation
+     * @param oi
+     *            that extend the TOi operator input class
+     * @param driveSubsystem
+     *            that extends the TGyroDriveSubsystem
+     */
+    public TAutoTuneGyroPidCommand(TTuningRule rule, TOi oi, TGyroDriveSubsystem driveSubsystem) {
+        this(rule, DEFAULT_RELAY_OUTPUT, DEFAULT_TIMEOUT, oi, driveSubsystem);
+    }
+
+    @Override
+    protected String getCommandName() { return COMMAND_NAME; }
+
+    @Override
+    protected String getParmDesc() { 
+        return "rule " + rule + ", " + super.getParmDesc(); 
+    }
+
+    @Override
+    protected void initialize() {
+
+        // Only print the command start message
+        // if this command was not subclassed
+        if (getCommandName().equals(COMMAND_NAME)) {
+            logMessage(getParmDesc() + " starting");
+        }
+
+        // The relay drives the motors instead of the gyro PID
+        driveSubsystem.disableGyroPid();
+
+        heading = driveSubsystem.getGryoAngle();
+
+        tuner.reset();
+        startNanos = clock.getNanos();
+    }
+
+    @Override
+    protected void execute() {
+
+        double time = (clock.getNanos() - startNanos) / (double) TClock.NANOS_PER_SECOND;
+
+        // Take the shortest direction to the heading
+        double error = heading - driveSubsystem.getGryoAngle();
+
+        if (error > 180) {
+            error -= 360;
+        }
+
+        if (error < -180) {
+            error += 360;
+        }
+
+        // A positive output rotates clockwise to increase the angle
+        double output = tuner.update(time, error);
+
+        driveSubsystem.setSpeed(output, -output);
+    }
+
+    @Override
+    protected boolean isFinished() {
+
+        if (super.isFinished()) {
+            logMessage("gyro PID gains not changed");
+            return true;
+        }
+
+        if (!tuner.isComplete()) {
+            return false;
+        }
+
+        double ultimateGain = tuner.getUltimateGain();
+        double ultimatePeriod = tuner.getUltimatePeriod();
+
+        logMessage("ultimate gain {}, ultimate period {}s, amplitude {} degrees",
+                TUtil.round(ultimateGain, 4), TUtil.round(ultimatePeriod, 3),
+                TUtil.round(tuner.getAmplitude(), 2));
+
+        // The rotate to heading output is half of the gyro PID output.
+        // The gyro PID accumulates the integral in nominal loop periods.
+        double kP = 2 * rule.getKP(ultimateGain);
+        double kI = 2 * rule.getKI(ultimateGain, ultimatePeriod) * TDeltaTimer.DEFAULT_NOMINAL_PERIOD_SEC;
+
+        logMessage("gyro PID Kp {} Ki {}", TUtil.round(kP, 4), TUtil.round(kI, 5));
+
+        driveSubsystem.setGyroPidGain(kP, kI);
+        driveSubsystem.saveGyroPidGain();
+
+        return true;
+    }
+
+    @Override
+    protected void end() {
+        driveSubsystem.setSpeed(0, 0);
+    }
+}
@@ -0,0 +1,233 @@
+package com.torontocodingcollective.commands.gyroDrive;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.torontocodingcollective.TConst;
+import com.torontocodingcollective.TUtil;
+import com.torontocodingcollective.clock.TClock;
+import com.torontocodingcollective.commands.TSafeCommand;
+import com.torontocodingcollective.oi.TOi;
+import com.torontocodingcollective.sensors.TSensorSnapshot;
+import com.torontocodingcollective.sensors.encoder.TEncoder;
+import com.torontocodingcollective.subsystem.TDriveSubsystem.TSide;
+import com.torontocodingcollective.subsystem.TGyroDriveSubsystem;
+import com.torontocodingcollective.sysid.TDriveCharacterizationLog;
+import com.torontocodingcollective.sysid.TDriveCharacterizationTest;
+
+import edu.wpi.first.wpilibj.RobotController;
+
+/**
+ * Run a drive characterization test
+ * <p>
+ * The motors are driven open loop (the speed PIDs and gyro PID are disabled)
+ * with either a slow voltage ramp (quasistatic test) or a voltage step (dynamic
+ * test) {@see TDriveCharacterizationTest}. The voltage, the encoder positions
+ * and velocities and the gyro rate are recorded every loop and written to a
+ * file in the {@value TDriveCharacterizationLog#DEFAULT_DIRECTORY} directory
+ * when the command ends. The files are fitted with the offline drive
+ * characterization tool to find the speed PID feed forward and the track width.
+ * <p>
+ * Make sure there is enough room in front of (or behind) the robot for the
+ * whole test. The test ends on the timeout, or when it is cancelled by the
+ * operator.
+ */
+public class TCharacterizeDriveCommand extends TSafeCommand {
+
+    private static final String COMMAND_NAME = 
+            TCharacterizeDriveCommand.class.getSimpleName();
+
+    /** Default voltage ramp for quasistatic tests */
+    public static final double               DEFAULT_RAMP_RATE    = 0.5;   // volts/sec
+
+    /** Default voltage for dynamic tests */
+    public static final double               DEFAULT_STEP_VOLTAGE = 6.0;   // volts
+
+    // Room for a 60 second test in the 20ms robot loop
+    private static final int                 LOG_CAPACITY         = 3000;
+
+    private final TDriveCharacterizationTest test;
+    private final double                     voltage;
+    private final TGyroDriveSubsystem        driveSubsystem;
+
+    private final TDriveCharacterizationLog  log                  = new TDriveCharacterizationLog(LOG_CAPACITY);
+    private final TClock                     clock                = TSensorSnapshot.getInstance().getClock();
+
+    private TEncoder                         leftEncoder          = null;
+    private TEncoder                         rightEncoder         = null;
+
+    private boolean                          speedPidsEnabled     = false;
+    private long                             startNanos           = 0;
+    private double                           encoderCountsPerInch = 0;
+    private double                           lastAngle            = 0;
+    private double                           heading              = 0;
+    private boolean                          error                = false;
+
+    /**
+     * Construct a new CharacterizeDriveCommand
+     * 
+     * @param test
+     *            the test to run
+     * @param voltage
+     *            the ramp rate in volts/sec for a quasistatic test or the step
+     *            voltage for a dynamic test. See {@link #DEFAULT_RAMP_RATE} and
+     *            {@link #DEFAULT_STEP_VOLTAGE}.
+     * @param timeout
+     *            the time after which this command will end automatically. A value
+     *            of {@link TConst#NO_COMMAND_TIMEOUT} will be used as an infinite
+     *            timeout.
+     * @param oi
+     *            that extend the TOi operator input class
+     * @param driveSubsystem
+     *            that extends the TGyroDriveSubsystem
+     */
+    public TCharacterizeDriveCommand(TDriveCharacterizationTest test, double voltage, double timeout,
+            TOi oi, TGyroDriveSubsystem driveSubsystem) {
+
+        super(timeout, oi);
+
+        this.test = test;
+        this.voltage = voltage;
+        this.driveSubsystem = driveSubsystem;
+
+        requires(driveSubsystem);
+    }
+
+    @Override
+    protected String getCommandName() { return COMMAND_NAME; }
+
+    @Override
+    protected String getParmDesc() { 
+        return "test " + test
+                + (test.dynamic ? ", step " : ", ramp ") + voltage
+                + ", " + super.getParmDesc(); 
+    }
+
+    @Override
+    protected void initialize() {
+
+        // Only print the command start message
+        // if this command was not subclassed
+        if (getCommandName().equals(COMMAND_NAME)) {
+            logMessage(getParmDesc() + " starting");
+        }
+
+        leftEncoder = driveSubsystem.getEncoder(TSide.LEFT);
+        rightEncoder = driveSubsystem.getEncoder(TSide.RIGHT);
+        encoderCountsPerInch = driveSubsystem.getEncoderCountsPerInch();
+
+        if (leftEncoder == null || rightEncoder == null || encoderCountsPerInch <= 0) {
+            logMessage("Drive characterization requires encoders and the encoder counts per inch."
+                    + "  Command ending immediately");
+            error = true;
+            return;
+        }
+
+        // Drive the motors open loop for the test
+        speedPidsEnabled = driveSubsystem.speedPidsEnabled();
+        driveSubsystem.disableSpeedPids();
+        driveSubsystem.disableGyroPid();
+
+        log.reset(test, encoderCountsPerInch, driveSubsystem.getMaxEncoderSpeed());
+
+        lastAngle = driveSubsystem.getGryoAngle();
+        heading = lastAngle;
+
+        startNanos = clock.getNanos();
+    }
+
+    @Override
+    protected void execute() {
+
+        if (error) {
+            return;
+        }
+
+        double time = (clock.getNanos() - startNanos) / (double) TClock.NANOS_PER_SECOND;
+        double batteryVoltage = RobotController.getBatteryVoltage();
+
+        // Record the sensors for the voltage applied in the last loop
+        double angle = driveSubsystem.getGryoAngle();
+        double deltaAngle = angle - lastAngle;
+
+        if (deltaAngle > 180) {
+            deltaAngle -= 360;
+        }
+
+        if (deltaAngle < -180) {
+            deltaAngle += 360;
+        }
+
+        heading += deltaAngle;
+        lastAngle = angle;
+
+        double leftOutput = driveSubsystem.getSpeedController(TSide.LEFT).get();
+        double rightOutput = driveSubsystem.getSpeedController(TSide.RIGHT).get();
+
+        log.add(time, 
+                leftOutput * batteryVoltage, 
+                rightOutput * batteryVoltage,
+                leftEncoder.getSnapshot() / encoderCountsPerInch, 
+                rightEncoder.getSnapshot() / encoderCountsPerInch,
+                leftEncoder.getSnapshotRate() / encoderCountsPerInch, 
+                rightEncoder.getSnapshotRate() / encoderCountsPerInch,
+                driveSubsystem.getGyroRate(), 
+                heading);
+
+        // Set the voltage for the next loop
+        double testVoltage = test.dynamic ? voltage : voltage * time;
+
+        double output = 0;
+
+        if (batteryVoltage > 0) {
+            output = Math.min(1.0, testVoltage / batteryVoltage);
+        }
+
+        driveSubsystem.setSpeed(test.leftSign * output, test.rightSign * output);
+    }
+
+    @Override
+    protected boolean isFinished() {
+
+        if (error) {
+            logMessage("finished with errors");
+            return true;
+        }
+
+        if (super.isFinished()) {
+            return true;
+        }
+
+        if (log.isFull()) {
+            logMessage("log full after {}s", TUtil.round(timeSinceInitialized(), 2));
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    protected void end() {
+
+        if (error) {
+            return;
+        }
+
+        driveSubsystem.setSpeed(0, 0);
+
+        if (speedPidsEnabled) {
+            driveSubsystem.enableSpeedPids();
+        }
+
+        // Write the log after the motors are stopped
+        File file = new File(TDriveCharacterizationLog.DEFAULT_DIRECTORY,
+                "drive_" + test.name().toLowerCase() + "_" + System.currentTimeMillis() + ".bin");
+
+        try {
+            log.write(file);
+            logMessage("wrote " + log.getSize() + " samples to " + file);
+        } catch (IOException e) {
+            logMessage("could not write " + file + " " + e.getMessage());
+        }
+    }
+}
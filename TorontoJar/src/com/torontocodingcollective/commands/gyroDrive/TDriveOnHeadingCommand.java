@@ -85,10 +85,8 @@ public class TDriveOnHeadingCommand extends TSafeCommand {
         requires(driveSubsystem);
 
         if (heading < 0 || heading >= 360) {
-            System.out.println(
-                    "Heading on " + COMMAND_NAME 
-                    + " must be >= 0 or < 360 degrees. " + heading
-                    + " is invalid.  Command ending immediately");
+            logMessage("Heading must be >= 0 or < 360 degrees. "
+                    + "{} is invalid.  Command ending immediately", heading);
             error = true;
             this.brakeWhenFinished = true;
             return;
@@ -1,20 +1,56 @@
 package com.torontocodingcollective.commands.gyroDrive;
 
 import com.torontocodingcollective.TConst;
+import com.torontocodingcollective.clock.TClock;
 import com.torontocodingcollective.oi.TOi;
+import com.torontocodingcollective.sensors.TSensorSnapshot;
+import com.torontocodingcollective.subsystem.TDriveSubsystem;
 import com.torontocodingcollective.subsystem.TGyroDriveSubsystem;
+import com.torontocodingcollective.trajectory.TMotionProfile;
 
 /**
  * Drive on a specified heading and speed for a specified distance
+ * <p>
+ * The distance is measured from the odometry of the drive subsystem, so the
+ * encoders are not reset when the command starts and the position of the robot
+ * is kept between commands.
+ * <p>
+ * If motion profile limits are set on the drive subsystem
+ * {@see TDriveSubsystem#setMotionProfileLimits(double, double)}, the speed
+ * follows a motion profile that accelerates to the given speed and decelerates
+ * to stop at the distance. The command ends when the robot is stopped within
+ * the position tolerance of the distance. Otherwise the robot drives at the
+ * given speed until the distance is reached.
  */
 public class TDriveOnHeadingDistanceCommand extends TDriveOnHeadingCommand {
 
     private static final String COMMAND_NAME = 
             TDriveOnHeadingDistanceCommand.class.getSimpleName();
     
-    double                            distanceInches = 0; // in inches
+    /** Default position tolerance when following a motion profile */
+    public static final double        DEFAULT_POSITION_TOLERANCE = 1.0;  // inches
+
+    /** Default velocity tolerance when following a motion profile */
+    public static final double        DEFAULT_VELOCITY_TOLERANCE = 6.0;  // inches/sec
+
+    // Speed correction for the position error from the profile
+    private static final double       POSITION_GAIN              = 2.0;  // (inches/sec)/inch
+
+    double                            distanceInches             = 0;    // in inches
+    private final double              speed;
     private final TGyroDriveSubsystem driveSubsystem;
 
+    private double                    startDistanceInches        = 0;
+
+    private final TMotionProfile      profile                    = new TMotionProfile();
+    private final TClock              clock                      = TSensorSnapshot.getInstance().getClock();
+    private boolean                   profileEnabled             = false;
+    private long                      profileStartNanos          = 0;
+    private double                    maxSpeedInches             = 0;
+
+    private double                    positionTolerance          = DEFAULT_POSITION_TOLERANCE;
+    private double                    velocityTolerance          = DEFAULT_VELOCITY_TOLERANCE;
+
     /**
      * Construct a new DriveOnHeadingDistanceCommand
      * 
@@ -43,6 +79,7 @@ public class TDriveOnHeadingDistanceCommand extends TDriveOnHeadingCommand {
 
         this.driveSubsystem = driveSubsystem;
         this.distanceInches = distanceInches;
+        this.speed = speed;
     }
 
     @Override
@@ -64,22 +101,108 @@ public class TDriveOnHeadingDistanceCommand extends TDriveOnHeadingCommand {
             logMessage(getParmDesc() + " starting");
         }
 
+        // Use a motion profile if the drive subsystem has profile limits
+        maxSpeedInches = driveSubsystem.getMaxSpeedInches();
+
+        profileEnabled = driveSubsystem.getMotionProfileMaxAcceleration() > 0 && maxSpeedInches > 0;
+
+        if (profileEnabled) {
+
+            profile.generate(distanceInches, speed * maxSpeedInches,
+                    driveSubsystem.getMotionProfileMaxAcceleration(),
+                    driveSubsystem.getMotionProfileMaxJerk());
+
+            profileStartNanos = clock.getNanos();
+
+            // Start from rest
+            setSpeed(0);
+
+        } else {
+            setSpeed(speed);
+        }
+
         super.initialize();
-        driveSubsystem.resetEncoders();
+        startDistanceInches = driveSubsystem.getOdometry().getDistance();
+    }
+
+    @Override
+    protected void execute() {
+
+        if (profileEnabled) {
+
+            profile.calculate(getProfileTime());
+
+            // Follow the profile velocity and correct for the
+            // position error from the profile.
+            double positionError = profile.getPosition() - getDistanceDriven();
+            double profileSpeed = profile.getVelocity() + POSITION_GAIN * positionError;
+
+            setSpeed(profileSpeed / maxSpeedInches);
+        }
+
+        super.execute();
+    }
+
+    /**
+     * Get the distance driven since the command started
+     * 
+     * @return distance in inches
+     */
+    protected double getDistanceDriven() {
+        return driveSubsystem.getOdometry().getDistance() - startDistanceInches;
+    }
+
+    /**
+     * Set the tolerances used to end the command when following a motion
+     * profile
+     * 
+     * @param positionTolerance
+     *            in inches from the distance
+     * @param velocityTolerance
+     *            in inches/sec
+     */
+    public void setTolerance(double positionTolerance, double velocityTolerance) {
+        this.positionTolerance = positionTolerance;
+        this.velocityTolerance = velocityTolerance;
+    }
+
+    private double getProfileTime() {
+        return (clock.getNanos() - profileStartNanos) / (double) TClock.NANOS_PER_SECOND;
     }
 
     @Override
     protected boolean isFinished() {
 
+        double distanceDriven = getDistanceDriven();
+
         if (super.isFinished()) {
-            logMessage("Command ending at distance " + 
-                    driveSubsystem.getDistanceInches() + "inches");
+            logMessage("Command ending at distance {} inches", distanceDriven);
             return true;
         }
 
-        if (driveSubsystem.getDistanceInches() > distanceInches) {
-            logMessage("Command ending at distance " + 
-                    driveSubsystem.getDistanceInches() + "inches");
+        if (profileEnabled) {
+
+            // Finish when the profile is complete and the robot has
+            // stopped at the distance, or if the robot has overshot.
+            double velocity = driveSubsystem.getEncoderSpeed() / driveSubsystem.getEncoderCountsPerInch();
+
+            if (profile.isFinished(getProfileTime())
+                    && Math.abs(distanceInches - distanceDriven) <= positionTolerance
+                    && Math.abs(velocity) <= velocityTolerance) {
+                logMessage("Profile complete at distance {} inches", distanceDriven);
+                return true;
+            }
+
+            if (distanceDriven > distanceInches + positionTolerance) {
+                logMessage("Command ending past the distance at {} inches", distanceDriven);
+                return true;
+            }
+
+            return false;
+        }
+
+        if (distanceDriven > distanceInches) {
+            logMessage("Command ending at distance {} inches", distanceDriven);
             return true;
         }
 
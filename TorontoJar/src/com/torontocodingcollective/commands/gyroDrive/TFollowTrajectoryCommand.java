@@ -0,0 +1,314 @@
+package com.torontocodingcollective.commands.gyroDrive;
+
+import com.torontocodingcollective.TConst;
+import com.torontocodingcollective.TUtil;
+import com.torontocodingcollective.clock.TClock;
+import com.torontocodingcollective.commands.TSafeCommand;
+import com.torontocodingcollective.odometry.TPose;
+import com.torontocodingcollective.oi.TOi;
+import com.torontocodingcollective.sensors.TSensorSnapshot;
+import com.torontocodingcollective.subsystem.TGyroDriveSubsystem;
+import com.torontocodingcollective.trajectory.TTrajectory;
+import com.torontocodingcollective.trajectory.TTrajectoryState;
+
+/**
+ * Follow a trajectory using the field pose of the drive subsystem
+ * <p>
+ * The robot is steered back onto the trajectory with a Ramsete controller,
+ * which corrects the position and heading error from the trajectory using the
+ * pose from the odometry {@see TGyroDriveSubsystem#getPose(TPose)}. The left
+ * and right wheel speeds are sent to the drive subsystem each loop, so the
+ * robot drives the whole path in one smooth motion instead of stopping to
+ * rotate between straight segments.
+ * <p>
+ * The trajectory is in field coordinates, so the field pose of the drive
+ * subsystem must be set {@see TGyroDriveSubsystem#resetPose(double, double, double)}
+ * before the command starts. The speed PIDs should be enabled so that the
+ * robot drives at the requested wheel speeds.
+ * <p>
+ * This command does not allocate any memory while it is running.
+ */
+public class TFollowTrajectoryCommand extends TSafeCommand {
+
+    private static final String COMMAND_NAME = 
+            TFollowTrajectoryCommand.class.getSimpleName();
+
+    /**
+     * Default Ramsete correction gain (similar to a proportional gain). This is
+     * the common value of 2.0 m<sup>-2</sup> converted to inches.
+     */
+    public static final double        DEFAULT_B                  = 2.0 / (39.37 * 39.37);
+
+    /** Default Ramsete damping ratio (0 < zeta < 1) */
+    public static final double        DEFAULT_ZETA               = 0.7;
+
+    /** Default distance from the end of the trajectory to end the command */
+    public static final double        DEFAULT_POSITION_TOLERANCE = 2.0;  // inches
+
+    // Time allowed after the end of the trajectory to settle
+    // within the position tolerance
+    private static final double       SETTLE_TIME                = 0.5;  // seconds
+
+    // Minimum correction gain while settling. After the end of the
+    // trajectory the reference velocity is zero, which makes the Ramsete
+    // gain zero, so the remaining error is driven out at this rate.
+    private static final double       SETTLE_GAIN                = 3.0;  // 1/seconds
+
+    private final TTrajectory         trajectory;
+    private final double              trackWidthInches;
+    private final boolean             brakeWhenFinished;
+
+    private final TGyroDriveSubsystem driveSubsystem;
+
+    private final TClock              clock                      = TSensorSnapshot.getInstance().getClock();
+    private final TPose               pose                       = new TPose();
+    private final TTrajectoryState    desiredState               = new TTrajectoryState();
+    private final TTrajectoryState    endState                   = new TTrajectoryState();
+
+    private double                    b                          = DEFAULT_B;
+    private double                    zeta                       = DEFAULT_ZETA;
+    private double                    positionTolerance          = DEFAULT_POSITION_TOLERANCE;
+
+    private long                      startNanos                 = 0;
+    private double                    maxSpeedInches             = 0;
+    private boolean                   error                      = false;
+
+    /**
+     * Construct a new FollowTrajectoryCommand
+     * 
+     * @param trajectory
+     *            to follow in field coordinates
+     *            {@see com.torontocodingcollective.trajectory.TTrajectoryCache}
+     * @param trackWidthInches
+     *            distance between the left and right wheels. On a robot with
+     *            more than two wheels per side, the effective track width is
+     *            often larger than the measured track width.
+     * @param timeout
+     *            the time after which this command will end automatically. A value
+     *            of {@link TConst#NO_COMMAND_TIMEOUT} will be used as an infinite
+     *            timeout.
+     * @param brakeWhenFinished
+     *            {@code true} to brake when the command finishes {@code false} to
+     *            coast into the next command.
+     * @param oi
+     *            that extend the TOi operator input class
+     * @param driveSubsystem
+     *            that extends the TGyroDriveSubsystem
+     */
+    public TFollowTrajectoryCommand(TTrajectory trajectory, double trackWidthInches, double timeout,
+            boolean brakeWhenFinished, TOi oi, TGyroDriveSubsystem driveSubsystem) {
+
+        super(timeout, oi);
+
+        this.trajectory = trajectory;
+        this.trackWidthInches = trackWidthInches;
+        this.brakeWhenFinished = brakeWhenFinished;
+        this.driveSubsystem = driveSubsystem;
+
+        requires(driveSubsystem);
+
+        if (trajectory == null || trajectory.getSize() == 0) {
+            logMessage("FollowTrajectoryCommand requires a trajectory.  Command ending immediately");
+            error = true;
+            return;
+        }
+
+        trajectory.getEndState(endState);
+    }
+
+    @Override
+    protected String getCommandName() { return COMMAND_NAME; }
+
+    @Override
+    protected String getParmDesc() { 
+        if (error) {
+            return super.getParmDesc();
+        }
+        return "trajectory time " + TUtil.round(trajectory.getTotalTime(), 2)
+                + ", dist " + TUtil.round(trajectory.getTotalDistance(), 1)
+                + ", brake " + this.brakeWhenFinished 
+                + ", " + super.getParmDesc(); 
+    }
+
+    @Override
+    protected void initialize() {
+
+        // Only print the command start message
+        // if this command was not subclassed
+        if (getCommandName().equals(COMMAND_NAME)) {
+            logMessage(getParmDesc() + " starting");
+        }
+
+        if (error) {
+            return;
+        }
+
+        maxSpeedInches = driveSubsystem.getMaxSpeedInches();
+
+        if (maxSpeedInches <= 0) {
+            logMessage("The drive subsystem max encoder speed must be set to follow a trajectory."
+                    + "  Command ending immediately");
+            error = true;
+            return;
+        }
+
+        // The wheel speeds are set by this command, not the gyroPID
+        driveSubsystem.disableGyroPid();
+
+        startNanos = clock.getNanos();
+    }
+
+    @Override
+    protected void execute() {
+
+        if (error) {
+            return;
+        }
+
+        double trajectoryTime = getTrajectoryTime();
+
+        trajectory.getState(trajectoryTime, desiredState);
+        driveSubsystem.getPose(pose);
+
+        // Position error in the robot frame (forward and sideways)
+        double heading = Math.toRadians(pose.heading);
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+
+        double dx = desiredState.x - pose.x;
+        double dy = desiredState.y - pose.y;
+
+        double forwardError = cos * dx + sin * dy;
+        double sidewaysError = -sin * dx + cos * dy;
+        // Take the shortest direction to the desired heading
+        double headingError = desiredState.heading - pose.heading;
+
+        if (headingError > 180) {
+            headingError -= 360;
+        }
+
+        if (headingError < -180) {
+            headingError += 360;
+        }
+
+        headingError = Math.toRadians(headingError);
+
+        // Ramsete control law
+        double velocity = desiredState.velocity;
+        double angularVelocity = desiredState.velocity * desiredState.curvature;
+
+        double k = 2.0 * zeta * Math.sqrt(angularVelocity * angularVelocity + b * velocity * velocity);
+
+        if (trajectoryTime >= trajectory.getTotalTime()) {
+            k = Math.max(k, SETTLE_GAIN);
+        }
+
+        double v = velocity * Math.cos(headingError) + k * forwardError;
+        double w = angularVelocity + k * headingError + b * velocity * sinc(headingError) * sidewaysError;
+
+        // The heading increases clockwise, so the left wheel
+        // is faster when the angular velocity is positive.
+        double leftSpeed = v + w * trackWidthInches / 2.0;
+        double rightSpeed = v - w * trackWidthInches / 2.0;
+
+        // Keep the ratio of the wheel speeds (the curvature)
+        // if either wheel is over the max speed
+        double maxWheelSpeed = Math.max(Math.abs(leftSpeed), Math.abs(rightSpeed));
+
+        if (maxWheelSpeed > maxSpeedInches) {
+            leftSpeed *= maxSpeedInches / maxWheelSpeed;
+            rightSpeed *= maxSpeedInches / maxWheelSpeed;
+        }
+
+        // Wheel accelerations for the acceleration feed forward of the
+        // speed PIDs (the change in curvature is ignored)
+        double leftAcceleration = desiredState.acceleration * (1 + desiredState.curvature * trackWidthInches / 2.0);
+        double rightAcceleration = desiredState.acceleration * (1 - desiredState.curvature * trackWidthInches / 2.0);
+
+        driveSubsystem.setSpeed(leftSpeed / maxSpeedInches, rightSpeed / maxSpeedInches,
+                leftAcceleration / maxSpeedInches, rightAcceleration / maxSpeedInches);
+    }
+
+    /**
+     * Set the Ramsete controller gains
+     * 
+     * @param b
+     *            correction gain in inches<sup>-2</sup> (b > 0). Larger values
+     *            correct the position error more aggressively.
+     * @param zeta
+     *            damping ratio (0 < zeta < 1). Larger values give more damping.
+     */
+    public void setGains(double b, double zeta) {
+        this.b = b;
+        this.zeta = zeta;
+    }
+
+    /**
+     * Set the tolerance used to end the command
+     * 
+     * @param positionTolerance
+     *            in inches from the end of the trajectory
+     */
+    public void setTolerance(double positionTolerance) {
+        this.positionTolerance = positionTolerance;
+    }
+
+    private double getTrajectoryTime() {
+        return (clock.getNanos() - startNanos) / (double) TClock.NANOS_PER_SECOND;
+    }
+
+    private static double sinc(double x) {
+
+        // Use the series expansion near zero to avoid dividing by zero
+        if (Math.abs(x) < 1e-6) {
+            return 1.0 - x * x / 6.0;
+        }
+
+        return Math.sin(x) / x;
+    }
+
+    @Override
+    protected boolean isFinished() {
+
+        if (error) {
+            logMessage("finished with errors");
+            return true;
+        }
+
+        driveSubsystem.getPose(pose);
+        double endError = Math.hypot(endState.x - pose.x, endState.y - pose.y);
+
+        if (super.isFinished()) {
+            logMessage("ended at ({}, {}) with error {} inches",
+                    TUtil.round(pose.x, 1), TUtil.round(pose.y, 1), TUtil.round(endError, 1));
+            return true;
+        }
+
+        double trajectoryTime = getTrajectoryTime();
+
+        if (trajectoryTime < trajectory.getTotalTime()) {
+            return false;
+        }
+
+        if (endError <= positionTolerance) {
+            logMessage("finished at ({}, {}) with error {} inches",
+                    TUtil.round(pose.x, 1), TUtil.round(pose.y, 1), TUtil.round(endError, 1));
+            return true;
+        }
+
+        if (trajectoryTime > trajectory.getTotalTime() + SETTLE_TIME) {
+            logMessage("ending outside the tolerance at ({}, {}) with error {} inches",
+                    TUtil.round(pose.x, 1), TUtil.round(pose.y, 1), TUtil.round(endError, 1));
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    protected void end() {
+        if (brakeWhenFinished) {
+            driveSubsystem.setSpeed(0, 0);
+        }
+    }
+}
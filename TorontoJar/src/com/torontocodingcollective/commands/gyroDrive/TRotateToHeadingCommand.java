@@ -61,9 +61,8 @@ public class TRotateToHeadingCommand extends TSafeCommand {
         requires(driveSubsystem);
 
         if (heading < 0 || heading >= 360) {
-            logMessage(
-                    "Heading on DriveOnHeadingCommand must be >= 0 or < 360 degrees. " + heading
-                            + " is invalid.  Command ending immediately");
+            logMessage("Heading on DriveOnHeadingCommand must be >= 0 or < 360 degrees. "
+                    + "{} is invalid.  Command ending immediately", heading);
             this.heading = 0;
             this.maxRotationOutput = -1;
             return;
@@ -140,7 +139,7 @@ public class TRotateToHeadingCommand extends TSafeCommand {
             logMessage(getParmDesc() + " starting");
         }
 
-        logMessage("current heading " + driveSubsystem.getGryoAngle());
+        logMessage("current heading {}", driveSubsystem.getGryoAngle());
         
         if (error) {
             return;
@@ -167,16 +166,18 @@ public class TRotateToHeadingCommand extends TSafeCommand {
         double headingError = driveSubsystem.getGyroHeadingError();
 
         if (super.isFinished()) {
-            logMessage("ended at heading " + TUtil.round(driveSubsystem.getGryoAngle(), 1)
-            + " with error " + TUtil.round(headingError, 2) 
-            + ", rotation rate " + TUtil.round(rotationRate, 1));
+            logMessage("ended at heading {} with error {}, rotation rate {}",
+                    TUtil.round(driveSubsystem.getGryoAngle(), 1),
+                    TUtil.round(headingError, 2),
+                    TUtil.round(rotationRate, 1));
             return true;
         }
 
         if (Math.abs(headingError) <= 1.5 && Math.abs(rotationRate) < 3) {
-            logMessage("finished at heading " + TUtil.round(driveSubsystem.getGryoAngle(), 1)
-            + " with error " + TUtil.round(headingError, 2) 
-            + ", rotation rate " + TUtil.round(rotationRate, 1));
+            logMessage("finished at heading {} with error {}, rotation rate {}",
+                    TUtil.round(driveSubsystem.getGryoAngle(), 1),
+                    TUtil.round(headingError, 2),
+                    TUtil.round(rotationRate, 1));
             return true;
         }
 
@@ -0,0 +1,506 @@
+package com.torontocodingcollective.log;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * TLogger writes log messages from the robot loop without blocking.
+ * <p>
+ * Console output on the roboRIO can block for several milliseconds. Instead of
+ * printing, each call to {@code log()} copies a small binary record into a ring
+ * buffer that is allocated when the logger is constructed:
+ * <ls>
+ * <li>the time the message was logged
+ * <li>the robot mode (auto or teleop) and match time
+ * <li>the source of the message (normally a command name or an object)
+ * <li>the message format
+ * <li>up to {@value #MAX_PARAMS} {@code double} parameters and an optional
+ * detail object
+ * </ls>
+ * A background thread drains the ring buffer and formats each record to the
+ * console (or a log file). The message format is only combined with the
+ * parameters on the background thread, so logging
+ * {@code log(this, "Speed {} overriding to {}", speed, 1.0)} does not build a
+ * String in the robot loop.
+ * <p>
+ * Logging never takes a lock and never waits. Any number of threads (the main
+ * robot loop and the control thread) can log at the same time. If the ring
+ * buffer is full, the message is dropped and counted (see
+ * {@link #getDroppedCount()}).
+ * <p>
+ * NOTE: The source, message and detail are stored by reference. In order to
+ * avoid creating objects in the robot loop, use String constants for the
+ * message formats.
+ */
+public class TLogger {
+
+    /** Default number of records in the ring buffer */
+    public static final int       DEFAULT_CAPACITY         = 1024;
+
+    /** Default period at which the background thread drains the ring buffer */
+    public static final double    DEFAULT_DRAIN_PERIOD_SEC = 0.01;
+
+    /** Maximum number of numeric parameters in one message */
+    public static final int       MAX_PARAMS               = 3;
+
+    /** Placeholder in the message format that is replaced by a parameter */
+    public static final String    PARAM_PLACEHOLDER        = "{}";
+
+    private static final long     NANOS_PER_SECOND         = 1000000000L;
+
+    private static TLogger        instance                 = null;
+
+    private final int             capacity;
+    private final int             mask;
+
+    // Ring buffer of log records stored as parallel arrays indexed by slot
+    private final AtomicLong      writeSequence            = new AtomicLong(0);
+    private final AtomicLongArray publishedSequence;
+    private final long[]          timeNanos;
+    private final boolean[]       autonomous;
+    private final double[]        matchTime;
+    private final Object[]        source;
+    private final String[]        message;
+    private final Object[]        detail;
+    private final int[]           paramCount;
+    private final double[]        params;
+
+    private volatile long         readSequence             = 0;
+    private final AtomicLong      droppedCount             = new AtomicLong(0);
+
+    // Match state sampled by the drain thread so that logging does not
+    // call the DriverStation
+    private volatile boolean      matchAutonomous          = false;
+    private volatile double       matchTimeSec             = 0;
+    private boolean               matchStateAvailable      = true;
+
+    private final long            startNanos               = System.nanoTime();
+    private final long            drainPeriodNanos;
+    private final Thread          drainThread;
+    private final StringBuilder   lineBuilder              = new StringBuilder(256);
+
+    private volatile PrintStream  out                      = System.out;
+
+    /**
+     * Get the default logger used by the framework.
+     * <p>
+     * The default logger is created and its drain thread is started the first
+     * time this routine is called.
+     *
+     * @return the default TLogger
+     */
+    public static synchronized TLogger getInstance() {
+
+        if (instance == null) {
+            instance = new TLogger(DEFAULT_CAPACITY, DEFAULT_DRAIN_PERIOD_SEC);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Construct a logger and start its drain thread.
+     * <p>
+     * NOTE: Most robots should use the default logger {@link #getInstance()}.
+     *
+     * @param capacity
+     *            number of records in the ring buffer. The capacity is rounded up
+     *            to the next power of 2.
+     * @param drainPeriodSec
+     *            the period at which the background thread writes the logged
+     *            messages
+     */
+    public TLogger(int capacity, double drainPeriodSec) {
+
+        // Round the capacity up to a power of 2 so the slot
+        // can be calculated with a mask
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        this.capacity = size;
+        this.mask = size - 1;
+
+        publishedSequence = new AtomicLongArray(size);
+        timeNanos = new long[size];
+        autonomous = new boolean[size];
+        matchTime = new double[size];
+        source = new Object[size];
+        message = new String[size];
+        detail = new Object[size];
+        paramCount = new int[size];
+        params = new double[size * MAX_PARAMS];
+
+        // Mark all slots as unpublished
+        for (int i = 0; i < size; i++) {
+            publishedSequence.set(i, -1);
+        }
+
+        this.drainPeriodNanos = (long) (Math.max(drainPeriodSec, 0.001) * NANOS_PER_SECOND);
+
+        drainThread = new Thread(this::runDrainThread, "TLogger");
+        drainThread.setDaemon(true);
+        drainThread.setPriority(Thread.MIN_PRIORITY);
+        drainThread.start();
+    }
+
+    /**
+     * Wait until all messages logged before this call are written.
+     * <p>
+     * NOTE: This routine blocks and must not be called from the robot loop. It is
+     * intended for use when shutting down or in test code.
+     *
+     * @param timeoutSec
+     *            maximum time to wait
+     * @return {@code true} if all messages were written, {@code false} if the
+     *         timeout expired
+     */
+    public boolean flush(double timeoutSec) {
+
+        long target = writeSequence.get();
+        long deadline = System.nanoTime() + (long) (timeoutSec * NANOS_PER_SECOND);
+
+        while (readSequence < target) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            LockSupport.unpark(drainThread);
+            LockSupport.parkNanos(drainPeriodNanos / 10);
+        }
+
+        out.flush();
+
+        return true;
+    }
+
+    /**
+     * Get the number of records in the ring buffer
+     *
+     * @return the ring buffer capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of messages that were dropped because the ring buffer was
+     * full
+     *
+     * @return dropped message count
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Log a message
+     *
+     * @param source
+     *            of the message. A String source is written as is, a Class is
+     *            written as the simple class name, and any other object is written
+     *            as the simple class name of the object.
+     * @param message
+     *            to log
+     */
+    public void log(Object source, String message) {
+        log(source, message, null, 0, 0, 0, 0);
+    }
+
+    /**
+     * Log a message with one parameter
+     * <p>
+     * The first {@value #PARAM_PLACEHOLDER} in the message is replaced by the
+     * parameter when the message is written. If the message does not contain a
+     * placeholder, the parameter is appended to the message.
+     *
+     * @param source
+     *            of the message (see {@link #log(Object, String)})
+     * @param message
+     *            format containing a placeholder
+     * @param p0
+     *            value of the parameter
+     */
+    public void log(Object source, String message, double p0) {
+        log(source, message, null, 1, p0, 0, 0);
+    }
+
+    /**
+     * Log a message with two parameters
+     *
+     * @param source
+     *            of the message (see {@link #log(Object, String)})
+     * @param message
+     *            format containing placeholders (see
+     *            {@link #log(Object, String, double)})
+     * @param p0
+     *            value of the first parameter
+     * @param p1
+     *            value of the second parameter
+     */
+    public void log(Object source, String message, double p0, double p1) {
+        log(source, message, null, 2, p0, p1, 0);
+    }
+
+    /**
+     * Log a message with three parameters
+     *
+     * @param source
+     *            of the message (see {@link #log(Object, String)})
+     * @param message
+     *            format containing placeholders (see
+     *            {@link #log(Object, String, double)})
+     * @param p0
+     *            value of the first parameter
+     * @param p1
+     *            value of the second parameter
+     * @param p2
+     *            value of the third parameter
+     */
+    public void log(Object source, String message, double p0, double p1, double p2) {
+        log(source, message, null, 3, p0, p1, p2);
+    }
+
+    /**
+     * Log a message with a detail object
+     * <p>
+     * The detail is converted to a String when the message is written, and
+     * replaces the first {@value #PARAM_PLACEHOLDER} in the message. If the
+     * message does not contain a placeholder, the detail is appended to the
+     * message. If the detail is a Throwable, the stack trace is also written.
+     *
+     * @param source
+     *            of the message (see {@link #log(Object, String)})
+     * @param message
+     *            format containing a placeholder
+     * @param detail
+     *            object to write in the message
+     */
+    public void log(Object source, String message, Object detail) {
+        log(source, message, detail, 0, 0, 0, 0);
+    }
+
+    private void log(Object source, String message, Object detail, int paramCount,
+            double p0, double p1, double p2) {
+
+        // Claim the next sequence number. If the buffer is full,
+        // drop the message rather than wait for the drain thread.
+        long sequence;
+        do {
+            sequence = writeSequence.get();
+            if (sequence - readSequence >= capacity) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+        } while (!writeSequence.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+
+        this.timeNanos[slot] = System.nanoTime();
+        this.autonomous[slot] = matchAutonomous;
+        this.matchTime[slot] = matchTimeSec;
+        this.source[slot] = source;
+        this.message[slot] = message;
+        this.detail[slot] = detail;
+        this.paramCount[slot] = paramCount;
+
+        int paramIndex = slot * MAX_PARAMS;
+        params[paramIndex] = p0;
+        params[paramIndex + 1] = p1;
+        params[paramIndex + 2] = p2;
+
+        // Publish the record to the drain thread
+        publishedSequence.lazySet(slot, sequence);
+    }
+
+    /**
+     * Write the log to a file instead of the console.
+     * <p>
+     * Messages are appended to the file. If the file cannot be opened, the log
+     * continues to be written to the current output.
+     *
+     * @param fileName
+     *            the name of the log file
+     * @return {@code true} if the file was opened, {@code false} otherwise
+     */
+    public boolean setLogFile(String fileName) {
+
+        try {
+            setOutput(new PrintStream(new FileOutputStream(fileName, true), false));
+        } catch (FileNotFoundException e) {
+            log(this, "Cannot open log file " + fileName, e);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Set the output stream for the log.
+     * <p>
+     * The output stream is only written by the drain thread.
+     *
+     * @param out
+     *            the PrintStream to use. The default output is
+     *            {@link System#out}.
+     */
+    public void setOutput(PrintStream out) {
+        if (out != null) {
+            this.out = out;
+        }
+    }
+
+    private void runDrainThread() {
+
+        while (true) {
+
+            updateMatchState();
+
+            if (drain() == 0) {
+                out.flush();
+                LockSupport.parkNanos(drainPeriodNanos);
+            }
+        }
+    }
+
+    /**
+     * Write all published records
+     *
+     * @return the number of records written
+     */
+    private int drain() {
+
+        int count = 0;
+        PrintStream out = this.out;
+
+        while (true) {
+
+            long sequence = readSequence;
+            int slot = (int) sequence & mask;
+
+            // Stop at the first record that has not been published. A record
+            // may be claimed but not yet published by a logging thread.
+            if (publishedSequence.get(slot) != sequence) {
+                break;
+            }
+
+            formatRecord(slot);
+            out.append(lineBuilder).println();
+
+            Throwable t = detail[slot] instanceof Throwable ? (Throwable) detail[slot] : null;
+
+            // Release the references so that the objects are not
+            // held by the ring buffer
+            source[slot] = null;
+            message[slot] = null;
+            detail[slot] = null;
+
+            // Free the slot for reuse
+            readSequence = sequence + 1;
+
+            if (t != null) {
+                t.printStackTrace(out);
+            }
+
+            count++;
+        }
+
+        return count;
+    }
+
+    private void formatRecord(int slot) {
+
+        StringBuilder sb = lineBuilder;
+        sb.setLength(0);
+
+        // Mark the message with the time and source. When there is no
+        // DriverStation, use the time since the logger was started.
+        if (matchStateAvailable) {
+            sb.append(autonomous[slot] ? "Auto: " : "Teleop: ");
+            sb.append(Math.round(matchTime[slot] * 100) / 100.0).append(' ');
+        } else {
+            double timeSec = (timeNanos[slot] - startNanos) / (double) NANOS_PER_SECOND;
+            sb.append(Math.round(timeSec * 100) / 100.0).append("s ");
+        }
+
+        Object src = source[slot];
+        if (src instanceof String) {
+            sb.append((String) src);
+        } else if (src instanceof Class) {
+            sb.append(((Class<?>) src).getSimpleName());
+        } else if (src != null) {
+            sb.append(src.getClass().getSimpleName());
+        }
+        sb.append(" : ");
+
+        // Replace the placeholders with the parameters
+        String msg = message[slot];
+        int paramIndex = slot * MAX_PARAMS;
+        int count = paramCount[slot];
+        int next = 0;
+
+        Object msgDetail = detail[slot];
+
+        if (msg != null) {
+
+            int start = 0;
+
+            // The detail replaces the placeholder of a message without
+            // parameters
+            if (count == 0 && msgDetail != null) {
+                int placeholder = msg.indexOf(PARAM_PLACEHOLDER);
+                if (placeholder >= 0) {
+                    sb.append(msg, 0, placeholder).append(msgDetail);
+                    start = placeholder + PARAM_PLACEHOLDER.length();
+                    msgDetail = null;
+                }
+            }
+
+            while (next < count) {
+                int placeholder = msg.indexOf(PARAM_PLACEHOLDER, start);
+                if (placeholder < 0) {
+                    break;
+                }
+                sb.append(msg, start, placeholder).append(params[paramIndex + next]);
+                start = placeholder + PARAM_PLACEHOLDER.length();
+                next++;
+            }
+
+            sb.append(msg, start, msg.length());
+        }
+
+        // Append any parameters without a placeholder
+        for (; next < count; next++) {
+            sb.append(' ').append(params[paramIndex + next]);
+        }
+
+        if (msgDetail != null) {
+            sb.append(' ').append(msgDetail);
+        }
+    }
+
+    private void updateMatchState() {
+
+        if (!matchStateAvailable) {
+            return;
+        }
+
+        try {
+            DriverStation driverStation = DriverStation.getInstance();
+
+            matchAutonomous = driverStation.isAutonomous();
+            matchTimeSec = driverStation.getMatchTime();
+
+        } catch (Throwable t) {
+            // The DriverStation is not available when running off
+            // the robot, stop trying to read the match state.
+            matchStateAvailable = false;
+        }
+    }
+}
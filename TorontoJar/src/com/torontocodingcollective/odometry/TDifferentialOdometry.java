@@ -0,0 +1,218 @@
+package com.torontocodingcollective.odometry;
+
+/**
+ * TDifferentialOdometry estimates the field position of a differential (tank)
+ * drive robot.
+ * <p>
+ * Each update adds the distance travelled by the left and right wheels since the
+ * last update along the average heading measured by the gyro over the update.
+ * The heading is taken from the gyro rather than from the difference between
+ * the wheels because the wheels slip when the robot turns.
+ * <p>
+ * The encoders and gyro can be reset (or set to a new angle) at any time
+ * without moving the pose. The subsystem calls {@link #resetSensorBaseline()}
+ * before and after changing the sensors and the next update measures from the
+ * new sensor values.
+ * <p>
+ * The odometry is updated by a single thread (the main robot loop or the
+ * control thread) and can be read from any thread. Reads never block the
+ * update.
+ */
+public class TDifferentialOdometry {
+
+    // Pose values published to the readers. The sequence is odd while the
+    // pose is being written.
+    private volatile double x               = 0;
+    private volatile double y               = 0;
+    private volatile double heading         = 0;
+    private volatile double distance        = 0;
+    private volatile int    sequence        = 0;
+
+    // Incremented every time the sensors are changed by the main loop
+    private volatile int    resetCount      = 0;
+
+    // Sensor values from the last update, only used by the update thread
+    private boolean         baselineValid   = false;
+    private int             baselineResets  = 0;
+    private double          lastLeftInches  = 0;
+    private double          lastRightInches = 0;
+    private double          lastGyroAngle   = 0;
+
+    /**
+     * Get the total distance travelled by the robot
+     * <p>
+     * The distance is the average of the left and right wheel distances and
+     * is negative when driving in reverse. The distance is not affected by
+     * resetting the encoders.
+     * 
+     * @return distance in inches since the last call to
+     *         {@link #resetPose(double, double, double)}
+     */
+    public double getDistance() {
+
+        while (true) {
+
+            int startSequence = sequence;
+            double distance = this.distance;
+
+            if ((startSequence & 1) == 0 && startSequence == sequence) {
+                return distance;
+            }
+        }
+    }
+
+    /**
+     * Get the current pose of the robot
+     * 
+     * @param pose
+     *            filled in with the current pose
+     * @return the pose that was passed in
+     */
+    public TPose getPose(TPose pose) {
+
+        // Retry if the pose changes while it is being read so that
+        // the x, y and heading are all from the same update.
+        while (true) {
+
+            int startSequence = sequence;
+
+            pose.set(x, y, heading);
+
+            if ((startSequence & 1) == 0 && startSequence == sequence) {
+                return pose;
+            }
+        }
+    }
+
+    /**
+     * Get the count of sensor resets.
+     * <p>
+     * The count must be read before and after the sensors are read for an
+     * update, and both counts passed to
+     * {@link #update(int, int, double, double, double)} so that an update that
+     * reads the sensors while they are being reset is not used to move the pose.
+     * 
+     * @return reset count
+     */
+    public int getResetCount() {
+        return resetCount;
+    }
+
+    /**
+     * Set the pose of the robot.
+     * <p>
+     * This routine is normally called at the start of autonomous to set the
+     * starting position of the robot on the field. The sensors are not
+     * changed.
+     * 
+     * @param x
+     *            in inches
+     * @param y
+     *            in inches
+     * @param heading
+     *            in degrees
+     */
+    public synchronized void resetPose(double x, double y, double heading) {
+
+        sequence++;
+
+        this.x = x;
+        this.y = y;
+        this.heading = normalizedAngle(heading);
+        this.distance = 0;
+
+        sequence++;
+    }
+
+    /**
+     * Indicate that the encoders or gyro are being reset.
+     * <p>
+     * This routine must be called both before and after the sensors are
+     * changed. Updates that read the sensors between the calls are used as the
+     * new starting sensor values and do not move the pose.
+     */
+    public void resetSensorBaseline() {
+        resetCount++;
+    }
+
+    /**
+     * Update the pose from the sensors.
+     * 
+     * @param resetCount
+     *            the value of {@link #getResetCount()} read before the sensors
+     *            were read
+     * @param endResetCount
+     *            the value of {@link #getResetCount()} read after the sensors
+     *            were read
+     * @param leftInches
+     *            distance from the left encoder
+     * @param rightInches
+     *            distance from the right encoder
+     * @param gyroAngle
+     *            angle from the gyro
+     */
+    public synchronized void update(int resetCount, int endResetCount,
+            double leftInches, double rightInches, double gyroAngle) {
+
+        // If the sensors were reset while they were read, then the
+        // values may be from before or after the reset. Start measuring
+        // from the sensor values read by the next update.
+        if (resetCount != endResetCount) {
+            baselineValid = false;
+            return;
+        }
+
+        // If the sensors were reset since the last update, then
+        // start measuring from the new sensor values.
+        if (!baselineValid || resetCount != baselineResets) {
+
+            lastLeftInches = leftInches;
+            lastRightInches = rightInches;
+            lastGyroAngle = gyroAngle;
+
+            baselineResets = resetCount;
+            baselineValid = true;
+            return;
+        }
+
+        double deltaDistance = ((leftInches - lastLeftInches) + (rightInches - lastRightInches)) / 2.0;
+
+        // Take the shortest path between the two gyro angles
+        double deltaHeading = gyroAngle - lastGyroAngle;
+
+        if (deltaHeading > 180) {
+            deltaHeading -= 360;
+        }
+
+        if (deltaHeading < -180) {
+            deltaHeading += 360;
+        }
+
+        lastLeftInches = leftInches;
+        lastRightInches = rightInches;
+        lastGyroAngle = gyroAngle;
+
+        // Move along the average heading over the update
+        double averageHeading = Math.toRadians(heading + deltaHeading / 2.0);
+
+        sequence++;
+
+        x += deltaDistance * Math.cos(averageHeading);
+        y += deltaDistance * Math.sin(averageHeading);
+        heading = normalizedAngle(heading + deltaHeading);
+        distance += deltaDistance;
+
+        sequence++;
+    }
+
+    private static double normalizedAngle(double angle) {
+
+        angle = angle % 360.0;
+
+        if (angle < 0) {
+            angle += 360.0;
+        }
+
+        return angle;
+    }
+}
@@ -0,0 +1,91 @@
+package com.torontocodingcollective.odometry;
+
+/**
+ * The TPose class represents the position and heading of the robot on the
+ * field.
+ * <p>
+ * The field coordinates follow the gyro convention used by the framework. A
+ * heading of 0 degrees points along the x axis and the heading increases
+ * clockwise, so a heading of 90 degrees points along the y axis. Distances are
+ * in inches.
+ * <p>
+ * The pose is mutable so that a single instance can be reused every loop
+ * without creating garbage.
+ */
+public class TPose {
+
+    /** X coordinate in inches */
+    public double x;
+    /** Y coordinate in inches */
+    public double y;
+    /** Heading in degrees 0 <= heading < 360 */
+    public double heading;
+
+    /**
+     * Construct a pose at (0,0) with a heading of 0
+     */
+    public TPose() {
+        this(0, 0, 0);
+    }
+
+    /**
+     * Construct a pose based on the passed in x, y and heading
+     * 
+     * @param x
+     *            in inches
+     * @param y
+     *            in inches
+     * @param heading
+     *            in degrees
+     */
+    public TPose(double x, double y, double heading) {
+        set(x, y, heading);
+    }
+
+    /**
+     * Get the distance to another pose
+     * 
+     * @param pose
+     *            the other pose
+     * @return distance in inches
+     */
+    public double distanceTo(TPose pose) {
+        return Math.hypot(pose.x - x, pose.y - y);
+    }
+
+    /**
+     * Set the x, y and heading of this pose
+     * 
+     * @param x
+     *            in inches
+     * @param y
+     *            in inches
+     * @param heading
+     *            in degrees
+     * @return this pose
+     */
+    public TPose set(double x, double y, double heading) {
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+        return this;
+    }
+
+    /**
+     * Set this pose to the values of another pose
+     * 
+     * @param pose
+     *            to copy
+     * @return this pose
+     */
+    public TPose set(TPose pose) {
+        return set(pose.x, pose.y, pose.heading);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('(').append(x).append(',').append(y).append(',').append(heading).append(')');
+        return sb.toString();
+    }
+}
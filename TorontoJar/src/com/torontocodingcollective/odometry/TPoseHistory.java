@@ -0,0 +1,320 @@
+package com.torontocodingcollective.odometry;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * TPoseHistory holds the recent poses of the robot with the time of each pose.
+ * <p>
+ * Vision targets and some CAN sensors are measured some time before the value
+ * reaches the robot code. The pose history is used to find where the robot was
+ * when the measurement was taken. Poses between two entries are interpolated,
+ * with the heading taking the shortest path between the two entries.
+ * <p>
+ * The history is a fixed size ring buffer of primitive values allocated when
+ * the history is constructed, so adding and looking up poses never allocates
+ * memory. A lookup is a binary search over the entries.
+ * <p>
+ * Poses are added by a single thread (the thread updating the odometry). Any
+ * thread can look up a pose. Lookups do not block the thread adding poses; a
+ * lookup that overlaps an add is retried.
+ */
+public class TPoseHistory {
+
+    // Each entry holds the timestamp, x, y, heading and distance
+    private static final int      FIELDS    = 5;
+    private static final int      TIMESTAMP = 0;
+    private static final int      X         = 1;
+    private static final int      Y         = 2;
+    private static final int      HEADING   = 3;
+    private static final int      DISTANCE  = 4;
+
+    private final int             capacity;
+    private final AtomicLongArray entries;
+
+    // The sequence is odd while an entry is being written
+    private volatile int          sequence  = 0;
+    private volatile int          start     = 0;
+    private volatile int          size      = 0;
+
+    /**
+     * Construct a pose history
+     * 
+     * @param capacity
+     *            the number of poses held in the history. When the history is
+     *            full, the oldest pose is replaced. (ie. 1 second of history at a
+     *            200Hz control rate requires a capacity of 200)
+     */
+    public TPoseHistory(int capacity) {
+        this.capacity = Math.max(2, capacity);
+        this.entries = new AtomicLongArray(this.capacity * FIELDS);
+    }
+
+    /**
+     * Add a pose to the history.
+     * <p>
+     * Poses must be added in time order. A pose older than the newest pose in
+     * the history is ignored.
+     * 
+     * @param timestampNanos
+     *            the time of the pose
+     * @param x
+     *            in inches
+     * @param y
+     *            in inches
+     * @param heading
+     *            in degrees
+     * @param distance
+     *            the total distance driven in inches (see
+     *            {@link TDifferentialOdometry#getDistance()})
+     */
+    public synchronized void add(long timestampNanos, double x, double y, double heading, double distance) {
+
+        if (size > 0 && timestampNanos < getTimestamp(size - 1)) {
+            return;
+        }
+
+        int slot;
+
+        sequence++;
+
+        // When the history is full, replace the oldest entry
+        if (size < capacity) {
+            slot = (start + size) % capacity;
+            size++;
+        } else {
+            slot = start;
+            start = (start + 1) % capacity;
+        }
+
+        int index = slot * FIELDS;
+
+        entries.set(index + TIMESTAMP, timestampNanos);
+        entries.set(index + X, Double.doubleToRawLongBits(x));
+        entries.set(index + Y, Double.doubleToRawLongBits(y));
+        entries.set(index + HEADING, Double.doubleToRawLongBits(heading));
+        entries.set(index + DISTANCE, Double.doubleToRawLongBits(distance));
+
+        sequence++;
+    }
+
+    /**
+     * Remove all poses from the history.
+     * <p>
+     * The history should be cleared when the pose is reset.
+     */
+    public synchronized void clear() {
+
+        sequence++;
+
+        start = 0;
+        size = 0;
+
+        sequence++;
+    }
+
+    /**
+     * Get the total distance driven at the given time
+     * 
+     * @param timestampNanos
+     *            the time of the measurement
+     * @return distance in inches, or {@link Double#NaN} if the time is not in the
+     *         history
+     */
+    public double getDistance(long timestampNanos) {
+
+        while (true) {
+
+            int startSequence = sequence;
+
+            double distance = Double.NaN;
+
+            int after = findEntryAfter(timestampNanos);
+
+            if (after >= 0) {
+
+                int before = after == 0 ? 0 : after - 1;
+                double fraction = getFraction(before, after, timestampNanos);
+
+                double startDistance = getValue(before, DISTANCE);
+
+                distance = startDistance + (getValue(after, DISTANCE) - startDistance) * fraction;
+            }
+
+            if ((startSequence & 1) == 0 && startSequence == sequence) {
+                return distance;
+            }
+        }
+    }
+
+    /**
+     * Get the newest time in the history
+     * 
+     * @return time in nanoseconds, or 0 if the history is empty
+     */
+    public long getNewestTimestampNanos() {
+
+        while (true) {
+
+            int startSequence = sequence;
+
+            long timestampNanos = size == 0 ? 0 : getTimestamp(size - 1);
+
+            if ((startSequence & 1) == 0 && startSequence == sequence) {
+                return timestampNanos;
+            }
+        }
+    }
+
+    /**
+     * Get the oldest time in the history
+     * 
+     * @return time in nanoseconds, or 0 if the history is empty
+     */
+    public long getOldestTimestampNanos() {
+
+        while (true) {
+
+            int startSequence = sequence;
+
+            long timestampNanos = size == 0 ? 0 : getTimestamp(0);
+
+            if ((startSequence & 1) == 0 && startSequence == sequence) {
+                return timestampNanos;
+            }
+        }
+    }
+
+    /**
+     * Get the pose at the given time.
+     * <p>
+     * The pose is interpolated between the poses before and after the time.
+     * 
+     * @param timestampNanos
+     *            the time of the measurement
+     * @param pose
+     *            filled in with the pose at the given time. The pose is not
+     *            changed if the time is not in the history.
+     * @return {@code true} if the time is in the history, {@code false} if the
+     *         time is before the oldest pose or after the newest pose
+     */
+    public boolean getPose(long timestampNanos, TPose pose) {
+
+        while (true) {
+
+            int startSequence = sequence;
+
+            boolean found = false;
+            double x = 0;
+            double y = 0;
+            double heading = 0;
+
+            int after = findEntryAfter(timestampNanos);
+
+            if (after >= 0) {
+
+                int before = after == 0 ? 0 : after - 1;
+                double fraction = getFraction(before, after, timestampNanos);
+
+                double startX = getValue(before, X);
+                double startY = getValue(before, Y);
+                double startHeading = getValue(before, HEADING);
+
+                // Take the shortest path between the two headings
+                double deltaHeading = getValue(after, HEADING) - startHeading;
+
+                if (deltaHeading > 180) {
+                    deltaHeading -= 360;
+                }
+
+                if (deltaHeading < -180) {
+                    deltaHeading += 360;
+                }
+
+                x = startX + (getValue(after, X) - startX) * fraction;
+                y = startY + (getValue(after, Y) - startY) * fraction;
+                heading = startHeading + deltaHeading * fraction;
+
+                if (heading < 0) {
+                    heading += 360;
+                }
+
+                if (heading >= 360) {
+                    heading -= 360;
+                }
+
+                found = true;
+            }
+
+            if ((startSequence & 1) == 0 && startSequence == sequence) {
+
+                if (found) {
+                    pose.set(x, y, heading);
+                }
+
+                return found;
+            }
+        }
+    }
+
+    /**
+     * Get the number of poses in the history
+     * 
+     * @return number of poses
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find the oldest entry at or after the given time
+     * 
+     * @return the entry number (0 is the oldest entry), or -1 if the time is not
+     *         in the history
+     */
+    private int findEntryAfter(long timestampNanos) {
+
+        int count = size;
+
+        if (count == 0
+                || timestampNanos < getTimestamp(0)
+                || timestampNanos > getTimestamp(count - 1)) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = count - 1;
+
+        while (low < high) {
+
+            int mid = (low + high) >>> 1;
+
+            if (getTimestamp(mid) < timestampNanos) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private double getFraction(int before, int after, long timestampNanos) {
+
+        long beforeNanos = getTimestamp(before);
+        long afterNanos = getTimestamp(after);
+
+        if (afterNanos == beforeNanos) {
+            return 0;
+        }
+
+        return (double) (timestampNanos - beforeNanos) / (afterNanos - beforeNanos);
+    }
+
+    private long getTimestamp(int entry) {
+        return entries.get(((start + entry) % capacity) * FIELDS + TIMESTAMP);
+    }
+
+    private double getValue(int entry, int field) {
+        return Double.longBitsToDouble(entries.get(((start + entry) % capacity) * FIELDS + field));
+    }
+}
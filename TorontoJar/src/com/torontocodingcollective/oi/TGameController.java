@@ -1,5 +1,7 @@
 package com.torontocodingcollective.oi;
 
+import com.torontocodingcollective.log.TLogger;
+
 import edu.wpi.first.wpilibj.Joystick;
 
 /**
@@ -35,7 +37,10 @@ public abstract class TGameController extends Joystick {
      * For the default deadband of .07, values of .08 and higher will not be
      * filtered.
      */
-    public double axisDeadband = 0.07;
+    public double               axisDeadband    = 0.07;
+
+    // Reused by toString() so that the string can be built every loop
+    private final StringBuilder toStringBuilder = new StringBuilder();
 
     /**
      * Construct an instance of a GameController.
@@ -145,12 +150,31 @@ public abstract class TGameController extends Joystick {
      *         specified.
      */
     public TStickPosition getStickPosition(TStick stick) {
+        return getStickPosition(stick, new TStickPosition());
+    }
+
+    /**
+     * Get the stick position of the specified stick into an existing
+     * TStickPosition.
+     * <p>
+     * This routine does not create any objects, and should be used in routines
+     * that are called every loop. Only TStick values of {@link TStick#LEFT} or
+     * {@link TStick#RIGHT} are suppported.
+     * 
+     * @param stick
+     *            {@link TStick#LEFT} or {@link TStick#RIGHT}
+     * @param stickPosition
+     *            to update with the (x,y) coordinates of the stick
+     * @return the passed in stickPosition or {@code null} if an invalid stick is
+     *         specified.
+     */
+    public TStickPosition getStickPosition(TStick stick, TStickPosition stickPosition) {
         switch (stick) {
         case LEFT:
         case RIGHT:
-            return new TStickPosition(getAxis(stick, TAxis.X), getAxis(stick, TAxis.Y));
+            return stickPosition.set(getAxis(stick, TAxis.X), getAxis(stick, TAxis.Y));
         default:
-            System.out.println("Unsupported stick type " + stick + " for TGameController.getStickPosition()");
+            TLogger.getInstance().log(this, "Unsupported stick type {} for TGameController.getStickPosition()", stick);
             return null;
         }
     }
@@ -176,13 +200,13 @@ public abstract class TGameController extends Joystick {
      */
     public boolean isStickActive(TStick stick) {
 
-        TStickPosition stickPosition = getStickPosition(stick);
-
-        if (stickPosition == null) {
+        if (stick != TStick.LEFT && stick != TStick.RIGHT) {
             return false;
         }
 
-        if (Math.abs(stickPosition.x) > 0 || Math.abs(stickPosition.y) > 0) {
+        // Read the axis values directly in order to
+        // avoid creating a TStickPosition
+        if (Math.abs(getAxis(stick, TAxis.X)) > 0 || Math.abs(getAxis(stick, TAxis.Y)) > 0) {
             return true;
         }
 
@@ -247,17 +271,31 @@ public abstract class TGameController extends Joystick {
         super.setRumble(RumbleType.kRightRumble, volume);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * NOTE: This routine reuses an internal buffer and should only be called from
+     * one thread.
+     */
     @Override
     public String toString() {
 
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = toStringBuilder;
+        sb.setLength(0);
+
         sb.append(super.getName());
 
         if (isUserActive()) {
             sb.append(' ').append("Active");
         }
-        sb.append(' ').append(getStickPosition(TStick.LEFT)).append(' ').append(getStickPosition(TStick.RIGHT))
-                .append(" Triggers(").append(getTrigger(TTrigger.LEFT)).append(',').append(getTrigger(TTrigger.RIGHT))
+
+        // Append the stick positions without creating TStickPosition objects
+        sb.append(' ').append('(').append(getAxis(TStick.LEFT, TAxis.X)).append(',')
+                .append(getAxis(TStick.LEFT, TAxis.Y)).append(')');
+        sb.append(' ').append('(').append(getAxis(TStick.RIGHT, TAxis.X)).append(',')
+                .append(getAxis(TStick.RIGHT, TAxis.Y)).append(')');
+
+        sb.append(" Triggers(").append(getTrigger(TTrigger.LEFT)).append(',').append(getTrigger(TTrigger.RIGHT))
                 .append(')');
 
         String buttonString = getButtonString();
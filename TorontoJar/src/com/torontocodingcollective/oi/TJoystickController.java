@@ -136,9 +136,23 @@ public abstract class TJoystickController extends Joystick {
      * @return
      */
     public TStickPosition getStickPosition() {
-        return new TStickPosition(getAxis(TAxis.X), getAxis(TAxis.Y));
+        return getStickPosition(new TStickPosition());
     };
 
+    /**
+     * Get the stick position for this joystick into an existing TStickPosition.
+     * <p>
+     * This routine does not create any objects, and should be used in routines
+     * that are called every loop.
+     * 
+     * @param stickPosition
+     *            to update with the (x,y) coordinates of the stick
+     * @return the passed in stickPosition
+     */
+    public TStickPosition getStickPosition(TStickPosition stickPosition) {
+        return stickPosition.set(getAxis(TAxis.X), getAxis(TAxis.Y));
+    }
+
     /**
      * Get the trigger on theTJoystickController
      * <p>
@@ -160,13 +174,9 @@ public abstract class TJoystickController extends Joystick {
      */
     public boolean isStickActive() {
 
-        TStickPosition stickPosition = getStickPosition();
-
-        if (stickPosition == null) {
-            return false;
-        }
-
-        if (Math.abs(stickPosition.x) > 0 || Math.abs(stickPosition.y) > 0) {
+        // Read the axis values directly in order to
+        // avoid creating a TStickPosition
+        if (Math.abs(getAxis(TAxis.X)) > 0 || Math.abs(getAxis(TAxis.Y)) > 0) {
             return true;
         }
 
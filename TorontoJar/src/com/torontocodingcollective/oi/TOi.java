@@ -40,6 +40,36 @@ public abstract class TOi {
      */
     public abstract TStickPosition getDriveStickPosition(TStick stick);
 
+    /**
+     * Get the stick position for the specified stick into an existing
+     * TStickPosition.
+     * <p>
+     * This routine is called every loop by the drive commands. OIs should override
+     * this routine to fill the passed in stick position without creating any
+     * objects (see
+     * {@link TGameController#getStickPosition(TStick, TStickPosition)}). The
+     * default implementation copies the value returned by
+     * {@link #getDriveStickPosition(TStick)}.
+     * 
+     * @param stick
+     *            the {@link TStick#LEFT} or {@link TStick#RIGHT} stick for the
+     *            driver
+     * @param stickPosition
+     *            to update with the (x,y) coordinates of the stick
+     * @return the passed in stickPosition or {@code null} if the stick is not used
+     *         for driving
+     */
+    public TStickPosition getDriveStickPosition(TStick stick, TStickPosition stickPosition) {
+
+        TStickPosition driveStickPosition = getDriveStickPosition(stick);
+
+        if (driveStickPosition == null) {
+            return null;
+        }
+
+        return stickPosition.set(driveStickPosition.x, driveStickPosition.y);
+    }
+
     /**
      * Return the state of the reset button.
      * <p>
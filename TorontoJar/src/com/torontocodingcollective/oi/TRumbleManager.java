@@ -1,15 +1,16 @@
 package com.torontocodingcollective.oi;
 
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import com.torontocodingcollective.telemetry.TTelemetry;
+import com.torontocodingcollective.telemetry.TTelemetryBoolean;
 
 /**
  * The RumbleManager class is used to control the rumble on a GameController.
  */
 public class TRumbleManager {
 
-    private final TGameController gameController;
-    private String                smartDashboardName;
-    private boolean               rumbleOn = false;
+    private final TGameController   gameController;
+    private final TTelemetryBoolean rumbleTelemetry;
+    private boolean                 rumbleOn = false;
 
     private enum State {
         ON, OFF, PAUSE
@@ -19,7 +20,7 @@ public class TRumbleManager {
 
     public TRumbleManager(String name, TGameController gameController) {
         this.gameController = gameController;
-        this.smartDashboardName = name + " rumble";
+        this.rumbleTelemetry = TTelemetry.getInstance().addBoolean(name + " rumble");
     }
 
     public void rumbleOn() {
@@ -56,7 +57,7 @@ public class TRumbleManager {
 
         updateRumble();
 
-        SmartDashboard.putBoolean(smartDashboardName, rumbleOn);
+        rumbleTelemetry.set(rumbleOn);
     }
 
 }
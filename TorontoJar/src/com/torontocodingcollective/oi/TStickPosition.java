@@ -4,26 +4,45 @@ package com.torontocodingcollective.oi;
  * The TStickPosition class is used to represent the x,y coordinates (position)
  * of a stick.
  * <p>
- * The stick position is immutable.
+ * The stick position is mutable so that a single instance can be reused every
+ * loop (see {@link TGameController#getStickPosition(TStick, TStickPosition)})
+ * without creating garbage.
  */
 public class TStickPosition {
 
     /** X coordinate of this stick position */
-    public final double x;
+    public double x;
     /** Y coordinate of this stick position */
-    public final double y;
+    public double y;
+
+    /**
+     * Construct a stick position at (0,0)
+     */
+    public TStickPosition() {
+        this(0, 0);
+    }
 
     /**
      * Construct a stick position based on the passed in x and y
-     * <p>
-     * Stick positions are immutable
      * 
      * @param x
      * @param y
      */
     public TStickPosition(double x, double y) {
+        set(x, y);
+    }
+
+    /**
+     * Set the x and y coordinates of this stick position
+     * 
+     * @param x
+     * @param y
+     * @return this stick position
+     */
+    public TStickPosition set(double x, double y) {
         this.x = x;
         this.y = y;
+        return this;
     }
 
     @Override
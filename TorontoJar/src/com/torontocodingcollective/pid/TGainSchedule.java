@@ -0,0 +1,163 @@
+package com.torontocodingcollective.pid;
+
+/**
+ * TGainSchedule is a table of PID gain scales by gear and speed.
+ * <p>
+ * The response of a drive changes with the gear and the speed of the robot, so
+ * gains that work well in low gear can oscillate in high gear. The schedule
+ * holds, for each gear, a list of speeds with the scale to apply to the
+ * proportional and integral gains at that speed. The scales are interpolated
+ * between the speeds and held constant below the lowest speed and above the
+ * highest speed.
+ * <p>
+ * The scales multiply the gains set on the PID (from the constructor, the
+ * SmartDashboard or an auto tune), so the base gains can still be tuned while a
+ * schedule is used. A gear with no entries uses a scale of 1.0.
+ * <p>
+ * The table is allocated when the schedule is constructed, and
+ * {@link #calculate(int, double)} does not allocate memory. Entries should be
+ * added before the schedule is used by a subsystem.
+ */
+public class TGainSchedule {
+
+    private final double[][] speeds;
+    private final double[][] kPScales;
+    private final double[][] kIScales;
+    private final int[]      sizes;
+
+    private double           kPScale = 1.0;
+    private double           kIScale = 1.0;
+
+    /**
+     * Construct an empty gain schedule
+     * 
+     * @param gearCount
+     *            number of gears (1 for a single speed drive)
+     * @param maxEntriesPerGear
+     *            maximum number of speeds in each gear
+     */
+    public TGainSchedule(int gearCount, int maxEntriesPerGear) {
+
+        speeds = new double[gearCount][maxEntriesPerGear];
+        kPScales = new double[gearCount][maxEntriesPerGear];
+        kIScales = new double[gearCount][maxEntriesPerGear];
+        sizes = new int[gearCount];
+    }
+
+    /**
+     * Add an entry to the schedule
+     * 
+     * @param gear
+     *            0 <= gear < gearCount
+     * @param speed
+     *            measured speed (>= 0) in the units used by the subsystem
+     * @param kPScale
+     *            scale for the proportional gain at this speed
+     * @param kIScale
+     *            scale for the integral gain at this speed
+     * @return this schedule, so that entries can be chained
+     * @throws IllegalArgumentException
+     *             if the gear is not valid or the gear is full
+     */
+    public TGainSchedule add(int gear, double speed, double kPScale, double kIScale) {
+
+        if (gear < 0 || gear >= sizes.length) {
+            throw new IllegalArgumentException("Invalid gear " + gear + " in gain schedule with "
+                    + sizes.length + " gears");
+        }
+
+        int size = sizes[gear];
+
+        if (size >= speeds[gear].length) {
+            throw new IllegalArgumentException("Gain schedule is full for gear " + gear);
+        }
+
+        // Insert the entry in order of speed
+        int i = size;
+
+        while (i > 0 && speeds[gear][i - 1] > speed) {
+            speeds[gear][i] = speeds[gear][i - 1];
+            kPScales[gear][i] = kPScales[gear][i - 1];
+            kIScales[gear][i] = kIScales[gear][i - 1];
+            i--;
+        }
+
+        speeds[gear][i] = speed;
+        kPScales[gear][i] = kPScale;
+        kIScales[gear][i] = kIScale;
+
+        sizes[gear] = size + 1;
+
+        return this;
+    }
+
+    /**
+     * Calculate the gain scales for the gear and speed
+     * <p>
+     * The scales can be retrieved with {@link #getKPScale()} and
+     * {@link #getKIScale()}.
+     * 
+     * @param gear
+     *            current gear. An invalid gear uses a scale of 1.0.
+     * @param speed
+     *            measured speed. Negative speeds are treated as positive.
+     */
+    public void calculate(int gear, double speed) {
+
+        if (gear < 0 || gear >= sizes.length || sizes[gear] == 0) {
+            kPScale = 1.0;
+            kIScale = 1.0;
+            return;
+        }
+
+        double[] gearSpeeds = speeds[gear];
+        int size = sizes[gear];
+
+        speed = Math.abs(speed);
+
+        if (speed <= gearSpeeds[0]) {
+            kPScale = kPScales[gear][0];
+            kIScale = kIScales[gear][0];
+            return;
+        }
+
+        if (speed >= gearSpeeds[size - 1]) {
+            kPScale = kPScales[gear][size - 1];
+            kIScale = kIScales[gear][size - 1];
+            return;
+        }
+
+        // Find the entries on either side of the speed
+        int after = 1;
+
+        while (gearSpeeds[after] < speed) {
+            after++;
+        }
+
+        int before = after - 1;
+
+        double fraction = (speed - gearSpeeds[before]) / (gearSpeeds[after] - gearSpeeds[before]);
+
+        kPScale = kPScales[gear][before] + (kPScales[gear][after] - kPScales[gear][before]) * fraction;
+        kIScale = kIScales[gear][before] + (kIScales[gear][after] - kIScales[gear][before]) * fraction;
+    }
+
+    /**
+     * Get the integral gain scale from the last {@link #calculate(int, double)}
+     * 
+     * @return integral gain scale
+     */
+    public double getKIScale() {
+        return kIScale;
+    }
+
+    /**
+     * Get the proportional gain scale from the last
+     * {@link #calculate(int, double)}
+     * 
+     * @return proportional gain scale
+     */
+    public double getKPScale() {
+        return kPScale;
+    }
+}
@@ -1,30 +1,36 @@
 package com.torontocodingcollective.pid;
 
-import edu.wpi.first.wpilibj.PIDController;
-
 /**
  * Proportional (PID) Control Loop for heading (gyro angle) control.
  * <p>
- * The PID controller calculate routine must be called at a consistent rate
- * (every control loop is good enough) when the PID is enabled.
+ * The PID controller calculate routine must be called every control loop when
+ * the PID is enabled.
+ * <p>
+ * The integral term is scaled by the measured time between calls to
+ * {@link #calculate(double)}, and is accumulated in units of the nominal 20ms
+ * robot loop period. Gains tuned when calling this PID once per robot loop do
+ * not change if the PID is calculated at a faster rate or if a loop overruns.
  * <p>
- * This PID controller uses the Smartdashboard communications features of the
- * wpiLib PID controller, but does not use its control loop functionality.
+ * A derivative gain (set with {@link #setD(double)}) damps the rotation of the
+ * robot as it approaches the setpoint. The derivative is calculated on the
+ * change in the gyro angle, so a new heading does not cause a step in the
+ * output.
+ * <p>
+ * This PID does not lock on any calls, and can be displayed on the
+ * SmartDashboard with a {@link TPidDashboard}.
  */
-public class TGyroPID extends PIDController {
+public class TGyroPID extends TPidCore {
 
     /** Output is the steering value to apply to the motor speed */
-    private double output;
-    private double error;
-    private double totalError;
+    private double            output;
+    private double            error;
+    private double            totalError;
 
     /**
      * Construct a TGyroPid using the supplied proportional gain
      */
     public TGyroPID(double kP) {
-        // The super class is used in order to
-        // support a SmartDashboard pid object
-        super(kP, 0.0d, 0.0d, 0.0d, new NullPIDSource(), new NullPIDOutput());
+        super(kP, 0.0d, 0.0d);
         reset();
     }
 
@@ -32,16 +38,17 @@ public class TGyroPID extends PIDController {
      * Construct a TGyroPid using the supplied proportional and integral gain
      */
     public TGyroPID(double kP, double kI) {
-        super(kP, kI, 0.0d, 0.0d, new NullPIDSource(), new NullPIDOutput());
+        super(kP, kI, 0.0d);
         reset();
     }
 
     /**
      * Calculate the PID output.
      * <p>
-     * In order to generate proper PID behaviour, this routine must be called at a
-     * consistent periodic rate. Calling this routine anywhere in the main robot
-     * periodic loops is sufficient.
+     * In order to generate proper PID behaviour, this routine must be called
+     * periodically. Calling this routine anywhere in the main robot periodic loops
+     * is sufficient. The integral is scaled by the time measured since the last
+     * call.
      * <p>
      * NOTE: If the PID is disabled, this routine returns 0.
      * 
@@ -53,8 +60,18 @@ public class TGyroPID extends PIDController {
 
         error = getError(currentGyroAngle);
 
-        // Add the proportional output
-        double proportionalOutput = super.getP() * error;
+        // If the PID is not enabled, this routine does nothing.
+        if (!this.isEnabled()) {
+            return 0;
+        }
+
+        // Always measure the period so that the period is
+        // correct when the integral gain is changed
+        double periodScale = measurePeriodScale();
+
+        // Add the proportional and derivative output
+        double proportionalOutput = getScaledP() * error
+                + calculateDerivative(currentGyroAngle, periodScale);
 
         // The output cannot steer more than 1.0
         if (proportionalOutput > 1.0) {
@@ -73,11 +90,13 @@ public class TGyroPID extends PIDController {
         // and "wind-up". In order to avoid "wind-up",
         // do not allow the integral error total to exceed
         // the total required to saturate the output (-1.0 or 1.0).
-        double kI = super.getI();
+        double kI = getScaledI();
 
         if (kI != 0) {
 
-            totalError += error; // sum of all errors
+            // sum of all errors scaled by the measured period
+            // relative to the nominal loop period
+            totalError += error * periodScale;
 
             double integralOutput = totalError * kI;
 
@@ -134,7 +153,7 @@ public class TGyroPID extends PIDController {
         // Calculate the error
         // Normalize the error for the shortest path.
         // The normalized error should be -180 and +180.
-        error = super.getSetpoint() - normalizedGyroAngle;
+        error = getSetpoint() - normalizedGyroAngle;
 
         if (error > 180) {
             error = error - 360.0;
@@ -146,14 +165,9 @@ public class TGyroPID extends PIDController {
         return error;
     }
 
-    @Override
-    public void disable() {
-        super.disable();
-        reset();
-    }
-
     @Override
     public void reset() {
+        super.reset();
         if (!isEnabled()) {
             error = 0;
         }
@@ -166,8 +180,33 @@ public class TGyroPID extends PIDController {
         return output;
     }
 
-    @Override
+    /**
+     * Get the error calculated by the last call to {@link #calculate(double)} or
+     * {@link #getError(double)}
+     * 
+     * @return error in degrees (-180 to +180)
+     */
     public double getError() {
         return error;
     }
+
+    /**
+     * The gyro angle change is normalized to the shortest path (-180 to +180
+     * degrees) in case the gyro angle is normalized.
+     */
+    @Override
+    protected double getMeasurementChange(double measurement, double previousMeasurement) {
+
+        double change = (measurement - previousMeasurement) % 360.0d;
+
+        if (change > 180) {
+            change = change - 360.0;
+        }
+
+        if (change < -180) {
+            change = change + 360.0;
+        }
+
+        return change;
+    }
 }
@@ -0,0 +1,430 @@
+package com.torontocodingcollective.pid;
+
+import com.torontocodingcollective.clock.TClock;
+import com.torontocodingcollective.clock.TDeltaTimer;
+import com.torontocodingcollective.clock.TFakeClock;
+import com.torontocodingcollective.clock.TSystemClock;
+import com.torontocodingcollective.log.TLogger;
+
+/**
+ * TPidBank calculates a set of speed PIDs (one for each closed loop mechanism
+ * on the robot) in a single pass.
+ * <p>
+ * Each PID in the bank is identified by the index returned from
+ * {@link #add(double, double)}. The gains, setpoints, integral totals and
+ * outputs of all PIDs are stored in arrays, and {@link #calculate()} updates
+ * every enabled PID in one loop over the arrays instead of calling a separate
+ * PID object for each mechanism.
+ * <p>
+ * Each PID in the bank behaves the same as a {@link TSpeedPID} with the same
+ * gains and feed forward model:
+ * <ul>
+ * <li>the measurement is a normalized rate, limited to +/-1.5, and the
+ * setpoint is limited to +/-1.0</li>
+ * <li>the output is the feed forward plus the proportional output, limited to
+ * +/-1.0</li>
+ * <li>the integral total is weighted by the measured period relative to the
+ * 20ms robot loop, and is clamped so that the integral output never drives the
+ * total output past +/-1.0 (no wind-up)</li>
+ * </ul>
+ * The bank does not have a derivative term. All PIDs in the bank share one
+ * period measurement, so {@link #calculate()} should be called once per loop.
+ * <p>
+ * The index passed to each per PID method is checked against the number of
+ * PIDs added to the bank, and an IllegalArgumentException is thrown for an
+ * index that was not returned by {@link #add(double, double)}.
+ * <p>
+ * The arrays are allocated when the bank is constructed, and the bank does not
+ * allocate memory after the PIDs are added. The bank is not thread safe, set
+ * the values and calculate the bank from the same thread (normally the robot
+ * loop).
+ */
+public class TPidBank {
+
+    private final TDeltaTimer deltaTimer = new TDeltaTimer();
+
+    private int               size       = 0;
+
+    // Gains
+    private final double[]    kP;
+    private final double[]    kI;
+
+    // Feed forward model
+    private final double[]    kS;
+    private final double[]    kV;
+    private final double[]    kA;
+
+    // Inputs
+    private final boolean[]   enabled;
+    private final double[]    setpoint;
+    private final double[]    setpointAcceleration;
+    private final double[]    measurement;
+
+    // Running state
+    private final double[]    totalError;
+    private final double[]    output;
+
+    /**
+     * Construct an empty PID bank
+     *
+     * @param capacity
+     *            maximum number of PIDs in the bank
+     */
+    public TPidBank(int capacity) {
+
+        kP = new double[capacity];
+        kI = new double[capacity];
+
+        kS = new double[capacity];
+        kV = new double[capacity];
+        kA = new double[capacity];
+
+        enabled = new boolean[capacity];
+        setpoint = new double[capacity];
+        setpointAcceleration = new double[capacity];
+        measurement = new double[capacity];
+
+        totalError = new double[capacity];
+        output = new double[capacity];
+    }
+
+    /**
+     * Add a PID to the bank with the default feed forward model (kS = 0, kV = 1.0,
+     * kA = 0).
+     * <p>
+     * The PID is disabled when it is added.
+     *
+     * @param kP
+     *            proportional gain
+     * @param kI
+     *            integral gain
+     * @return the index of the PID in the bank
+     * @throws IllegalArgumentException
+     *             if the bank is full
+     */
+    public int add(double kP, double kI) {
+        return add(kP, kI, 0, 1.0, 0);
+    }
+
+    /**
+     * Add a PID to the bank with a feed forward model.
+     * <p>
+     * The PID is disabled when it is added.
+     *
+     * @param kP
+     *            proportional gain
+     * @param kI
+     *            integral gain
+     * @param kS
+     *            static friction output (0 <= kS < 1.0)
+     * @param kV
+     *            output per unit of normalized speed
+     * @param kA
+     *            output per unit of normalized acceleration
+     * @return the index of the PID in the bank
+     * @throws IllegalArgumentException
+     *             if the bank is full
+     * @see TSpeedPID#setFeedForward(double, double, double)
+     */
+    public int add(double kP, double kI, double kS, double kV, double kA) {
+
+        if (size >= output.length) {
+            throw new IllegalArgumentException("PID bank is full, capacity " + output.length);
+        }
+
+        int index = size;
+        size++;
+
+        setGains(index, kP, kI);
+        setFeedForward(index, kS, kV, kA);
+
+        return index;
+    }
+
+    /**
+     * Calculate the output of all enabled PIDs in the bank using the
+     * measurements set since the last calculation.
+     * <p>
+     * In order to generate proper PID behaviour, this routine must be called
+     * periodically. The integrals are scaled by the time measured since the last
+     * call. The output of a disabled PID is 0.
+     */
+    public void calculate() {
+
+        // Always measure the period so that the period is
+        // correct when an integral gain is changed
+        double periodScale = deltaTimer.getDeltaSeconds() / deltaTimer.getNominalPeriod();
+
+        for (int i = 0; i < size; i++) {
+
+            if (!enabled[i]) {
+                output[i] = 0;
+                continue;
+            }
+
+            double normalizedRate = measurement[i];
+
+            if (normalizedRate > 1.5) {
+                normalizedRate = 1.5;
+            }
+
+            if (normalizedRate < -1.5) {
+                normalizedRate = -1.5;
+            }
+
+            double pidSetpoint = setpoint[i];
+
+            double error = pidSetpoint - normalizedRate;
+
+            // Feed forward and proportional output
+            double totalOutput = kS[i] * Math.signum(pidSetpoint) + kV[i] * pidSetpoint
+                    + kA[i] * setpointAcceleration[i] + kP[i] * error;
+
+            if (totalOutput > 1.0) {
+                totalOutput = 1.0;
+            }
+
+            if (totalOutput < -1.0) {
+                totalOutput = -1.0;
+            }
+
+            // Clamp the integral total so that the integral
+            // output does not saturate the output (see TSpeedPID)
+            double pidKI = kI[i];
+
+            if (pidKI != 0) {
+
+                double pidTotalError = totalError[i] + error * periodScale;
+
+                double integralOutput = pidTotalError * pidKI;
+
+                if (integralOutput + totalOutput > 1.0) {
+                    pidTotalError = (1.0 - totalOutput) / pidKI;
+                    totalOutput = 1.0;
+                } else if (integralOutput + totalOutput < -1.0) {
+                    pidTotalError = (-1.0 - totalOutput) / pidKI;
+                    totalOutput = -1.0;
+                } else {
+                    totalOutput += integralOutput;
+                }
+
+                totalError[i] = pidTotalError;
+            }
+
+            output[i] = totalOutput;
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException("PID bank index " + index + " out of range, size " + size);
+        }
+    }
+
+    /**
+     * Disable a PID.
+     * <p>
+     * The integral total, output and setpoint acceleration of the PID are
+     * cleared.
+     *
+     * @param index
+     *            index of the PID
+     */
+    public void disable(int index) {
+        checkIndex(index);
+        enabled[index] = false;
+        totalError[index] = 0;
+        output[index] = 0;
+        setpointAcceleration[index] = 0;
+    }
+
+    /**
+     * Enable a PID.
+     *
+     * @param index
+     *            index of the PID
+     */
+    public void enable(int index) {
+        checkIndex(index);
+        enabled[index] = true;
+    }
+
+    /**
+     * Get the output of a PID from the last calculation
+     *
+     * @param index
+     *            index of the PID
+     * @return PID output (-1.0 to 1.0)
+     */
+    public double get(int index) {
+        checkIndex(index);
+        return output[index];
+    }
+
+    /**
+     * Get the integral gain of a PID
+     *
+     * @param index
+     *            index of the PID
+     * @return kI
+     */
+    public double getI(int index) {
+        checkIndex(index);
+        return kI[index];
+    }
+
+    /**
+     * Get the proportional gain of a PID
+     *
+     * @param index
+     *            index of the PID
+     * @return kP
+     */
+    public double getP(int index) {
+        checkIndex(index);
+        return kP[index];
+    }
+
+    /**
+     * Get the setpoint of a PID
+     *
+     * @param index
+     *            index of the PID
+     * @return setpoint
+     */
+    public double getSetpoint(int index) {
+        checkIndex(index);
+        return setpoint[index];
+    }
+
+    /**
+     * Get the number of PIDs in the bank
+     *
+     * @return number of PIDs
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Indicates whether a PID is enabled
+     *
+     * @param index
+     *            index of the PID
+     * @return {@code true} if enabled, {@code false} otherwise
+     */
+    public boolean isEnabled(int index) {
+        checkIndex(index);
+        return enabled[index];
+    }
+
+    /**
+     * Set the time source used to measure the period between calls to
+     * {@link #calculate()}.
+     * <p>
+     * By default the {@link TSystemClock} is used. A {@link TFakeClock} can be used
+     * to test the bank off the robot.
+     *
+     * @param clock
+     *            the time source
+     */
+    public void setClock(TClock clock) {
+        deltaTimer.setClock(clock);
+    }
+
+    /**
+     * Set the feed forward model of a PID
+     *
+     * @param index
+     *            index of the PID
+     * @param kS
+     *            static friction output (0 <= kS < 1.0). Negative values are set
+     *            to 0.
+     * @param kV
+     *            output per unit of normalized speed
+     * @param kA
+     *            output per unit of normalized acceleration. Negative values are
+     *            set to 0.
+     */
+    public void setFeedForward(int index, double kS, double kV, double kA) {
+        checkIndex(index);
+        this.kS[index] = Math.max(0, kS);
+        this.kV[index] = kV;
+        this.kA[index] = Math.max(0, kA);
+    }
+
+    /**
+     * Set the gains of a PID
+     *
+     * @param index
+     *            index of the PID
+     * @param kP
+     *            proportional gain
+     * @param kI
+     *            integral gain
+     */
+    public void setGains(int index, double kP, double kI) {
+        checkIndex(index);
+        this.kP[index] = kP;
+        this.kI[index] = kI;
+    }
+
+    /**
+     * Set the measurement of a PID used by the next {@link #calculate()}
+     *
+     * @param index
+     *            index of the PID
+     * @param normalizedRate
+     *            the rate scaled for use as feedback for the PID (rawRate /
+     *            maxRate)
+     */
+    public void setMeasurement(int index, double normalizedRate) {
+        checkIndex(index);
+        measurement[index] = normalizedRate;
+    }
+
+    /**
+     * Set the setpoint of a PID.
+     * <p>
+     * The setpoint must be between -1.0 and 1.0 (full range for a speed
+     * controller).
+     *
+     * @param index
+     *            index of the PID
+     * @param setpoint
+     *            normalized speed setpoint
+     */
+    public void setSetpoint(int index, double setpoint) {
+        checkIndex(index);
+
+        if (setpoint > 1.0) {
+            TLogger.getInstance().log(this,
+                    "Cannot set TPidBank setpoint > 1.0.  Attempted to set value to {}"
+                            + ". Overriding to 1.0", setpoint);
+            setpoint = 1.0;
+        }
+
+        if (setpoint < -1.0) {
+            TLogger.getInstance().log(this,
+                    "Cannot set TPidBank setpoint < -1.0.  Attempted to set value to {}"
+                            + ". Overriding to -1.0", setpoint);
+            setpoint = -1.0;
+        }
+
+        this.setpoint[index] = setpoint;
+    }
+
+    /**
+     * Set the acceleration of the setpoint of a PID used by the acceleration feed
+     * forward
+     *
+     * @param index
+     *            index of the PID
+     * @param setpointAcceleration
+     *            in normalized speed / second
+     */
+    public void setSetpointAcceleration(int index, double setpointAcceleration) {
+        checkIndex(index);
+        this.setpointAcceleration[index] = setpointAcceleration;
+    }
+}
@@ -0,0 +1,363 @@
+package com.torontocodingcollective.pid;
+
+import com.torontocodingcollective.clock.TClock;
+import com.torontocodingcollective.clock.TDeltaTimer;
+import com.torontocodingcollective.clock.TFakeClock;
+import com.torontocodingcollective.clock.TSystemClock;
+
+/**
+ * TPidCore holds the gains, setpoint and enabled state shared by the TorontoJar
+ * PID controllers.
+ * <p>
+ * The gains, setpoint and enabled state are plain volatile fields, so they can
+ * be set from the robot loop or the SmartDashboard and read by the control
+ * thread without locking. The running state of a PID (integral total,
+ * derivative and output) is only changed by the thread that calls the
+ * calculate routine of the PID.
+ * <p>
+ * The derivative term is calculated on the change in the measurement (not the
+ * error), so a change in the setpoint does not cause a step in the output. The
+ * derivative is in units of measurement change per nominal 20ms robot loop, the
+ * same units used by the integral, and can be smoothed with a low pass filter
+ * (see {@link #setDerivativeFilter(double)}).
+ * <p>
+ * The PID does not communicate with the SmartDashboard. Use a
+ * {@link TPidDashboard} to display and tune the PID on the SmartDashboard.
+ */
+public abstract class TPidCore {
+
+    private volatile double   kP;
+    private volatile double   kI;
+    private volatile double   kD;
+
+    private volatile double   setpoint;
+    private volatile boolean  enabled                = false;
+
+    // Gain scales set by a gain schedule
+    private volatile double   kPScale                = 1.0;
+    private volatile double   kIScale                = 1.0;
+
+    // Derivative low pass filter time constant
+    private volatile double   derivativeFilterSec    = 0;
+
+    private double            previousMeasurement;
+    private boolean           hasPreviousMeasurement = false;
+    private double            derivative;
+
+    private final TDeltaTimer deltaTimer             = new TDeltaTimer();
+
+    /**
+     * Construct a PID core
+     *
+     * @param kP
+     *            proportional gain
+     * @param kI
+     *            integral gain
+     * @param kD
+     *            derivative gain
+     */
+    protected TPidCore(double kP, double kI, double kD) {
+        this.kP = kP;
+        this.kI = kI;
+        this.kD = kD;
+    }
+
+    /**
+     * Disable the PID.
+     * <p>
+     * The PID is reset and the period measurement is restarted.
+     */
+    public void disable() {
+        enabled = false;
+        reset();
+        deltaTimer.reset();
+    }
+
+    /**
+     * Enable the PID.
+     */
+    public void enable() {
+        enabled = true;
+    }
+
+    /**
+     * Get the output of the last calculation
+     *
+     * @return PID output
+     */
+    public abstract double get();
+
+    /**
+     * Get the derivative gain
+     *
+     * @return kD
+     */
+    public double getD() {
+        return kD;
+    }
+
+    /**
+     * Get the derivative filter time constant
+     *
+     * @return time constant in seconds
+     */
+    public double getDerivativeFilter() {
+        return derivativeFilterSec;
+    }
+
+    /**
+     * Get the integral gain
+     *
+     * @return kI
+     */
+    public double getI() {
+        return kI;
+    }
+
+    /**
+     * Get the period between the last two calculations of this PID.
+     * <p>
+     * This period can be used by derivative terms which must also be scaled by the
+     * measured period.
+     *
+     * @return period in seconds
+     */
+    public double getLastPeriod() {
+        return deltaTimer.getLastPeriod();
+    }
+
+    /**
+     * Get the proportional gain
+     *
+     * @return kP
+     */
+    public double getP() {
+        return kP;
+    }
+
+    /**
+     * Get the setpoint
+     *
+     * @return setpoint
+     */
+    public double getSetpoint() {
+        return setpoint;
+    }
+
+    /**
+     * Indicates whether the PID is enabled
+     *
+     * @return {@code true} if enabled, {@code false} otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reset the running state of the PID.
+     * <p>
+     * Subclasses that override this routine must call {@code super.reset()}.
+     */
+    public void reset() {
+        hasPreviousMeasurement = false;
+        derivative = 0;
+    }
+
+    /**
+     * Set the time source used to measure the period between calculations.
+     * <p>
+     * By default the {@link TSystemClock} is used. A {@link TFakeClock} can be used
+     * to test the PID off the robot.
+     *
+     * @param clock
+     *            the time source
+     */
+    public void setClock(TClock clock) {
+        deltaTimer.setClock(clock);
+    }
+
+    /**
+     * Set the derivative gain
+     *
+     * @param kD
+     *            derivative gain
+     */
+    public void setD(double kD) {
+        this.kD = kD;
+    }
+
+    /**
+     * Set the time constant of the low pass filter applied to the derivative.
+     * <p>
+     * Sensor noise is amplified by the derivative. A time constant of about 2 to
+     * 5 robot loops (0.04 - 0.1 seconds) removes most of the noise without adding
+     * much lag.
+     *
+     * @param derivativeFilterSec
+     *            filter time constant in seconds, or 0 (default) for no filter.
+     *            Negative values are set to 0.
+     */
+    public void setDerivativeFilter(double derivativeFilterSec) {
+        this.derivativeFilterSec = Math.max(0, derivativeFilterSec);
+    }
+
+    /**
+     * Enable or disable the PID
+     *
+     * @param enabled
+     *            {@code true} to enable, {@code false} to disable
+     */
+    public void setEnabled(boolean enabled) {
+        if (enabled) {
+            enable();
+        } else {
+            disable();
+        }
+    }
+
+    /**
+     * Set the scale applied to the proportional and integral gains
+     * <p>
+     * The scale is used by a {@link TGainSchedule} to adjust the gains for the
+     * gear and speed of the robot without changing the gains set on this PID
+     * (and shown on the SmartDashboard).
+     *
+     * @param kPScale
+     *            proportional gain scale (default 1.0)
+     * @param kIScale
+     *            integral gain scale (default 1.0)
+     */
+    public void setGainScale(double kPScale, double kIScale) {
+        this.kPScale = kPScale;
+        this.kIScale = kIScale;
+    }
+
+    /**
+     * Set the integral gain
+     *
+     * @param kI
+     *            integral gain
+     */
+    public void setI(double kI) {
+        this.kI = kI;
+    }
+
+    /**
+     * Set the proportional gain
+     *
+     * @param kP
+     *            proportional gain
+     */
+    public void setP(double kP) {
+        this.kP = kP;
+    }
+
+    /**
+     * Set the proportional, integral and derivative gains
+     *
+     * @param kP
+     *            proportional gain
+     * @param kI
+     *            integral gain
+     * @param kD
+     *            derivative gain
+     */
+    public void setPID(double kP, double kI, double kD) {
+        this.kP = kP;
+        this.kI = kI;
+        this.kD = kD;
+    }
+
+    /**
+     * Set the setpoint
+     *
+     * @param setpoint
+     *            the target value of the measurement
+     */
+    public void setSetpoint(double setpoint) {
+        this.setpoint = setpoint;
+    }
+
+    /**
+     * Calculate the derivative output for a new measurement.
+     * <p>
+     * This routine must be called once for each calculation so that the change in
+     * the measurement is tracked even when the derivative gain is 0. The first
+     * measurement after a reset has no derivative output.
+     *
+     * @param measurement
+     *            the PID input
+     * @param periodScale
+     *            the measured period divided by the nominal period (see
+     *            {@link #measurePeriodScale()})
+     * @return derivative output
+     */
+    protected double calculateDerivative(double measurement, double periodScale) {
+
+        if (hasPreviousMeasurement && periodScale > 0) {
+
+            // The derivative opposes the change in the measurement
+            double rawDerivative = -getMeasurementChange(measurement, previousMeasurement) / periodScale;
+
+            double filterSec = derivativeFilterSec;
+
+            if (filterSec > 0) {
+                double periodSec = periodScale * deltaTimer.getNominalPeriod();
+                derivative += (rawDerivative - derivative) * periodSec / (filterSec + periodSec);
+            } else {
+                derivative = rawDerivative;
+            }
+        }
+
+        previousMeasurement = measurement;
+        hasPreviousMeasurement = true;
+
+        return kD * derivative;
+    }
+
+    /**
+     * Get the scaled integral gain
+     *
+     * @return kI times the integral gain scale
+     */
+    protected double getScaledI() {
+        return kI * kIScale;
+    }
+
+    /**
+     * Get the scaled proportional gain
+     *
+     * @return kP times the proportional gain scale
+     */
+    protected double getScaledP() {
+        return kP * kPScale;
+    }
+
+    /**
+     * Get the change in the measurement between two calculations.
+     * <p>
+     * Override this routine for measurements that wrap (ie. angles).
+     *
+     * @param measurement
+     *            the current measurement
+     * @param previousMeasurement
+     *            the measurement at the previous calculation
+     * @return the change in the measurement
+     */
+    protected double getMeasurementChange(double measurement, double previousMeasurement) {
+        return measurement - previousMeasurement;
+    }
+
+    /**
+     * Measure the time since the last calculation.
+     * <p>
+     * The period must be measured once for each calculation, even when the
+     * integral and derivative gains are 0, so that the period is correct when the
+     * gains are changed.
+     *
+     * @return the measured period divided by the nominal 20ms robot loop period
+     */
+    protected double measurePeriodScale() {
+        return deltaTimer.getDeltaSeconds() / deltaTimer.getNominalPeriod();
+    }
+}
@@ -0,0 +1,121 @@
+package com.torontocodingcollective.pid;
+
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.wpilibj.SendableBase;
+import edu.wpi.first.wpilibj.smartdashboard.SendableBuilder;
+
+/**
+ * TPidDashboard displays a {@link TPidCore} on the SmartDashboard as a PID
+ * controller, and sets the gains, setpoint and enabled state of the PID when
+ * they are changed on the SmartDashboard.
+ * <p>
+ * The SmartDashboard updates a Sendable every robot loop. This adapter only
+ * reads the values from the PID and publishes them every few updates (the
+ * decimation), and does nothing in between, so the dashboard does not read
+ * the PID fields or write the NetworkTables entries every loop while the PID
+ * is being calculated on the control thread. Values set from the
+ * SmartDashboard are passed to the PID immediately.
+ * <p>
+ * Typical usage in a subsystem:
+ *
+ * <pre>
+ * TTelemetry.getInstance().putData("Gyro PID", new TPidDashboard(gyroPid));
+ * </pre>
+ */
+public class TPidDashboard extends SendableBase {
+
+    /** Default number of SmartDashboard updates between reads of the PID */
+    public static final int   DEFAULT_DECIMATION = 5;
+
+    private final TPidCore    pid;
+    private final int         decimation;
+
+    private int               updateCount        = 0;
+
+    private NetworkTableEntry pEntry;
+    private NetworkTableEntry iEntry;
+    private NetworkTableEntry dEntry;
+    private NetworkTableEntry setpointEntry;
+    private NetworkTableEntry enabledEntry;
+
+    /**
+     * Construct a dashboard adapter that reads the PID every
+     * {@value #DEFAULT_DECIMATION} SmartDashboard updates
+     *
+     * @param pid
+     *            the PID to display
+     */
+    public TPidDashboard(TPidCore pid) {
+        this(pid, DEFAULT_DECIMATION);
+    }
+
+    /**
+     * Construct a dashboard adapter
+     *
+     * @param pid
+     *            the PID to display
+     * @param decimation
+     *            the number of SmartDashboard updates (robot loops) between reads
+     *            of the PID values (&gt;= 1)
+     */
+    public TPidDashboard(TPidCore pid, int decimation) {
+
+        // Do not add the PID to the LiveWindow, the
+        // PID is put on the SmartDashboard by the subsystem
+        super(false);
+
+        this.pid = pid;
+        this.decimation = Math.max(1, decimation);
+    }
+
+    @Override
+    public void initSendable(SendableBuilder builder) {
+
+        builder.setSmartDashboardType("PIDController");
+        builder.setSafeState(pid::disable);
+
+        // The properties have no getters, so the builder does not
+        // publish them on every update. The values are published
+        // by update() every decimation updates.
+        builder.addDoubleProperty("p", null, pid::setP);
+        builder.addDoubleProperty("i", null, pid::setI);
+        builder.addDoubleProperty("d", null, pid::setD);
+        builder.addDoubleProperty("setpoint", null, pid::setSetpoint);
+        builder.addBooleanProperty("enabled", null, pid::setEnabled);
+
+        pEntry = builder.getEntry("p");
+        iEntry = builder.getEntry("i");
+        dEntry = builder.getEntry("d");
+        setpointEntry = builder.getEntry("setpoint");
+        enabledEntry = builder.getEntry("enabled");
+
+        builder.setUpdateTable(this::update);
+
+        publish();
+    }
+
+    /**
+     * Read the current values from the PID and publish them
+     */
+    private void publish() {
+        pEntry.setDouble(pid.getP());
+        iEntry.setDouble(pid.getI());
+        dEntry.setDouble(pid.getD());
+        setpointEntry.setDouble(pid.getSetpoint());
+        enabledEntry.setBoolean(pid.isEnabled());
+    }
+
+    /**
+     * Called by the SmartDashboard every update, publishes the PID every
+     * decimation updates
+     */
+    private void update() {
+
+        updateCount++;
+
+        if (updateCount >= decimation) {
+            updateCount = 0;
+            publish();
+        }
+    }
+}
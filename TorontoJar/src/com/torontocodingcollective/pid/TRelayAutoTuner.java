@@ -0,0 +1,205 @@
+package com.torontocodingcollective.pid;
+
+/**
+ * TRelayAutoTuner measures the ultimate gain and period of a control loop with
+ * a relay feedback test.
+ * <p>
+ * Instead of a PID, the loop is driven by a relay that switches the output
+ * between +relayOutput and -relayOutput each time the error crosses zero. The
+ * loop settles into an oscillation, and the amplitude and period of the
+ * oscillation give the gain at which a proportional controller would oscillate
+ * (the ultimate gain Ku) and the period of the oscillation (the ultimate period
+ * Tu). PI gains can then be calculated with a {@link TTuningRule}.
+ * <p>
+ * The relay switches with a small hysteresis so that sensor noise near zero
+ * error does not cause extra switching.
+ * <p>
+ * The tuner does not allocate memory, and can be updated from the robot loop
+ * or the control thread.
+ */
+public class TRelayAutoTuner {
+
+    /** Number of oscillations ignored while the oscillation settles */
+    public static final int SETTLE_CYCLES = 1;
+
+    private final double    relayOutput;
+    private final double    hysteresis;
+    private final int       cycles;
+
+    private double          output;
+
+    private double          lastSwitchTime;
+    private double          maxError;
+    private double          minError;
+
+    private int             cycleCount;
+    private double          periodSum;
+    private double          amplitudeSum;
+
+    /**
+     * Construct a relay auto tuner
+     * 
+     * @param relayOutput
+     *            the output applied by the relay (&gt; 0). The output should be
+     *            large enough to overcome friction and cause a clear oscillation.
+     * @param hysteresis
+     *            error band around zero in which the relay does not switch
+     *            (&gt;= 0). This should be larger than the sensor noise.
+     * @param cycles
+     *            number of oscillations to measure after the oscillation
+     *            settles
+     */
+    public TRelayAutoTuner(double relayOutput, double hysteresis, int cycles) {
+        this.relayOutput = Math.abs(relayOutput);
+        this.hysteresis = Math.abs(hysteresis);
+        this.cycles = Math.max(1, cycles);
+        reset();
+    }
+
+    /**
+     * Get the average amplitude of the measured oscillations
+     * 
+     * @return amplitude in the units of the error, or 0 if no oscillations were
+     *         measured
+     */
+    public double getAmplitude() {
+
+        int measured = getMeasuredCycles();
+
+        if (measured == 0) {
+            return 0;
+        }
+
+        return amplitudeSum / measured;
+    }
+
+    /**
+     * Get the number of oscillations measured after the oscillation settled
+     * 
+     * @return measured oscillations
+     */
+    public int getMeasuredCycles() {
+        return Math.max(0, cycleCount - SETTLE_CYCLES);
+    }
+
+    /**
+     * Get the ultimate gain
+     * <p>
+     * The ultimate gain is calculated from the describing function of a relay
+     * with hysteresis: Ku = 4d / (&pi; sqrt(a<sup>2</sup> - h<sup>2</sup>)).
+     * 
+     * @return ultimate gain in output units per unit of error, or 0 if no
+     *         oscillations were measured
+     */
+    public double getUltimateGain() {
+
+        double amplitude = getAmplitude();
+
+        if (amplitude <= 0) {
+            return 0;
+        }
+
+        double effectiveAmplitude = amplitude;
+
+        if (amplitude > hysteresis) {
+            effectiveAmplitude = Math.sqrt(amplitude * amplitude - hysteresis * hysteresis);
+        }
+
+        return 4.0 * relayOutput / (Math.PI * effectiveAmplitude);
+    }
+
+    /**
+     * Get the ultimate period
+     * 
+     * @return average period of the measured oscillations in seconds, or 0 if no
+     *         oscillations were measured
+     */
+    public double getUltimatePeriod() {
+
+        int measured = getMeasuredCycles();
+
+        if (measured == 0) {
+            return 0;
+        }
+
+        return periodSum / measured;
+    }
+
+    /**
+     * Indicates whether all of the oscillations have been measured
+     * 
+     * @return {@code true} if the test is complete, {@code false} otherwise
+     */
+    public boolean isComplete() {
+        return getMeasuredCycles() >= cycles;
+    }
+
+    /**
+     * Clear all measurements to start a new test
+     */
+    public void reset() {
+
+        output = 0;
+
+        lastSwitchTime = Double.NaN;
+        maxError = -Double.MAX_VALUE;
+        minError = Double.MAX_VALUE;
+
+        cycleCount = 0;
+        periodSum = 0;
+        amplitudeSum = 0;
+    }
+
+    /**
+     * Update the relay with the current error
+     * 
+     * @param timeSec
+     *            time of the error measurement in seconds
+     * @param error
+     *            setpoint - measurement
+     * @return relay output to apply
+     */
+    public double update(double timeSec, double error) {
+
+        if (error > maxError) {
+            maxError = error;
+        }
+
+        if (error < minError) {
+            minError = error;
+        }
+
+        // Start in the direction of the error
+        if (output == 0) {
+            output = error < 0 ? -relayOutput : relayOutput;
+            return output;
+        }
+
+        if (output > 0 && error < -hysteresis) {
+            output = -relayOutput;
+            return output;
+        }
+
+        if (output < 0 && error > hysteresis) {
+
+            output = relayOutput;
+
+            // Each switch to a positive output completes one oscillation
+            if (!Double.isNaN(lastSwitchTime) && !isComplete()) {
+
+                cycleCount++;
+
+                if (cycleCount > SETTLE_CYCLES) {
+                    periodSum += timeSec - lastSwitchTime;
+                    amplitudeSum += (maxError - minError) / 2.0;
+                }
+            }
+
+            lastSwitchTime = timeSec;
+            maxError = error;
+            minError = error;
+        }
+
+        return output;
+    }
+}
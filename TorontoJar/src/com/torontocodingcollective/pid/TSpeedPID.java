@@ -1,37 +1,83 @@
 package com.torontocodingcollective.pid;
 
-import edu.wpi.first.wpilibj.PIDController;
+import com.torontocodingcollective.log.TLogger;
 
 /**
  * Class implements a Proportional (PID) Control Loop for motor speed control.
  * <p>
- * The PID controller calculate routine must be called at a consistent rate
- * (every control loop) when the PID is enabled.
+ * The PID controller calculate routine must be called every control loop when
+ * the PID is enabled.
  * <p>
- * This PID controller uses the Smartdashboard communications features of the
- * wpiLib PID controller, but does not use its control loop functionality.
+ * The feed forward output is calculated from a characterized model of the
+ * drive:
+ * <p>
+ * {@code output = kS * sign(setpoint) + kV * setpoint + kA * acceleration}
+ * <p>
+ * where kS is the output required to overcome static friction, kV is the output
+ * per unit of normalized speed and kA is the output per unit of normalized
+ * acceleration (normalized speed / second). With an accurate model, most of the
+ * output comes from the feed forward and the PID only corrects small errors. The
+ * default model (kS = 0, kV = 1.0, kA = 0) uses the setpoint as the feed
+ * forward.
+ * <p>
+ * Each integral step is weighted by the time since the previous calculation
+ * divided by the 20ms robot loop period, so the integral gain behaves the same
+ * on a faster control thread or when the robot loop runs late.
+ * <p>
+ * A derivative gain is not normally required for speed control, but can be set
+ * with {@link #setD(double)}.
+ * <p>
+ * This PID does not lock on any calls, and can be displayed on the
+ * SmartDashboard with a {@link TPidDashboard}.
  */
-public class TSpeedPID extends PIDController {
+public class TSpeedPID extends TPidCore {
+
+    private double            output;
+    private double            totalError;
+
+    // Feed forward model
+    private volatile double   kS                   = 0;
+    private volatile double   kV                   = 1.0;
+    private volatile double   kA                   = 0;
 
-    private double output;
-    private double totalError;
+    private volatile double   setpointAcceleration = 0;
 
     public TSpeedPID(double kP) {
-        super(kP, 0.0d, 0.0d, 1.0d, new NullPIDSource(), new NullPIDOutput());
+        super(kP, 0.0d, 0.0d);
         this.totalError = 0;
     }
 
     public TSpeedPID(double kP, double kI) {
-        super(kP, kI, 0.0d, 1.0d, new NullPIDSource(), new NullPIDOutput());
+        super(kP, kI, 0.0d);
         this.totalError = 0;
     }
 
+    /**
+     * Construct a speed PID with a feed forward model
+     * 
+     * @param kP
+     *            proportional gain
+     * @param kI
+     *            integral gain
+     * @param kS
+     *            static friction output (0 <= kS < 1.0)
+     * @param kV
+     *            output per unit of normalized speed
+     * @param kA
+     *            output per unit of normalized acceleration
+     */
+    public TSpeedPID(double kP, double kI, double kS, double kV, double kA) {
+        this(kP, kI);
+        setFeedForward(kS, kV, kA);
+    }
+
     /**
      * Calculate the PID output.
      * <p>
-     * In order to generate proper PID behaviour, this routine must be called at a
-     * consistent periodic rate. Calling this routine anywhere in the main robot
-     * periodic loops is sufficient.
+     * In order to generate proper PID behaviour, this routine must be called
+     * periodically. Calling this routine anywhere in the main robot periodic loops
+     * is sufficient. The integral is scaled by the time measured since the last
+     * call.
      * <p>
      * NOTE: If the PID is disabled, this routine returns 0.
      * 
@@ -57,22 +103,25 @@ public class TSpeedPID extends PIDController {
         }
 
         // Calculate the error
-        double error = super.getSetpoint() - normalizedRate;
+        double error = getSetpoint() - normalizedRate;
+
+        // Always measure the period so that the period is
+        // correct when the integral gain is changed
+        double periodScale = measurePeriodScale();
 
-        // Get proportional output
-        double proportionalOutput = getP() * error;
+        // Get proportional and derivative output
+        double proportionalOutput = getScaledP() * error
+                + calculateDerivative(normalizedRate, periodScale);
 
-        // Calculate the total output for the proportional
-        // and feed forward terms. In a speed controller
-        // the feed forward term is always 1.0 (the speed
-        // setpoint is used as the feed forward term).
+        // Calculate the total output for the proportional,
+        // derivative and feed forward terms.
 
         // Use a temporary totalOutput variable for
         // all calculations. Limit the totalOutput
         // and assign the value to the output variable at the
         // end in order to prevent reads of intermediary
         // output results.
-        double totalOutput = super.getSetpoint() + proportionalOutput;
+        double totalOutput = getFeedForward() + proportionalOutput;
 
         // The output cannot drive more than 1.0
         if (totalOutput > 1.0) {
@@ -89,11 +138,13 @@ public class TSpeedPID extends PIDController {
         // and "wind-up". In order to avoid "wind-up",
         // do not allow the integral error total to exceed
         // the total required to saturate the output (-1.0 or 1.0).
-        double kI = super.getI();
+        double kI = getScaledI();
 
         if (kI != 0) {
 
-            totalError += error;
+            // Scale the error by the measured period relative to
+            // the nominal loop period
+            totalError += error * periodScale;
 
             double integralOutput = totalError * kI;
 
@@ -120,10 +171,92 @@ public class TSpeedPID extends PIDController {
     @Override
     public void disable() {
         super.disable();
+        setpointAcceleration = 0;
+    }
+
+    /**
+     * Get the feed forward output for the current setpoint and setpoint
+     * acceleration
+     * 
+     * @return feed forward output
+     */
+    public double getFeedForward() {
+
+        double setpoint = getSetpoint();
+
+        return kS * Math.signum(setpoint) + kV * setpoint + kA * setpointAcceleration;
+    }
+
+    /**
+     * Get the static friction feed forward
+     * 
+     * @return kS
+     */
+    public double getKS() {
+        return kS;
+    }
+
+    /**
+     * Get the velocity feed forward
+     * 
+     * @return kV
+     */
+    public double getKV() {
+        return kV;
+    }
+
+    /**
+     * Get the acceleration feed forward
+     * 
+     * @return kA
+     */
+    public double getKA() {
+        return kA;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
         totalError = 0;
         output = 0;
     }
 
+    /**
+     * Set the feed forward model.
+     * <p>
+     * The model can be characterized by driving the robot at a range of constant
+     * outputs and accelerations and fitting the measured normalized speeds.
+     * 
+     * @param kS
+     *            static friction output (0 <= kS < 1.0). Negative values are set
+     *            to 0.
+     * @param kV
+     *            output per unit of normalized speed. If the max encoder speed is
+     *            the speed at full output, kV is 1.0 - kS.
+     * @param kA
+     *            output per unit of normalized acceleration (normalized speed /
+     *            second). Negative values are set to 0.
+     */
+    public void setFeedForward(double kS, double kV, double kA) {
+        this.kS = Math.max(0, kS);
+        this.kV = kV;
+        this.kA = Math.max(0, kA);
+    }
+
+    /**
+     * Set the acceleration of the setpoint used by the acceleration feed
+     * forward.
+     * <p>
+     * The acceleration is not cleared when the setpoint changes. Commands that
+     * do not follow a profile should leave the acceleration at 0.
+     * 
+     * @param setpointAcceleration
+     *            in normalized speed / second
+     */
+    public void setSetpointAcceleration(double setpointAcceleration) {
+        this.setpointAcceleration = setpointAcceleration;
+    }
+
     /**
      * Set the setpoint for the TSpeedPID.
      * <p>
@@ -135,16 +268,16 @@ public class TSpeedPID extends PIDController {
     @Override
     public void setSetpoint(double setpoint) {
         if (setpoint > 1.0) {
-            System.out.println(
-                    "Cannot set TSpeedPID setpoint > 1.0.  Attempted to set value to " + setpoint
-                            + ". Overriding to 1.0");
+            TLogger.getInstance().log(this,
+                    "Cannot set TSpeedPID setpoint > 1.0.  Attempted to set value to {}"
+                            + ". Overriding to 1.0", setpoint);
             setpoint = 1.0;
         }
 
         if (setpoint < -1.0) {
-            System.out.println(
-                    "Cannot set TSpeedPID setpoint < -1.0.  Attempted to set value to " + setpoint
-                            + ". Overriding to -1.0");
+            TLogger.getInstance().log(this,
+                    "Cannot set TSpeedPID setpoint < -1.0.  Attempted to set value to {}"
+                            + ". Overriding to -1.0", setpoint);
             setpoint = -1.0;
         }
         super.setSetpoint(setpoint);
@@ -0,0 +1,56 @@
+package com.torontocodingcollective.pid;
+
+/**
+ * Tuning rules used to calculate PI gains from the ultimate gain and period
+ * measured by a {@link TRelayAutoTuner}.
+ * <p>
+ * The Ziegler-Nichols rule gives a fast response with some overshoot. The
+ * Tyreus-Luyben rule is more conservative, with less overshoot and better
+ * stability margins, and is usually a better starting point for a drive
+ * subsystem.
+ */
+public enum TTuningRule {
+
+    /** Kp = 0.45 Ku, Ti = Tu / 1.2 */
+    ZIEGLER_NICHOLS (0.45,      1 / 1.2),
+
+    /** Kp = Ku / 3.2, Ti = 2.2 Tu */
+    TYREUS_LUYBEN   (1 / 3.2,   2.2);
+
+    private final double kpFactor;
+    private final double tiFactor;
+
+    TTuningRule(double kpFactor, double tiFactor) {
+        this.kpFactor = kpFactor;
+        this.tiFactor = tiFactor;
+    }
+
+    /**
+     * Get the proportional gain
+     * 
+     * @param ultimateGain
+     *            the gain at which the loop oscillates
+     * @return proportional gain
+     */
+    public double getKP(double ultimateGain) {
+        return kpFactor * ultimateGain;
+    }
+
+    /**
+     * Get the integral gain
+     * 
+     * @param ultimateGain
+     *            the gain at which the loop oscillates
+     * @param ultimatePeriod
+     *            the period of the oscillation in seconds
+     * @return integral gain per second of accumulated error (Kp / Ti)
+     */
+    public double getKI(double ultimateGain, double ultimatePeriod) {
+
+        if (ultimatePeriod <= 0) {
+            return 0;
+        }
+
+        return getKP(ultimateGain) / (tiFactor * ultimatePeriod);
+    }
+}
@@ -0,0 +1,275 @@
+package com.torontocodingcollective.profiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * TLoopProfiler measures where the time goes in each robot loop.
+ * <p>
+ * The profiler owns a {@link TLoopTimer} for the whole loop and for the period
+ * between loops, plus any number of section timers added with
+ * {@link #addTimer(String)}. All timers must be added when the robot is
+ * initialized; timing the loop does not allocate memory.
+ * <p>
+ * The profiler publishes the median (p50), 99th percentile (p99) and maximum
+ * time of every timer to the SmartDashboard once every
+ * {@link #setPublishDecimation(int) publishDecimation} loops. The published
+ * maximum is cleared after each publish, so that it describes only the loops
+ * since the last publish. A 99th percentile of 50 loops is always the maximum,
+ * so the percentiles are calculated over a longer rolling window of the last
+ * {@link #setPercentileWindow(int) percentileWindow} to twice that many loops.
+ * <p>
+ * Typical usage in each periodic routine of the Robot class:
+ *
+ * <pre>
+ * loopProfiler.startLoop();
+ *
+ * oiTimer.start();
+ * oi.updatePeriodic();
+ * oiTimer.stop();
+ *
+ * ...
+ *
+ * loopProfiler.endLoop();
+ * </pre>
+ */
+public class TLoopProfiler {
+
+    /** The expected period of the robot loop */
+    public static final double    DEFAULT_LOOP_PERIOD_SEC     = 0.02;
+
+    /** By default, publish once per second when running at 50Hz */
+    public static final int       DEFAULT_PUBLISH_DECIMATION  = 50;
+
+    /** By default, roll the percentile window every 10 seconds at 50Hz */
+    public static final int       DEFAULT_PERCENTILE_WINDOW   = 500;
+
+    private static final double   NANOS_PER_MS                = 1000000.0;
+
+    private final List<TLoopTimer> timerLs                    = new ArrayList<TLoopTimer>();
+
+    // Preallocated dashboard keys for each timer (p50, p99, max)
+    private final List<String[]>  keyLs                       = new ArrayList<String[]>();
+
+    private final TLoopTimer      loopTimer;
+    private final TLoopTimer      periodTimer;
+
+    private final long            loopPeriodNanos;
+
+    private boolean               enabled                     = true;
+    private int                   publishDecimation           = DEFAULT_PUBLISH_DECIMATION;
+    private int                   loopCount                   = 0;
+
+    private int                   percentileWindow            = DEFAULT_PERCENTILE_WINDOW;
+    private int                   windowLoopCount             = 0;
+
+    private long                  lastLoopStartNanos          = 0;
+    private int                   overrunCount                = 0;
+    private int                   totalOverrunCount           = 0;
+
+    /**
+     * Construct a loop profiler for a robot running at the default loop period
+     * {@value #DEFAULT_LOOP_PERIOD_SEC} seconds.
+     */
+    public TLoopProfiler() {
+        this(DEFAULT_LOOP_PERIOD_SEC);
+    }
+
+    /**
+     * Construct a loop profiler
+     *
+     * @param loopPeriodSec
+     *            the expected loop period. Loops that take longer than this
+     *            period are counted as overruns.
+     */
+    public TLoopProfiler(double loopPeriodSec) {
+
+        this.loopPeriodNanos = (long) (loopPeriodSec * 1000000000L);
+
+        loopTimer = addTimer("Loop");
+        periodTimer = addTimer("Loop Period");
+    }
+
+    /**
+     * Add a timer for a section of the loop.
+     * <p>
+     * NOTE: Timers should only be added during robot initialization.
+     *
+     * @param name
+     *            used as the prefix of the SmartDashboard keys for this timer
+     * @return TLoopTimer that should be started and stopped around the section
+     *         of the loop
+     */
+    public TLoopTimer addTimer(String name) {
+
+        TLoopTimer timer = new TLoopTimer(name);
+
+        timerLs.add(timer);
+        keyLs.add(new String[] { name + " p50 ms", name + " p99 ms", name + " max ms" });
+
+        return timer;
+    }
+
+    /**
+     * Get the number of loops that overran the loop period since the robot
+     * started
+     *
+     * @return total overrun count
+     */
+    public int getTotalOverrunCount() {
+        return totalOverrunCount;
+    }
+
+    /**
+     * Indicates whether the profiler is enabled
+     *
+     * @return {@code true} if enabled, {@code false} otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable or disable the profiler.
+     * <p>
+     * When disabled, the loop is not timed and nothing is published. Section
+     * timers that are started and stopped by the robot code continue to record,
+     * but are cleared when the profiler is enabled again.
+     *
+     * @param enabled
+     *            {@code true} to enable, {@code false} to disable
+     */
+    public void setEnabled(boolean enabled) {
+
+        if (enabled && !this.enabled) {
+            resetTimers();
+            lastLoopStartNanos = 0;
+        }
+
+        this.enabled = enabled;
+    }
+
+    /**
+     * Set the number of loops between each roll of the percentile window.
+     * <p>
+     * The published percentiles are calculated over the last percentileWindow to
+     * (2 * percentileWindow) loops. The window should be much longer than the
+     * publish decimation, so that the 99th percentile is not the maximum.
+     *
+     * @param percentileWindow
+     *            number of loops. Values less than 1 are set to 1.
+     */
+    public void setPercentileWindow(int percentileWindow) {
+        this.percentileWindow = Math.max(1, percentileWindow);
+    }
+
+    /**
+     * Set the number of loops between each publish of the timer summary
+     *
+     * @param publishDecimation
+     *            number of loops. Values less than 1 are set to 1.
+     */
+    public void setPublishDecimation(int publishDecimation) {
+        this.publishDecimation = Math.max(1, publishDecimation);
+    }
+
+    /**
+     * Mark the start of a robot loop.
+     * <p>
+     * This routine should be the first call in each periodic routine.
+     */
+    public void startLoop() {
+
+        if (!enabled) {
+            return;
+        }
+
+        long now = System.nanoTime();
+
+        if (lastLoopStartNanos != 0) {
+            periodTimer.record(now - lastLoopStartNanos);
+        }
+        lastLoopStartNanos = now;
+
+        loopTimer.start();
+    }
+
+    /**
+     * Mark the end of a robot loop.
+     * <p>
+     * This routine should be the last call in each periodic routine. The timer
+     * summary is published every {@link #setPublishDecimation(int)
+     * publishDecimation} loops.
+     */
+    public void endLoop() {
+
+        if (!enabled) {
+            return;
+        }
+
+        if (loopTimer.stop() > loopPeriodNanos) {
+            overrunCount++;
+            totalOverrunCount++;
+        }
+
+        loopCount++;
+        windowLoopCount++;
+
+        if (loopCount >= publishDecimation) {
+            publish();
+            resetMax();
+        }
+
+        if (windowLoopCount >= percentileWindow) {
+            rollWindow();
+        }
+    }
+
+    private void publish() {
+
+        for (int i = 0; i < timerLs.size(); i++) {
+
+            TLoopTimer timer = timerLs.get(i);
+            String[] keys = keyLs.get(i);
+
+            SmartDashboard.putNumber(keys[0], timer.getPercentileNanos(50) / NANOS_PER_MS);
+            SmartDashboard.putNumber(keys[1], timer.getPercentileNanos(99) / NANOS_PER_MS);
+            SmartDashboard.putNumber(keys[2], timer.getMaxNanos() / NANOS_PER_MS);
+        }
+
+        SmartDashboard.putNumber("Loop Overruns", overrunCount);
+        SmartDashboard.putNumber("Loop Total Overruns", totalOverrunCount);
+    }
+
+    private void resetMax() {
+
+        for (int i = 0; i < timerLs.size(); i++) {
+            timerLs.get(i).resetMax();
+        }
+
+        loopCount = 0;
+        overrunCount = 0;
+    }
+
+    private void resetTimers() {
+
+        for (int i = 0; i < timerLs.size(); i++) {
+            timerLs.get(i).reset();
+        }
+
+        loopCount = 0;
+        windowLoopCount = 0;
+        overrunCount = 0;
+    }
+
+    private void rollWindow() {
+
+        for (int i = 0; i < timerLs.size(); i++) {
+            timerLs.get(i).rollWindow();
+        }
+
+        windowLoopCount = 0;
+    }
+}
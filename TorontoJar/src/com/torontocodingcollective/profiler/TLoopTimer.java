@@ -0,0 +1,300 @@
+package com.torontocodingcollective.profiler;
+
+/**
+ * TLoopTimer records the execution time of one section of the robot loop.
+ * <p>
+ * Durations are recorded in nanoseconds into a histogram that is allocated
+ * when the timer is constructed. Recording a duration never allocates memory
+ * and never takes a lock, so a timer can be left in the control loop for a
+ * whole match without adding jitter.
+ * <p>
+ * The histogram uses log-linear buckets: each power of two range is split into
+ * {@value #SUB_BUCKET_COUNT} linear buckets, giving a resolution of about 6% of
+ * the measured value from 1 nanosecond to several seconds.
+ * <p>
+ * The percentiles are calculated over a rolling window made of the current and
+ * previous histograms. Calling {@link #rollWindow()} drops the previous
+ * histogram and starts a new current histogram, so that a tail percentile is
+ * calculated from enough samples to differ from the maximum. The maximum is
+ * tracked separately, and can be cleared with {@link #resetMax()} more often
+ * than the window is rolled.
+ * <p>
+ * The timer is not thread safe. A timer should only be started and stopped from
+ * a single thread (normally the main robot loop).
+ */
+public class TLoopTimer {
+
+    private static final int  SUB_BUCKET_BITS  = 4;
+    private static final int  SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** Values above 2^34 ns (~17 seconds) are recorded in the last bucket */
+    private static final int  MAX_VALUE_BITS   = 34;
+    private static final int  BUCKET_COUNT     = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final String      name;
+
+    // Current and previous histograms of the rolling window
+    private int[]             buckets          = new int[BUCKET_COUNT];
+    private int[]             previousBuckets  = new int[BUCKET_COUNT];
+
+    private long              startNanos       = 0;
+    private boolean           started          = false;
+
+    private int               count            = 0;
+    private long              totalNanos       = 0;
+    private long              windowMaxNanos   = 0;
+
+    private int               previousCount    = 0;
+    private long              previousTotal    = 0;
+    private long              previousMaxNanos = 0;
+
+    private long              maxNanos         = 0;
+
+    /**
+     * Construct a loop timer
+     *
+     * @param name
+     *            used to identify this timer when the results are published
+     */
+    public TLoopTimer(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the name of this timer
+     *
+     * @return name of this timer
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Start timing a section of the loop.
+     * <p>
+     * The section ends on the next call to {@link #stop()}.
+     */
+    public void start() {
+        startNanos = System.nanoTime();
+        started = true;
+    }
+
+    /**
+     * Stop timing the section started with {@link #start()} and record the
+     * duration.
+     * <p>
+     * NOTE: If the timer was not started, this routine has no effect.
+     *
+     * @return the duration of the section in nanoseconds, or 0 if the timer was
+     *         not started
+     */
+    public long stop() {
+
+        if (!started) {
+            return 0;
+        }
+
+        long durationNanos = System.nanoTime() - startNanos;
+        started = false;
+
+        record(durationNanos);
+
+        return durationNanos;
+    }
+
+    /**
+     * Record a duration measured outside of this timer.
+     *
+     * @param durationNanos
+     *            duration in nanoseconds. Negative values are recorded as 0.
+     */
+    public void record(long durationNanos) {
+
+        if (durationNanos < 0) {
+            durationNanos = 0;
+        }
+
+        buckets[getBucketIndex(durationNanos)]++;
+
+        count++;
+        totalNanos += durationNanos;
+
+        if (durationNanos > windowMaxNanos) {
+            windowMaxNanos = durationNanos;
+        }
+
+        if (durationNanos > maxNanos) {
+            maxNanos = durationNanos;
+        }
+    }
+
+    /**
+     * Clear all recorded durations
+     */
+    public void reset() {
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = 0;
+            previousBuckets[i] = 0;
+        }
+
+        count = 0;
+        totalNanos = 0;
+        windowMaxNanos = 0;
+
+        previousCount = 0;
+        previousTotal = 0;
+        previousMaxNanos = 0;
+
+        maxNanos = 0;
+    }
+
+    /**
+     * Clear the maximum duration.
+     * <p>
+     * The durations in the percentile window are not cleared.
+     */
+    public void resetMax() {
+        maxNanos = 0;
+    }
+
+    /**
+     * Roll the percentile window.
+     * <p>
+     * The previous histogram is dropped, and the current histogram becomes the
+     * previous histogram. The maximum is not cleared.
+     */
+    public void rollWindow() {
+
+        int[] oldBuckets = previousBuckets;
+
+        previousBuckets = buckets;
+        previousCount = count;
+        previousTotal = totalNanos;
+        previousMaxNanos = windowMaxNanos;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            oldBuckets[i] = 0;
+        }
+
+        buckets = oldBuckets;
+        count = 0;
+        totalNanos = 0;
+        windowMaxNanos = 0;
+    }
+
+    /**
+     * Get the number of durations in the percentile window
+     *
+     * @return count of recorded durations
+     */
+    public int getCount() {
+        return previousCount + count;
+    }
+
+    /**
+     * Get the maximum duration recorded since the last {@link #reset()} or
+     * {@link #resetMax()}
+     *
+     * @return maximum duration in nanoseconds (exact, not bucketed)
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Get the mean duration in the percentile window
+     *
+     * @return mean duration in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getMeanNanos() {
+
+        int windowCount = previousCount + count;
+
+        if (windowCount == 0) {
+            return 0;
+        }
+
+        return (previousTotal + totalNanos) / windowCount;
+    }
+
+    /**
+     * Get the duration at the given percentile of the percentile window.
+     * <p>
+     * The returned value is the midpoint of the histogram bucket that contains
+     * the percentile, and is never larger than the maximum in the window.
+     *
+     * @param percentile
+     *            in the range 0 to 100 (ie. 50 for the median, 99 for the 99th
+     *            percentile)
+     * @return duration in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+
+        int windowCount = previousCount + count;
+
+        if (windowCount == 0) {
+            return 0;
+        }
+
+        long windowMax = Math.max(previousMaxNanos, windowMaxNanos);
+
+        if (percentile >= 100) {
+            return windowMax;
+        }
+
+        // The rank of the percentile value (1 based)
+        long rank = (long) Math.ceil(Math.max(percentile, 0) / 100.0 * windowCount);
+        if (rank < 1) {
+            rank = 1;
+        }
+
+        long runningCount = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+
+            runningCount += previousBuckets[i] + buckets[i];
+
+            if (runningCount >= rank) {
+
+                long lowerBound = getBucketLowerBound(i);
+                long upperBound = getBucketLowerBound(i + 1);
+
+                return Math.min(windowMax, (lowerBound + upperBound) / 2);
+            }
+        }
+
+        return windowMax;
+    }
+
+    private static int getBucketIndex(long nanos) {
+
+        // Small values get their own bucket
+        if (nanos < SUB_BUCKET_COUNT) {
+            return (int) nanos;
+        }
+
+        int highestBit = 63 - Long.numberOfLeadingZeros(nanos);
+
+        if (highestBit > MAX_VALUE_BITS) {
+            return BUCKET_COUNT - 1;
+        }
+
+        int shift = highestBit - SUB_BUCKET_BITS;
+        int subBucket = (int) (nanos >>> shift) & (SUB_BUCKET_COUNT - 1);
+
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long getBucketLowerBound(int index) {
+
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        int subBucket = index % SUB_BUCKET_COUNT;
+
+        return ((long) (SUB_BUCKET_COUNT + subBucket)) << shift;
+    }
+}
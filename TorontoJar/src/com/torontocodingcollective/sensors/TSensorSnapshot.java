@@ -0,0 +1,167 @@
+package com.torontocodingcollective.sensors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.torontocodingcollective.clock.TClock;
+import com.torontocodingcollective.clock.TSystemClock;
+import com.torontocodingcollective.sensors.encoder.TEncoder;
+import com.torontocodingcollective.sensors.gyro.TGyro;
+
+/**
+ * TSensorSnapshot reads every registered sensor once at the start of each
+ * robot loop.
+ * <p>
+ * Reading a gyro or an encoder may be a CAN or SPI transaction, and reading the
+ * same sensor several times in one loop can return different values. The
+ * snapshot samples each registered {@link TGyro} and {@link TEncoder} once with
+ * a common timestamp, and the PIDs, commands and telemetry in that loop use the
+ * {@code getSnapshot} methods of the sensor to get the sampled values.
+ * <p>
+ * The snapshot must be taken with {@link #update()} as the first step of each
+ * periodic routine, and cleared with {@link #clear()} as the last step. Outside
+ * of the loop (ie. in the init routines) the {@code getSnapshot} methods read
+ * the sensors directly.
+ * <p>
+ * The drive subsystems register their sensors. Sensors used by other
+ * subsystems can be registered with {@link #add(TEncoder)} and
+ * {@link #add(TGyro)}.
+ * <p>
+ * NOTE: The snapshot is only used on the main robot loop. Code running on a
+ * {@link com.torontocodingcollective.subsystem.TControlThread} reads the
+ * sensors directly.
+ */
+public class TSensorSnapshot {
+
+    private static TSensorSnapshot instance       = null;
+
+    private final List<TGyro>      gyroLs         = new ArrayList<TGyro>();
+    private final List<TEncoder>   encoderLs      = new ArrayList<TEncoder>();
+
+    private TClock                 clock          = TSystemClock.getInstance();
+    private long                   timestampNanos = 0;
+
+    /**
+     * Get the sensor snapshot used by the framework
+     * 
+     * @return the default TSensorSnapshot
+     */
+    public static synchronized TSensorSnapshot getInstance() {
+
+        if (instance == null) {
+            instance = new TSensorSnapshot();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Register an encoder to be read at the start of each loop.
+     * <p>
+     * NOTE: Registering the same encoder more than once has no effect.
+     * 
+     * @param encoder
+     *            to register
+     */
+    public void add(TEncoder encoder) {
+        if (encoder != null && !encoderLs.contains(encoder)) {
+            encoderLs.add(encoder);
+        }
+    }
+
+    /**
+     * Register a gyro to be read at the start of each loop.
+     * <p>
+     * NOTE: Registering the same gyro more than once has no effect.
+     * 
+     * @param gyro
+     *            to register
+     */
+    public void add(TGyro gyro) {
+        if (gyro != null && !gyroLs.contains(gyro)) {
+            gyroLs.add(gyro);
+        }
+    }
+
+    /**
+     * Remove a registered gyro.
+     * <p>
+     * The snapshot of the gyro is cleared so that the gyro is read directly.
+     * 
+     * @param gyro
+     *            to remove
+     */
+    public void remove(TGyro gyro) {
+        if (gyroLs.remove(gyro)) {
+            gyro.clearSnapshot();
+        }
+    }
+
+    /**
+     * Clear the snapshot of every registered sensor.
+     * <p>
+     * This routine should be the last call in each periodic routine.
+     */
+    public void clear() {
+
+        // Use indexed loops so that no iterator is created each loop
+        for (int i = 0; i < gyroLs.size(); i++) {
+            gyroLs.get(i).clearSnapshot();
+        }
+
+        for (int i = 0; i < encoderLs.size(); i++) {
+            encoderLs.get(i).clearSnapshot();
+        }
+    }
+
+    /**
+     * Get the clock used to timestamp the snapshots
+     * <p>
+     * Values that are compared with the snapshot times should be timestamped
+     * with this clock.
+     * 
+     * @return snapshot clock
+     */
+    public TClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Get the time of the last snapshot
+     * 
+     * @return time in nanoseconds from the snapshot clock
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     * Set the clock used to timestamp the snapshots.
+     * <p>
+     * NOTE: The clock should only be changed when testing off the robot.
+     * 
+     * @param clock
+     *            the TClock to use
+     */
+    public void setClock(TClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Read every registered sensor.
+     * <p>
+     * This routine should be the first call in each periodic routine.
+     */
+    public void update() {
+
+        timestampNanos = clock.getNanos();
+
+        for (int i = 0; i < gyroLs.size(); i++) {
+            gyroLs.get(i).updateSnapshot(timestampNanos);
+        }
+
+        for (int i = 0; i < encoderLs.size(); i++) {
+            encoderLs.get(i).updateSnapshot(timestampNanos);
+        }
+    }
+}
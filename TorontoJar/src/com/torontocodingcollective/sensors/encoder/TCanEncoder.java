@@ -33,6 +33,15 @@ public class TCanEncoder extends TEncoder {
         return super.get(talonSRX.getSelectedSensorPosition(0));
     }
 
+    /**
+     * Get the TalonSRX where this encoder is attached
+     * 
+     * @return TalonSRX
+     */
+    public TalonSRX getTalonSRX() {
+        return talonSRX;
+    }
+
     @Override
     public double getRate() {
         // Convert the raw rate
@@ -1,5 +1,7 @@
 package com.torontocodingcollective.sensors.encoder;
 
+import com.torontocodingcollective.log.TLogger;
+
 import edu.wpi.first.wpilibj.Counter;
 
 /**
@@ -34,7 +36,7 @@ public class TDioCounterEncoder extends TEncoder {
     @Override
     public void setInverted(boolean isInverted) {
         if (isInverted) {
-            System.out.println("Inversion is not supported for counter encoders");
+            TLogger.getInstance().log(this, "Inversion is not supported for counter encoders");
         }
     }
 
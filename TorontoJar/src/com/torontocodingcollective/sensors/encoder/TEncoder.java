@@ -1,5 +1,7 @@
 package com.torontocodingcollective.sensors.encoder;
 
+import com.torontocodingcollective.sensors.TSensorSnapshot;
+
 /**
  * TEncoder class used as the base for all TEncoders
  * <p>
@@ -8,11 +10,33 @@ package com.torontocodingcollective.sensors.encoder;
  * <p>
  * Known implementations: {@link TCanEncoder}, {@link TDioQuadEncoder},
  * {@link TDioCounterEncoder}
+ * <p>
+ * An encoder registered with the {@link TSensorSnapshot} is read once at the
+ * start of each robot loop. The {@code getSnapshot} methods return the values
+ * read at the start of the loop so that all code in the loop uses the same
+ * consistent values without reading the device again. When there is no current
+ * snapshot, the {@code getSnapshot} methods read the device.
+ * <p>
+ * The rate read from the device can be noisy at low speeds. When a velocity
+ * estimator is enabled with {@link #enableVelocityEstimator(int)}, each
+ * snapshot adds the encoder counts to a {@link TVelocityEstimator}, and the
+ * snapshot rate and acceleration are estimated from the counts in the last few
+ * loops instead of read from the device.
  */
 public abstract class TEncoder {
 
-    boolean isInverted = false;
-    int     offset     = 0;
+    boolean            isInverted           = false;
+    volatile int       offset               = 0;
+
+    // Values read at the start of the loop by the TSensorSnapshot
+    boolean            snapshotValid        = false;
+    long               snapshotNanos        = 0;
+    int                snapshotDistance     = 0;
+    double             snapshotRate         = 0;
+    double             snapshotAcceleration = 0;
+
+    // Optional velocity estimator updated with each snapshot
+    TVelocityEstimator velocityEstimator    = null;
 
     /**
      * TEncoder default constructor
@@ -27,6 +51,36 @@ public abstract class TEncoder {
         this.isInverted = isInverted;
     }
 
+    /**
+     * Disable the velocity estimator.
+     * <p>
+     * The snapshot rate is read from the device.
+     */
+    public void disableVelocityEstimator() {
+        velocityEstimator = null;
+        snapshotAcceleration = 0;
+    }
+
+    /**
+     * Enable a velocity estimator for this encoder.
+     * <p>
+     * The snapshot rate and acceleration are estimated from the encoder counts
+     * of the last {@code windowSize} snapshots. Until there are two snapshots in
+     * the window, the snapshot rate is read from the device.
+     * <p>
+     * NOTE: Only the snapshot values are estimated. Code running on a
+     * {@link com.torontocodingcollective.subsystem.TControlThread} reads the
+     * rate from the device with {@link #getRate()}.
+     * 
+     * @param windowSize
+     *            number of snapshots (robot loops) used for each estimate (see
+     *            {@link TVelocityEstimator#TVelocityEstimator(int)})
+     */
+    public void enableVelocityEstimator(int windowSize) {
+        velocityEstimator = new TVelocityEstimator(windowSize);
+        snapshotAcceleration = 0;
+    }
+
     /**
      * Get the distance of this encoder
      * 
@@ -71,6 +125,69 @@ public abstract class TEncoder {
         return rawRate;
     }
 
+    /**
+     * Get the distance of this encoder read at the start of the loop
+     * <p>
+     * See {@link TSensorSnapshot}
+     * 
+     * @return distance in encoder counts, or the current distance if there is no
+     *         snapshot for this loop
+     */
+    public int getSnapshot() {
+        return snapshotValid ? snapshotDistance : get();
+    }
+
+    /**
+     * Get the acceleration of this encoder estimated at the start of the loop
+     * <p>
+     * See {@link #enableVelocityEstimator(int)}
+     * 
+     * @return acceleration in encoder counts/second^2, or 0 if the velocity
+     *         estimator is not enabled
+     */
+    public double getSnapshotAcceleration() {
+        return snapshotAcceleration;
+    }
+
+    /**
+     * Returns the time the snapshot was taken
+     * 
+     * @return time in nanoseconds from the TSensorSnapshot clock
+     */
+    public long getSnapshotNanos() {
+        return snapshotNanos;
+    }
+
+    /**
+     * Get the rate (speed) of this encoder read at the start of the loop
+     * <p>
+     * See {@link TSensorSnapshot}
+     * 
+     * @return speed in encoder counts/second, or the current speed if there is
+     *         no snapshot for this loop
+     */
+    public double getSnapshotRate() {
+        return snapshotValid ? snapshotRate : getRate();
+    }
+
+    /**
+     * Indicates whether the snapshot values are current for this loop
+     * 
+     * @return {@code true} if the snapshot is valid, {@code false} otherwise
+     */
+    public boolean isSnapshotValid() {
+        return snapshotValid;
+    }
+
+    /**
+     * Indicates whether the velocity estimator is enabled
+     * 
+     * @return {@code true} if enabled, {@code false} otherwise
+     */
+    public boolean isVelocityEstimatorEnabled() {
+        return velocityEstimator != null;
+    }
+
     /**
      * Returns whether the current speed controller is 
      * inverted
@@ -85,13 +202,18 @@ public abstract class TEncoder {
      */
     public void reset() {
         // set the offset for this encoder in order to
-        // get the distance to zero
-        // clear the previous offset
-        offset = 0;
+        // get the distance to zero.
+        // Calculate the new offset before setting it so that
+        // another thread never reads the raw encoder counts.
+        int previousOffset = offset;
+        offset = previousOffset - get();
+
+        // Keep the snapshot consistent with the reset
+        if (snapshotValid) {
+            snapshotDistance = 0;
+        }
 
-        // set the offset to the current encoder counts
-        // in order to zero the output.
-        offset = -get();
+        shiftVelocityEstimator(offset - previousOffset);
     }
 
     /**
@@ -101,9 +223,15 @@ public abstract class TEncoder {
      *            to set the encoder to
      */
     public void set(int encoderCount) {
-        offset = 0;
-        offset = -get() + encoderCount;
+        int previousOffset = offset;
+        offset = previousOffset - get() + encoderCount;
+
+        // Keep the snapshot consistent with the new count
+        if (snapshotValid) {
+            snapshotDistance = encoderCount;
+        }
 
+        shiftVelocityEstimator(offset - previousOffset);
     }
 
     /**
@@ -120,6 +248,67 @@ public abstract class TEncoder {
         if (this.isInverted != isInverted) {
             this.isInverted = isInverted;
             reset();
+
+            // The snapshot rate is no longer valid
+            clearSnapshot();
+
+            if (velocityEstimator != null) {
+                velocityEstimator.reset();
+            }
+        }
+    }
+
+    /**
+     * Read the encoder and save the values as the snapshot for this loop.
+     * <p>
+     * This routine is called by the {@link TSensorSnapshot} at the start of each
+     * loop.
+     * 
+     * @param timestampNanos
+     *            the time of the snapshot
+     */
+    public void updateSnapshot(long timestampNanos) {
+
+        snapshotDistance = get();
+
+        TVelocityEstimator estimator = velocityEstimator;
+
+        if (estimator != null) {
+
+            estimator.add(timestampNanos, snapshotDistance);
+
+            if (estimator.isValid()) {
+                snapshotRate = estimator.getVelocity();
+            } else {
+                snapshotRate = getRate();
+            }
+            snapshotAcceleration = estimator.getAcceleration();
+
+        } else {
+            snapshotRate = getRate();
+        }
+
+        snapshotNanos = timestampNanos;
+        snapshotValid = true;
+    }
+
+    /**
+     * Clear the snapshot at the end of the loop.
+     * <p>
+     * Until the next snapshot, the {@code getSnapshot} methods read the device.
+     */
+    public void clearSnapshot() {
+        snapshotValid = false;
+    }
+
+    /**
+     * Shift the counts in the velocity estimator when the encoder offset changes
+     * so that the change is not measured as a velocity
+     */
+    private void shiftVelocityEstimator(int offsetChange) {
+
+        if (velocityEstimator != null) {
+            velocityEstimator.shift(offsetChange);
         }
     }
 
@@ -0,0 +1,227 @@
+package com.torontocodingcollective.sensors.encoder;
+
+import com.torontocodingcollective.clock.TClock;
+
+/**
+ * TVelocityEstimator estimates the velocity and acceleration of an encoder from
+ * a window of timestamped encoder counts.
+ * <p>
+ * The counts are saved in a ring buffer, and each estimate is the least
+ * squares fit of a quadratic (count = a + b*t + c*t^2) to the samples in the
+ * window, evaluated at the newest sample. The velocity is b and the
+ * acceleration is 2c. With evenly spaced samples this is a Savitzky-Golay
+ * filter evaluated at the end of the window. Fitting on the measured
+ * timestamps keeps the estimate correct when a robot loop runs late.
+ * <p>
+ * A rate read from the device is either the time between encoder edges (DIO
+ * encoders), which is very noisy at low speed, or the counts in the last 100ms
+ * (CAN encoders), which is delayed by 50ms. The fit averages the quantization
+ * noise of the counts over the window without the delay of averaging the rate.
+ * Larger windows give smoother estimates with more lag.
+ * <p>
+ * The buffers are allocated when the estimator is constructed, and adding a
+ * sample does not allocate memory. The estimator is not thread safe.
+ */
+public class TVelocityEstimator {
+
+    /** The minimum number of samples in the window */
+    public static final int MIN_WINDOW_SIZE = 3;
+
+    private final long[]    sampleNanos;
+    private final double[]  sampleCounts;
+
+    // Index of the newest sample and the number of samples in the window
+    private int             newest          = -1;
+    private int             size            = 0;
+
+    private double          velocity        = 0;
+    private double          acceleration    = 0;
+
+    /**
+     * Construct a velocity estimator
+     *
+     * @param windowSize
+     *            the number of samples used for each estimate (&gt;=
+     *            {@value #MIN_WINDOW_SIZE}). When the samples are taken once per
+     *            robot loop, a window of 5 to 10 samples is typical.
+     */
+    public TVelocityEstimator(int windowSize) {
+
+        windowSize = Math.max(MIN_WINDOW_SIZE, windowSize);
+
+        sampleNanos = new long[windowSize];
+        sampleCounts = new double[windowSize];
+    }
+
+    /**
+     * Add a sample and update the velocity and acceleration estimates.
+     * <p>
+     * A sample with a timestamp that is not after the newest sample replaces the
+     * newest sample.
+     *
+     * @param timestampNanos
+     *            time of the sample
+     * @param counts
+     *            encoder counts
+     */
+    public void add(long timestampNanos, double counts) {
+
+        if (size > 0 && timestampNanos <= sampleNanos[newest]) {
+            sampleCounts[newest] = counts;
+        } else {
+            newest = (newest + 1) % sampleNanos.length;
+
+            sampleNanos[newest] = timestampNanos;
+            sampleCounts[newest] = counts;
+
+            if (size < sampleNanos.length) {
+                size++;
+            }
+        }
+
+        estimate();
+    }
+
+    /**
+     * Get the estimated acceleration at the newest sample
+     *
+     * @return acceleration in counts/second^2, or 0 if there are fewer than
+     *         {@value #MIN_WINDOW_SIZE} samples
+     */
+    public double getAcceleration() {
+        return acceleration;
+    }
+
+    /**
+     * Get the number of samples in the window
+     *
+     * @return number of samples
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Get the estimated velocity at the newest sample
+     *
+     * @return velocity in counts/second, or 0 if there are fewer than 2 samples
+     */
+    public double getVelocity() {
+        return velocity;
+    }
+
+    /**
+     * Get the maximum number of samples in the window
+     *
+     * @return window size
+     */
+    public int getWindowSize() {
+        return sampleNanos.length;
+    }
+
+    /**
+     * Indicates whether the estimate uses enough samples to be valid
+     *
+     * @return {@code true} if there are at least 2 samples in the window,
+     *         {@code false} otherwise
+     */
+    public boolean isValid() {
+        return size >= 2;
+    }
+
+    /**
+     * Remove all samples from the window
+     */
+    public void reset() {
+        newest = -1;
+        size = 0;
+        velocity = 0;
+        acceleration = 0;
+    }
+
+    /**
+     * Add an offset to all samples in the window.
+     * <p>
+     * This routine is used when the encoder counts are reset or set, so that the
+     * step in the counts does not appear in the estimates.
+     *
+     * @param counts
+     *            offset to add to each sample
+     */
+    public void shift(double counts) {
+        for (int i = 0; i < size; i++) {
+            sampleCounts[i] += counts;
+        }
+    }
+
+    /**
+     * Fit the samples in the window and save the velocity and acceleration
+     */
+    private void estimate() {
+
+        if (size < 2) {
+            velocity = 0;
+            acceleration = 0;
+            return;
+        }
+
+        long newestNanos = sampleNanos[newest];
+        double newestCounts = sampleCounts[newest];
+
+        // Sum the powers of time and the counts, measured from the
+        // newest sample so that the sums are well conditioned.
+        double s1 = 0;
+        double s2 = 0;
+        double s3 = 0;
+        double s4 = 0;
+
+        double sy = 0;
+        double sty = 0;
+        double st2y = 0;
+
+        for (int i = 0; i < size; i++) {
+
+            double t = (sampleNanos[i] - newestNanos) / (double) TClock.NANOS_PER_SECOND;
+            double y = sampleCounts[i] - newestCounts;
+            double t2 = t * t;
+
+            s1 += t;
+            s2 += t2;
+            s3 += t2 * t;
+            s4 += t2 * t2;
+
+            sy += y;
+            sty += t * y;
+            st2y += t2 * y;
+        }
+
+        double n = size;
+
+        if (size < MIN_WINDOW_SIZE) {
+            // Straight line through two samples
+            double det = n * s2 - s1 * s1;
+            velocity = det > 0 ? (n * sty - s1 * sy) / det : 0;
+            acceleration = 0;
+            return;
+        }
+
+        // Solve the normal equations for a + b*t + c*t^2
+        //
+        // | n  s1 s2 | |a|   | sy   |
+        // | s1 s2 s3 | |b| = | sty  |
+        // | s2 s3 s4 | |c|   | st2y |
+        double det = n * (s2 * s4 - s3 * s3) - s1 * (s1 * s4 - s3 * s2) + s2 * (s1 * s3 - s2 * s2);
+
+        if (det <= 0) {
+            velocity = 0;
+            acceleration = 0;
+            return;
+        }
+
+        double detB = n * (sty * s4 - s3 * st2y) - sy * (s1 * s4 - s3 * s2) + s2 * (s1 * st2y - sty * s2);
+        double detC = n * (s2 * st2y - sty * s3) - s1 * (s1 * st2y - sty * s2) + sy * (s1 * s3 - s2 * s2);
+
+        velocity = detB / det;
+        acceleration = 2 * detC / det;
+    }
+}
@@ -31,6 +31,11 @@ public class TAnalogGyro extends TGyro {
     public void calibrate() {
         super.setGyroAngle(0);
         analogGyro.calibrate();
+
+        // The raw angle is reset by the calibration
+        if (getFilter() != null) {
+            getFilter().reset();
+        }
     }
 
     @Override
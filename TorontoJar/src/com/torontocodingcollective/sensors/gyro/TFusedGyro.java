@@ -0,0 +1,226 @@
+package com.torontocodingcollective.sensors.gyro;
+
+import com.torontocodingcollective.clock.TClock;
+import com.torontocodingcollective.clock.TFakeClock;
+import com.torontocodingcollective.clock.TSystemClock;
+import com.torontocodingcollective.sensors.TSensorSnapshot;
+import com.torontocodingcollective.sensors.encoder.TEncoder;
+
+/**
+ * TFusedGyro estimates the heading of a differential drive robot from a gyro
+ * and the left and right drive encoders.
+ * <p>
+ * A gyro is accurate over a short time but drifts over a match, and the
+ * heading from the difference of the encoders does not drift but is wrong
+ * whenever the wheels slip. The fused gyro combines the two with a Kalman
+ * filter that estimates the heading and the drift rate (bias) of the gyro:
+ * <ul>
+ * <li>Each update, the heading is advanced by the change in the gyro angle
+ * less the estimated bias.</li>
+ * <li>The heading is then corrected towards the encoder heading, weighted by
+ * the gyro, bias and encoder noise. Over time the correction also estimates
+ * the gyro bias, so the heading does not drift while the wheels grip.</li>
+ * </ul>
+ * When the encoder heading changes faster or slower than the gyro by more
+ * than the slip rate, the wheels are assumed to be slipping, and the encoder
+ * heading follows the gyro for that update so that the slip is not added to
+ * the encoder heading.
+ * <p>
+ * The gyro angle (not the rate) is used, so gyros that do not support the rate
+ * (ie. {@link TPigeonImu}) can be fused. The encoder heading is only as good as
+ * the track width, use the effective track width measured by a drive
+ * characterization.
+ * <p>
+ * The fused gyro is a {@link TGyro} and can be used anywhere a gyro is used,
+ * including as the gyro for the gyro PID of a
+ * {@link com.torontocodingcollective.subsystem.TGyroDriveSubsystem}. The
+ * estimate ({@link THeadingEstimator}) is updated once per sample by
+ * {@link #updateFilter()}, which is called by the {@link TSensorSnapshot} at
+ * the start of each loop and by the control thread of the drive subsystem.
+ * All other reads return the heading of the last update. Updates are
+ * synchronized so that the robot loop and a control thread can both read the
+ * fused gyro. The update does not allocate memory.
+ */
+public class TFusedGyro extends TGyro {
+
+    private final TGyro             gyro;
+    private final TEncoder          leftEncoder;
+    private final TEncoder          rightEncoder;
+
+    private final THeadingEstimator estimator;
+
+    private TClock                  clock = TSystemClock.getInstance();
+
+    /**
+     * Construct a fused gyro with the default noise values
+     *
+     * @param gyro
+     *            the gyro to fuse
+     * @param leftEncoder
+     *            the left drive encoder (counts increase driving forward)
+     * @param rightEncoder
+     *            the right drive encoder (counts increase driving forward)
+     * @param encoderCountsPerInch
+     *            encoder counts per inch of wheel travel
+     * @param trackWidthInches
+     *            the effective distance between the left and right wheels
+     */
+    public TFusedGyro(TGyro gyro, TEncoder leftEncoder, TEncoder rightEncoder, double encoderCountsPerInch,
+            double trackWidthInches) {
+
+        // The gyro applies its own inversion
+        super(false);
+
+        this.gyro = gyro;
+        this.leftEncoder = leftEncoder;
+        this.rightEncoder = rightEncoder;
+
+        this.estimator = new THeadingEstimator(encoderCountsPerInch, trackWidthInches);
+    }
+
+    @Override
+    public void calibrate() {
+
+        gyro.calibrate();
+
+        synchronized (this) {
+            estimator.reset();
+        }
+
+        super.setGyroAngle(0);
+    }
+
+    /**
+     * Returns the heading of the last update
+     * <p>
+     * The estimate is not updated by this routine, see {@link #updateFilter()}.
+     * If the fused gyro has not been updated, the first update is done.
+     *
+     * @return heading in the range 0 <= angle < 360
+     */
+    @Override
+    public double getAngle() {
+        return super.getAngle(getHeading());
+    }
+
+    /**
+     * Get the estimated gyro bias
+     *
+     * @return gyro drift rate in degrees/second
+     */
+    public synchronized double getBias() {
+        return estimator.getBias();
+    }
+
+    /**
+     * Get the gyro used by this fused gyro
+     *
+     * @return TGyro
+     */
+    public TGyro getGyro() {
+        return gyro;
+    }
+
+    @Override
+    public double getPitch() {
+        return gyro.getPitch();
+    }
+
+    /**
+     * Get the rate of the fused heading measured by the last update
+     * <p>
+     * The rate is the change in the gyro angle less the estimated bias, and is
+     * not read from the gyro.
+     *
+     * @return rate in degrees/second
+     */
+    @Override
+    public synchronized double getRate() {
+        return super.getRate(estimator.getRate());
+    }
+
+    /**
+     * Get the number of updates in which the wheels were slipping
+     *
+     * @return number of updates
+     */
+    public long getSlipCount() {
+        return estimator.getSlipCount();
+    }
+
+    /**
+     * Set the time source used to measure the time between updates.
+     * <p>
+     * By default the {@link TSystemClock} is used. A {@link TFakeClock} can be used
+     * to test the fused gyro off the robot.
+     *
+     * @param clock
+     *            the time source
+     */
+    public synchronized void setClock(TClock clock) {
+        this.clock = clock;
+        estimator.reset();
+    }
+
+    /**
+     * Set the noise values used to weight the gyro and the encoders.
+     * <p>
+     * See {@link THeadingEstimator#setNoise(double, double, double)}
+     *
+     * @param gyroNoise
+     *            random change in the gyro angle in degrees/sqrt(second)
+     * @param biasNoise
+     *            random change in the gyro bias in degrees/second/sqrt(second)
+     * @param encoderNoise
+     *            error in the encoder heading in degrees
+     */
+    public synchronized void setNoise(double gyroNoise, double biasNoise, double encoderNoise) {
+        estimator.setNoise(gyroNoise, biasNoise, encoderNoise);
+    }
+
+    /**
+     * Set the difference between the encoder and gyro rates that indicates wheel
+     * slip
+     * <p>
+     * See {@link THeadingEstimator#setSlipRate(double)}
+     *
+     * @param slipRate
+     *            in degrees/second, or 0 to never detect slip. If slip is not
+     *            detected, the encoders must not be reset.
+     */
+    public synchronized void setSlipRate(double slipRate) {
+        estimator.setSlipRate(slipRate);
+    }
+
+    @Override
+    public boolean supportsPitch() {
+        return gyro.supportsPitch();
+    }
+
+    /**
+     * Sample the gyro and the encoders and update the heading estimate, then
+     * run the filter of this gyro (if any) on the new heading.
+     * <p>
+     * The gyro is sampled through its own {@link TGyro#updateFilter()}, so a
+     * filter on the fused gyro or the gyro sees each sample once.
+     */
+    @Override
+    public void updateFilter() {
+        update();
+        super.updateFilter();
+    }
+
+    private synchronized double getHeading() {
+
+        if (!estimator.isStarted()) {
+            update();
+        }
+
+        return estimator.getHeading();
+    }
+
+    private synchronized void update() {
+        gyro.updateFilter();
+        estimator.update(clock.getNanos(), gyro.getAngle(), leftEncoder.get(), rightEncoder.get());
+    }
+}
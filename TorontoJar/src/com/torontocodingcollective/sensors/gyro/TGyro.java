@@ -1,6 +1,8 @@
 package com.torontocodingcollective.sensors.gyro;
 
 import com.torontocodingcollective.TUtil;
+import com.torontocodingcollective.log.TLogger;
+import com.torontocodingcollective.sensors.TSensorSnapshot;
 
 import edu.wpi.first.wpilibj.GyroBase;
 import edu.wpi.first.wpilibj.interfaces.Gyro;
@@ -13,11 +15,38 @@ import edu.wpi.first.wpilibj.interfaces.Gyro;
  * <p>
  * The TGyro class supports for clarity the methods of {@link Gyro} except for
  * the {@link #free()} method.
+ * <p>
+ * A gyro registered with the {@link TSensorSnapshot} is read once at the start
+ * of each robot loop. The {@code getSnapshot} methods return the values read at
+ * the start of the loop so that all code in the loop uses the same consistent
+ * values without reading the device again. When there is no current snapshot,
+ * the {@code getSnapshot} methods read the device.
+ * <p>
+ * Glitches in the angles read from the gyro can be removed with a
+ * {@link TGyroFilter} (see {@link #setFilter(TGyroFilter)}). The filter must
+ * see each sample once, so it is only run by {@link #updateFilter()}, and all
+ * other reads of the angle return the filtered angle of the last sample.
  */
 public abstract class TGyro extends GyroBase {
 
-    private boolean isInverted;
-    private double  offset = 0;
+    private boolean              isInverted;
+    private double               offset        = 0;
+
+    // Optional filter applied to the raw angle
+    private volatile TGyroFilter filter        = null;
+
+    // Filtered raw angle of the last sample, and the
+    // thread taking a sample in updateFilter()
+    private volatile double      filteredAngle = 0;
+    private volatile boolean     filteredValid = false;
+    private volatile Thread      filterThread  = null;
+
+    // Values read at the start of the loop by the TSensorSnapshot
+    private boolean              snapshotValid = false;
+    private long                 snapshotNanos = 0;
+    private double               snapshotAngle = 0;
+    private double               snapshotRate  = 0;
+    private double               snapshotPitch = 0;
 
     /**
      * Construct a gyro with the specified inversion
@@ -50,6 +79,11 @@ public abstract class TGyro extends GyroBase {
 
     /**
      * Get the angle from the rawAngle
+     * <p>
+     * If there is a filter, the raw angle is only filtered when a sample is
+     * taken by {@link #updateFilter()}. Otherwise the filtered angle of the last
+     * sample is used in place of the raw angle, or the raw angle if no sample
+     * has been taken.
      * 
      * @param rawAngle
      * @return normalized angle 0 <= angle < 360 where the inversion of the gyro is
@@ -57,6 +91,29 @@ public abstract class TGyro extends GyroBase {
      */
     protected double getAngle(double rawAngle) {
 
+        // Filter the raw angle before it is inverted
+        TGyroFilter gyroFilter = filter;
+
+        if (gyroFilter != null) {
+
+            if (filterThread == Thread.currentThread()) {
+
+                if (supportsRate()) {
+                    // Undo the inversion applied by getRate()
+                    double rawRate = isInverted ? -getRate() : getRate();
+                    filteredAngle = gyroFilter.filter(rawAngle, rawRate);
+                } else {
+                    filteredAngle = gyroFilter.filter(rawAngle);
+                }
+
+                filteredValid = true;
+            }
+
+            if (filteredValid) {
+                rawAngle = filteredAngle;
+            }
+        }
+
         // Invert before subtracting the offset.
         if (isInverted) {
             rawAngle = -rawAngle;
@@ -65,6 +122,60 @@ public abstract class TGyro extends GyroBase {
         return normalizedAngle(rawAngle + offset);
     }
 
+    /**
+     * Get the filter applied to the angles read from the gyro
+     * 
+     * @return TGyroFilter, or {@code null} if the angles are not filtered
+     */
+    public TGyroFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Returns the angle of the gyro read at the start of the loop
+     * <p>
+     * See {@link TSensorSnapshot}
+     * 
+     * @return angle in the range 0 <= angle < 360, or the current angle if there
+     *         is no snapshot for this loop
+     */
+    public double getSnapshotAngle() {
+        return snapshotValid ? snapshotAngle : getAngle();
+    }
+
+    /**
+     * Returns the time the snapshot was taken
+     * 
+     * @return time in nanoseconds from the TSensorSnapshot clock
+     */
+    public long getSnapshotNanos() {
+        return snapshotNanos;
+    }
+
+    /**
+     * Returns the pitch of the gyro read at the start of the loop
+     * <p>
+     * See {@link TSensorSnapshot}
+     * 
+     * @return pitch in degrees, or the current pitch if there is no snapshot for
+     *         this loop
+     */
+    public double getSnapshotPitch() {
+        return snapshotValid ? snapshotPitch : getPitch();
+    }
+
+    /**
+     * Returns the rate of the gyro read at the start of the loop
+     * <p>
+     * See {@link TSensorSnapshot}
+     * 
+     * @return rate in degrees/sec, or the current rate if there is no snapshot
+     *         for this loop
+     */
+    public double getSnapshotRate() {
+        return snapshotValid ? snapshotRate : getRate();
+    }
+
     /**
      * Return the pitch read off the gyro
      * <p>
@@ -104,7 +215,7 @@ public abstract class TGyro extends GyroBase {
 
     @Override
     public void free() {
-        System.out.println("The free() method is not supported for TGyro");
+        TLogger.getInstance().log(this, "The free() method is not supported for TGyro");
     }
 
     /**
@@ -116,6 +227,15 @@ public abstract class TGyro extends GyroBase {
         return isInverted;
     }
 
+    /**
+     * Indicates whether the snapshot values are current for this loop
+     * 
+     * @return {@code true} if the snapshot is valid, {@code false} otherwise
+     */
+    public boolean isSnapshotValid() {
+        return snapshotValid;
+    }
+
     /**
      * Get the angle normalized to a value between 0 and 360 degrees
      * 
@@ -147,6 +267,17 @@ public abstract class TGyro extends GyroBase {
         setGyroAngle(0);
     }
 
+    /**
+     * Set the filter applied to the angles read from the gyro
+     * 
+     * @param filter
+     *            TGyroFilter, or {@code null} to not filter the angles
+     */
+    public void setFilter(TGyroFilter filter) {
+        this.filter = filter;
+        filteredValid = false;
+    }
+
     public void setGyroAngle(double angle) {
 
         // clear the previous offset
@@ -160,6 +291,67 @@ public abstract class TGyro extends GyroBase {
         // of zero. Add the passed in angle
         // to make the desired angle
         offset += angle;
+
+        // Keep the snapshot consistent with the new angle
+        if (snapshotValid) {
+            snapshotAngle = normalizedAngle(angle);
+        }
+    }
+
+    /**
+     * Read the gyro and save the values as the snapshot for this loop.
+     * <p>
+     * This routine is called by the {@link TSensorSnapshot} at the start of each
+     * loop.
+     * 
+     * @param timestampNanos
+     *            the time of the snapshot
+     */
+    public void updateSnapshot(long timestampNanos) {
+
+        updateFilter();
+
+        snapshotAngle = getAngle();
+        snapshotRate = getRate();
+
+        if (supportsPitch()) {
+            snapshotPitch = getPitch();
+        }
+
+        snapshotNanos = timestampNanos;
+        snapshotValid = true;
+    }
+
+    /**
+     * Read the gyro and pass the reading to the filter as a new sample.
+     * <p>
+     * This routine is called by {@link #updateSnapshot(long)} at the start of
+     * each loop. A control thread that reads the gyro between snapshots should
+     * call this routine once per control step before reading the angle. The
+     * routine does nothing if there is no filter.
+     */
+    public synchronized void updateFilter() {
+
+        if (filter == null) {
+            return;
+        }
+
+        filterThread = Thread.currentThread();
+
+        try {
+            getAngle();
+        } finally {
+            filterThread = null;
+        }
+    }
+
+    /**
+     * Clear the snapshot at the end of the loop.
+     * <p>
+     * Until the next snapshot, the {@code getSnapshot} methods read the device.
+     */
+    public void clearSnapshot() {
+        snapshotValid = false;
     }
 
     /**
@@ -172,4 +364,14 @@ public abstract class TGyro extends GyroBase {
         return false;
     }
 
+    /**
+     * Indicates whether this gyro supports the rate
+     * 
+     * @return boolean {@code true} indicates that the rate is supported
+     *         {@code false} indicates the rate is always 0
+     */
+    public boolean supportsRate() {
+        return true;
+    }
+
 }
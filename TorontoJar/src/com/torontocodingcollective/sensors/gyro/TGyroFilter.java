@@ -0,0 +1,317 @@
+package com.torontocodingcollective.sensors.gyro;
+
+import com.torontocodingcollective.clock.TClock;
+import com.torontocodingcollective.clock.TFakeClock;
+import com.torontocodingcollective.clock.TSystemClock;
+
+/**
+ * TGyroFilter removes glitches from the angles read from a gyro.
+ * <p>
+ * Analog gyros (and occasionally other gyros) can return a reading that is
+ * different from the previous reading by a few degrees, which the gyro PID
+ * turns into a twitch of the steering. The filter has three stages, each of
+ * which can be disabled:
+ * <ol>
+ * <li>Angular velocity gate: a reading that moved further from the last
+ * accepted angle than the robot can physically rotate in the time since the
+ * last reading is rejected.</li>
+ * <li>Rate consistency check: a reading that differs from the last accepted
+ * angle plus the rate reported by the gyro (integrated over the time since
+ * the last reading) by more than the rate tolerance is rejected.</li>
+ * <li>Median: the output is the median of the last few accepted angles. A
+ * window of 3 samples removes a single sample spike that passes the other
+ * stages, and delays the angle by one sample.</li>
+ * </ol>
+ * A rejected reading is replaced by the last accepted angle advanced by the
+ * gyro rate, or by the last accepted angle if the gyro does not report a rate.
+ * The rate is used for the replacement even when the rate consistency check is
+ * disabled. If several readings in a row are rejected, the angle is assumed to
+ * have really changed (ie. the gyro was calibrated) and the reading is accepted.
+ * <p>
+ * The angle changes between readings are normalized to -180 to +180 degrees,
+ * so the filter can be used on gyros that return an angle that wraps at 360
+ * degrees. The buffers are allocated when the filter is constructed and
+ * filtering a reading does not allocate memory. The filter is synchronized so
+ * that the gyro can be read by the robot loop and a control thread.
+ */
+public class TGyroFilter {
+
+    /** Readings within this many degrees of the expected angle always pass */
+    public static final double ANGLE_NOISE_DEGREES     = 0.5;
+
+    /** Number of readings in a row that can be rejected before one is accepted */
+    public static final int    MAX_CONSECUTIVE_REJECTS = 5;
+
+    private final double       maxAngularVelocity;
+    private final double       rateTolerance;
+
+    // Median window of accepted angles and the sort buffer
+    private final double[]     window;
+    private final double[]     sorted;
+
+    private int                newest                  = -1;
+    private int                size                    = 0;
+
+    private TClock             clock                   = TSystemClock.getInstance();
+
+    private boolean            started                 = false;
+    private long               lastNanos;
+    private double             lastAngle;
+    private double             lastRate;
+
+    private int                consecutiveRejects      = 0;
+
+    private volatile long      velocityRejectCount     = 0;
+    private volatile long      rateRejectCount         = 0;
+
+    /**
+     * Construct a gyro filter
+     *
+     * @param maxAngularVelocity
+     *            the fastest the robot can rotate in degrees/second, or 0 to
+     *            disable the angular velocity gate. Set this to about 1.5 times
+     *            the measured maximum rotation rate of the robot.
+     * @param rateTolerance
+     *            the allowed difference in degrees/second between the angle
+     *            change and the gyro rate, or 0 to disable the rate consistency
+     *            check.
+     * @param medianWindowSize
+     *            the number of accepted angles in the median, or 1 to disable
+     *            the median. The median delays the angle by (windowSize - 1) / 2
+     *            samples.
+     */
+    public TGyroFilter(double maxAngularVelocity, double rateTolerance, int medianWindowSize) {
+
+        this.maxAngularVelocity = Math.max(0, maxAngularVelocity);
+        this.rateTolerance = Math.max(0, rateTolerance);
+
+        medianWindowSize = Math.max(1, medianWindowSize);
+
+        window = new double[medianWindowSize];
+        sorted = new double[medianWindowSize];
+    }
+
+    /**
+     * Filter an angle read from a gyro that does not report a rate.
+     * <p>
+     * The rate consistency check is skipped, and a rejected reading is replaced
+     * by the last accepted angle.
+     *
+     * @param rawAngle
+     *            the angle read from the gyro in degrees
+     * @return the filtered angle in degrees. The filtered angle may differ from
+     *         the raw angle by a multiple of 360 degrees.
+     */
+    public synchronized double filter(double rawAngle) {
+        return filter(rawAngle, false, 0);
+    }
+
+    /**
+     * Filter an angle read from the gyro
+     *
+     * @param rawAngle
+     *            the angle read from the gyro in degrees
+     * @param rawRate
+     *            the rate read from the gyro in degrees/second, in the same
+     *            direction as the raw angle. The rate is used by the rate
+     *            consistency check and to advance a rejected reading.
+     * @return the filtered angle in degrees. The filtered angle may differ from
+     *         the raw angle by a multiple of 360 degrees.
+     */
+    public synchronized double filter(double rawAngle, double rawRate) {
+        return filter(rawAngle, true, rawRate);
+    }
+
+    private double filter(double rawAngle, boolean rateAvailable, double rawRate) {
+
+        long now = clock.getNanos();
+
+        if (!rateAvailable) {
+            rawRate = 0;
+        }
+
+        if (!started) {
+
+            started = true;
+
+            lastNanos = now;
+            lastAngle = rawAngle;
+            lastRate = rawRate;
+
+            return addToWindow(rawAngle);
+        }
+
+        double dt = Math.max(0, (now - lastNanos) / (double) TClock.NANOS_PER_SECOND);
+
+        // Use the raw angle within 180 degrees of the last angle so
+        // that the filter follows the raw angle through a 360 degree wrap
+        double angle = lastAngle + normalizedChange(rawAngle - lastAngle);
+
+        // The angle expected from the rates at the start and end of the period
+        double rate = (lastRate + rawRate) / 2;
+
+        if (maxAngularVelocity > 0) {
+            rate = Math.max(-maxAngularVelocity, Math.min(maxAngularVelocity, rate));
+        }
+
+        double expectedAngle = lastAngle + rate * dt;
+
+        boolean velocityReject = maxAngularVelocity > 0
+                && Math.abs(angle - lastAngle) > maxAngularVelocity * dt + ANGLE_NOISE_DEGREES;
+
+        boolean rateReject = !velocityReject && rateTolerance > 0 && rateAvailable
+                && Math.abs(angle - expectedAngle) > rateTolerance * dt + ANGLE_NOISE_DEGREES;
+
+        lastNanos = now;
+
+        if (velocityReject || rateReject) {
+
+            if (consecutiveRejects < MAX_CONSECUTIVE_REJECTS) {
+
+                consecutiveRejects++;
+
+                if (velocityReject) {
+                    velocityRejectCount++;
+                } else {
+                    rateRejectCount++;
+                }
+
+                lastAngle = expectedAngle;
+                return addToWindow(expectedAngle);
+            }
+
+            // The angle has really changed, accept the reading
+            // and restart the window at the new angle.
+            newest = -1;
+            size = 0;
+        }
+
+        consecutiveRejects = 0;
+
+        lastAngle = angle;
+        lastRate = rawRate;
+
+        return addToWindow(angle);
+    }
+
+    /**
+     * Get the number of readings rejected by the rate consistency check
+     *
+     * @return number of readings
+     */
+    public long getRateRejectCount() {
+        return rateRejectCount;
+    }
+
+    /**
+     * Get the total number of readings rejected by the filter
+     *
+     * @return number of readings
+     */
+    public long getRejectCount() {
+        return velocityRejectCount + rateRejectCount;
+    }
+
+    /**
+     * Get the number of readings rejected by the angular velocity gate
+     *
+     * @return number of readings
+     */
+    public long getVelocityRejectCount() {
+        return velocityRejectCount;
+    }
+
+    /**
+     * Indicates whether the rate consistency check is enabled
+     *
+     * @return {@code true} if readings are checked against the gyro rate,
+     *         {@code false} otherwise
+     */
+    public boolean isRateCheckEnabled() {
+        return rateTolerance > 0;
+    }
+
+    /**
+     * Restart the filter.
+     * <p>
+     * The next reading is accepted without checking. The reject counts are not
+     * cleared.
+     */
+    public synchronized void reset() {
+        started = false;
+        consecutiveRejects = 0;
+        newest = -1;
+        size = 0;
+    }
+
+    /**
+     * Set the time source used to measure the time between readings.
+     * <p>
+     * By default the {@link TSystemClock} is used. A {@link TFakeClock} can be used
+     * to test the filter off the robot.
+     *
+     * @param clock
+     *            the time source
+     */
+    public synchronized void setClock(TClock clock) {
+        this.clock = clock;
+        reset();
+    }
+
+    /**
+     * Add an accepted angle to the median window
+     *
+     * @return the median of the window
+     */
+    private double addToWindow(double angle) {
+
+        if (window.length == 1) {
+            return angle;
+        }
+
+        newest = (newest + 1) % window.length;
+        window[newest] = angle;
+
+        if (size < window.length) {
+            size++;
+        }
+
+        // Insertion sort the window, the window is small
+        for (int i = 0; i < size; i++) {
+
+            double value = window[i];
+            int j = i;
+
+            while (j > 0 && sorted[j - 1] > value) {
+                sorted[j] = sorted[j - 1];
+                j--;
+            }
+
+            sorted[j] = value;
+        }
+
+        if ((size & 1) == 1) {
+            return sorted[size / 2];
+        }
+
+        return (sorted[size / 2 - 1] + sorted[size / 2]) / 2;
+    }
+
+    /**
+     * Normalize an angle change to -180 to +180 degrees
+     */
+    private static double normalizedChange(double change) {
+
+        change = change % 360.0;
+
+        if (change > 180) {
+            change -= 360.0;
+        }
+
+        if (change < -180) {
+            change += 360.0;
+        }
+
+        return change;
+    }
+}
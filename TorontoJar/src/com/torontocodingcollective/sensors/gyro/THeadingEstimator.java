@@ -0,0 +1,289 @@
+package com.torontocodingcollective.sensors.gyro;
+
+import com.torontocodingcollective.clock.TClock;
+
+/**
+ * THeadingEstimator is the Kalman filter of a {@link TFusedGyro}.
+ * <p>
+ * The filter estimates the heading of a differential drive robot and the drift
+ * rate (bias) of the gyro from samples of the gyro angle and the left and
+ * right encoder counts:
+ * <ul>
+ * <li>Each update, the heading is advanced by the change in the gyro angle
+ * less the estimated bias.</li>
+ * <li>The heading is then corrected towards the encoder heading, weighted by
+ * the gyro, bias and encoder noise. Over time the correction also estimates
+ * the gyro bias, so the heading does not drift while the wheels grip.</li>
+ * </ul>
+ * When the encoder heading changes faster or slower than the gyro by more
+ * than the slip rate, the wheels are assumed to be slipping, and the encoder
+ * heading follows the gyro for that update so that the slip is not added to
+ * the encoder heading.
+ * <p>
+ * The estimator is stateful and must be updated once per sample. It does not
+ * read any devices and is not synchronized, the {@link TFusedGyro} reads the
+ * sensors and synchronizes the updates. The update does not allocate memory.
+ */
+public class THeadingEstimator {
+
+    /** Default gyro angle noise in degrees/sqrt(second) */
+    public static final double DEFAULT_GYRO_NOISE    = 0.2;
+
+    /** Default change in the gyro bias in degrees/second/sqrt(second) */
+    public static final double DEFAULT_BIAS_NOISE    = 0.02;
+
+    /** Default encoder heading noise in degrees */
+    public static final double DEFAULT_ENCODER_NOISE = 3.0;
+
+    /** Default difference in degrees/second between the encoder and gyro rates
+     *  that indicates wheel slip */
+    public static final double DEFAULT_SLIP_RATE     = 45.0;
+
+    /** Degrees of heading change per encoder count of difference */
+    private final double       degreesPerCount;
+
+    // Noise variances
+    private double             gyroVariance;
+    private double             biasVariance;
+    private double             encoderVariance;
+    private double             slipRate              = DEFAULT_SLIP_RATE;
+
+    private boolean            started               = false;
+    private long               lastNanos;
+    private double             lastGyroAngle;
+    private int                lastLeftCount;
+    private int                lastRightCount;
+
+    // Estimated state and covariance
+    private double             heading;
+    private double             bias;
+    private double             p00;
+    private double             p01;
+    private double             p11;
+
+    private double             encoderHeading;
+    private double             rate;
+
+    private volatile long      slipCount             = 0;
+
+    /**
+     * Construct a heading estimator with the default noise values
+     *
+     * @param encoderCountsPerInch
+     *            encoder counts per inch of wheel travel
+     * @param trackWidthInches
+     *            the effective distance between the left and right wheels
+     */
+    public THeadingEstimator(double encoderCountsPerInch, double trackWidthInches) {
+
+        // The heading increases clockwise, when the left wheel
+        // travels further than the right wheel.
+        this.degreesPerCount = Math.toDegrees(1.0 / (encoderCountsPerInch * trackWidthInches));
+
+        setNoise(DEFAULT_GYRO_NOISE, DEFAULT_BIAS_NOISE, DEFAULT_ENCODER_NOISE);
+    }
+
+    /**
+     * Get the estimated gyro bias
+     *
+     * @return gyro drift rate in degrees/second
+     */
+    public double getBias() {
+        return bias;
+    }
+
+    /**
+     * Get the heading estimated by the last update
+     *
+     * @return heading in degrees (not normalized)
+     */
+    public double getHeading() {
+        return heading;
+    }
+
+    /**
+     * Get the rate of the heading measured by the last update
+     * <p>
+     * The rate is the change in the gyro angle less the estimated bias.
+     *
+     * @return rate in degrees/second
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Get the number of updates in which the wheels were slipping
+     *
+     * @return number of updates
+     */
+    public long getSlipCount() {
+        return slipCount;
+    }
+
+    /**
+     * Indicates whether the estimator has been started by an update
+     *
+     * @return {@code true} if the estimator has a heading, {@code false}
+     *         otherwise
+     */
+    public boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Restart the estimator.
+     * <p>
+     * The next update sets the heading to the gyro angle. The slip count is not
+     * cleared.
+     */
+    public void reset() {
+        started = false;
+    }
+
+    /**
+     * Set the noise values used to weight the gyro and the encoders.
+     * <p>
+     * Increase the encoder noise if the wheels slip often (ie. when pushing), and
+     * increase the bias noise if the gyro drift changes quickly (ie. as the gyro
+     * warms up).
+     *
+     * @param gyroNoise
+     *            random change in the gyro angle in degrees/sqrt(second)
+     * @param biasNoise
+     *            random change in the gyro bias in degrees/second/sqrt(second)
+     * @param encoderNoise
+     *            error in the encoder heading in degrees
+     */
+    public void setNoise(double gyroNoise, double biasNoise, double encoderNoise) {
+        gyroVariance = gyroNoise * gyroNoise;
+        biasVariance = biasNoise * biasNoise;
+        encoderVariance = Math.max(1e-6, encoderNoise * encoderNoise);
+    }
+
+    /**
+     * Set the difference between the encoder and gyro rates that indicates wheel
+     * slip
+     * <p>
+     * The slip detection also ignores the step in the encoder counts when the
+     * encoders are reset.
+     *
+     * @param slipRate
+     *            in degrees/second, or 0 to never detect slip. If slip is not
+     *            detected, the encoders must not be reset.
+     */
+    public void setSlipRate(double slipRate) {
+        this.slipRate = Math.max(0, slipRate);
+    }
+
+    /**
+     * Update the heading estimate with a sample of the gyro and the encoders
+     *
+     * @param timestampNanos
+     *            the time of the sample
+     * @param gyroAngle
+     *            the gyro angle in degrees
+     * @param leftCount
+     *            the left encoder count (counts increase driving forward)
+     * @param rightCount
+     *            the right encoder count (counts increase driving forward)
+     * @return the estimated heading in degrees (not normalized)
+     */
+    public double update(long timestampNanos, double gyroAngle, int leftCount, int rightCount) {
+
+        if (!started) {
+
+            started = true;
+
+            lastNanos = timestampNanos;
+            lastGyroAngle = gyroAngle;
+            lastLeftCount = leftCount;
+            lastRightCount = rightCount;
+
+            heading = gyroAngle;
+            encoderHeading = gyroAngle;
+            bias = 0;
+            rate = 0;
+
+            // Start with the heading known and the bias unknown
+            p00 = 0;
+            p01 = 0;
+            p11 = 1.0;
+
+            return heading;
+        }
+
+        double dt = (timestampNanos - lastNanos) / (double) TClock.NANOS_PER_SECOND;
+
+        if (dt <= 0) {
+            return heading;
+        }
+
+        double gyroChange = normalizedChange(gyroAngle - lastGyroAngle);
+        double encoderChange = ((leftCount - lastLeftCount) - (rightCount - lastRightCount)) * degreesPerCount;
+
+        lastNanos = timestampNanos;
+        lastGyroAngle = gyroAngle;
+        lastLeftCount = leftCount;
+        lastRightCount = rightCount;
+
+        // Predict the heading from the gyro
+        double headingChange = gyroChange - bias * dt;
+
+        heading += headingChange;
+        rate = headingChange / dt;
+
+        // P = F P F' + Q, where F = | 1 -dt |
+        //                           | 0  1  |
+        p00 += dt * (dt * p11 - 2 * p01) + gyroVariance * dt;
+        p01 -= dt * p11;
+        p11 += biasVariance * dt;
+
+        // Do not add wheel slip to the encoder heading
+        if (slipRate > 0 && Math.abs(encoderChange - headingChange) > slipRate * dt) {
+            encoderHeading += headingChange;
+            slipCount++;
+        } else {
+            encoderHeading += encoderChange;
+        }
+
+        // Correct the heading and bias with the encoder heading
+        double innovation = encoderHeading - heading;
+        double s = p00 + encoderVariance;
+
+        double k0 = p00 / s;
+        double k1 = p01 / s;
+
+        heading += k0 * innovation;
+        bias += k1 * innovation;
+
+        // P = (I - K H) P, where H = | 1 0 |
+        double newP00 = (1 - k0) * p00;
+        double newP01 = (1 - k0) * p01;
+        double newP11 = p11 - k1 * p01;
+
+        p00 = newP00;
+        p01 = newP01;
+        p11 = newP11;
+
+        return heading;
+    }
+
+    /**
+     * Normalize an angle change to -180 to +180 degrees
+     */
+    private static double normalizedChange(double change) {
+
+        change = change % 360.0;
+
+        if (change > 180) {
+            change -= 360.0;
+        }
+
+        if (change < -180) {
+            change += 360.0;
+        }
+
+        return change;
+    }
+}
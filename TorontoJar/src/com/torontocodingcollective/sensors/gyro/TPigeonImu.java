@@ -38,4 +38,9 @@ public class TPigeonImu extends TGyro {
         super.setGyroAngle(0);
     }
 
+    @Override
+    public boolean supportsRate() {
+        return false;
+    }
+
 }
@@ -0,0 +1,490 @@
+package com.torontocodingcollective.sim;
+
+import com.torontocodingcollective.clock.TFakeClock;
+import com.torontocodingcollective.subsystem.TDriveSubsystem.TSide;
+
+/**
+ * TSimDriveModel is a physics model of a differential (tank) drive robot.
+ * <p>
+ * The model is used to run the drive subsystem, PIDs and autonomous code off
+ * the robot. The simulated speed controllers, encoders and gyro returned by the
+ * model are used in place of the real devices, and the model is stepped by the
+ * simulation loop instead of waiting for real time to pass, so a simulated
+ * match runs many times faster than real time.
+ * <p>
+ * The model includes:
+ * <ul>
+ * <li>the motor torque curve (torque falls with speed) and the rotor inertia
+ * reflected through the gearbox</li>
+ * <li>the mass and moment of inertia of the robot</li>
+ * <li>wheel slip when the wheel force is more than the traction available to
+ * each side of the robot</li>
+ * <li>the scrub of the wheels sliding sideways when the robot turns</li>
+ * <li>battery sag from the internal resistance of the battery</li>
+ * </ul>
+ * <p>
+ * The model uses SI units internally. The pose of the robot is available in
+ * inches to match the rest of the framework. The heading of the model is
+ * measured counter-clockwise, the {@link TSimGyro} reports a clockwise angle
+ * like the FRC gyros.
+ * <p>
+ * Each call to {@link #step(double)} advances the model and the model clock.
+ * The model clock should be set as the clock of any PIDs or other timed code
+ * in the simulation.
+ */
+public class TSimDriveModel {
+
+    /** Default maximum integration step of 1ms */
+    public static final double        DEFAULT_MAX_STEP_SEC      = 0.001;
+
+    private static final double       GRAVITY                   = 9.81;
+    private static final double       METERS_PER_INCH           = 0.0254;
+    private static final double       KG_PER_LB                 = 0.4536;
+
+    private static final int          LEFT                      = 0;
+    private static final int          RIGHT                     = 1;
+
+    private final TFakeClock          clock                     = new TFakeClock();
+
+    private final TSimMotor           motor;
+    private final int                 motorsPerSide;
+    private final double              gearRatio;
+    private final double              wheelRadius;
+    private final double              halfTrackWidth;
+
+    private final TSimSpeedController leftSpeedController       = new TSimSpeedController(false);
+    private final TSimSpeedController rightSpeedController      = new TSimSpeedController(false);
+    private TSimGyro                  gyro                      = null;
+
+    private double                    mass;
+    private double                    momentOfInertia;
+    private double                    wheelMass;
+    private double                    coefficientOfFriction     = 1.1;
+    private double                    turningScrub              = 0.3;
+    private double                    batteryOpenCircuitVoltage = 12.7;
+    private double                    batteryResistance         = 0.015;
+    private double                    maxStepSec                = DEFAULT_MAX_STEP_SEC;
+
+    // Model state
+    private double                    time                      = 0;
+    private double                    x                         = 0;
+    private double                    y                         = 0;
+    private double                    heading                   = 0;
+    private double                    speed                     = 0;
+    private double                    angularVelocity           = 0;
+    private double                    batteryVoltage            = batteryOpenCircuitVoltage;
+    private double                    batteryCurrent            = 0;
+
+    private final double[]            wheelSpeed                = new double[2];
+    private final double[]            wheelRotation             = new double[2];
+    private final double[]            motorCurrent              = new double[2];
+    private final boolean[]           slipping                  = new boolean[2];
+    private final double[]            tractionForce             = new double[2];
+
+    /**
+     * Construct a drive model.
+     * <p>
+     * The moment of inertia of the robot defaults to that of a uniform square
+     * with sides equal to the track width, see {@link #setMomentOfInertia(double)}.
+     * 
+     * @param motor
+     *            the {@link TSimMotor} used on the drive
+     * @param motorsPerSide
+     *            the number of motors in each drive gearbox
+     * @param gearRatio
+     *            reduction from the motor to the wheel (ie. 10.71 for a 10.71:1
+     *            gearbox)
+     * @param wheelDiameterInches
+     *            diameter of the wheels
+     * @param trackWidthInches
+     *            distance between the left and right wheels
+     * @param robotWeightLbs
+     *            weight of the robot including the battery and bumpers
+     */
+    public TSimDriveModel(TSimMotor motor, int motorsPerSide, double gearRatio, double wheelDiameterInches,
+            double trackWidthInches, double robotWeightLbs) {
+
+        this.motor = motor;
+        this.motorsPerSide = motorsPerSide;
+        this.gearRatio = gearRatio;
+        this.wheelRadius = wheelDiameterInches / 2.0 * METERS_PER_INCH;
+        this.halfTrackWidth = trackWidthInches / 2.0 * METERS_PER_INCH;
+        this.mass = robotWeightLbs * KG_PER_LB;
+        this.momentOfInertia = mass * Math.pow(2 * halfTrackWidth, 2) / 6.0;
+
+        // The rotor inertia seen at the wheel surface as an equivalent mass
+        // plus an allowance for the wheels and gears.
+        this.wheelMass = motorsPerSide * motor.getRotorInertia() * gearRatio * gearRatio
+                / (wheelRadius * wheelRadius) + 0.5;
+    }
+
+    /**
+     * Get the angular velocity of the robot
+     * 
+     * @return angular velocity in rad/sec (counter-clockwise)
+     */
+    public double getAngularVelocity() {
+        return angularVelocity;
+    }
+
+    /**
+     * Get the current drawn from the battery by the drive motors
+     * 
+     * @return current in Amps
+     */
+    public double getBatteryCurrent() {
+        return batteryCurrent;
+    }
+
+    /**
+     * Get the battery voltage
+     * 
+     * @return voltage at the battery terminals including the voltage drop from
+     *         the drive motor current
+     */
+    public double getBatteryVoltage() {
+        return batteryVoltage;
+    }
+
+    /**
+     * Get the model clock
+     * <p>
+     * The model clock is advanced each time the model is stepped.
+     * 
+     * @return model clock
+     */
+    public TFakeClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Get the simulated gyro for this model
+     * <p>
+     * The gyro is a wpilib GyroBase and is only created when it is first
+     * requested, so the model can be run without the wpilib native libraries
+     * when the heading is read from {@link #getHeading()}.
+     * 
+     * @return gyro
+     */
+    public synchronized TSimGyro getGyro() {
+        if (gyro == null) {
+            gyro = new TSimGyro(this, false);
+        }
+        return gyro;
+    }
+
+    /**
+     * Get the heading of the robot
+     * 
+     * @return heading in radians (counter-clockwise) since the last reset
+     */
+    public double getHeading() {
+        return heading;
+    }
+
+    /**
+     * Get the current through one motor on the given side
+     * 
+     * @param side
+     *            {@link TSide#LEFT} or {@link TSide#RIGHT}
+     * @return current in Amps
+     */
+    public double getMotorCurrent(TSide side) {
+        return motorCurrent[getIndex(side)];
+    }
+
+    /**
+     * Get the forward speed of the robot
+     * 
+     * @return speed in inches/sec
+     */
+    public double getSpeedInches() {
+        return speed / METERS_PER_INCH;
+    }
+
+    /**
+     * Get the simulated speed controller for the given side
+     * 
+     * @param side
+     *            {@link TSide#LEFT} or {@link TSide#RIGHT}
+     * @return speed controller
+     */
+    public TSimSpeedController getSpeedController(TSide side) {
+        return side == TSide.LEFT ? leftSpeedController : rightSpeedController;
+    }
+
+    /**
+     * Get the model time
+     * 
+     * @return time in seconds since the model was constructed
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Get the traction force on the floor from the given side
+     * 
+     * @param side
+     *            {@link TSide#LEFT} or {@link TSide#RIGHT}
+     * @return force in N
+     */
+    public double getTractionForce(TSide side) {
+        return tractionForce[getIndex(side)];
+    }
+
+    /**
+     * Get the angular speed of the wheels on the given side
+     * 
+     * @param side
+     *            {@link TSide#LEFT} or {@link TSide#RIGHT}
+     * @return wheel speed in rad/sec
+     */
+    public double getWheelRate(TSide side) {
+        return wheelSpeed[getIndex(side)] / wheelRadius;
+    }
+
+    /**
+     * Get the total rotation of the wheels on the given side
+     * 
+     * @param side
+     *            {@link TSide#LEFT} or {@link TSide#RIGHT}
+     * @return rotation in radians since the model was constructed
+     */
+    public double getWheelRotation(TSide side) {
+        return wheelRotation[getIndex(side)];
+    }
+
+    /**
+     * Get the x position of the robot (forward from the starting position)
+     * 
+     * @return x in inches
+     */
+    public double getXInches() {
+        return x / METERS_PER_INCH;
+    }
+
+    /**
+     * Get the y position of the robot (left from the starting position)
+     * 
+     * @return y in inches
+     */
+    public double getYInches() {
+        return y / METERS_PER_INCH;
+    }
+
+    /**
+     * Indicates whether the wheels on the given side are slipping
+     * 
+     * @param side
+     *            {@link TSide#LEFT} or {@link TSide#RIGHT}
+     * @return {@code true} if the wheel force is more than the traction
+     *         available, {@code false} otherwise
+     */
+    public boolean isSlipping(TSide side) {
+        return slipping[getIndex(side)];
+    }
+
+    /**
+     * Create a simulated encoder on the wheels of the given side
+     * 
+     * @param side
+     *            {@link TSide#LEFT} or {@link TSide#RIGHT}
+     * @param countsPerRevolution
+     *            encoder counts for each revolution of the wheel
+     * @return encoder
+     */
+    public TSimEncoder newEncoder(TSide side, double countsPerRevolution) {
+        return new TSimEncoder(this, side, countsPerRevolution, false);
+    }
+
+    /**
+     * Stop the robot and return it to the starting position.
+     * <p>
+     * The wheel rotation (encoders) and the model time are not reset.
+     */
+    public void reset() {
+
+        x = 0;
+        y = 0;
+        heading = 0;
+        speed = 0;
+        angularVelocity = 0;
+
+        for (int i = LEFT; i <= RIGHT; i++) {
+            wheelSpeed[i] = 0;
+            motorCurrent[i] = 0;
+            tractionForce[i] = 0;
+            slipping[i] = false;
+        }
+
+        batteryCurrent = 0;
+        batteryVoltage = batteryOpenCircuitVoltage;
+    }
+
+    /**
+     * Set the battery model
+     * 
+     * @param openCircuitVoltage
+     *            voltage of the battery with no load (12.7V for a fresh battery)
+     * @param internalResistance
+     *            resistance of the battery and wiring in Ohms (0.015 typical)
+     */
+    public void setBattery(double openCircuitVoltage, double internalResistance) {
+        this.batteryOpenCircuitVoltage = openCircuitVoltage;
+        this.batteryResistance = internalResistance;
+        this.batteryVoltage = openCircuitVoltage;
+    }
+
+    /**
+     * Set the coefficient of friction between the wheels and the floor
+     * 
+     * @param coefficientOfFriction
+     *            1.1 typical for traction wheels on carpet
+     */
+    public void setCoefficientOfFriction(double coefficientOfFriction) {
+        this.coefficientOfFriction = coefficientOfFriction;
+    }
+
+    /**
+     * Set the maximum integration step.
+     * <p>
+     * Each call to {@link #step(double)} is broken into steps no longer than the
+     * maximum step.
+     * 
+     * @param maxStepSec
+     *            maximum step in seconds. Values less than or equal to zero are
+     *            ignored.
+     */
+    public void setMaxStep(double maxStepSec) {
+        if (maxStepSec > 0) {
+            this.maxStepSec = maxStepSec;
+        }
+    }
+
+    /**
+     * Set the moment of inertia of the robot about the vertical axis
+     * 
+     * @param momentOfInertia
+     *            in kg m^2
+     */
+    public void setMomentOfInertia(double momentOfInertia) {
+        this.momentOfInertia = momentOfInertia;
+    }
+
+    /**
+     * Set the turning scrub of the drive.
+     * <p>
+     * When a tank drive turns, the wheels at the ends of the robot slide
+     * sideways and resist the turn. The resisting torque is the scrub factor
+     * multiplied by the robot weight and half the track width.
+     * 
+     * @param turningScrub
+     *            0 for no scrub (omni wheels), 0.3 typical for a 6 wheel drop
+     *            center drive on carpet
+     */
+    public void setTurningScrub(double turningScrub) {
+        this.turningScrub = turningScrub;
+    }
+
+    /**
+     * Advance the model by the given time.
+     * <p>
+     * The motor outputs are read from the simulated speed controllers at the
+     * start of the step and held for the whole step. The model clock is
+     * advanced by the step time.
+     * 
+     * @param seconds
+     *            time to advance the model. Values less than or equal to zero are
+     *            ignored.
+     */
+    public void step(double seconds) {
+
+        if (seconds <= 0) {
+            return;
+        }
+
+        int steps = (int) Math.ceil(seconds / maxStepSec);
+        double dt = seconds / steps;
+
+        double leftOutput = leftSpeedController.getOutput();
+        double rightOutput = rightSpeedController.getOutput();
+
+        for (int i = 0; i < steps; i++) {
+            integrate(leftOutput, rightOutput, dt);
+        }
+
+        clock.advance(seconds);
+    }
+
+    private int getIndex(TSide side) {
+        return side == TSide.LEFT ? LEFT : RIGHT;
+    }
+
+    private void integrate(double leftOutput, double rightOutput, double dt) {
+
+        double maxTractionForce = coefficientOfFriction * mass * GRAVITY / 2.0;
+
+        double totalCurrent = 0;
+
+        for (int i = LEFT; i <= RIGHT; i++) {
+
+            double output = i == LEFT ? leftOutput : rightOutput;
+
+            // Motor current and force at the wheel
+            double motorSpeed = wheelSpeed[i] / wheelRadius * gearRatio;
+            double current = motor.getCurrent(output * batteryVoltage, motorSpeed);
+            double wheelForce = motorsPerSide * motor.getTorque(current) * gearRatio / wheelRadius;
+
+            // The speed of the floor under the wheels
+            double groundSpeed = i == LEFT
+                    ? speed - angularVelocity * halfTrackWidth
+                    : speed + angularVelocity * halfTrackWidth;
+
+            // Calculate the traction force required for the wheel and the
+            // floor to be moving at the same speed at the end of the step
+            // (no slip). Each side carries half the robot mass.
+            double slipSpeed = wheelSpeed[i] - groundSpeed;
+            double traction = (slipSpeed / dt + wheelForce / wheelMass)
+                    / (1.0 / wheelMass + 2.0 / mass);
+
+            // Limit the traction to the friction available, the wheel
+            // slips if more force is required.
+            slipping[i] = Math.abs(traction) > maxTractionForce;
+            if (slipping[i]) {
+                traction = Math.copySign(maxTractionForce, traction);
+            }
+
+            wheelSpeed[i] += (wheelForce - traction) / wheelMass * dt;
+            wheelRotation[i] += wheelSpeed[i] / wheelRadius * dt;
+
+            tractionForce[i] = traction;
+            motorCurrent[i] = current;
+
+            // The battery supplies the motor current for the fraction of
+            // the time that the speed controller is on.
+            totalCurrent += motorsPerSide * output * current;
+        }
+
+        // Turning scrub, the torque is smoothed near zero angular velocity
+        // so that the robot does not oscillate when it is not turning.
+        double scrubTorque = turningScrub * mass * GRAVITY * halfTrackWidth
+                * angularVelocity / (Math.abs(angularVelocity) + 0.05);
+
+        // Robot motion
+        speed += (tractionForce[LEFT] + tractionForce[RIGHT]) / mass * dt;
+        angularVelocity += ((tractionForce[RIGHT] - tractionForce[LEFT]) * halfTrackWidth - scrubTorque)
+                / momentOfInertia * dt;
+
+        heading += angularVelocity * dt;
+        x += speed * Math.cos(heading) * dt;
+        y += speed * Math.sin(heading) * dt;
+
+        // Battery sag, the current from this step is used to calculate
+        // the voltage for the next step.
+        batteryCurrent = totalCurrent;
+        batteryVoltage = Math.max(0, batteryOpenCircuitVoltage - batteryResistance * Math.max(0, totalCurrent));
+
+        time += dt;
+    }
+}
@@ -0,0 +1,341 @@
+package com.torontocodingcollective.sim;
+
+import com.torontocodingcollective.pid.TGyroPID;
+import com.torontocodingcollective.pid.TSpeedPID;
+import com.torontocodingcollective.subsystem.TDriveSubsystem.TSide;
+
+/**
+ * TSimDriveRunner runs the drive speed PIDs and the gyro PID in a closed loop
+ * around a {@link TSimDriveModel}.
+ * <p>
+ * Each call to {@link #step()} runs one robot loop: the gyro PID is calculated
+ * from the model heading, the speed PIDs are calculated from the simulated
+ * encoder rates, the PID outputs are set on the model speed controllers and the
+ * model is stepped by the loop period. The PIDs are timed with the model clock,
+ * so the loop runs as fast as the model can be stepped and not in real time.
+ * <p>
+ * The steering follows the drive on heading and rotate to heading control in
+ * the TGyroDriveSubsystem. The drive subsystems themselves are wpilib
+ * Subsystems that register with the Scheduler, which requires the HAL, so the
+ * subsystems cannot be constructed off the robot.
+ * <p>
+ * The runner does not use any wpilib classes that load the native libraries
+ * and can be run on a development machine.
+ */
+public class TSimDriveRunner {
+
+    /** Default loop period of 20ms (the robot periodic loop) */
+    public static final double   DEFAULT_LOOP_PERIOD_SEC = 0.02;
+
+    private enum Mode {
+        SPEED, DRIVE_ON_HEADING, ROTATE_TO_HEADING
+    }
+
+    private final TSimDriveModel model;
+    private final TSimEncoder    leftEncoder;
+    private final TSimEncoder    rightEncoder;
+    private final TSpeedPID      leftSpeedPid;
+    private final TSpeedPID      rightSpeedPid;
+    private final TGyroPID       gyroPid;
+    private final double         maxEncoderSpeed;
+
+    private double               loopPeriodSec           = DEFAULT_LOOP_PERIOD_SEC;
+    private double               maxRotationOutput       = 0.5;
+
+    private Mode                 mode                    = Mode.SPEED;
+    private double               speedSetpoint           = 0;
+    private double               leftSpeedSetpoint       = 0;
+    private double               rightSpeedSetpoint      = 0;
+
+    /**
+     * Construct a runner on the given model
+     *
+     * @param model
+     *            the drive model
+     * @param countsPerRevolution
+     *            encoder counts for each revolution of the wheel
+     * @param maxEncoderSpeed
+     *            the encoder rate (counts/sec) at full speed used to normalize
+     *            the speed PID feedback
+     * @param speedKP
+     *            speed PID proportional gain
+     * @param speedKI
+     *            speed PID integral gain
+     * @param gyroKP
+     *            gyro PID proportional gain
+     * @param gyroKI
+     *            gyro PID integral gain
+     */
+    public TSimDriveRunner(TSimDriveModel model, double countsPerRevolution, double maxEncoderSpeed,
+            double speedKP, double speedKI, double gyroKP, double gyroKI) {
+
+        this.model = model;
+        this.maxEncoderSpeed = maxEncoderSpeed;
+
+        leftEncoder = model.newEncoder(TSide.LEFT, countsPerRevolution);
+        rightEncoder = model.newEncoder(TSide.RIGHT, countsPerRevolution);
+
+        leftSpeedPid = new TSpeedPID(speedKP, speedKI);
+        rightSpeedPid = new TSpeedPID(speedKP, speedKI);
+        gyroPid = new TGyroPID(gyroKP, gyroKI);
+
+        leftSpeedPid.setClock(model.getClock());
+        rightSpeedPid.setClock(model.getClock());
+        gyroPid.setClock(model.getClock());
+
+        leftSpeedPid.enable();
+        rightSpeedPid.enable();
+    }
+
+    /**
+     * Get the gyro angle of the model
+     * <p>
+     * Like the FRC gyros, the angle increases when the robot turns clockwise.
+     *
+     * @return angle in degrees
+     */
+    public double getGyroAngle() {
+        return -Math.toDegrees(model.getHeading());
+    }
+
+    /**
+     * Get the gyro PID
+     *
+     * @return gyro PID
+     */
+    public TGyroPID getGyroPid() {
+        return gyroPid;
+    }
+
+    /**
+     * Get the encoder on the given side
+     *
+     * @param side
+     *            {@link TSide#LEFT} or {@link TSide#RIGHT}
+     * @return encoder
+     */
+    public TSimEncoder getEncoder(TSide side) {
+        return side == TSide.LEFT ? leftEncoder : rightEncoder;
+    }
+
+    /**
+     * Get the drive model
+     *
+     * @return model
+     */
+    public TSimDriveModel getModel() {
+        return model;
+    }
+
+    /**
+     * Get the normalized speed of the given side
+     *
+     * @param side
+     *            {@link TSide#LEFT} or {@link TSide#RIGHT}
+     * @return encoder rate divided by the max encoder speed
+     */
+    public double getSpeed(TSide side) {
+        return getEncoder(side).getRate() / maxEncoderSpeed;
+    }
+
+    /**
+     * Get the speed PID on the given side
+     *
+     * @param side
+     *            {@link TSide#LEFT} or {@link TSide#RIGHT}
+     * @return speed PID
+     */
+    public TSpeedPID getSpeedPid(TSide side) {
+        return side == TSide.LEFT ? leftSpeedPid : rightSpeedPid;
+    }
+
+    /**
+     * Run the loop for the given time
+     *
+     * @param seconds
+     *            the time to run (rounded up to a whole number of loops)
+     */
+    public void run(double seconds) {
+        int loops = (int) Math.ceil(seconds / loopPeriodSec - 1e-9);
+        for (int i = 0; i < loops; i++) {
+            step();
+        }
+    }
+
+    /**
+     * Drive on a heading using the gyro PID to steer
+     *
+     * @param speed
+     *            normalized speed (-1.0 to 1.0)
+     * @param heading
+     *            gyro heading (0 - 360 degrees)
+     */
+    public void setDriveOnHeading(double speed, double heading) {
+        setGyroMode(Mode.DRIVE_ON_HEADING, speed, heading);
+    }
+
+    /**
+     * Set the loop period
+     *
+     * @param loopPeriodSec
+     *            the time the model is stepped on each loop
+     */
+    public void setLoopPeriod(double loopPeriodSec) {
+        if (loopPeriodSec <= 0) {
+            throw new IllegalArgumentException("Loop period must be > 0, was " + loopPeriodSec);
+        }
+        this.loopPeriodSec = loopPeriodSec;
+    }
+
+    /**
+     * Set the maximum output used to rotate towards the heading when driving on
+     * a heading with a large heading error
+     *
+     * @param maxRotationOutput
+     *            normalized speed (0 - 1.0)
+     */
+    public void setMaxRotationOutput(double maxRotationOutput) {
+        this.maxRotationOutput = maxRotationOutput;
+    }
+
+    /**
+     * Rotate on the spot to a heading using the gyro PID
+     *
+     * @param heading
+     *            gyro heading (0 - 360 degrees)
+     * @param maxSpeed
+     *            the maximum normalized speed of the wheels (0 - 1.0)
+     */
+    public void setRotateToHeading(double heading, double maxSpeed) {
+        setGyroMode(Mode.ROTATE_TO_HEADING, Math.abs(maxSpeed), heading);
+    }
+
+    /**
+     * Drive each side at a speed without the gyro PID
+     *
+     * @param leftSpeed
+     *            normalized speed (-1.0 to 1.0)
+     * @param rightSpeed
+     *            normalized speed (-1.0 to 1.0)
+     */
+    public void setSpeed(double leftSpeed, double rightSpeed) {
+        mode = Mode.SPEED;
+        gyroPid.disable();
+        leftSpeedSetpoint = leftSpeed;
+        rightSpeedSetpoint = rightSpeed;
+    }
+
+    /**
+     * Run one loop and step the model by the loop period
+     */
+    public void step() {
+
+        if (mode != Mode.SPEED) {
+            double gyroAngle = getGyroAngle();
+            gyroPid.calculate(gyroAngle);
+            if (mode == Mode.DRIVE_ON_HEADING) {
+                setDriveOnHeadingSpeeds(gyroAngle);
+            }
+            else {
+                setRotateToHeadingSpeeds(gyroAngle);
+            }
+        }
+
+        leftSpeedPid.setSetpoint(leftSpeedSetpoint);
+        rightSpeedPid.setSetpoint(rightSpeedSetpoint);
+
+        leftSpeedPid.calculate(leftEncoder.getRate() / maxEncoderSpeed);
+        rightSpeedPid.calculate(rightEncoder.getRate() / maxEncoderSpeed);
+
+        model.getSpeedController(TSide.LEFT).set(leftSpeedPid.get());
+        model.getSpeedController(TSide.RIGHT).set(rightSpeedPid.get());
+
+        model.step(loopPeriodSec);
+    }
+
+    private void setGyroMode(Mode mode, double speed, double heading) {
+        this.mode = mode;
+        speedSetpoint = speed;
+        gyroPid.setSetpoint(heading);
+        if (!gyroPid.isEnabled()) {
+            gyroPid.enable();
+        }
+    }
+
+    private void setDriveOnHeadingSpeeds(double gyroAngle) {
+
+        double angleError = gyroPid.getError(gyroAngle);
+
+        double leftSpeed = speedSetpoint;
+        double rightSpeed = speedSetpoint;
+
+        // If the angle is more than 30 degrees, then
+        // rotate to the angle before starting the PID.
+        if (Math.abs(angleError) > 30) {
+
+            gyroPid.reset();
+
+            if (leftSpeed > maxRotationOutput) {
+                leftSpeed = maxRotationOutput;
+            }
+
+            if (angleError < 0) {
+                leftSpeed = -leftSpeed;
+            }
+
+            leftSpeedSetpoint = leftSpeed;
+            rightSpeedSetpoint = -leftSpeed;
+            return;
+        }
+
+        // When steering with the gyroPid, one of the
+        // wheels is slowed proportional to the steering
+        double steering = gyroPid.get();
+
+        if (steering > 0) {
+            rightSpeed = leftSpeed * (1.0 - steering);
+        }
+
+        if (steering < 0) {
+            leftSpeed = rightSpeed * (1.0 + steering);
+        }
+
+        leftSpeedSetpoint = leftSpeed;
+        rightSpeedSetpoint = rightSpeed;
+    }
+
+    private void setRotateToHeadingSpeeds(double gyroAngle) {
+
+        double angleError = gyroPid.getError(gyroAngle);
+
+        double leftSpeed = speedSetpoint;
+
+        // If the angle is more than 20 degrees, then
+        // rotate to the angle before starting the PID.
+        if (Math.abs(angleError) > 20) {
+
+            gyroPid.reset();
+
+            if (angleError < 0) {
+                leftSpeed = -leftSpeed;
+            }
+
+            leftSpeedSetpoint = leftSpeed;
+            rightSpeedSetpoint = -leftSpeed;
+            return;
+        }
+
+        // Both motors are driven by the rotation, which doubles
+        // the gain, so cut the steering to 1/2.
+        double steering = gyroPid.get() / 2;
+
+        leftSpeed = steering;
+
+        if (Math.abs(steering) > speedSetpoint) {
+            leftSpeed = Math.signum(steering) * speedSetpoint;
+        }
+
+        leftSpeedSetpoint = leftSpeed;
+        rightSpeedSetpoint = -leftSpeed;
+    }
+}
@@ -0,0 +1,50 @@
+package com.torontocodingcollective.sim;
+
+import com.torontocodingcollective.sensors.encoder.TEncoder;
+import com.torontocodingcollective.subsystem.TDriveSubsystem.TSide;
+
+/**
+ * TSimEncoder is an encoder on the wheel shaft of one side of a
+ * {@link TSimDriveModel}.
+ * <p>
+ * The encoder counts are whole counts like a real encoder, so the quantization
+ * of the encoder is included in the simulation.
+ */
+public class TSimEncoder extends TEncoder {
+
+    private final TSimDriveModel model;
+    private final TSide          side;
+    private final double         countsPerRevolution;
+
+    /**
+     * Construct a simulated encoder
+     * 
+     * @param model
+     *            the drive model
+     * @param side
+     *            {@link TSide#LEFT} or {@link TSide#RIGHT}
+     * @param countsPerRevolution
+     *            encoder counts for each revolution of the wheel
+     * @param isInverted
+     *            Inversion orientation of this encoder {@code true} if inverted,
+     *            {@code false} otherwise.
+     */
+    public TSimEncoder(TSimDriveModel model, TSide side, double countsPerRevolution, boolean isInverted) {
+        super(isInverted);
+        this.model = model;
+        this.side = side;
+        this.countsPerRevolution = countsPerRevolution;
+    }
+
+    @Override
+    public int get() {
+        return super.get(
+                (int) Math.floor(model.getWheelRotation(side) / (2 * Math.PI) * countsPerRevolution));
+    }
+
+    @Override
+    public double getRate() {
+        return super.getRate(model.getWheelRate(side) / (2 * Math.PI) * countsPerRevolution);
+    }
+
+}
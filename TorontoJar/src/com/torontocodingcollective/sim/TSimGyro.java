@@ -0,0 +1,57 @@
+package com.torontocodingcollective.sim;
+
+import com.torontocodingcollective.sensors.gyro.TGyro;
+
+/**
+ * TSimGyro is a yaw gyro mounted on the chassis of a {@link TSimDriveModel}.
+ * <p>
+ * Like the FRC gyros, the angle increases when the robot turns clockwise.
+ * <p>
+ * A constant drift rate can be set to check that the control code tolerates a
+ * gyro that drifts over a match.
+ */
+public class TSimGyro extends TGyro {
+
+    private final TSimDriveModel model;
+
+    private double               driftRate = 0;
+
+    /**
+     * Construct a simulated gyro
+     * 
+     * @param model
+     *            the drive model
+     * @param isInverted
+     *            {@code true} if the gyro is inverted {@code false} otherwise.
+     */
+    public TSimGyro(TSimDriveModel model, boolean isInverted) {
+        super(isInverted);
+        this.model = model;
+    }
+
+    @Override
+    public void calibrate() {
+        super.setGyroAngle(0);
+    }
+
+    @Override
+    public double getAngle() {
+        return super.getAngle(-Math.toDegrees(model.getHeading()) + driftRate * model.getTime());
+    }
+
+    @Override
+    public double getRate() {
+        return super.getRate(-Math.toDegrees(model.getAngularVelocity()) + driftRate);
+    }
+
+    /**
+     * Set the drift rate of the gyro
+     * 
+     * @param degreesPerSecond
+     *            drift of the gyro angle
+     */
+    public void setDriftRate(double degreesPerSecond) {
+        this.driftRate = degreesPerSecond;
+    }
+
+}
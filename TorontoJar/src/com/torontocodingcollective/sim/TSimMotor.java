@@ -0,0 +1,102 @@
+package com.torontocodingcollective.sim;
+
+/**
+ * TSimMotor describes a DC motor for the simulation.
+ * <p>
+ * The motor is modelled as a resistance and a back EMF constant calculated from
+ * the published motor curve (stall torque, stall current, free speed and free
+ * current at 12V). The torque is proportional to the current, so the torque
+ * falls linearly from the stall torque at zero speed to zero at the free speed.
+ * <p>
+ * Motors for the most common FRC drive motors are provided, see
+ * {@link #CIM}, {@link #MINI_CIM} and {@link #PRO_775}.
+ */
+public class TSimMotor {
+
+    /** CIM motor */
+    public static final TSimMotor CIM      = new TSimMotor("CIM", 2.42, 133, 5310, 2.7, 7.75e-5);
+
+    /** MiniCIM motor */
+    public static final TSimMotor MINI_CIM = new TSimMotor("MiniCIM", 1.41, 89, 5840, 3.0, 5.0e-5);
+
+    /** 775pro motor */
+    public static final TSimMotor PRO_775  = new TSimMotor("775pro", 0.71, 134, 18730, 0.7, 1.0e-5);
+
+    private static final double   NOMINAL_VOLTAGE = 12.0;
+
+    private final String          name;
+
+    private final double          resistance;
+    private final double          torquePerAmp;
+    private final double          voltsPerRadPerSec;
+    private final double          rotorInertia;
+
+    /**
+     * Construct a motor from the published 12V motor curve
+     * 
+     * @param name
+     *            of the motor
+     * @param stallTorque
+     *            in Nm
+     * @param stallCurrent
+     *            in Amps
+     * @param freeSpeedRpm
+     *            free speed in rotations per minute
+     * @param freeCurrent
+     *            current at free speed in Amps
+     * @param rotorInertia
+     *            moment of inertia of the rotor in kg m^2
+     */
+    public TSimMotor(String name, double stallTorque, double stallCurrent, double freeSpeedRpm,
+            double freeCurrent, double rotorInertia) {
+
+        this.name = name;
+        this.resistance = NOMINAL_VOLTAGE / stallCurrent;
+        this.torquePerAmp = stallTorque / stallCurrent;
+        this.voltsPerRadPerSec = (NOMINAL_VOLTAGE - resistance * freeCurrent)
+                / (freeSpeedRpm * 2 * Math.PI / 60.0);
+        this.rotorInertia = rotorInertia;
+    }
+
+    /**
+     * Get the current drawn by the motor
+     * 
+     * @param voltage
+     *            applied to the motor
+     * @param speed
+     *            of the motor shaft in rad/sec
+     * @return current in Amps
+     */
+    public double getCurrent(double voltage, double speed) {
+        return (voltage - speed * voltsPerRadPerSec) / resistance;
+    }
+
+    /**
+     * Get the name of this motor
+     * 
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the moment of inertia of the rotor
+     * 
+     * @return inertia in kg m^2
+     */
+    public double getRotorInertia() {
+        return rotorInertia;
+    }
+
+    /**
+     * Get the torque produced by the motor
+     * 
+     * @param current
+     *            through the motor in Amps
+     * @return torque in Nm
+     */
+    public double getTorque(double current) {
+        return current * torquePerAmp;
+    }
+}
@@ -0,0 +1,61 @@
+package com.torontocodingcollective.sim;
+
+import com.torontocodingcollective.speedcontroller.TSpeedController;
+
+/**
+ * TSimSpeedController is a speed controller for one side of a
+ * {@link TSimDriveModel}.
+ * <p>
+ * The speed controller only holds the requested output. The output is applied
+ * to the motors (as a fraction of the simulated battery voltage) the next time
+ * the model is stepped.
+ * <p>
+ * A positive output drives the side of the simulated robot forward. Normally
+ * the simulated speed controllers are not inverted.
+ */
+public class TSimSpeedController extends TSpeedController {
+
+    private double output = 0;
+
+    /**
+     * Construct a simulated speed controller
+     * 
+     * @param isInverted
+     *            {@code true} if the motors are inverted, {@code false} otherwise
+     */
+    public TSimSpeedController(boolean isInverted) {
+        super(isInverted);
+    }
+
+    @Override
+    public double get() {
+
+        double speed = output;
+
+        if (getInverted()) {
+            speed = -speed;
+        }
+        return speed;
+    }
+
+    /**
+     * Get the output applied to the motors
+     * 
+     * @return output in the range -1.0 to 1.0 after the inversion of the
+     *         controller is taken into account
+     */
+    public double getOutput() {
+        return output;
+    }
+
+    @Override
+    public void set(double speed) {
+
+        if (getInverted()) {
+            speed = -speed;
+        }
+
+        output = Math.max(-1.0, Math.min(1.0, speed));
+    }
+
+}
@@ -1,10 +1,20 @@
 package com.torontocodingcollective.speedcontroller;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ctre.phoenix.motorcontrol.ControlFrame;
 import com.ctre.phoenix.motorcontrol.ControlMode;
+import com.ctre.phoenix.motorcontrol.StatusFrame;
+import com.ctre.phoenix.motorcontrol.StatusFrameEnhanced;
 import com.ctre.phoenix.motorcontrol.can.BaseMotorController;
 import com.ctre.phoenix.motorcontrol.can.TalonSRX;
 import com.ctre.phoenix.motorcontrol.can.VictorSPX;
 import com.torontocodingcollective.TConst;
+import com.torontocodingcollective.clock.TClock;
+import com.torontocodingcollective.clock.TFakeClock;
+import com.torontocodingcollective.clock.TSystemClock;
+import com.torontocodingcollective.log.TLogger;
 import com.torontocodingcollective.sensors.encoder.TCanEncoder;
 import com.torontocodingcollective.sensors.encoder.TEncoder;
 
@@ -17,6 +27,21 @@ import com.torontocodingcollective.sensors.encoder.TEncoder;
  * <p>
  * Care should be taken to ensure that the speed controllers are properly
  * connected and are all driving the motors in the same direction.
+ * <p>
+ * A TalonSRX with an attached encoder can run the speed PID on the device
+ * using the Talon closed loop velocity mode (see
+ * {@link #enableVelocityMode(double, double, double)}). The Talon runs the
+ * closed loop every 1ms using the encoder directly, which is faster and uses
+ * less CAN traffic than reading the encoder and setting the output from the
+ * roboRio every loop.
+ * <p>
+ * The Phoenix library sends the control frame to the device every control frame
+ * period (see {@link #setControlFramePeriod(int)}) with the last output set,
+ * whether or not the output is set again. To reduce the calls into the Phoenix
+ * library, the output is only set on the device when it changes, or when the
+ * keep alive period expires (see {@link #setKeepAlivePeriod(double)}). The
+ * control and status frame periods can be tuned for the way the speed
+ * controller is used with {@link #configureStatusFrames(TCanStatusFrameUsage)}.
  */
 public class TCanSpeedController extends TSpeedController {
 
@@ -28,9 +53,72 @@ public class TCanSpeedController extends TSpeedController {
         VICTOR_SPX
     }
 
+    public enum TCanStatusFrameUsage {
+
+        /**
+         * The encoder attached to the device is used for feedback. The
+         * encoder status frame is sent every {@value #FAST_STATUS_FRAME_MS}ms.
+         */
+        ENCODER_FEEDBACK,
+        /**
+         * No sensors attached to the device are used. The encoder status
+         * frame is sent every {@value #SLOW_STATUS_FRAME_MS}ms.
+         */
+        OPEN_LOOP
+    }
+
+    /** Default time after which an unchanged output is set on the device again */
+    public static final double        DEFAULT_KEEP_ALIVE_SEC = 0.1;
+
+    /**
+     * Default control frame period, once per robot loop. The keep alive period
+     * must be longer than the control frame period.
+     */
+    public static final int           DEFAULT_CONTROL_FRAME_MS = 20;
+
+    /** Status frame period for feedback used in the control loops */
+    public static final int           FAST_STATUS_FRAME_MS   = 10;
+
+    /** Status frame period for values only used for monitoring */
+    public static final int           SLOW_STATUS_FRAME_MS   = 100;
+
+    /** Status frame period for values that are not used */
+    public static final int           UNUSED_STATUS_FRAME_MS = 255;
+
+    // Talon closed loop units
+    private static final int          VELOCITY_SLOT        = 0;
+    private static final int          PRIMARY_PID          = 0;
+    private static final int          NO_TIMEOUT           = 0;
+    private static final double       TALON_FULL_OUTPUT    = 1023;
+    private static final double       TALON_VELOCITY_SEC   = 0.1;
+    private static final double       TALON_LOOP_SEC       = 0.001;
+    private static final double       ROBOT_LOOP_SEC       = 0.02;
+
     private final BaseMotorController canSpeedController;
+    private final List<BaseMotorController> followerLs     = new ArrayList<BaseMotorController>();
+
+    private double                    speedSetpoint        = 0;
+
+    // Last output set on the device
+    private ControlMode               lastControlMode      = null;
+    private double                    lastControlValue     = 0;
+    private long                      lastControlNanos     = 0;
+    private long                      keepAliveNanos       = (long) (DEFAULT_KEEP_ALIVE_SEC * TClock.NANOS_PER_SECOND);
+
+    private TClock                    clock                = TSystemClock.getInstance();
 
-    private double                    speedSetpoint = 0;
+    private volatile long             setCallsSent         = 0;
+    private volatile long             setCallsSkipped      = 0;
+
+    private boolean                   velocityModeEnabled  = false;
+
+    // Velocity in Talon units (counts/100ms) for a normalized speed of 1.0
+    private double                    velocityScale        = 0;
+
+    // Velocity mode gains last configured on the Talon
+    private double                    velocityKF           = 0;
+    private double                    velocityKP           = 0;
+    private double                    velocityKI           = 0;
 
     /**
      * CAN Speed Controller
@@ -86,6 +174,7 @@ public class TCanSpeedController extends TSpeedController {
         for (int followerCanAddress : followerCanAddresses) {
             BaseMotorController follower = newController(controllerType, followerCanAddress);
             follower.follow(canSpeedController);
+            followerLs.add(follower);
         }
     }
 
@@ -147,6 +236,75 @@ public class TCanSpeedController extends TSpeedController {
 
         BaseMotorController follower = newController(followerControllerType, followerCanAddress);
         follower.follow(canSpeedController);
+        followerLs.add(follower);
+    }
+
+    /**
+     * Configure the control and status frame periods of the devices for the way
+     * the speed controller is used.
+     * <p>
+     * The control frame is sent every {@value #DEFAULT_CONTROL_FRAME_MS}ms, once
+     * per robot loop. See
+     * {@link #configureStatusFrames(TCanStatusFrameUsage, int)}.
+     * 
+     * @param usage
+     *            a {@link TCanStatusFrameUsage}
+     */
+    public void configureStatusFrames(TCanStatusFrameUsage usage) {
+        configureStatusFrames(usage, DEFAULT_CONTROL_FRAME_MS);
+    }
+
+    /**
+     * Configure the control and status frame periods of the devices for the way
+     * the speed controller is used.
+     * <p>
+     * The general status frame (output and faults) of the primary device is left
+     * at the default period. Status frames for features that are not used by the
+     * TorontoFramework (motion profiles, secondary sensors, analog and pulse width
+     * inputs) are slowed to {@value #UNUSED_STATUS_FRAME_MS}ms. Follower devices
+     * only report their faults every {@value #SLOW_STATUS_FRAME_MS}ms.
+     * 
+     * @param usage
+     *            a {@link TCanStatusFrameUsage}
+     * @param controlFramePeriodMs
+     *            the period of the control frame sent to the primary device. Use
+     *            the period at which the output is set (ie. the control thread
+     *            period). The period must be shorter than the keep alive period
+     *            {@see #setKeepAlivePeriod(double)}.
+     */
+    public void configureStatusFrames(TCanStatusFrameUsage usage, int controlFramePeriodMs) {
+
+        setControlFramePeriod(controlFramePeriodMs);
+
+        // Encoder position and velocity
+        if (usage == TCanStatusFrameUsage.ENCODER_FEEDBACK) {
+            setStatusFramePeriod(StatusFrame.Status_2_Feedback0, FAST_STATUS_FRAME_MS);
+        } else {
+            setStatusFramePeriod(StatusFrame.Status_2_Feedback0, SLOW_STATUS_FRAME_MS);
+        }
+
+        // Closed loop error is only used for monitoring velocity mode
+        setStatusFramePeriod(StatusFrame.Status_13_Base_PIDF0, SLOW_STATUS_FRAME_MS);
+
+        // Battery voltage and temperature
+        setStatusFramePeriod(StatusFrame.Status_4_AinTempVbat, SLOW_STATUS_FRAME_MS);
+
+        // Unused features
+        setStatusFramePeriod(StatusFrame.Status_10_MotionMagic, UNUSED_STATUS_FRAME_MS);
+        setStatusFramePeriod(StatusFrame.Status_12_Feedback1, UNUSED_STATUS_FRAME_MS);
+        setStatusFramePeriod(StatusFrame.Status_14_Turn_PIDF1, UNUSED_STATUS_FRAME_MS);
+
+        if (canSpeedController instanceof TalonSRX) {
+            TalonSRX talonSRX = (TalonSRX) canSpeedController;
+            talonSRX.setStatusFramePeriod(StatusFrameEnhanced.Status_3_Quadrature, UNUSED_STATUS_FRAME_MS, NO_TIMEOUT);
+            talonSRX.setStatusFramePeriod(StatusFrameEnhanced.Status_8_PulseWidth, UNUSED_STATUS_FRAME_MS, NO_TIMEOUT);
+        }
+
+        // Followers only need to report faults
+        for (BaseMotorController follower : followerLs) {
+            follower.setStatusFramePeriod(StatusFrame.Status_1_General, SLOW_STATUS_FRAME_MS, NO_TIMEOUT);
+            follower.setStatusFramePeriod(StatusFrame.Status_2_Feedback0, UNUSED_STATUS_FRAME_MS, NO_TIMEOUT);
+        }
     }
 
     /**
@@ -163,6 +321,82 @@ public class TCanSpeedController extends TSpeedController {
         return speedSetpoint;
     }
 
+    @Override
+    public void disableVelocityMode() {
+
+        if (!velocityModeEnabled) {
+            return;
+        }
+
+        velocityModeEnabled = false;
+
+        // Return to open loop output at the current setpoint
+        set(speedSetpoint);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The TSpeedPID output is the setpoint plus the proportional and integral
+     * terms. On the Talon, the setpoint term is the feed forward gain kF, and
+     * the integral gain is scaled from the 20ms robot loop to the 1ms Talon loop.
+     * The integral accumulator is limited to full output to prevent wind-up.
+     * <p>
+     * All of the gains are configured when velocity mode is enabled. While
+     * velocity mode is enabled, only the gains that changed are configured so
+     * that a gain schedule sends as few configuration frames as possible.
+     */
+    @Override
+    public void enableVelocityMode(double kP, double kI, double maxEncoderSpeed) {
+
+        if (!(canSpeedController instanceof TalonSRX)) {
+            super.enableVelocityMode(kP, kI, maxEncoderSpeed);
+            return;
+        }
+
+        if (maxEncoderSpeed <= 0) {
+            TLogger.getInstance().log(this,
+                    "Velocity mode requires a max encoder speed > 0, not {}. Velocity mode not enabled",
+                    maxEncoderSpeed);
+            return;
+        }
+
+        velocityScale = maxEncoderSpeed * TALON_VELOCITY_SEC;
+
+        // Convert a normalized error into Talon output units
+        double gainScale = TALON_FULL_OUTPUT / velocityScale;
+
+        double talonKI = kI * gainScale * TALON_LOOP_SEC / ROBOT_LOOP_SEC;
+
+        double talonKP = kP * gainScale;
+
+        boolean configureAll = !velocityModeEnabled;
+
+        if (configureAll || gainScale != velocityKF) {
+            canSpeedController.config_kF(VELOCITY_SLOT, gainScale, NO_TIMEOUT);
+            velocityKF = gainScale;
+        }
+
+        if (configureAll || talonKP != velocityKP) {
+            canSpeedController.config_kP(VELOCITY_SLOT, talonKP, NO_TIMEOUT);
+            velocityKP = talonKP;
+        }
+
+        if (configureAll || talonKI != velocityKI) {
+            canSpeedController.config_kI(VELOCITY_SLOT, talonKI, NO_TIMEOUT);
+            canSpeedController.configMaxIntegralAccumulator(VELOCITY_SLOT,
+                    talonKI == 0 ? 0 : TALON_FULL_OUTPUT / talonKI, NO_TIMEOUT);
+            velocityKI = talonKI;
+        }
+
+        if (configureAll) {
+            canSpeedController.config_kD(VELOCITY_SLOT, 0, NO_TIMEOUT);
+            canSpeedController.selectProfileSlot(VELOCITY_SLOT, PRIMARY_PID);
+            canSpeedController.setIntegralAccumulator(0, PRIMARY_PID, NO_TIMEOUT);
+            velocityModeEnabled = true;
+        }
+    }
+
     /**
      * Return an encoder with the same inversion setting as the motor
      * 
@@ -177,6 +411,55 @@ public class TCanSpeedController extends TSpeedController {
         return null;
     }
 
+    /**
+     * Get the number of times the output was set on the device.
+     * <p>
+     * NOTE: This is the number of calls to the Phoenix set routine, not the
+     * number of CAN frames. The Phoenix library sends the control frame every
+     * control frame period whether or not the output is set.
+     * 
+     * @return count of outputs set on the device
+     */
+    public long getSetCallsSent() {
+        return setCallsSent;
+    }
+
+    /**
+     * Get the number of calls to {@link #set(double)} that did not set the
+     * output on the device because the output did not change
+     * 
+     * @return count of skipped set calls
+     */
+    public long getSetCallsSkipped() {
+        return setCallsSkipped;
+    }
+
+    @Override
+    public boolean isVelocityModeEnabled() {
+        return velocityModeEnabled;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Velocity mode is supported on a TalonSRX when the encoder is a
+     * {@link TCanEncoder} attached to the same TalonSRX with the same inversion
+     * as the motor.
+     * <p>
+     * NOTE: The encoder must count up when the Talon drives a positive output
+     * (see the TalonSRX sensor phase).
+     */
+    @Override
+    public boolean isVelocityModeSupported(TEncoder encoder) {
+
+        if (!(encoder instanceof TCanEncoder)) {
+            return false;
+        }
+
+        return ((TCanEncoder) encoder).getTalonSRX() == canSpeedController
+                && encoder.isInverted() == getInverted();
+    }
+
     /**
      * Get a new controller of the appropriate type at the given CAN address.
      * 
@@ -206,7 +489,86 @@ public class TCanSpeedController extends TSpeedController {
         if (getInverted()) {
             speed = -speed;
         }
-        canSpeedController.set(ControlMode.PercentOutput, speed);
+
+        // In velocity mode, the speed is a normalized speed setpoint
+        if (velocityModeEnabled) {
+            setOutput(ControlMode.Velocity, speed * velocityScale);
+        } else {
+            setOutput(ControlMode.PercentOutput, speed);
+        }
+    }
+
+    /**
+     * Set the time source used to measure the keep alive period.
+     * <p>
+     * By default the {@link TSystemClock} is used. A {@link TFakeClock} can be used
+     * to test the keep alive off the robot.
+     *
+     * @param clock
+     *            the time source
+     */
+    public void setClock(TClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Set the period of the control frame sent to the primary device.
+     * <p>
+     * The Phoenix library sends the last output set on the device every period
+     * (default 10ms).
+     * 
+     * @param periodMs
+     *            period in milliseconds
+     */
+    public void setControlFramePeriod(int periodMs) {
+        canSpeedController.setControlFramePeriod(ControlFrame.Control_3_General, periodMs);
+    }
+
+    /**
+     * Set the time after which an unchanged output is set on the device again.
+     * <p>
+     * An output that has not changed is not set on the device until this period
+     * expires. The output is still sent to the device in every control frame.
+     * The keep alive period must be longer than the control frame period
+     * {@see #setControlFramePeriod(int)}.
+     * 
+     * @param keepAliveSec
+     *            time in seconds. A value of 0 sets every output on the device.
+     */
+    public void setKeepAlivePeriod(double keepAliveSec) {
+        keepAliveNanos = (long) (Math.max(keepAliveSec, 0) * TClock.NANOS_PER_SECOND);
+    }
+
+    /**
+     * Set the status frame period on the primary device.
+     * 
+     * @param frame
+     *            a {@link StatusFrame}
+     * @param periodMs
+     *            period in milliseconds
+     */
+    public void setStatusFramePeriod(StatusFrame frame, int periodMs) {
+        canSpeedController.setStatusFramePeriod(frame, periodMs, NO_TIMEOUT);
+    }
+
+    private void setOutput(ControlMode controlMode, double value) {
+
+        long now = clock.getNanos();
+
+        // Do not set an unchanged output until the keep alive period expires
+        if (controlMode == lastControlMode && value == lastControlValue
+                && now - lastControlNanos < keepAliveNanos) {
+            setCallsSkipped++;
+            return;
+        }
+
+        canSpeedController.set(controlMode, value);
+
+        lastControlMode = controlMode;
+        lastControlValue = value;
+        lastControlNanos = now;
+
+        setCallsSent++;
     }
 
 }
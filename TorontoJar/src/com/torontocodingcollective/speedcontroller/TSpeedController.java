@@ -1,6 +1,7 @@
 package com.torontocodingcollective.speedcontroller;
 
 import com.torontocodingcollective.TConst;
+import com.torontocodingcollective.log.TLogger;
 import com.torontocodingcollective.pid.TSpeedPID;
 import com.torontocodingcollective.sensors.encoder.TEncoder;
 
@@ -64,8 +65,64 @@ public abstract class TSpeedController implements SpeedController {
      *          not support an attached encoder
      */
     public TEncoder getEncoder() {
-        System.out.println("GetEncoder is not supported for " + this.getClass().getName());
+        TLogger.getInstance().log(this, "GetEncoder is not supported for {}", this.getClass().getName());
         return null;
     }
 
+    /**
+     * Disable the closed loop velocity mode and return to open loop control.
+     * <p>
+     * NOTE: If velocity mode is not enabled, this routine has no effect.
+     */
+    public void disableVelocityMode() {
+    }
+
+    /**
+     * Enable closed loop velocity mode on the speed controller device.
+     * <p>
+     * In velocity mode, the speed PID runs on the speed controller device and the
+     * value passed to {@link #set(double)} is the speed setpoint normalized to the
+     * maxEncoderSpeed (in the range -1.0 to 1.0) instead of the motor output.
+     * <p>
+     * The gains are the same gains used by the {@link TSpeedPID} and are converted
+     * to the units of the device. Calling this routine when velocity mode is
+     * already enabled updates the gains.
+     * <p>
+     * NOTE: By default, velocity mode is not supported. Use
+     * {@link #isVelocityModeSupported(TEncoder)} to check for support.
+     * 
+     * @param kP
+     *            proportional gain of the {@link TSpeedPID}
+     * @param kI
+     *            integral gain of the {@link TSpeedPID}
+     * @param maxEncoderSpeed
+     *            the encoder speed (in counts/second) when the normalized speed
+     *            is 1.0
+     */
+    public void enableVelocityMode(double kP, double kI, double maxEncoderSpeed) {
+        TLogger.getInstance().log(this, "Velocity mode is not supported for {}", this.getClass().getName());
+    }
+
+    /**
+     * Indicates whether closed loop velocity mode is enabled
+     * 
+     * @return {@code true} if velocity mode is enabled, {@code false} otherwise
+     */
+    public boolean isVelocityModeEnabled() {
+        return false;
+    }
+
+    /**
+     * Indicates whether this speed controller can run a closed loop velocity mode
+     * using the given encoder as feedback.
+     * 
+     * @param encoder
+     *            used for the speed feedback
+     * @return {@code true} if velocity mode is supported, {@code false}
+     *         otherwise. By default, velocity mode is not supported.
+     */
+    public boolean isVelocityModeSupported(TEncoder encoder) {
+        return false;
+    }
+
 }
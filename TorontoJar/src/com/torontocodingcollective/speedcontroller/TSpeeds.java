@@ -1,5 +1,11 @@
 package com.torontocodingcollective.speedcontroller;
 
+/**
+ * TSpeeds holds the left and right speeds of a differential drive.
+ * <p>
+ * TSpeeds is mutable so that a single instance can be reused every loop
+ * without creating garbage.
+ */
 public class TSpeeds {
 
     public double left  = 0.0;
@@ -9,7 +15,19 @@ public class TSpeeds {
     }
 
     public TSpeeds(double leftSpeed, double rightSpeed) {
+        set(leftSpeed, rightSpeed);
+    }
+
+    /**
+     * Set the left and right speeds
+     * 
+     * @param leftSpeed
+     * @param rightSpeed
+     * @return this TSpeeds object
+     */
+    public TSpeeds set(double leftSpeed, double rightSpeed) {
         this.left = leftSpeed;
         this.right = rightSpeed;
+        return this;
     }
 }
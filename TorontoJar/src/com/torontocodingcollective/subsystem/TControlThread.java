@@ -0,0 +1,169 @@
+package com.torontocodingcollective.subsystem;
+
+import com.torontocodingcollective.log.TLogger;
+
+import edu.wpi.first.wpilibj.Notifier;
+
+/**
+ * TControlThread runs a control step at a fixed period on its own thread.
+ * <p>
+ * The control step is run by a wpilib {@link Notifier} and is independent of
+ * the 20ms IterativeRobot loop, so control loops (PIDs) can run faster than
+ * the main loop and are not delayed when the main loop overruns.
+ * <p>
+ * The control step must not block and should only exchange values with the
+ * main loop through {@code volatile} fields.
+ */
+public class TControlThread {
+
+    /** Default control period of 5ms (200Hz) */
+    public static final double DEFAULT_PERIOD_SEC = 0.005;
+
+    private final Runnable     controlStep;
+    private final Notifier     notifier;
+
+    private volatile boolean   running            = false;
+    private volatile double    periodSec          = DEFAULT_PERIOD_SEC;
+
+    private volatile long      stepCount          = 0;
+    private volatile long      overrunCount       = 0;
+    private volatile long      maxStepNanos       = 0;
+
+    private long               periodNanos        = 0;
+    private boolean            errorReported      = false;
+
+    /**
+     * Construct a control thread for the given control step.
+     * <p>
+     * The thread is not started until {@link #start(double)} is called.
+     *
+     * @param controlStep
+     *            routine to run each control period
+     */
+    public TControlThread(Runnable controlStep) {
+        this.controlStep = controlStep;
+        this.notifier = new Notifier(this::runControlStep);
+    }
+
+    /**
+     * Get the number of control steps that took longer than the control period
+     *
+     * @return overrun count since the thread was started
+     */
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    /**
+     * Get the longest control step
+     *
+     * @return duration of the longest control step in nanoseconds since the
+     *         thread was started
+     */
+    public long getMaxStepNanos() {
+        return maxStepNanos;
+    }
+
+    /**
+     * Get the control period
+     *
+     * @return period in seconds
+     */
+    public double getPeriod() {
+        return periodSec;
+    }
+
+    /**
+     * Get the number of control steps run since the thread was started
+     *
+     * @return step count
+     */
+    public long getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * Indicates whether the control thread is running
+     *
+     * @return {@code true} if running, {@code false} otherwise
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void runControlStep() {
+
+        long startNanos = System.nanoTime();
+
+        try {
+            controlStep.run();
+        } catch (RuntimeException e) {
+            // Keep the control thread alive, but only report the
+            // first error so the console is not flooded.
+            if (!errorReported) {
+                TLogger.getInstance().log(this, "Exception in TControlThread control step ({})", e);
+                errorReported = true;
+            }
+        }
+
+        long stepNanos = System.nanoTime() - startNanos;
+
+        if (stepNanos > maxStepNanos) {
+            maxStepNanos = stepNanos;
+        }
+
+        if (stepNanos > periodNanos) {
+            overrunCount++;
+        }
+
+        stepCount++;
+    }
+
+    /**
+     * Start the control thread at the given period.
+     * <p>
+     * If the thread is already running, the period is changed.
+     *
+     * @param periodSec
+     *            the control period in seconds (0.005 for 200Hz). Values less
+     *            than or equal to zero are overridden to
+     *            {@value #DEFAULT_PERIOD_SEC}
+     */
+    public void start(double periodSec) {
+
+        if (periodSec <= 0) {
+            TLogger.getInstance().log(this, "Invalid control thread period {}. Overriding to {}",
+                    periodSec, DEFAULT_PERIOD_SEC);
+            periodSec = DEFAULT_PERIOD_SEC;
+        }
+
+        this.periodSec = periodSec;
+        this.periodNanos = (long) (periodSec * 1000000000L);
+
+        if (running) {
+            notifier.stop();
+        } else {
+            stepCount = 0;
+            overrunCount = 0;
+            maxStepNanos = 0;
+        }
+
+        running = true;
+        notifier.startPeriodic(periodSec);
+    }
+
+    /**
+     * Stop the control thread.
+     * <p>
+     * NOTE: If the control thread is not running, this routine has no effect.
+     */
+    public void stop() {
+
+        if (!running) {
+            return;
+        }
+
+        notifier.stop();
+        running = false;
+    }
+}
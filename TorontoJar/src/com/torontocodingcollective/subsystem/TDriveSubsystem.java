@@ -1,12 +1,19 @@
 package com.torontocodingcollective.subsystem;
 
 import com.torontocodingcollective.TUtil;
+import com.torontocodingcollective.clock.TClock;
+import com.torontocodingcollective.clock.TDeltaTimer;
+import com.torontocodingcollective.log.TLogger;
+import com.torontocodingcollective.pid.TGainSchedule;
+import com.torontocodingcollective.pid.TPidDashboard;
 import com.torontocodingcollective.pid.TSpeedPID;
+import com.torontocodingcollective.sensors.TSensorSnapshot;
 import com.torontocodingcollective.sensors.encoder.TEncoder;
 import com.torontocodingcollective.speedcontroller.TSpeedController;
 import com.torontocodingcollective.speedcontroller.TSpeeds;
-
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import com.torontocodingcollective.telemetry.TTelemetry;
+import com.torontocodingcollective.telemetry.TTelemetryBoolean;
+import com.torontocodingcollective.telemetry.TTelemetryNumber;
 
 /**
  * DriveSubsystem
@@ -27,10 +34,79 @@ public abstract class TDriveSubsystem extends TSubsystem {
     private final TSpeedPID          leftSpeedPid;
     private final TSpeedPID          rightSpeedPid;
 
-    private double                   maxEncoderSpeed      = 1.0;
+    private volatile double          maxEncoderSpeed      = 1.0;
     private double                   encoderCountsPerInch = 0;
 
-    boolean                          speedPidsEnabled     = false;
+    // Motion profile limits used by the distance commands
+    private double                   maxAcceleration      = 0;
+    private double                   maxJerk              = 0;
+
+    volatile boolean                 speedPidsEnabled     = false;
+
+    // Speed PIDs run on the speed controllers (velocity mode) when supported
+    private boolean                  velocityModeAllowed  = true;
+    private volatile boolean         velocityModeEnabled  = false;
+    private double                   velocityModeKP       = 0;
+    private double                   velocityModeKI       = 0;
+    private double                   velocityModeMaxSpeed = 0;
+    private double                   velocityModeKPScale  = 1.0;
+    private double                   velocityModeKIScale  = 1.0;
+
+    // The scheduled velocity mode gain scales are sent to the speed
+    // controllers in steps of this size so that a gain schedule that
+    // changes with the speed does not send new gains every control step.
+    private static final double      VELOCITY_MODE_SCALE_STEP = 0.05;
+
+    // Gain schedule for the speed PIDs by gear and measured speed
+    private volatile int             gear                 = 0;
+    private volatile TGainSchedule   speedPidSchedule     = null;
+
+    // Only used by the control step
+    private double                   speedKPScale         = 1.0;
+    private double                   speedKIScale         = 1.0;
+
+    // Speed setpoints handed off to the control step.
+    private volatile double          leftSpeedSetpoint    = 0;
+    private volatile double          rightSpeedSetpoint   = 0;
+    private volatile double          leftAccelSetpoint    = 0;
+    private volatile double          rightAccelSetpoint   = 0;
+
+    // Last values written by the control step when running on the
+    // control thread. NaN forces the next write.
+    private double                   leftSpeedOutput      = Double.NaN;
+    private double                   rightSpeedOutput     = Double.NaN;
+    private long                     lastOutputNanos      = 0;
+    private double                   leftPidSetpoint      = Double.NaN;
+    private double                   rightPidSetpoint     = Double.NaN;
+
+    // Only used by the control step
+    private final TSpeeds            controlSpeeds        = new TSpeeds();
+
+    private TControlThread           controlThread        = null;
+
+    protected final TSensorSnapshot  sensorSnapshot       = TSensorSnapshot.getInstance();
+
+    // SmartDashboard values, only published when they change
+    private final TTelemetry         telemetry            = TTelemetry.getInstance();
+
+    private final TTelemetryNumber   leftEncDistTelemetry     = telemetry.addNumber("L Enc Dist");
+    private final TTelemetryNumber   leftEncSpeedTelemetry    = telemetry.addNumber("L Enc Speed");
+    private final TTelemetryNumber   rightEncDistTelemetry    = telemetry.addNumber("R Enc Dist");
+    private final TTelemetryNumber   rightEncSpeedTelemetry   = telemetry.addNumber("R Enc Speed");
+    private final TTelemetryNumber   avgEncDistTelemetry      = telemetry.addNumber("AvgEnc Dist");
+    private final TTelemetryNumber   avgEncSpeedTelemetry     = telemetry.addNumber("AvgEnc Speed");
+    private final TTelemetryNumber   distInchesTelemetry      = telemetry.addNumber("Dist Inches");
+    private final TTelemetryBoolean  speedPidsTelemetry       = telemetry.addBoolean("Speed PIDs Active");
+
+    private final TTelemetryNumber   leftOutputTelemetry      = telemetry.addNumber("Left Output");
+    private final TTelemetryNumber   rightOutputTelemetry     = telemetry.addNumber("Right Output");
+
+    private final TTelemetryBoolean  controlThreadTelemetry   = telemetry.addBoolean("Control Thread");
+    private final TTelemetryNumber   controlOverrunsTelemetry = telemetry.addNumber("Control Overruns", 0, 0.5);
+    private final TTelemetryNumber   controlMaxMsTelemetry    = telemetry.addNumber("Control Max ms", 0.01, 0.5);
+
+    // The PIDs are only put on the SmartDashboard once
+    private boolean                  speedPidDataPut      = false;
 
     /**
      * Drive subsystem with left/right drive.
@@ -86,6 +162,10 @@ public abstract class TDriveSubsystem extends TSubsystem {
         this.leftEncoder = leftEncoder;
         this.rightEncoder = rightEncoder;
 
+        // Read the encoders once at the start of each loop
+        sensorSnapshot.add(leftEncoder);
+        sensorSnapshot.add(rightEncoder);
+
         this.encoderCountsPerInch = encoderCountsPerInch;
 
         leftSpeedPid = new TSpeedPID(kP, kI);
@@ -106,9 +186,16 @@ public abstract class TDriveSubsystem extends TSubsystem {
     public void disableSpeedPids() {
 
         if (speedPidsEnabled) {
+            speedPidsEnabled = false;
             leftSpeedPid.disable();
             rightSpeedPid.disable();
-            speedPidsEnabled = false;
+            clearControlOutputs();
+
+            if (velocityModeEnabled) {
+                velocityModeEnabled = false;
+                leftSpeedController.disableVelocityMode();
+                rightSpeedController.disableVelocityMode();
+            }
         }
     }
 
@@ -141,10 +228,93 @@ public abstract class TDriveSubsystem extends TSubsystem {
         if (!speedPidsEnabled) {
             leftSpeedPid.enable();
             rightSpeedPid.enable();
+            clearControlOutputs();
+
+            // Run the speed PIDs on the speed controllers if they
+            // support velocity mode with these encoders. The speed
+            // controllers only support the default feed forward.
+            if (velocityModeAllowed
+                    && isDefaultFeedForward()
+                    && leftSpeedController.isVelocityModeSupported(leftEncoder)
+                    && rightSpeedController.isVelocityModeSupported(rightEncoder)) {
+                updateVelocityModeGains(true);
+                velocityModeEnabled = true;
+            }
+
             speedPidsEnabled = true;
         }
     }
 
+    /**
+     * Indicates whether the speed PIDs use the default feed forward model where
+     * the setpoint is used as the feed forward
+     * 
+     * @return {@code true} if kS = 0, kV = 1.0 and kA = 0, {@code false}
+     *         otherwise
+     */
+    private boolean isDefaultFeedForward() {
+        return leftSpeedPid.getKS() == 0 && leftSpeedPid.getKV() == 1.0 && leftSpeedPid.getKA() == 0;
+    }
+
+    /**
+     * Clear the last outputs written by the control step so that the next control
+     * step writes the outputs and setpoints.
+     */
+    private void clearControlOutputs() {
+        leftSpeedOutput = Double.NaN;
+        rightSpeedOutput = Double.NaN;
+        leftPidSetpoint = Double.NaN;
+        rightPidSetpoint = Double.NaN;
+    }
+
+    /**
+     * Disable the control thread and return the speed control to the main robot
+     * loop.
+     * <p>
+     * After this call, the PIDs are calculated in {@link #updatePeriodic()}.
+     * <p>
+     * NOTE: If the control thread is not enabled, this routine has no effect.
+     */
+    public void disableControlThread() {
+
+        if (controlThread == null || !controlThread.isRunning()) {
+            return;
+        }
+
+        // Stopping the control thread waits for any running control step to
+        // finish, so after this call the main loop owns the motor outputs.
+        controlThread.stop();
+
+        // Apply the last setpoints from the main loop
+        setSpeed(leftSpeedSetpoint, rightSpeedSetpoint);
+    }
+
+    /**
+     * Enable a dedicated control thread for the speed PIDs (and the gyro PID in
+     * a {@link TGyroDriveSubsystem}).
+     * <p>
+     * When the control thread is enabled, the PID calculations and all of the
+     * speed controller outputs are done on a separate thread at the given period
+     * instead of once per robot loop in {@link #updatePeriodic()}. Commands
+     * continue to call {@link #setSpeed(double, double)}, which only hands the
+     * setpoints to the control thread.
+     * <p>
+     * The SmartDashboard values are still updated in {@link #updatePeriodic()}.
+     *
+     * @param periodSec
+     *            the control period in seconds (ie. 0.005 for 200Hz).
+     */
+    public void enableControlThread(double periodSec) {
+
+        if (controlThread == null) {
+            controlThread = new TControlThread(this::updateControl);
+        }
+
+        clearControlOutputs();
+
+        controlThread.start(periodSec);
+    }
+
     /**
      * Get the distance in inches
      * <p>
@@ -165,6 +335,81 @@ public abstract class TDriveSubsystem extends TSubsystem {
         return TUtil.round(getEncoderDistance() / encoderCountsPerInch, 2);
     }
 
+    /**
+     * Get the encoder counts per inch
+     * {@see #setEncoderCountsPerInch(double)}
+     * 
+     * @return encoder counts per inch or 0 if not set
+     */
+    public double getEncoderCountsPerInch() {
+        return encoderCountsPerInch;
+    }
+
+    /**
+     * Get the maximum encoder speed used to normalize the speed setpoints
+     * {@see #setMaxEncoderSpeed(double)}
+     * 
+     * @return max encoder speed in encoder counts/sec
+     */
+    public double getMaxEncoderSpeed() {
+        return maxEncoderSpeed;
+    }
+
+    /**
+     * Get the maximum speed of the robot in inches/sec.
+     * <p>
+     * The maximum speed corresponds to a speed setpoint of 1.0 when the speed
+     * PIDs are enabled.
+     * 
+     * @return max speed in inches/sec, or 0 if the encoder counts per inch are
+     *         not set
+     */
+    public double getMaxSpeedInches() {
+
+        if (encoderCountsPerInch == 0) {
+            return 0;
+        }
+
+        return maxEncoderSpeed / encoderCountsPerInch;
+    }
+
+    /**
+     * Get the maximum acceleration for motion profiles
+     * {@see #setMotionProfileLimits(double, double)}
+     * 
+     * @return acceleration in inches/sec^2, or 0 if motion profiles are not
+     *         used
+     */
+    public double getMotionProfileMaxAcceleration() {
+        return maxAcceleration;
+    }
+
+    /**
+     * Get the maximum jerk for motion profiles
+     * {@see #setMotionProfileLimits(double, double)}
+     * 
+     * @return jerk in inches/sec^3, or 0 if there is no jerk limit
+     */
+    public double getMotionProfileMaxJerk() {
+        return maxJerk;
+    }
+
+    /** 
+     * Get the encoder on the specified side.
+     * 
+     * @param side {@link TSide#LEFT} or {@link TSide#RIGHT}
+     * @return TEncoder for the specified side or {@code null} if
+     * there is no encoder
+     */
+    public TEncoder getEncoder(TSide side) {
+
+        if (side == null) {
+            return null;
+        }
+
+        return side == TSide.LEFT ? leftEncoder : rightEncoder;
+    }
+
     /** 
      * Get the speed controller on the specified side.
      * <p>
@@ -188,15 +433,73 @@ public abstract class TDriveSubsystem extends TSubsystem {
             return rightSpeedController;
             
         default:
-            System.out.println("Cannot get speed controller on side " + side.toString());
+            TLogger.getInstance().log(this, "Cannot get speed controller on side {}", side);
             return null;
         }
     }
     
+    /**
+     * Indicates whether the speed PIDs are running on the speed controllers in
+     * velocity mode
+     * {@see #setVelocityModeAllowed(boolean)}
+     * 
+     * @return {@code true} if velocity mode is in use, {@code false} otherwise
+     */
+    public boolean isVelocityModeEnabled() {
+        return velocityModeEnabled;
+    }
+
+    /**
+     * Indicates whether the PIDs are running on a dedicated control thread
+     * {@see #enableControlThread(double)}
+     * 
+     * @return {@code true} if the control thread is running, {@code false}
+     *         otherwise
+     */
+    public boolean isControlThreadEnabled() {
+        return controlThread != null && controlThread.isRunning();
+    }
+
+    /**
+     * Get the current gear
+     * 
+     * @return gear used by the gain schedules {@see #setGear(int)}
+     */
+    public int getGear() {
+        return gear;
+    }
+
+    /**
+     * Get the measured speed used by the gain schedules
+     * <p>
+     * The measured speed is the average of the absolute left and right encoder
+     * speeds, so that the speed is measured when rotating on the spot.
+     * 
+     * @param onControlThread
+     *            {@code true} to read the encoders, {@code false} to use the
+     *            {@link TSensorSnapshot} taken at the start of the loop
+     * @return measured speed in encoder counts/sec, or 0 if there are no
+     *         encoders
+     */
+    protected double getScheduleSpeed(boolean onControlThread) {
+
+        if (leftEncoder == null || rightEncoder == null) {
+            return 0;
+        }
+
+        double leftRate = onControlThread ? leftEncoder.getRate() : leftEncoder.getSnapshotRate();
+        double rightRate = onControlThread ? rightEncoder.getRate() : rightEncoder.getSnapshotRate();
+
+        return (Math.abs(leftRate) + Math.abs(rightRate)) / 2.0;
+    }
+
     /**
      * Get the raw distance covered since the last encoder reset
      * <p>
      * The distance returned is the average distance of the left and right encoders.
+     * <p>
+     * The encoder values are read from the {@link TSensorSnapshot} taken at the
+     * start of the loop.
      * 
      * @return average of the left and right distance in counts or -1 if there are
      *         no encoders.
@@ -207,11 +510,14 @@ public abstract class TDriveSubsystem extends TSubsystem {
             return -1;
         }
 
-        return (leftEncoder.get() + rightEncoder.get()) / 2;
+        return (leftEncoder.getSnapshot() + rightEncoder.getSnapshot()) / 2;
     }
 
     /**
      * Get the average speed of the left and right encoders in counts/second
+     * <p>
+     * The encoder values are read from the {@link TSensorSnapshot} taken at the
+     * start of the loop.
      * 
      * @return average of the left and right motor speeds or -1 if there are no
      *         encoders.
@@ -222,7 +528,7 @@ public abstract class TDriveSubsystem extends TSubsystem {
             return -1;
         }
 
-        return (leftEncoder.getRate() + rightEncoder.getRate()) / 2.0d;
+        return (leftEncoder.getSnapshotRate() + rightEncoder.getSnapshotRate()) / 2.0d;
     }
 
     /**
@@ -286,6 +592,44 @@ public abstract class TDriveSubsystem extends TSubsystem {
                 kP, kI, maxEncoderSpeed);
     }
 
+    /**
+     * Initialize the encoders and the speed PID feed forward model for this
+     * drive subsystem.
+     * <p>
+     * See {@link #setEncoders(TEncoder, boolean, TEncoder, boolean, double, double, double, double)}
+     * and {@link #setSpeedFeedForward(double, double, double)}
+     * 
+     * @param leftEncoder
+     * @param leftInverted
+     *            {@code true} if the encoder is inverted, {@code false} otherwise
+     * @param rightEncoder
+     * @param rightInverted
+     *            {@code true} if the encoder is inverted, {@code false} otherwise
+     * @param encoderCountsPerInch
+     * @param kP
+     *            Proportional gain for the motor speed pid.
+     * @param kI
+     *            Integral gain for the motor speed pid.
+     * @param maxEncoderSpeed
+     *            to use to scale the encoder feedback
+     * @param kS
+     *            static friction output
+     * @param kV
+     *            output per unit of normalized speed
+     * @param kA
+     *            output per unit of normalized acceleration
+     */
+    public void setEncoders(TEncoder leftEncoder, boolean leftInverted, 
+            TEncoder rightEncoder, boolean rightInverted,
+            double encoderCountsPerInch, double kP, double kI, double maxEncoderSpeed,
+            double kS, double kV, double kA) {
+
+        setEncoders(leftEncoder, leftInverted, rightEncoder, rightInverted, 
+                encoderCountsPerInch, kP, kI, maxEncoderSpeed);
+
+        setSpeedFeedForward(kS, kV, kA);
+    }
+
     /**
      * Initialize the encoders for this drive subsystem. This method is used when
      * the encoders are attached to a channel that is used by another device and
@@ -314,6 +658,9 @@ public abstract class TDriveSubsystem extends TSubsystem {
         this.leftEncoder = leftEncoder;
         this.rightEncoder = rightEncoder;
 
+        sensorSnapshot.add(leftEncoder);
+        sensorSnapshot.add(rightEncoder);
+
         setEncoderCountsPerInch(encoderCountsPerInch);
 
         // Disable the PIDs if either encoder is null
@@ -330,6 +677,9 @@ public abstract class TDriveSubsystem extends TSubsystem {
      * Set the max encoder speed on the encoders. This routine would be used when
      * there is a gear shifting robot and the max encoder speed changes between the
      * gears.
+     * <p>
+     * In velocity mode, the new speed scale is sent to the speed controllers on
+     * the next control step.
      * 
      * @param rawEncoderSpeed
      */
@@ -361,27 +711,84 @@ public abstract class TDriveSubsystem extends TSubsystem {
         setSpeedPidGain(kP, kI);
     }
 
+    /**
+     * Set the limits used to generate motion profiles for distance commands.
+     * <p>
+     * When an acceleration limit is set, the distance commands accelerate and
+     * decelerate along a motion profile instead of driving at a constant speed
+     * and braking at the distance. Motion profiles require the encoder counts
+     * per inch to be set, and work best with the speed PIDs enabled.
+     * 
+     * @param maxAcceleration
+     *            in inches/sec^2, or 0 to not use motion profiles
+     * @param maxJerk
+     *            in inches/sec^3, or 0 for no jerk limit
+     */
+    public void setMotionProfileLimits(double maxAcceleration, double maxJerk) {
+        this.maxAcceleration = Math.max(0, maxAcceleration);
+        this.maxJerk = Math.max(0, maxJerk);
+    }
+
     /**
      * Set the speeds on the motors. This command will be used to set the setpoint
      * of the controller if the PIDs are enabled, or to set the left and right motor
      * speeds directly if the PIDs are not enabled.
-     * 
+     * <p>
+     * If the control thread is enabled {@see #enableControlThread(double)}, the
+     * setpoints are handed off to the control thread and applied on the next
+     * control step.
+     *
      * @param leftSpeedSetpoint
      * @param rightSpeedSetpoint
      */
     public void setSpeed(double leftSpeedSetpoint, double rightSpeedSetpoint) {
+        setSpeed(leftSpeedSetpoint, rightSpeedSetpoint, 0, 0);
+    }
 
-        if (speedPidsEnabled) {
+    /**
+     * Set the speeds and accelerations on the motors.
+     * <p>
+     * The accelerations are used by the acceleration feed forward of the speed
+     * PIDs {@see #setSpeedFeedForward(double, double, double)} when following a
+     * motion profile or trajectory. If the speed PIDs are not enabled, the
+     * accelerations are ignored.
+     * 
+     * @param leftSpeedSetpoint
+     * @param rightSpeedSetpoint
+     * @param leftAcceleration
+     *            in normalized speed / second
+     * @param rightAcceleration
+     *            in normalized speed / second
+     */
+    public void setSpeed(double leftSpeedSetpoint, double rightSpeedSetpoint, 
+            double leftAcceleration, double rightAcceleration) {
+
+        // Save the setpoints for the control step.
+        this.leftAccelSetpoint = leftAcceleration;
+        this.rightAccelSetpoint = rightAcceleration;
+        this.leftSpeedSetpoint = leftSpeedSetpoint;
+        this.rightSpeedSetpoint = rightSpeedSetpoint;
+
+        // When running on the control thread, all outputs are
+        // written by the control step
+        if (isControlThreadEnabled()) {
+            return;
+        }
+
+        if (speedPidsEnabled && !velocityModeEnabled) {
 
             // If the PIDs are enabled, then only change the setpoint
             // and allow the periodic update to set the speed controller output
             leftSpeedPid.setSetpoint(leftSpeedSetpoint);
             rightSpeedPid.setSetpoint(rightSpeedSetpoint);
+            leftSpeedPid.setSetpointAcceleration(leftAcceleration);
+            rightSpeedPid.setSetpointAcceleration(rightAcceleration);
 
         } else {
 
             // If the speed PIDs are disabled, then drive the motors
-            // with the setpoint.
+            // with the setpoint. In velocity mode, the speed controllers
+            // use the setpoint as a normalized speed setpoint.
             leftSpeedController.set(leftSpeedSetpoint);
             rightSpeedController.set(rightSpeedSetpoint);
 
@@ -400,6 +807,95 @@ public abstract class TDriveSubsystem extends TSubsystem {
         setSpeed(motorSpeeds.left, motorSpeeds.right);
     }
 
+    /**
+     * Set the current gear.
+     * <p>
+     * The gear selects the gains from the gain schedules
+     * {@see #setSpeedPidSchedule(TGainSchedule)}. A robot without a shifter
+     * always uses gear 0.
+     * 
+     * @param gear
+     *            0 for low gear, 1 for high gear
+     */
+    public void setGear(int gear) {
+        this.gear = gear;
+    }
+
+    /**
+     * Set a gain schedule for the speed PIDs.
+     * <p>
+     * Each control step, the speed PID gains are scaled by the schedule for the
+     * current gear {@see #setGear(int)} and the measured speed in encoder
+     * counts/sec {@see #getScheduleSpeed(boolean)}.
+     * 
+     * @param speedPidSchedule
+     *            gain schedule, or {@code null} to use the speed PID gains at all
+     *            gears and speeds
+     */
+    public void setSpeedPidSchedule(TGainSchedule speedPidSchedule) {
+
+        this.speedPidSchedule = speedPidSchedule;
+
+        if (speedPidSchedule == null) {
+            leftSpeedPid.setGainScale(1.0, 1.0);
+            rightSpeedPid.setGainScale(1.0, 1.0);
+        }
+    }
+
+    /**
+     * Set the feed forward model of the speed PIDs.
+     * <p>
+     * The default model (kS = 0, kV = 1.0, kA = 0) uses the speed setpoint as the
+     * feed forward. A characterized model gives a more accurate output for each
+     * speed, so lower PID gains can be used and the robot does not stall at low
+     * speeds.
+     * <p>
+     * NOTE: The speed controllers only support the default model in velocity
+     * mode. If another model is set, the speed PIDs are calculated on the
+     * roboRio. If the speed PIDs are enabled, they are restarted with the new
+     * model.
+     * 
+     * @param kS
+     *            output required to overcome static friction (0 <= kS < 1.0)
+     * @param kV
+     *            output per unit of normalized speed
+     * @param kA
+     *            output per unit of normalized acceleration (normalized speed /
+     *            second)
+     */
+    public void setSpeedFeedForward(double kS, double kV, double kA) {
+
+        leftSpeedPid.setFeedForward(kS, kV, kA);
+        rightSpeedPid.setFeedForward(kS, kV, kA);
+
+        // Restart the speed PIDs so that velocity mode
+        // is only used with the default feed forward
+        if (speedPidsEnabled) {
+            disableSpeedPids();
+            enableSpeedPids();
+            setSpeed(leftSpeedSetpoint, rightSpeedSetpoint, leftAccelSetpoint, rightAccelSetpoint);
+        }
+    }
+
+    /**
+     * Allow the speed PIDs to run on the speed controllers.
+     * <p>
+     * When allowed (the default), enabling the speed PIDs will use the closed
+     * loop velocity mode of the speed controllers if both speed controllers
+     * support it with the drive encoders (ie. TalonSRX devices with the encoders
+     * attached to the Talons). Otherwise the speed PIDs are calculated on the
+     * roboRio.
+     * <p>
+     * NOTE: The change takes effect the next time the speed PIDs are enabled.
+     * 
+     * @param velocityModeAllowed
+     *            {@code true} to allow velocity mode, {@code false} to always
+     *            calculate the speed PIDs on the roboRio
+     */
+    public void setVelocityModeAllowed(boolean velocityModeAllowed) {
+        this.velocityModeAllowed = velocityModeAllowed;
+    }
+
     /**
      * Set the Pid gain for the PID controller and disable the pids if the gain is
      * set to zero.
@@ -417,47 +913,253 @@ public abstract class TDriveSubsystem extends TSubsystem {
         if (kP == 0 && kI == 0) {
             disableSpeedPids();
         }
+
+        // Velocity mode gains are updated on the next control step
     }
 
     public boolean speedPidsEnabled() {
         return speedPidsEnabled;
     }
 
-    @Override
-    public void updatePeriodic() {
+    /**
+     * Update the speed controller outputs.
+     * <p>
+     * This routine calculates the speed PIDs (if enabled) and sets the speed
+     * controller outputs. It is called every loop from {@link #updatePeriodic()},
+     * or at the control thread period if the control thread is enabled
+     * {@see #enableControlThread(double)}.
+     * <p>
+     * Subclasses that override this routine to add control loops must call
+     * {@code super.updateControl()}.
+     */
+    protected void updateControl() {
 
-        // Only update the encoders and pids if there are encoders.
-        if (leftEncoder != null && rightEncoder != null) {
+        boolean onControlThread = isControlThreadEnabled();
+
+        // Scale the speed PID gains for the gear and speed
+        TGainSchedule schedule = speedPidSchedule;
 
-            // Update all of the PIDS
-            if (speedPidsEnabled) {
+        if (speedPidsEnabled && schedule != null) {
 
-                // Speed PID calculations require a normalized rate
-                leftSpeedPid.calculate(leftEncoder.getRate() / maxEncoderSpeed);
-                rightSpeedPid.calculate(rightEncoder.getRate() / maxEncoderSpeed);
+            schedule.calculate(gear, getScheduleSpeed(onControlThread));
+
+            speedKPScale = schedule.getKPScale();
+            speedKIScale = schedule.getKIScale();
+
+            leftSpeedPid.setGainScale(speedKPScale, speedKIScale);
+            rightSpeedPid.setGainScale(speedKPScale, speedKIScale);
+        } else {
+            speedKPScale = 1.0;
+            speedKIScale = 1.0;
+        }
 
-                leftSpeedController.set(leftSpeedPid.get());
-                rightSpeedController.set(rightSpeedPid.get());
+        // In velocity mode, the speed controllers run the speed PIDs
+        // and the setpoints are written to the speed controllers.
+        if (speedPidsEnabled && velocityModeEnabled) {
 
+            // Pick up any gain changes from the SmartDashboard
+            updateVelocityModeGains(false);
+
+            if (onControlThread) {
+                writeChangedSpeeds();
             }
 
-            // Update all SmartDashboard values
-            SmartDashboard.putNumber("L Enc Dist", leftEncoder.get());
-            SmartDashboard.putNumber("L Enc Speed", leftEncoder.getRate());
-            SmartDashboard.putNumber("R Enc Dist", rightEncoder.get());
-            SmartDashboard.putNumber("R Enc Speed", rightEncoder.getRate());
-            SmartDashboard.putNumber("AvgEnc Dist", getEncoderDistance());
-            SmartDashboard.putNumber("AvgEnc Speed", getEncoderSpeed());
-            SmartDashboard.putNumber("Dist Inches", getDistanceInches());
+            return;
+        }
+
+        // Only update the pids if there are encoders.
+        if (speedPidsEnabled && leftEncoder != null && rightEncoder != null) {
+
+            if (onControlThread) {
+
+                // Apply the setpoints handed off from setSpeed
+                // only when they change
+                getControlSpeeds(controlSpeeds);
+
+                double leftSetpoint = controlSpeeds.left;
+                double rightSetpoint = controlSpeeds.right;
 
-            SmartDashboard.putBoolean("Speed PIDs Active", speedPidsEnabled);
-            SmartDashboard.putData("LeftPid", leftSpeedPid);
-            SmartDashboard.putData("RightPid", rightSpeedPid);
+                if (leftSetpoint != leftPidSetpoint) {
+                    leftSpeedPid.setSetpoint(leftSetpoint);
+                    leftPidSetpoint = leftSetpoint;
+                }
+
+                if (rightSetpoint != rightPidSetpoint) {
+                    rightSpeedPid.setSetpoint(rightSetpoint);
+                    rightPidSetpoint = rightSetpoint;
+                }
+
+                leftSpeedPid.setSetpointAcceleration(leftAccelSetpoint);
+                rightSpeedPid.setSetpointAcceleration(rightAccelSetpoint);
+            }
+
+            // Speed PID calculations require a normalized rate.
+            // The control thread runs faster than the loop and
+            // must read the encoders instead of the loop snapshot.
+            double leftRate = onControlThread ? leftEncoder.getRate() : leftEncoder.getSnapshotRate();
+            double rightRate = onControlThread ? rightEncoder.getRate() : rightEncoder.getSnapshotRate();
+
+            leftSpeedPid.calculate(leftRate / maxEncoderSpeed);
+            rightSpeedPid.calculate(rightRate / maxEncoderSpeed);
+
+            leftSpeedController.set(leftSpeedPid.get());
+            rightSpeedController.set(rightSpeedPid.get());
+
+            return;
+        }
+
+        // When the PIDs are not enabled, the main loop sets the
+        // motor speeds directly in setSpeed().  On the control thread,
+        // write the speeds only when they change.
+        if (onControlThread) {
+            writeChangedSpeeds();
+        }
+    }
+
+    /**
+     * Get the speed setpoints for a control step on the control thread.
+     * <p>
+     * By default, the setpoints are the speeds handed off from
+     * {@link #setSpeed(double, double)}. Subclasses that run a control loop that
+     * sets the drive speeds on the control thread (ie. the gyro PID) override
+     * this routine to return the output of that loop, so that the control thread
+     * never writes the setpoints that are set by commands.
+     * 
+     * @param speeds
+     *            set to the left and right speed setpoints
+     */
+    protected void getControlSpeeds(TSpeeds speeds) {
+        speeds.set(leftSpeedSetpoint, rightSpeedSetpoint);
+    }
+
+    /**
+     * Send the speed PID gains and max encoder speed to the speed controllers in
+     * velocity mode.
+     * <p>
+     * The scheduled gain scales are rounded to steps of
+     * {@link #VELOCITY_MODE_SCALE_STEP}, so the gains are only sent when the
+     * schedule moves to another step.
+     * 
+     * @param force
+     *            {@code true} to always send the gains, {@code false} to only
+     *            send the gains if they or the max encoder speed have changed
+     */
+    private void updateVelocityModeGains(boolean force) {
+
+        velocityModeKPScale = getScaleStep(speedKPScale, velocityModeKPScale);
+        velocityModeKIScale = getScaleStep(speedKIScale, velocityModeKIScale);
+
+        double kP = leftSpeedPid.getP() * velocityModeKPScale;
+        double kI = leftSpeedPid.getI() * velocityModeKIScale;
+
+        double maxSpeed = maxEncoderSpeed;
+
+        if (!force
+                && maxSpeed == velocityModeMaxSpeed
+                && kP == velocityModeKP
+                && kI == velocityModeKI) {
+            return;
+        }
+
+        leftSpeedController.enableVelocityMode(kP, kI, maxSpeed);
+        rightSpeedController.enableVelocityMode(kP, kI, maxSpeed);
+
+        velocityModeKP = kP;
+        velocityModeKI = kI;
+        velocityModeMaxSpeed = maxSpeed;
+    }
+
+    /**
+     * Round a gain scale to a {@link #VELOCITY_MODE_SCALE_STEP}.
+     * <p>
+     * The current step is kept until the scale is three quarters of a step away,
+     * so a scale that sits on the boundary between two steps does not switch
+     * back and forth.
+     */
+    private static double getScaleStep(double scale, double currentStep) {
+
+        if (Math.abs(scale - currentStep) < 0.75 * VELOCITY_MODE_SCALE_STEP) {
+            return currentStep;
+        }
+
+        return Math.round(scale / VELOCITY_MODE_SCALE_STEP) * VELOCITY_MODE_SCALE_STEP;
+    }
+
+    /**
+     * Write the speed setpoints to the speed controllers only when they have
+     * changed since the last control step.
+     * <p>
+     * Unchanged setpoints are written again once per robot loop period, the same
+     * rate as the main loop writes them, so that the keep alive of the speed
+     * controllers (ie. the TCanSpeedController keep alive period) works the same
+     * on the control thread.
+     */
+    private void writeChangedSpeeds() {
+
+        getControlSpeeds(controlSpeeds);
+
+        double leftSpeed = controlSpeeds.left;
+        double rightSpeed = controlSpeeds.right;
+
+        long now = sensorSnapshot.getClock().getNanos();
+
+        boolean refresh = now - lastOutputNanos
+                >= (long) (TDeltaTimer.DEFAULT_NOMINAL_PERIOD_SEC * TClock.NANOS_PER_SECOND);
+
+        if (refresh) {
+            lastOutputNanos = now;
+        }
+
+        if (refresh || leftSpeed != leftSpeedOutput) {
+            leftSpeedController.set(leftSpeed);
+            leftSpeedOutput = leftSpeed;
+        }
+
+        if (refresh || rightSpeed != rightSpeedOutput) {
+            rightSpeedController.set(rightSpeed);
+            rightSpeedOutput = rightSpeed;
+        }
+    }
+
+    @Override
+    public void updatePeriodic() {
+
+        // If the control thread is not running, then
+        // update the PIDs and outputs in this loop.
+        if (!isControlThreadEnabled()) {
+            updateControl();
+        }
+
+        // Only update the encoders if there are encoders.
+        if (leftEncoder != null && rightEncoder != null) {
+
+            // Update all SmartDashboard values
+            leftEncDistTelemetry.set(leftEncoder.getSnapshot());
+            leftEncSpeedTelemetry.set(leftEncoder.getSnapshotRate());
+            rightEncDistTelemetry.set(rightEncoder.getSnapshot());
+            rightEncSpeedTelemetry.set(rightEncoder.getSnapshotRate());
+            avgEncDistTelemetry.set(getEncoderDistance());
+            avgEncSpeedTelemetry.set(getEncoderSpeed());
+            distInchesTelemetry.set(getDistanceInches());
+
+            speedPidsTelemetry.set(speedPidsEnabled);
+
+            if (!speedPidDataPut) {
+                telemetry.putData("LeftPid", new TPidDashboard(leftSpeedPid));
+                telemetry.putData("RightPid", new TPidDashboard(rightSpeedPid));
+                speedPidDataPut = true;
+            }
         }
 
         // Always print the current motor set speeds.
-        SmartDashboard.putNumber("Left Output", leftSpeedController.get());
-        SmartDashboard.putNumber("Right Output", rightSpeedController.get());
+        leftOutputTelemetry.set(leftSpeedController.get());
+        rightOutputTelemetry.set(rightSpeedController.get());
+
+        if (controlThread != null) {
+            controlThreadTelemetry.set(controlThread.isRunning());
+            controlOverrunsTelemetry.set(controlThread.getOverrunCount());
+            controlMaxMsTelemetry.set(controlThread.getMaxStepNanos() / 1000000.0);
+        }
     }
 
 }
@@ -1,11 +1,23 @@
 package com.torontocodingcollective.subsystem;
 
+import com.torontocodingcollective.log.TLogger;
+import com.torontocodingcollective.odometry.TDifferentialOdometry;
+import com.torontocodingcollective.odometry.TPose;
+import com.torontocodingcollective.odometry.TPoseHistory;
+import com.torontocodingcollective.pid.TGainSchedule;
 import com.torontocodingcollective.pid.TGyroPID;
+import com.torontocodingcollective.pid.TPidDashboard;
+import com.torontocodingcollective.sensors.TSensorSnapshot;
 import com.torontocodingcollective.sensors.encoder.TEncoder;
+import com.torontocodingcollective.sensors.gyro.TFusedGyro;
 import com.torontocodingcollective.sensors.gyro.TGyro;
+import com.torontocodingcollective.sensors.gyro.TGyroFilter;
 import com.torontocodingcollective.speedcontroller.TSpeedController;
+import com.torontocodingcollective.speedcontroller.TSpeeds;
+import com.torontocodingcollective.telemetry.TTelemetry;
+import com.torontocodingcollective.telemetry.TTelemetryNumber;
 
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj.Preferences;
 
 public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
 
@@ -13,12 +25,51 @@ public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
         DRIVE_ON_HEADING, ROTATE_TO_HEADING, DISABLED
     };
 
-    protected TGyro  gyro;
-    private TGyroPID gyroPid;
+    protected TGyro         gyro;
+    private TGyroPID        gyroPid;
 
-    private double   maxRotationOutput;
-    private double   speedSetpoint = 0;
-    private Mode     mode;
+    private volatile double maxRotationOutput;
+    private volatile double speedSetpoint = 0;
+    private volatile Mode   mode;
+    private volatile double steering      = 0;
+
+    // Drive speeds from the gyro PID, handed off from the control step
+    // on the control thread. Commands never write these speeds.
+    private volatile double gyroLeftSpeed  = 0;
+    private volatile double gyroRightSpeed = 0;
+
+    // Only used by the control step
+    private final TSpeeds   gyroStepSpeeds = new TSpeeds();
+    private boolean         gyroStepActive = false;
+
+    // Gain schedule for the gyro PID by gear and measured speed
+    private volatile TGainSchedule gyroPidSchedule = null;
+
+    /** Preferences keys used to save the gyro PID gains */
+    public static final String          GYRO_PID_KP_KEY       = "Gyro PID Kp";
+    public static final String          GYRO_PID_KI_KEY       = "Gyro PID Ki";
+
+    /** Pose history capacity, 1.25 seconds at a 200Hz control rate */
+    public static final int             POSE_HISTORY_CAPACITY = 250;
+
+    private final TDifferentialOdometry odometry              = new TDifferentialOdometry();
+    private final TPoseHistory          poseHistory           = new TPoseHistory(POSE_HISTORY_CAPACITY);
+    private final TPose                 pose                  = new TPose();
+
+    // Only used by the control step
+    private final TPose                 controlPose           = new TPose();
+
+    private final TTelemetry       telemetry            = TTelemetry.getInstance();
+    private final TTelemetryNumber steeringTelemetry    = telemetry.addNumber("Gyro Steering");
+    private final TTelemetryNumber angleTelemetry       = telemetry.addNumber("Gyro Angle", 0.01, TTelemetry.DEFAULT_PERIOD_SEC);
+    private final TTelemetryNumber pitchTelemetry       = telemetry.addNumber("Gyro Pitch", 0.01, TTelemetry.DEFAULT_PERIOD_SEC);
+    private final TTelemetryNumber poseXTelemetry       = telemetry.addNumber("Pose X", 0.1, TTelemetry.DEFAULT_PERIOD_SEC);
+    private final TTelemetryNumber poseYTelemetry       = telemetry.addNumber("Pose Y", 0.1, TTelemetry.DEFAULT_PERIOD_SEC);
+    private final TTelemetryNumber poseHeadingTelemetry = telemetry.addNumber("Pose Heading", 0.1, TTelemetry.DEFAULT_PERIOD_SEC);
+    private final TTelemetryNumber gyroRejectTelemetry  = telemetry.addNumber("Gyro Rejected");
+
+    // The gyro and PID are only put on the SmartDashboard once
+    private boolean                gyroDataPut          = false;
 
     /**
      * Drive subsystem with left/right drive and gyro.
@@ -53,6 +104,7 @@ public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
         super(leftSpeedController, rightSpeedController);
 
         this.gyro = gyro;
+        sensorSnapshot.add(gyro);
         gyroPid = new TGyroPID(gyroKP, gyroKI);
         this.maxRotationOutput = maxRotationOutput;
     }
@@ -111,6 +163,7 @@ public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
                 speedKP, speedKI, maxEncoderSpeed);
 
         this.gyro = gyro;
+        sensorSnapshot.add(gyro);
         gyroPid = new TGyroPID(gyroKP, gyroKI);
         this.maxRotationOutput = maxRotationOutput;
         this.mode = Mode.DISABLED;
@@ -125,6 +178,47 @@ public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
         gyroPid.disable();
         this.speedSetpoint = 0;
         this.mode = Mode.DISABLED;
+        this.gyroLeftSpeed = 0;
+        this.gyroRightSpeed = 0;
+    }
+
+    /**
+     * Fuse the gyro with the drive encoders.
+     * <p>
+     * The gyro of this subsystem is replaced by a {@link TFusedGyro} that corrects
+     * the gyro drift with the heading measured by the encoders. The fused heading
+     * is used by the gyro PID, the odometry and {@link #getGryoAngle()}.
+     * <p>
+     * This routine must be called once from the constructor or the
+     * {@link #init()} routine of the subsystem, after the encoders are set and
+     * before the control thread is enabled.
+     * 
+     * @param trackWidthInches
+     *            the effective distance between the left and right wheels
+     * @return the fused gyro, which can be used to set the noise values
+     */
+    public TFusedGyro enableHeadingFusion(double trackWidthInches) {
+
+        if (gyro instanceof TFusedGyro) {
+            return (TFusedGyro) gyro;
+        }
+
+        if (getEncoder(TSide.LEFT) == null || getEncoder(TSide.RIGHT) == null) {
+            TLogger.getInstance().log(this, "Heading fusion cannot be enabled without encoders");
+            return null;
+        }
+
+        TFusedGyro fusedGyro = new TFusedGyro(gyro,
+                getEncoder(TSide.LEFT), getEncoder(TSide.RIGHT),
+                getEncoderCountsPerInch(), trackWidthInches);
+
+        // The fused gyro samples the gyro each time it is updated
+        sensorSnapshot.remove(gyro);
+        sensorSnapshot.add(fusedGyro);
+
+        gyro = fusedGyro;
+
+        return fusedGyro;
     }
 
     /**
@@ -144,7 +238,7 @@ public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
 
         // If the gain is set to zero, the pid cannot be enabled
         if (gyroPid.getP() == 0 && gyroPid.getI() == 0) {
-            System.out.println("The GyroPid cannot be enabled until" 
+            TLogger.getInstance().log(this, "The GyroPid cannot be enabled until" 
         + " the PID Kp or Ki value is set.");
             return;
         }
@@ -167,8 +261,11 @@ public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
         gyroPid.setSetpoint(heading);
         if (!gyroPid.isEnabled()) {
             gyroPid.enable();
-            // Initialize the error
-            gyroPid.calculate(gyro.getAngle());
+            // Initialize the error. When the control thread is
+            // enabled, the error is initialized on the next control step.
+            if (!isControlThreadEnabled()) {
+                gyroPid.calculate(gyro.getSnapshotAngle());
+            }
         }
 
     }
@@ -178,12 +275,15 @@ public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
      * <p>
      * NOTE: This routine will always return a positive angle >= 0 and < 360
      * degrees.
+     * <p>
+     * The angle is read from the {@link TSensorSnapshot} taken at the start of
+     * the loop.
      * 
      * @return gyro angle in degrees.
      */
     public double getGryoAngle() {
 
-        return gyro.getAngle();
+        return gyro.getSnapshotAngle();
     }
 
     /**
@@ -200,7 +300,60 @@ public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
         if (!gyroPid.isEnabled()) {
             return 0;
         }
-        return gyroPid.getError(gyro.getAngle());
+        return gyroPid.getError(gyro.getSnapshotAngle());
+    }
+
+    /**
+     * Get the odometry used to track the position of the robot on the field
+     * 
+     * @return the odometry for this subsystem
+     */
+    public TDifferentialOdometry getOdometry() {
+        return odometry;
+    }
+
+    /**
+     * Get the position of the robot on the field
+     * <p>
+     * The pose is updated from the encoders and gyro every control step. The
+     * encoders and gyro can be reset without moving the pose. Use
+     * {@link #resetPose(double, double, double)} to set the pose.
+     * <p>
+     * NOTE: The pose is only tracked if the subsystem has encoders.
+     * 
+     * @param pose
+     *            filled in with the current pose
+     * @return the pose that was passed in
+     */
+    public TPose getPose(TPose pose) {
+        return odometry.getPose(pose);
+    }
+
+    /**
+     * Get the position of the robot on the field at a past time.
+     * <p>
+     * This routine is used to find where the robot was when a delayed
+     * measurement (ie. a vision target) was taken. The time must be from the
+     * {@link TSensorSnapshot#getClock() snapshot clock}.
+     * 
+     * @param timestampNanos
+     *            the time of the measurement
+     * @param pose
+     *            filled in with the pose at the given time
+     * @return {@code true} if the time is in the pose history, {@code false}
+     *         otherwise
+     */
+    public boolean getPose(long timestampNanos, TPose pose) {
+        return poseHistory.getPose(timestampNanos, pose);
+    }
+
+    /**
+     * Get the history of recent poses
+     * 
+     * @return pose history
+     */
+    public TPoseHistory getPoseHistory() {
+        return poseHistory;
     }
 
     /**
@@ -211,7 +364,7 @@ public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
      * @return rate in degress/second
      */
     public double getGyroRate() {
-        return gyro.getRate();
+        return gyro.getSnapshotRate();
     }
 
     /**
@@ -221,6 +374,33 @@ public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
         setGyroAngle(0);
     }
 
+    @Override
+    public void resetEncoders() {
+
+        // Do not move the pose when the encoders are reset
+        odometry.resetSensorBaseline();
+        super.resetEncoders();
+        odometry.resetSensorBaseline();
+    }
+
+    /**
+     * Set the position of the robot on the field.
+     * <p>
+     * This routine is normally called at the start of autonomous to set the
+     * starting position of the robot. The encoders and gyro are not changed.
+     * 
+     * @param x
+     *            in inches
+     * @param y
+     *            in inches
+     * @param heading
+     *            in degrees
+     */
+    public void resetPose(double x, double y, double heading) {
+        odometry.resetPose(x, y, heading);
+        poseHistory.clear();
+    }
+
     /**
      * Set the speeds on the motors using a gyroPID to rotate to the specified
      * heading at the specified speed.
@@ -250,15 +430,15 @@ public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
 
         // If the gain is set to zero, the pid cannot be enabled
         if (gyroPid.getP() == 0 && gyroPid.getI() == 0) {
-            System.out.println(
+            TLogger.getInstance().log(this,
                     "The GyroPid cannot be enabled until" 
             + " the PID Kp or Ki value is set.  Cannot rotateToHeading");
             return;
         }
 
         if (speedSetpoint <= 0 || speedSetpoint > maxRotationOutput) {
-            System.out.println("Cannot rotate at speed " + speedSetpoint 
-                    + " overriding to " + maxRotationOutput);
+            TLogger.getInstance().log(this, "Cannot rotate at speed {} overriding to {}",
+                    speedSetpoint, maxRotationOutput);
             speedSetpoint = maxRotationOutput;
         }
 
@@ -270,18 +450,21 @@ public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
     }
 
     /**
-     * Set the motor speeds to drive on the appropriate heading.
+     * Calculate the motor speeds to drive on the appropriate heading.
      * <p>
      * This routine requires the gyro PID to be enabled, and uses the output of the
      * gyro PID to steer the robot by reducing the speed on the appropriate side.
+     * The speeds are saved in the gyro step speeds.
      * 
+     * @param gyroAngle
+     *            the current gyro angle
      * @return double representing the steering adjustment applied to the motors. A
      *         value of 1.0 or -1.0 indicates the robot is rotating on the spot to
      *         get as quickly as possible to the required heading.
      */
-    private double setDriveOnHeadingSpeeds() {
+    private double setDriveOnHeadingSpeeds(double gyroAngle) {
 
-        double angleError = gyroPid.getError(gyro.getAngle());
+        double angleError = gyroPid.getError(gyroAngle);
 
         double leftSpeed = speedSetpoint;
         double rightSpeed = speedSetpoint;
@@ -310,7 +493,7 @@ public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
 
             // Drive the motors in the opposite direction to get close
             // to the setpoint
-            setSpeed(leftSpeed, -leftSpeed);
+            gyroStepSpeeds.set(leftSpeed, -leftSpeed);
 
             return steering;
         }
@@ -327,7 +510,7 @@ public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
             leftSpeed = rightSpeed * (1.0 + steering);
         }
 
-        setSpeed(leftSpeed, rightSpeed);
+        gyroStepSpeeds.set(leftSpeed, rightSpeed);
 
         return steering;
     }
@@ -342,7 +525,73 @@ public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
      *            new angle reading for the gyro
      */
     public void setGyroAngle(double angle) {
+
+        // Do not turn the pose when the gyro angle is set
+        odometry.resetSensorBaseline();
         gyro.setGyroAngle(angle);
+        odometry.resetSensorBaseline();
+    }
+
+    /**
+     * Load the gyro PID gains saved by {@link #saveGyroPidGain()}
+     * <p>
+     * The gains are saved in the roboRio {@link Preferences} and are kept when
+     * the robot is restarted or the code is deployed.
+     * <p>
+     * NOTE: If there are no saved gains, this routine has no effect and the
+     * gains passed to the constructor are used.
+     * 
+     * @return {@code true} if saved gains were loaded, {@code false} otherwise
+     */
+    public boolean loadGyroPidGain() {
+
+        Preferences preferences = Preferences.getInstance();
+
+        if (!preferences.containsKey(GYRO_PID_KP_KEY) || !preferences.containsKey(GYRO_PID_KI_KEY)) {
+            return false;
+        }
+
+        double kP = preferences.getDouble(GYRO_PID_KP_KEY, gyroPid.getP());
+        double kI = preferences.getDouble(GYRO_PID_KI_KEY, gyroPid.getI());
+
+        TLogger.getInstance().log(this, "Loaded saved gyro PID gains Kp {} Ki {}", kP, kI);
+
+        setGyroPidGain(kP, kI);
+
+        return true;
+    }
+
+    /**
+     * Save the current gyro PID gains in the roboRio {@link Preferences}
+     * <p>
+     * See {@link #loadGyroPidGain()}
+     */
+    public void saveGyroPidGain() {
+
+        Preferences preferences = Preferences.getInstance();
+
+        preferences.putDouble(GYRO_PID_KP_KEY, gyroPid.getP());
+        preferences.putDouble(GYRO_PID_KI_KEY, gyroPid.getI());
+    }
+
+    /**
+     * Set a gain schedule for the gyro PID.
+     * <p>
+     * Each control step, the gyro PID gains are scaled by the schedule for the
+     * current gear {@see #setGear(int)} and the measured speed in encoder
+     * counts/sec {@see #getScheduleSpeed(boolean)}.
+     * 
+     * @param gyroPidSchedule
+     *            gain schedule, or {@code null} to use the gyro PID gains at all
+     *            gears and speeds
+     */
+    public void setGyroPidSchedule(TGainSchedule gyroPidSchedule) {
+
+        this.gyroPidSchedule = gyroPidSchedule;
+
+        if (gyroPidSchedule == null) {
+            gyroPid.setGainScale(1.0, 1.0);
+        }
     }
 
     public void setGyroPidGain(double kP, double kI) {
@@ -385,9 +634,9 @@ public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
         return maxRotationOutput;
     }
 
-    private double setRotateToHeadingSpeeds() {
+    private double setRotateToHeadingSpeeds(double gyroAngle) {
 
-        double angleError = gyroPid.getError(gyro.getAngle());
+        double angleError = gyroPid.getError(gyroAngle);
 
         double leftSpeed = speedSetpoint;
 
@@ -410,7 +659,7 @@ public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
 
             // Drive the motors in the opposite direction to get close
             // to the setpoint
-            setSpeed(leftSpeed, -leftSpeed);
+            gyroStepSpeeds.set(leftSpeed, -leftSpeed);
 
             return steering;
         }
@@ -428,42 +677,154 @@ public abstract class TGyroDriveSubsystem extends TDriveSubsystem {
 
         // Drive the motors in the opposite direction to get
         // to the setpoint
-        setSpeed(leftSpeed, -leftSpeed);
+        gyroStepSpeeds.set(leftSpeed, -leftSpeed);
 
         return steering;
     }
 
     @Override
-    public void updatePeriodic() {
+    protected void updateControl() {
+
+        boolean onControlThread = isControlThreadEnabled();
+
+        // The odometry reset count must be read before and after the sensors
+        int odometryResetCount = odometry.getResetCount();
+
+        // Time that the sensors are read
+        long timestampNanos = !onControlThread && gyro.isSnapshotValid()
+                ? gyro.getSnapshotNanos() : sensorSnapshot.getClock().getNanos();
+
+        // Read the gyro once for the whole control step. The control
+        // thread must read the gyro instead of the loop snapshot, and
+        // takes a new filter sample each step.
+        if (onControlThread) {
+            gyro.updateFilter();
+        }
+
+        double gyroAngle = onControlThread ? gyro.getAngle() : gyro.getSnapshotAngle();
+
+        // Track the position of the robot
+        if (leftEncoder != null && rightEncoder != null) {
+
+            double leftDistance = onControlThread ? leftEncoder.get() : leftEncoder.getSnapshot();
+            double rightDistance = onControlThread ? rightEncoder.get() : rightEncoder.getSnapshot();
+
+            // A reset by the main loop while the sensors were read
+            // changes the count, and the odometry is not moved.
+            int odometryEndResetCount = odometry.getResetCount();
+
+            double encoderCountsPerInch = getEncoderCountsPerInch();
+
+            if (encoderCountsPerInch != 0) {
+                leftDistance /= encoderCountsPerInch;
+                rightDistance /= encoderCountsPerInch;
+            }
+
+            odometry.update(odometryResetCount, odometryEndResetCount, leftDistance, rightDistance, gyroAngle);
+
+            // Save the pose at the time the sensors were read
+            odometry.getPose(controlPose);
+            poseHistory.add(timestampNanos, controlPose.x, controlPose.y, controlPose.heading,
+                    odometry.getDistance());
+        }
 
         // Set the speed from the gyroPID before udpating the super
         double steering = 0;
 
-        if (gyroPid.isEnabled()) {
+        gyroStepActive = false;
 
-            gyroPid.calculate(gyro.getAngle());
+        Mode stepMode = mode;
+
+        if (gyroPid.isEnabled() && stepMode != Mode.DISABLED) {
+
+            // Scale the gyro PID gains for the gear and speed
+            TGainSchedule schedule = gyroPidSchedule;
+
+            if (schedule != null) {
+                schedule.calculate(getGear(), getScheduleSpeed(onControlThread));
+                gyroPid.setGainScale(schedule.getKPScale(), schedule.getKIScale());
+            }
 
-            if (mode == Mode.DRIVE_ON_HEADING) {
-                steering = setDriveOnHeadingSpeeds();
+            gyroPid.calculate(gyroAngle);
+
+            if (stepMode == Mode.DRIVE_ON_HEADING) {
+                steering = setDriveOnHeadingSpeeds(gyroAngle);
             } else {
-                steering = setRotateToHeadingSpeeds();
+                steering = setRotateToHeadingSpeeds(gyroAngle);
+            }
+
+            // A command can stop the robot and disable the gyro PID
+            // while the control thread is calculating the speeds.
+            // Only hand off the speeds if the PID is still running.
+            if (gyroPid.isEnabled() && mode == stepMode) {
+
+                if (onControlThread) {
+                    gyroLeftSpeed = gyroStepSpeeds.left;
+                    gyroRightSpeed = gyroStepSpeeds.right;
+                    gyroStepActive = true;
+                } else {
+                    setSpeed(gyroStepSpeeds.left, gyroStepSpeeds.right);
+                }
             }
         }
 
-        SmartDashboard.putNumber("Gyro Steering", steering);
+        this.steering = steering;
+
+        super.updateControl();
+    }
+
+    /**
+     * Get the speed setpoints for a control step on the control thread.
+     * <p>
+     * While the gyro PID is running, the setpoints are the speeds calculated by
+     * the gyro PID in this control step. Once the gyro PID is disabled, the
+     * setpoints set by the commands are used.
+     */
+    @Override
+    protected void getControlSpeeds(TSpeeds speeds) {
+
+        if (gyroStepActive && mode != Mode.DISABLED && gyroPid.isEnabled()) {
+            speeds.set(gyroLeftSpeed, gyroRightSpeed);
+            return;
+        }
+
+        super.getControlSpeeds(speeds);
+    }
 
+    @Override
+    public void updatePeriodic() {
+
+        // Update the gyro and speed PIDs (unless running on the
+        // control thread) and the drive SmartDashboard values
         super.updatePeriodic();
 
+        steeringTelemetry.set(steering);
+
         // Update all SmartDashboard values
-        SmartDashboard.putData("Gyro", gyro);
-        SmartDashboard.putNumber("Gyro Angle", getGryoAngle());
+        if (!gyroDataPut) {
+            telemetry.putData("Gyro", gyro);
+            telemetry.putData("Gyro PID", new TPidDashboard(gyroPid));
+            gyroDataPut = true;
+        }
 
-        SmartDashboard.putData("Gyro PID", gyroPid);
+        angleTelemetry.set(getGryoAngle());
 
         if (gyro.supportsPitch()) {
-            SmartDashboard.putNumber("Gyro Pitch", gyro.getPitch());
+            pitchTelemetry.set(gyro.getSnapshotPitch());
+        }
+
+        TGyroFilter gyroFilter = gyro.getFilter();
+
+        if (gyroFilter != null) {
+            gyroRejectTelemetry.set(gyroFilter.getRejectCount());
         }
 
+        odometry.getPose(pose);
+
+        poseXTelemetry.set(pose.x);
+        poseYTelemetry.set(pose.y);
+        poseHeadingTelemetry.set(pose.heading);
+
     }
 
 }
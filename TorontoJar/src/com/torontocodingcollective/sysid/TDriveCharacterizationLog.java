@@ -0,0 +1,293 @@
+package com.torontocodingcollective.sysid;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * TDriveCharacterizationLog records the samples of one drive characterization
+ * test.
+ * <p>
+ * The samples are recorded into an array that is allocated when the log is
+ * constructed, so recording a sample in the robot loop never allocates memory
+ * or writes to the file system. The log is written to a compact binary file
+ * when the test ends, and can be read by the offline fitting tool.
+ * <p>
+ * Each sample holds the time (seconds), the left and right voltages (volts),
+ * positions (inches) and velocities (inches/sec), the gyro rate (degrees/sec)
+ * and the heading (degrees, not limited to 0-360).
+ */
+public class TDriveCharacterizationLog {
+
+    /** Default directory for the characterization files on the roboRio */
+    public static final String               DEFAULT_DIRECTORY = "/home/lvuser/sysid";
+
+    // File header "SYS" and the file format version
+    private static final int                 MAGIC             = 0x53595300;
+    private static final int                 VERSION           = 1;
+
+    private static final int                 FIELDS            = 9;
+
+    private static final int                 TIME              = 0;
+    private static final int                 LEFT_VOLTAGE      = 1;
+    private static final int                 RIGHT_VOLTAGE     = 2;
+    private static final int                 LEFT_POSITION     = 3;
+    private static final int                 RIGHT_POSITION    = 4;
+    private static final int                 LEFT_VELOCITY     = 5;
+    private static final int                 RIGHT_VELOCITY    = 6;
+    private static final int                 GYRO_RATE         = 7;
+    private static final int                 HEADING           = 8;
+
+    private final float[]                    samples;
+    private final int                        capacity;
+
+    private int                              size              = 0;
+
+    private TDriveCharacterizationTest       test              = TDriveCharacterizationTest.QUASISTATIC_FORWARD;
+    private double                           encoderCountsPerInch = 0;
+    private double                           maxEncoderSpeed   = 0;
+
+    /**
+     * Construct a characterization log
+     * 
+     * @param capacity
+     *            maximum number of samples (50 samples per second of test in the
+     *            20ms robot loop)
+     */
+    public TDriveCharacterizationLog(int capacity) {
+        this.capacity = capacity;
+        this.samples = new float[capacity * FIELDS];
+    }
+
+    /**
+     * Read a characterization log from a file
+     * 
+     * @param file
+     *            written by {@link #write(File)}
+     * @return characterization log
+     * @throws IOException
+     *             if the file cannot be read or is not a characterization file
+     */
+    public static TDriveCharacterizationLog read(File file) throws IOException {
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+        try {
+
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a drive characterization file " + file);
+            }
+
+            if (in.readInt() != VERSION) {
+                throw new IOException("Unsupported drive characterization file version " + file);
+            }
+
+            int testOrdinal = in.readInt();
+            TDriveCharacterizationTest[] tests = TDriveCharacterizationTest.values();
+
+            if (testOrdinal < 0 || testOrdinal >= tests.length) {
+                throw new IOException("Invalid test " + testOrdinal + " in " + file);
+            }
+
+            double encoderCountsPerInch = in.readDouble();
+            double maxEncoderSpeed = in.readDouble();
+
+            int size = in.readInt();
+
+            if (size < 0) {
+                throw new IOException("Invalid sample count " + size + " in " + file);
+            }
+
+            TDriveCharacterizationLog log = new TDriveCharacterizationLog(size);
+
+            log.reset(tests[testOrdinal], encoderCountsPerInch, maxEncoderSpeed);
+
+            for (int i = 0; i < size * FIELDS; i++) {
+                log.samples[i] = in.readFloat();
+            }
+
+            log.size = size;
+
+            return log;
+
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Record a sample
+     * <p>
+     * NOTE: If the log is full, this routine has no effect
+     * 
+     * @param time
+     *            since the start of the test in seconds
+     * @param leftVoltage
+     *            applied to the left motors
+     * @param rightVoltage
+     *            applied to the right motors
+     * @param leftPosition
+     *            left encoder distance in inches
+     * @param rightPosition
+     *            right encoder distance in inches
+     * @param leftVelocity
+     *            left encoder speed in inches/sec
+     * @param rightVelocity
+     *            right encoder speed in inches/sec
+     * @param gyroRate
+     *            in degrees/sec
+     * @param heading
+     *            in degrees, not limited to 0-360
+     */
+    public void add(double time, double leftVoltage, double rightVoltage, 
+            double leftPosition, double rightPosition,
+            double leftVelocity, double rightVelocity, 
+            double gyroRate, double heading) {
+
+        if (size >= capacity) {
+            return;
+        }
+
+        int i = size * FIELDS;
+
+        samples[i + TIME] = (float) time;
+        samples[i + LEFT_VOLTAGE] = (float) leftVoltage;
+        samples[i + RIGHT_VOLTAGE] = (float) rightVoltage;
+        samples[i + LEFT_POSITION] = (float) leftPosition;
+        samples[i + RIGHT_POSITION] = (float) rightPosition;
+        samples[i + LEFT_VELOCITY] = (float) leftVelocity;
+        samples[i + RIGHT_VELOCITY] = (float) rightVelocity;
+        samples[i + GYRO_RATE] = (float) gyroRate;
+        samples[i + HEADING] = (float) heading;
+
+        size++;
+    }
+
+    public double getEncoderCountsPerInch() {
+        return encoderCountsPerInch;
+    }
+
+    public double getGyroRate(int i) {
+        return get(i, GYRO_RATE);
+    }
+
+    public double getHeading(int i) {
+        return get(i, HEADING);
+    }
+
+    public double getLeftPosition(int i) {
+        return get(i, LEFT_POSITION);
+    }
+
+    public double getLeftVelocity(int i) {
+        return get(i, LEFT_VELOCITY);
+    }
+
+    public double getLeftVoltage(int i) {
+        return get(i, LEFT_VOLTAGE);
+    }
+
+    public double getMaxEncoderSpeed() {
+        return maxEncoderSpeed;
+    }
+
+    public double getRightPosition(int i) {
+        return get(i, RIGHT_POSITION);
+    }
+
+    public double getRightVelocity(int i) {
+        return get(i, RIGHT_VELOCITY);
+    }
+
+    public double getRightVoltage(int i) {
+        return get(i, RIGHT_VOLTAGE);
+    }
+
+    /**
+     * Get the number of samples recorded
+     * 
+     * @return sample count
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public TDriveCharacterizationTest getTest() {
+        return test;
+    }
+
+    public double getTime(int i) {
+        return get(i, TIME);
+    }
+
+    /**
+     * Indicates whether the log is full
+     * 
+     * @return {@code true} if no more samples can be recorded, {@code false}
+     *         otherwise
+     */
+    public boolean isFull() {
+        return size >= capacity;
+    }
+
+    /**
+     * Clear the log for a new test
+     * 
+     * @param test
+     *            that will be recorded
+     * @param encoderCountsPerInch
+     *            of the drive subsystem, saved to convert the fitted values to
+     *            the normalized units of the speed PIDs
+     * @param maxEncoderSpeed
+     *            of the drive subsystem
+     */
+    public void reset(TDriveCharacterizationTest test, double encoderCountsPerInch, double maxEncoderSpeed) {
+        this.test = test;
+        this.encoderCountsPerInch = encoderCountsPerInch;
+        this.maxEncoderSpeed = maxEncoderSpeed;
+        this.size = 0;
+    }
+
+    /**
+     * Write the log to a file
+     * 
+     * @param file
+     *            to write. The directory is created if it does not exist.
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+
+        File directory = file.getParentFile();
+
+        if (directory != null && !directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(test.ordinal());
+            out.writeDouble(encoderCountsPerInch);
+            out.writeDouble(maxEncoderSpeed);
+            out.writeInt(size);
+
+            for (int i = 0; i < size * FIELDS; i++) {
+                out.writeFloat(samples[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private double get(int i, int field) {
+        return samples[i * FIELDS + field];
+    }
+}
@@ -0,0 +1,45 @@
+package com.torontocodingcollective.sysid;
+
+/**
+ * Drive characterization tests run by the
+ * {@link com.torontocodingcollective.commands.gyroDrive.TCharacterizeDriveCommand}
+ * <p>
+ * The quasistatic tests slowly ramp the voltage so that the acceleration is
+ * close to zero, and are used to measure the static friction (kS) and velocity
+ * (kV) terms. The dynamic tests apply a voltage step and are used to measure the
+ * acceleration (kA) term. The rotation test turns the robot on the spot and is
+ * used to measure the effective track width.
+ */
+public enum TDriveCharacterizationTest {
+
+    QUASISTATIC_FORWARD  (1,  1, false),
+    QUASISTATIC_BACKWARD (-1, -1, false),
+    DYNAMIC_FORWARD      (1,  1, true),
+    DYNAMIC_BACKWARD     (-1, -1, true),
+    QUASISTATIC_ROTATE   (1, -1, false);
+
+    /** Direction of the left output (1 or -1) */
+    public final int     leftSign;
+
+    /** Direction of the right output (1 or -1) */
+    public final int     rightSign;
+
+    /** {@code true} for a voltage step, {@code false} for a voltage ramp */
+    public final boolean dynamic;
+
+    TDriveCharacterizationTest(int leftSign, int rightSign, boolean dynamic) {
+        this.leftSign = leftSign;
+        this.rightSign = rightSign;
+        this.dynamic = dynamic;
+    }
+
+    /**
+     * Indicates whether this test rotates the robot on the spot
+     * 
+     * @return {@code true} if the left and right outputs are in opposite
+     *         directions, {@code false} otherwise
+     */
+    public boolean isRotation() {
+        return leftSign != rightSign;
+    }
+}
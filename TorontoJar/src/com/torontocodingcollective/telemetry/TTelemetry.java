@@ -0,0 +1,241 @@
+package com.torontocodingcollective.telemetry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.torontocodingcollective.clock.TClock;
+import com.torontocodingcollective.clock.TSystemClock;
+
+import edu.wpi.first.wpilibj.Sendable;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * TTelemetry publishes values to the SmartDashboard only when they change.
+ * <p>
+ * Each SmartDashboard value is registered once (normally in a constructor) as a
+ * {@link TTelemetryKey}. The robot loop sets the value of the key every loop,
+ * and the key only sends the value to the SmartDashboard when:
+ * <ls>
+ * <li>the value has changed since it was last published (for numbers, by more
+ * than the epsilon of the key), and
+ * <li>the publish period of the key has elapsed since it was last published.
+ * </ls>
+ * If a value changes before the publish period has elapsed, the latest value is
+ * published on the first set after the period elapses. Values that are not
+ * changing are not sent at all, which reduces the NetworkTables traffic and the
+ * time spent in each robot loop.
+ * <p>
+ * Typical usage in a subsystem:
+ *
+ * <pre>
+ * private final TTelemetryNumber leftOutput = TTelemetry.getInstance().addNumber("Left Output");
+ *
+ * public void updatePeriodic() {
+ *     leftOutput.set(leftSpeedController.get());
+ * }
+ * </pre>
+ */
+public class TTelemetry {
+
+    /** Default time between publishing changes to a key (10 times per second) */
+    public static final double    DEFAULT_PERIOD_SEC       = 0.1;
+
+    /** Default change in a number before it is published */
+    public static final double    DEFAULT_EPSILON          = 0.001;
+
+    private static TTelemetry     instance                 = null;
+
+    private final List<TTelemetryKey> keyLs                = new ArrayList<TTelemetryKey>();
+
+    private TClock                clock                    = TSystemClock.getInstance();
+    private boolean               enabled                  = true;
+
+    private long                  publishCount             = 0;
+    private long                  suppressedCount          = 0;
+
+    /**
+     * Get the telemetry used by the framework
+     *
+     * @return the default TTelemetry
+     */
+    public static synchronized TTelemetry getInstance() {
+
+        if (instance == null) {
+            instance = new TTelemetry();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Add a boolean key with the default publish period
+     * {@value #DEFAULT_PERIOD_SEC} seconds
+     *
+     * @param key
+     *            the SmartDashboard key
+     * @return TTelemetryBoolean used to set the value
+     */
+    public TTelemetryBoolean addBoolean(String key) {
+        return addBoolean(key, DEFAULT_PERIOD_SEC);
+    }
+
+    /**
+     * Add a boolean key
+     *
+     * @param key
+     *            the SmartDashboard key
+     * @param periodSec
+     *            the minimum time between publishing changes to this key
+     * @return TTelemetryBoolean used to set the value
+     */
+    public TTelemetryBoolean addBoolean(String key, double periodSec) {
+        return addKey(new TTelemetryBoolean(this, key, periodSec));
+    }
+
+    /**
+     * Add a number key with the default epsilon {@value #DEFAULT_EPSILON} and
+     * publish period {@value #DEFAULT_PERIOD_SEC} seconds
+     *
+     * @param key
+     *            the SmartDashboard key
+     * @return TTelemetryNumber used to set the value
+     */
+    public TTelemetryNumber addNumber(String key) {
+        return addNumber(key, DEFAULT_EPSILON, DEFAULT_PERIOD_SEC);
+    }
+
+    /**
+     * Add a number key
+     *
+     * @param key
+     *            the SmartDashboard key
+     * @param epsilon
+     *            the value is only published when it changes by more than this
+     *            amount
+     * @param periodSec
+     *            the minimum time between publishing changes to this key
+     * @return TTelemetryNumber used to set the value
+     */
+    public TTelemetryNumber addNumber(String key, double epsilon, double periodSec) {
+        return addKey(new TTelemetryNumber(this, key, epsilon, periodSec));
+    }
+
+    /**
+     * Add a String key with the default publish period
+     * {@value #DEFAULT_PERIOD_SEC} seconds
+     *
+     * @param key
+     *            the SmartDashboard key
+     * @return TTelemetryString used to set the value
+     */
+    public TTelemetryString addString(String key) {
+        return addString(key, DEFAULT_PERIOD_SEC);
+    }
+
+    /**
+     * Add a String key
+     * <p>
+     * If the String is expensive to build, use {@link TTelemetryKey#isDue()} to
+     * only build the String when it can be published.
+     *
+     * @param key
+     *            the SmartDashboard key
+     * @param periodSec
+     *            the minimum time between publishing changes to this key
+     * @return TTelemetryString used to set the value
+     */
+    public TTelemetryString addString(String key, double periodSec) {
+        return addKey(new TTelemetryString(this, key, periodSec));
+    }
+
+    private <T extends TTelemetryKey> T addKey(T telemetryKey) {
+        keyLs.add(telemetryKey);
+        return telemetryKey;
+    }
+
+    /**
+     * Get the number of values sent to the SmartDashboard
+     *
+     * @return publish count since the robot started
+     */
+    public long getPublishCount() {
+        return publishCount;
+    }
+
+    /**
+     * Get the number of values that were not sent to the SmartDashboard because
+     * the value did not change or the publish period had not elapsed
+     *
+     * @return suppressed count since the robot started
+     */
+    public long getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    /**
+     * Indicates whether telemetry is published
+     *
+     * @return {@code true} if enabled, {@code false} otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Put a Sendable (PID, Gyro, etc) on the SmartDashboard.
+     * <p>
+     * The values of a Sendable are updated by the SmartDashboard every robot loop,
+     * so a Sendable only needs to be put once when the robot is initialized.
+     *
+     * @param key
+     *            the SmartDashboard key
+     * @param data
+     *            the Sendable to publish
+     */
+    public void putData(String key, Sendable data) {
+        SmartDashboard.putData(key, data);
+    }
+
+    /**
+     * Set the clock used for the publish periods.
+     * <p>
+     * NOTE: The clock should only be changed when testing off the robot.
+     *
+     * @param clock
+     *            the TClock to use
+     */
+    public void setClock(TClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Enable or disable publishing.
+     * <p>
+     * When enabled again, every key is published on its next set.
+     *
+     * @param enabled
+     *            {@code true} to enable, {@code false} to disable
+     */
+    public void setEnabled(boolean enabled) {
+
+        if (enabled && !this.enabled) {
+            for (int i = 0; i < keyLs.size(); i++) {
+                keyLs.get(i).reset();
+            }
+        }
+
+        this.enabled = enabled;
+    }
+
+    long getNanos() {
+        return clock.getNanos();
+    }
+
+    void published() {
+        publishCount++;
+    }
+
+    void suppressed() {
+        suppressedCount++;
+    }
+}
@@ -0,0 +1,38 @@
+package com.torontocodingcollective.telemetry;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * A boolean published to the SmartDashboard through {@link TTelemetry}
+ */
+public class TTelemetryBoolean extends TTelemetryKey {
+
+    private boolean lastValue = false;
+
+    TTelemetryBoolean(TTelemetry telemetry, String key, double periodSec) {
+        super(telemetry, key, periodSec);
+    }
+
+    /**
+     * Set the value of this key.
+     * <p>
+     * The value is published if it differs from the last published value and the
+     * publish period has elapsed.
+     *
+     * @param value
+     *            to publish
+     */
+    public void set(boolean value) {
+
+        boolean changed = !isPublished() || value != lastValue;
+
+        if (!shouldPublish(changed)) {
+            return;
+        }
+
+        SmartDashboard.putBoolean(key, value);
+
+        lastValue = value;
+        markPublished();
+    }
+}
@@ -0,0 +1,102 @@
+package com.torontocodingcollective.telemetry;
+
+import com.torontocodingcollective.clock.TClock;
+
+/**
+ * TTelemetryKey is one SmartDashboard value published through
+ * {@link TTelemetry}.
+ * <p>
+ * The key tracks when it was last published and whether a change is waiting to
+ * be published. Keys are created by the {@code add} methods of TTelemetry.
+ */
+public abstract class TTelemetryKey {
+
+    protected final TTelemetry telemetry;
+    protected final String     key;
+
+    private final long         periodNanos;
+
+    private boolean            published          = false;
+    private long               lastPublishNanos   = 0;
+
+    TTelemetryKey(TTelemetry telemetry, String key, double periodSec) {
+        this.telemetry = telemetry;
+        this.key = key;
+        this.periodNanos = (long) (Math.max(periodSec, 0) * TClock.NANOS_PER_SECOND);
+    }
+
+    /**
+     * Get the SmartDashboard key
+     *
+     * @return the key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Indicates whether a new value for this key can be published.
+     * <p>
+     * This routine can be used to avoid calculating a value that is expensive to
+     * build (like a String) when it would not be published.
+     *
+     * @return {@code true} if the key has not been published or the publish
+     *         period has elapsed, {@code false} otherwise
+     */
+    public boolean isDue() {
+
+        if (!published) {
+            return true;
+        }
+
+        return telemetry.getNanos() - lastPublishNanos >= periodNanos;
+    }
+
+    /**
+     * Decide whether to publish a value
+     *
+     * @param changed
+     *            {@code true} if the value is different from the last published
+     *            value
+     * @return {@code true} if the value should be published now
+     */
+    protected boolean shouldPublish(boolean changed) {
+
+        if (!telemetry.isEnabled()) {
+            return false;
+        }
+
+        if (!changed || !isDue()) {
+            telemetry.suppressed();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Mark this key as published. Called after the value is sent to the
+     * SmartDashboard.
+     */
+    protected void markPublished() {
+        published = true;
+        lastPublishNanos = telemetry.getNanos();
+        telemetry.published();
+    }
+
+    /**
+     * Indicates whether this key has been published
+     *
+     * @return {@code true} if published since the last reset
+     */
+    protected boolean isPublished() {
+        return published;
+    }
+
+    /**
+     * Force the next value to be published
+     */
+    void reset() {
+        published = false;
+    }
+}
@@ -0,0 +1,42 @@
+package com.torontocodingcollective.telemetry;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * A number published to the SmartDashboard through {@link TTelemetry}
+ */
+public class TTelemetryNumber extends TTelemetryKey {
+
+    private final double epsilon;
+
+    private double       lastValue = 0;
+
+    TTelemetryNumber(TTelemetry telemetry, String key, double epsilon, double periodSec) {
+        super(telemetry, key, periodSec);
+        this.epsilon = Math.abs(epsilon);
+    }
+
+    /**
+     * Set the value of this key.
+     * <p>
+     * The value is published if it differs from the last published value by more
+     * than the epsilon of this key and the publish period has elapsed.
+     *
+     * @param value
+     *            to publish
+     */
+    public void set(double value) {
+
+        // NaN values are always treated as changed
+        boolean changed = !isPublished() || !(Math.abs(value - lastValue) <= epsilon);
+
+        if (!shouldPublish(changed)) {
+            return;
+        }
+
+        SmartDashboard.putNumber(key, value);
+
+        lastValue = value;
+        markPublished();
+    }
+}
@@ -0,0 +1,39 @@
+package com.torontocodingcollective.telemetry;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * A String published to the SmartDashboard through {@link TTelemetry}
+ */
+public class TTelemetryString extends TTelemetryKey {
+
+    private String lastValue = null;
+
+    TTelemetryString(TTelemetry telemetry, String key, double periodSec) {
+        super(telemetry, key, periodSec);
+    }
+
+    /**
+     * Set the value of this key.
+     * <p>
+     * The value is published if it differs from the last published value and the
+     * publish period has elapsed.
+     *
+     * @param value
+     *            to publish
+     */
+    public void set(String value) {
+
+        boolean changed = !isPublished()
+                || (value == null ? lastValue != null : !value.equals(lastValue));
+
+        if (!shouldPublish(changed)) {
+            return;
+        }
+
+        SmartDashboard.putString(key, value);
+
+        lastValue = value;
+        markPublished();
+    }
+}
@@ -0,0 +1,284 @@
+package com.torontocodingcollective.trajectory;
+
+/**
+ * TMotionProfile generates a motion profile to move a given distance starting
+ * and ending at rest.
+ * <p>
+ * The profile limits the velocity, acceleration and (optionally) the jerk. With
+ * a jerk limit, the profile is an S-curve of up to seven segments: the
+ * acceleration ramps up, holds, and ramps down to the cruise velocity, and the
+ * deceleration is a mirror of the acceleration. Without a jerk limit the
+ * profile is a trapezoid. If the distance is too short to reach the maximum
+ * velocity, the peak velocity is reduced.
+ * <p>
+ * A profile is generated once and then sampled each loop with
+ * {@link #calculate(double)}. Generating and sampling a profile never allocates
+ * memory, so a command can reuse one profile for every run.
+ * <p>
+ * Any consistent units can be used (ie. inches, inches/sec, inches/sec^2 and
+ * inches/sec^3).
+ */
+public class TMotionProfile {
+
+    private static final int SEGMENTS        = 7;
+
+    // Jerk and start state of each segment
+    private final double[]   segmentTime     = new double[SEGMENTS];
+    private final double[]   segmentJerk     = new double[SEGMENTS];
+    private final double[]   segmentPosition = new double[SEGMENTS];
+    private final double[]   segmentVelocity = new double[SEGMENTS];
+    private final double[]   segmentAccel    = new double[SEGMENTS];
+
+    private double           distance        = 0;
+    private double           direction       = 1;
+    private double           peakVelocity    = 0;
+    private double           totalTime       = 0;
+
+    // Values from the last call to calculate
+    private double           position        = 0;
+    private double           velocity        = 0;
+    private double           acceleration    = 0;
+
+    /**
+     * Calculate the profile at the given time.
+     * <p>
+     * The values are retrieved with {@link #getPosition()},
+     * {@link #getVelocity()} and {@link #getAcceleration()}. Before the start of
+     * the profile the values are zero, and after the end of the profile the
+     * position is the profile distance and the velocity is zero.
+     * 
+     * @param time
+     *            since the start of the profile in seconds
+     */
+    public void calculate(double time) {
+
+        if (time <= 0) {
+            position = 0;
+            velocity = 0;
+            acceleration = 0;
+            return;
+        }
+
+        if (time >= totalTime) {
+            position = distance;
+            velocity = 0;
+            acceleration = 0;
+            return;
+        }
+
+        // Find the segment containing the time
+        int segment = 0;
+
+        while (segment < SEGMENTS - 1 && time >= segmentTime[segment + 1]) {
+            segment++;
+        }
+
+        double t = time - segmentTime[segment];
+        double j = segmentJerk[segment];
+        double a = segmentAccel[segment];
+        double v = segmentVelocity[segment];
+        double p = segmentPosition[segment];
+
+        position = direction * (p + v * t + a * t * t / 2.0 + j * t * t * t / 6.0);
+        velocity = direction * (v + a * t + j * t * t / 2.0);
+        acceleration = direction * (a + j * t);
+    }
+
+    /**
+     * Generate a new profile
+     * 
+     * @param distance
+     *            to move. Negative distances generate a profile in the reverse
+     *            direction.
+     * @param maxVelocity
+     *            maximum velocity (must be greater than zero)
+     * @param maxAcceleration
+     *            maximum acceleration and deceleration (must be greater than
+     *            zero)
+     * @param maxJerk
+     *            maximum jerk, or 0 for no jerk limit (trapezoid profile)
+     */
+    public void generate(double distance, double maxVelocity, double maxAcceleration, double maxJerk) {
+
+        this.distance = distance;
+        this.direction = distance < 0 ? -1 : 1;
+
+        double absDistance = Math.abs(distance);
+
+        // Find the highest velocity that can be reached and still stop
+        // in the distance. The acceleration and deceleration each use half
+        // of the distance when there is no cruise.
+        double velocity = maxVelocity;
+
+        if (2 * getAccelDistance(velocity, maxAcceleration, maxJerk) > absDistance) {
+
+            double low = 0;
+            double high = maxVelocity;
+
+            for (int i = 0; i < 50; i++) {
+
+                velocity = (low + high) / 2.0;
+
+                if (2 * getAccelDistance(velocity, maxAcceleration, maxJerk) > absDistance) {
+                    high = velocity;
+                } else {
+                    low = velocity;
+                }
+            }
+
+            velocity = low;
+        }
+
+        peakVelocity = velocity;
+
+        // Jerk time and peak acceleration
+        double jerkTime = 0;
+        double peakAccel = maxAcceleration;
+
+        if (maxJerk > 0) {
+            jerkTime = Math.min(maxAcceleration / maxJerk, Math.sqrt(velocity / maxJerk));
+            peakAccel = maxJerk * jerkTime;
+        }
+
+        double accelTime = 0;
+        double cruiseTime = 0;
+
+        if (velocity > 0) {
+            accelTime = Math.max(0, velocity / peakAccel - jerkTime);
+            cruiseTime = Math.max(0,
+                    (absDistance - 2 * getAccelDistance(velocity, maxAcceleration, maxJerk)) / velocity);
+        }
+
+        double jerk = jerkTime > 0 ? maxJerk : 0;
+
+        setSegment(0, jerkTime, jerk, 0);
+        setSegment(1, accelTime, 0, peakAccel);
+        setSegment(2, jerkTime, -jerk, peakAccel);
+        setSegment(3, cruiseTime, 0, 0);
+        setSegment(4, jerkTime, -jerk, 0);
+        setSegment(5, accelTime, 0, -peakAccel);
+        setSegment(6, jerkTime, jerk, -peakAccel);
+
+        // Calculate the start time and state of each segment
+        double time = 0;
+        double p = 0;
+        double v = 0;
+
+        for (int i = 0; i < SEGMENTS; i++) {
+
+            double t = segmentTime[i];
+            double j = segmentJerk[i];
+            double a = segmentAccel[i];
+
+            segmentTime[i] = time;
+            segmentPosition[i] = p;
+            segmentVelocity[i] = v;
+
+            p += v * t + a * t * t / 2.0 + j * t * t * t / 6.0;
+            v += a * t + j * t * t / 2.0;
+            time += t;
+        }
+
+        totalTime = time;
+
+        calculate(0);
+    }
+
+    /**
+     * Get the acceleration from the last call to {@link #calculate(double)}
+     * 
+     * @return acceleration
+     */
+    public double getAcceleration() {
+        return acceleration;
+    }
+
+    /**
+     * Get the distance of the profile
+     * 
+     * @return distance
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Get the highest velocity reached in the profile
+     * 
+     * @return peak velocity (always positive)
+     */
+    public double getPeakVelocity() {
+        return peakVelocity;
+    }
+
+    /**
+     * Get the position from the last call to {@link #calculate(double)}
+     * 
+     * @return position
+     */
+    public double getPosition() {
+        return position;
+    }
+
+    /**
+     * Get the time to complete the profile
+     * 
+     * @return time in seconds
+     */
+    public double getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * Get the velocity from the last call to {@link #calculate(double)}
+     * 
+     * @return velocity
+     */
+    public double getVelocity() {
+        return velocity;
+    }
+
+    /**
+     * Indicates whether the profile is complete at the given time
+     * 
+     * @param time
+     *            since the start of the profile in seconds
+     * @return {@code true} if the profile is complete, {@code false} otherwise
+     */
+    public boolean isFinished(double time) {
+        return time >= totalTime;
+    }
+
+    /**
+     * Get the distance required to accelerate from rest to the given velocity
+     */
+    private static double getAccelDistance(double velocity, double maxAcceleration, double maxJerk) {
+
+        if (maxJerk <= 0) {
+            return velocity * velocity / (2.0 * maxAcceleration);
+        }
+
+        // The S-curve is symmetric, so the average velocity while
+        // accelerating is half of the final velocity.
+        double jerkTime = Math.min(maxAcceleration / maxJerk, Math.sqrt(velocity / maxJerk));
+        double peakAccel = maxJerk * jerkTime;
+
+        if (peakAccel <= 0) {
+            return 0;
+        }
+
+        double accelTime = velocity / peakAccel + jerkTime;
+
+        return velocity * accelTime / 2.0;
+    }
+
+    /**
+     * Set the duration, jerk and starting acceleration of a segment. The
+     * duration is converted to a start time by {@link #generate}.
+     */
+    private void setSegment(int segment, double time, double jerk, double acceleration) {
+        segmentTime[segment] = time;
+        segmentJerk[segment] = jerk;
+        segmentAccel[segment] = acceleration;
+    }
+}
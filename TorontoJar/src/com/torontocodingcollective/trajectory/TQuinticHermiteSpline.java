@@ -0,0 +1,137 @@
+package com.torontocodingcollective.trajectory;
+
+import com.torontocodingcollective.odometry.TPose;
+
+/**
+ * TQuinticHermiteSpline is a curve between two poses.
+ * <p>
+ * The spline passes through both poses with the direction of the curve
+ * matching the pose headings. A quintic spline also matches the second
+ * derivative at each end, which is set to zero, so the curvature is zero at
+ * each waypoint and the curvature is continuous where splines are joined.
+ * <p>
+ * The spline is evaluated with a parameter from 0 (start pose) to 1 (end pose).
+ */
+public class TQuinticHermiteSpline {
+
+    /**
+     * Length of the start and end tangents relative to the distance between the
+     * poses. Larger values give wider curves.
+     */
+    private static final double TANGENT_SCALE = 1.2;
+
+    // Polynomial coefficients for x and y
+    private final double[]      xCoefficients  = new double[6];
+    private final double[]      yCoefficients  = new double[6];
+
+    /**
+     * Construct a spline between two poses
+     * 
+     * @param start
+     *            pose
+     * @param end
+     *            pose
+     */
+    public TQuinticHermiteSpline(TPose start, TPose end) {
+
+        double tangentLength = TANGENT_SCALE * start.distanceTo(end);
+
+        double startHeading = Math.toRadians(start.heading);
+        double endHeading = Math.toRadians(end.heading);
+
+        setCoefficients(xCoefficients, start.x, tangentLength * Math.cos(startHeading),
+                end.x, tangentLength * Math.cos(endHeading));
+
+        setCoefficients(yCoefficients, start.y, tangentLength * Math.sin(startHeading),
+                end.y, tangentLength * Math.sin(endHeading));
+    }
+
+    /**
+     * Get the curvature of the spline
+     * 
+     * @param t
+     *            spline parameter 0 <= t <= 1
+     * @return curvature in radians/inch
+     */
+    public double getCurvature(double t) {
+
+        double dx = getFirstDerivative(xCoefficients, t);
+        double dy = getFirstDerivative(yCoefficients, t);
+        double ddx = getSecondDerivative(xCoefficients, t);
+        double ddy = getSecondDerivative(yCoefficients, t);
+
+        double speed = Math.hypot(dx, dy);
+
+        if (speed == 0) {
+            return 0;
+        }
+
+        return (dx * ddy - dy * ddx) / (speed * speed * speed);
+    }
+
+    /**
+     * Get the heading of the spline
+     * 
+     * @param t
+     *            spline parameter 0 <= t <= 1
+     * @return heading in degrees 0 <= heading < 360
+     */
+    public double getHeading(double t) {
+
+        double heading = Math.toDegrees(
+                Math.atan2(getFirstDerivative(yCoefficients, t), getFirstDerivative(xCoefficients, t)));
+
+        if (heading < 0) {
+            heading += 360;
+        }
+
+        return heading;
+    }
+
+    /**
+     * Get the x coordinate on the spline
+     * 
+     * @param t
+     *            spline parameter 0 <= t <= 1
+     * @return x in inches
+     */
+    public double getX(double t) {
+        return getValue(xCoefficients, t);
+    }
+
+    /**
+     * Get the y coordinate on the spline
+     * 
+     * @param t
+     *            spline parameter 0 <= t <= 1
+     * @return y in inches
+     */
+    public double getY(double t) {
+        return getValue(yCoefficients, t);
+    }
+
+    private static double getFirstDerivative(double[] c, double t) {
+        return c[1] + t * (2 * c[2] + t * (3 * c[3] + t * (4 * c[4] + t * 5 * c[5])));
+    }
+
+    private static double getSecondDerivative(double[] c, double t) {
+        return 2 * c[2] + t * (6 * c[3] + t * (12 * c[4] + t * 20 * c[5]));
+    }
+
+    private static double getValue(double[] c, double t) {
+        return c[0] + t * (c[1] + t * (c[2] + t * (c[3] + t * (c[4] + t * c[5]))));
+    }
+
+    /**
+     * Set the polynomial coefficients from the quintic Hermite basis with zero
+     * second derivatives at each end
+     */
+    private static void setCoefficients(double[] c, double p0, double v0, double p1, double v1) {
+        c[0] = p0;
+        c[1] = v0;
+        c[2] = 0;
+        c[3] = -10 * p0 - 6 * v0 - 4 * v1 + 10 * p1;
+        c[4] = 15 * p0 + 8 * v0 + 7 * v1 - 15 * p1;
+        c[5] = -6 * p0 - 3 * v0 - 3 * v1 + 6 * p1;
+    }
+}
@@ -0,0 +1,274 @@
+package com.torontocodingcollective.trajectory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * TTrajectory is a time parameterized path for the robot to follow.
+ * <p>
+ * The trajectory is a list of samples along the path, held in primitive arrays.
+ * The state at any time is interpolated between the samples by
+ * {@link #getState(double, TTrajectoryState)}, which does not allocate memory
+ * and can be called every loop.
+ * <p>
+ * Trajectories are created by the {@link TTrajectoryGenerator} and can be saved
+ * to and loaded from a compact binary form (see {@link TTrajectoryCache}).
+ */
+public class TTrajectory {
+
+    private final int      size;
+
+    private final double[] time;
+    private final double[] distance;
+    private final double[] x;
+    private final double[] y;
+    private final double[] heading;
+    private final double[] velocity;
+    private final double[] acceleration;
+    private final double[] curvature;
+
+    /**
+     * Construct an empty trajectory with room for the given number of samples.
+     * The samples are set with {@link #setSample}.
+     * 
+     * @param size
+     *            number of samples
+     */
+    TTrajectory(int size) {
+
+        this.size = size;
+
+        time = new double[size];
+        distance = new double[size];
+        x = new double[size];
+        y = new double[size];
+        heading = new double[size];
+        velocity = new double[size];
+        acceleration = new double[size];
+        curvature = new double[size];
+    }
+
+    /**
+     * Read a trajectory written by {@link #write(DataOutputStream)}
+     * 
+     * @param in
+     *            stream positioned at the start of the trajectory
+     * @return trajectory
+     * @throws IOException
+     *             if the trajectory cannot be read
+     */
+    public static TTrajectory read(DataInputStream in) throws IOException {
+
+        int size = in.readInt();
+
+        if (size < 0) {
+            throw new IOException("Invalid trajectory size " + size);
+        }
+
+        TTrajectory trajectory = new TTrajectory(size);
+
+        double distance = 0;
+
+        for (int i = 0; i < size; i++) {
+
+            double time = in.readFloat();
+            double x = in.readFloat();
+            double y = in.readFloat();
+            double heading = in.readFloat();
+            double velocity = in.readFloat();
+            double acceleration = in.readFloat();
+            double curvature = in.readFloat();
+
+            // The distance is not saved, rebuild it from the positions
+            if (i > 0) {
+                distance += Math.hypot(x - trajectory.x[i - 1], y - trajectory.y[i - 1]);
+            }
+
+            trajectory.setSample(i, time, distance, x, y, heading, velocity, acceleration, curvature);
+        }
+
+        return trajectory;
+    }
+
+    /**
+     * Get the state at the end of the trajectory
+     * 
+     * @param state
+     *            filled in with the end state
+     * @return the state that was passed in
+     */
+    public TTrajectoryState getEndState(TTrajectoryState state) {
+        return getState(getTotalTime(), state);
+    }
+
+    /**
+     * Get the number of samples in the trajectory
+     * 
+     * @return sample count
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Get the state at the given time.
+     * <p>
+     * The state is interpolated between the samples before and after the time.
+     * Times before the start or after the end of the trajectory return the
+     * first or last sample.
+     * 
+     * @param t
+     *            time from the start of the trajectory in seconds
+     * @param state
+     *            filled in with the state at the given time
+     * @return the state that was passed in
+     */
+    public TTrajectoryState getState(double t, TTrajectoryState state) {
+
+        if (size == 0) {
+            return state;
+        }
+
+        if (t <= time[0]) {
+            return getSample(0, state);
+        }
+
+        if (t >= time[size - 1]) {
+            return getSample(size - 1, state);
+        }
+
+        // Binary search for the first sample after the time
+        int low = 1;
+        int high = size - 1;
+
+        while (low < high) {
+
+            int mid = (low + high) >>> 1;
+
+            if (time[mid] < t) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        int before = low - 1;
+        int after = low;
+
+        double fraction = 0;
+        if (time[after] > time[before]) {
+            fraction = (t - time[before]) / (time[after] - time[before]);
+        }
+
+        // Take the shortest path between the headings
+        double deltaHeading = heading[after] - heading[before];
+
+        if (deltaHeading > 180) {
+            deltaHeading -= 360;
+        }
+
+        if (deltaHeading < -180) {
+            deltaHeading += 360;
+        }
+
+        double interpolatedHeading = heading[before] + deltaHeading * fraction;
+
+        if (interpolatedHeading < 0) {
+            interpolatedHeading += 360;
+        }
+
+        if (interpolatedHeading >= 360) {
+            interpolatedHeading -= 360;
+        }
+
+        state.time = t;
+        state.distance = interpolate(distance, before, after, fraction);
+        state.x = interpolate(x, before, after, fraction);
+        state.y = interpolate(y, before, after, fraction);
+        state.heading = interpolatedHeading;
+        state.velocity = interpolate(velocity, before, after, fraction);
+        state.acceleration = acceleration[before];
+        state.curvature = interpolate(curvature, before, after, fraction);
+
+        return state;
+    }
+
+    /**
+     * Get the total length of the path
+     * 
+     * @return length in inches
+     */
+    public double getTotalDistance() {
+        return size == 0 ? 0 : distance[size - 1];
+    }
+
+    /**
+     * Get the time to drive the trajectory
+     * 
+     * @return time in seconds
+     */
+    public double getTotalTime() {
+        return size == 0 ? 0 : time[size - 1];
+    }
+
+    /**
+     * Write the trajectory in a compact binary form.
+     * <p>
+     * The values are written as floats, which is sufficient for the resolution
+     * of a robot path.
+     * 
+     * @param out
+     *            stream to write to
+     * @throws IOException
+     *             if the trajectory cannot be written
+     */
+    public void write(DataOutputStream out) throws IOException {
+
+        out.writeInt(size);
+
+        for (int i = 0; i < size; i++) {
+            out.writeFloat((float) time[i]);
+            out.writeFloat((float) x[i]);
+            out.writeFloat((float) y[i]);
+            out.writeFloat((float) heading[i]);
+            out.writeFloat((float) velocity[i]);
+            out.writeFloat((float) acceleration[i]);
+            out.writeFloat((float) curvature[i]);
+        }
+    }
+
+    /**
+     * Set the values of a sample
+     */
+    void setSample(int i, double time, double distance, double x, double y, double heading,
+            double velocity, double acceleration, double curvature) {
+
+        this.time[i] = time;
+        this.distance[i] = distance;
+        this.x[i] = x;
+        this.y[i] = y;
+        this.heading[i] = heading;
+        this.velocity[i] = velocity;
+        this.acceleration[i] = acceleration;
+        this.curvature[i] = curvature;
+    }
+
+    private TTrajectoryState getSample(int i, TTrajectoryState state) {
+
+        state.time = time[i];
+        state.distance = distance[i];
+        state.x = x[i];
+        state.y = y[i];
+        state.heading = heading[i];
+        state.velocity = velocity[i];
+        state.acceleration = acceleration[i];
+        state.curvature = curvature[i];
+
+        return state;
+    }
+
+    private static double interpolate(double[] values, int before, int after, double fraction) {
+        return values[before] + (values[after] - values[before]) * fraction;
+    }
+}
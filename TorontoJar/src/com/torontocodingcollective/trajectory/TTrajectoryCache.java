@@ -0,0 +1,201 @@
+package com.torontocodingcollective.trajectory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import com.torontocodingcollective.log.TLogger;
+import com.torontocodingcollective.odometry.TPose;
+
+/**
+ * TTrajectoryCache saves generated trajectories to files so that they are only
+ * generated once.
+ * <p>
+ * Each trajectory is saved in a compact binary file named from a key
+ * calculated from the waypoints and the trajectory limits. If the waypoints or
+ * limits change, the key changes and the trajectory is generated again. Loading
+ * a saved trajectory takes a few milliseconds, generating a trajectory can take
+ * much longer on the roboRio.
+ * <p>
+ * Trajectories can be generated off the robot into the deploy files, or on the
+ * robot at first boot by calling {@link #get(TPose[], TTrajectoryConfig)} for
+ * each path from {@code robotInit()}.
+ */
+public class TTrajectoryCache {
+
+    /** Default directory for the trajectory files on the roboRio */
+    public static final String DEFAULT_DIRECTORY = "/home/lvuser/trajectories";
+
+    // File header "TRJ" and the file format version
+    private static final int   MAGIC             = 0x54524A00;
+    private static final int   VERSION           = 1;
+
+    private final File         directory;
+
+    /**
+     * Construct a trajectory cache in the {@value #DEFAULT_DIRECTORY} directory
+     */
+    public TTrajectoryCache() {
+        this(new File(DEFAULT_DIRECTORY));
+    }
+
+    /**
+     * Construct a trajectory cache
+     * 
+     * @param directory
+     *            for the trajectory files. The directory is created if it does
+     *            not exist.
+     */
+    public TTrajectoryCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the key for a trajectory.
+     * <p>
+     * The key is a 64 bit hash (FNV-1a) of the waypoints, the limits and the
+     * generator settings.
+     * 
+     * @param waypoints
+     *            of the trajectory
+     * @param config
+     *            limits of the trajectory
+     * @return key
+     */
+    public static long getKey(TPose[] waypoints, TTrajectoryConfig config) {
+
+        long hash = 0xcbf29ce484222325L;
+
+        hash = hash(hash, VERSION);
+        hash = hash(hash, Double.doubleToLongBits(TTrajectoryGenerator.SAMPLE_SPACING));
+
+        for (TPose waypoint : waypoints) {
+            hash = hash(hash, Double.doubleToLongBits(waypoint.x));
+            hash = hash(hash, Double.doubleToLongBits(waypoint.y));
+            hash = hash(hash, Double.doubleToLongBits(waypoint.heading));
+        }
+
+        hash = hash(hash, Double.doubleToLongBits(config.maxVelocity));
+        hash = hash(hash, Double.doubleToLongBits(config.maxAcceleration));
+        hash = hash(hash, Double.doubleToLongBits(config.maxCentripetalAcceleration));
+
+        return hash;
+    }
+
+    /**
+     * Get a trajectory.
+     * <p>
+     * The trajectory is loaded from the cache file if it exists, otherwise it
+     * is generated and saved.
+     * 
+     * @param waypoints
+     *            poses that the path must pass through
+     * @param config
+     *            velocity and acceleration limits
+     * @return trajectory
+     */
+    public TTrajectory get(TPose[] waypoints, TTrajectoryConfig config) {
+
+        long key = getKey(waypoints, config);
+        File file = getFile(key);
+
+        if (file.exists()) {
+            try {
+                return load(file, key);
+            } catch (IOException e) {
+                TLogger.getInstance().log(this, "Could not load trajectory ({}), regenerating", e);
+            }
+        }
+
+        TTrajectory trajectory = TTrajectoryGenerator.generate(waypoints, config);
+
+        try {
+            save(file, key, trajectory);
+        } catch (IOException e) {
+            TLogger.getInstance().log(this, "Could not save trajectory ({})", e);
+        }
+
+        return trajectory;
+    }
+
+    /**
+     * Get the file used to save a trajectory
+     * 
+     * @param key
+     *            of the trajectory {@link #getKey(TPose[], TTrajectoryConfig)}
+     * @return file
+     */
+    public File getFile(long key) {
+        return new File(directory, String.format("trajectory_%016x.bin", key));
+    }
+
+    private static long hash(long hash, long value) {
+
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
+    private TTrajectory load(File file, long key) throws IOException {
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+        try {
+
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a trajectory file " + file);
+            }
+
+            if (in.readInt() != VERSION) {
+                throw new IOException("Unsupported trajectory file version " + file);
+            }
+
+            if (in.readLong() != key) {
+                throw new IOException("Trajectory key does not match " + file);
+            }
+
+            return TTrajectory.read(in);
+
+        } finally {
+            in.close();
+        }
+    }
+
+    private void save(File file, long key, TTrajectory trajectory) throws IOException {
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+
+        // Write to a temporary file and rename so that a partly
+        // written file is never loaded.
+        File tempFile = new File(directory, file.getName() + ".tmp");
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(key);
+
+            trajectory.write(out);
+        } finally {
+            out.close();
+        }
+
+        if (!tempFile.renameTo(file)) {
+            file.delete();
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Could not rename " + tempFile + " to " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.torontocodingcollective.trajectory;
+
+/**
+ * TTrajectoryConfig holds the limits used to generate a {@link TTrajectory}.
+ * <p>
+ * All values are in inches and seconds.
+ */
+public class TTrajectoryConfig {
+
+    /** Maximum velocity in inches/sec */
+    public final double maxVelocity;
+
+    /** Maximum acceleration and deceleration along the path in inches/sec^2 */
+    public final double maxAcceleration;
+
+    /**
+     * Maximum centripetal acceleration in inches/sec^2. The robot slows down in
+     * tight turns to stay under this limit.
+     */
+    public final double maxCentripetalAcceleration;
+
+    /**
+     * Construct a trajectory configuration
+     * 
+     * @param maxVelocity
+     *            in inches/sec
+     * @param maxAcceleration
+     *            in inches/sec^2
+     * @param maxCentripetalAcceleration
+     *            in inches/sec^2
+     */
+    public TTrajectoryConfig(double maxVelocity, double maxAcceleration, double maxCentripetalAcceleration) {
+        this.maxVelocity = maxVelocity;
+        this.maxAcceleration = maxAcceleration;
+        this.maxCentripetalAcceleration = maxCentripetalAcceleration;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("maxV ").append(maxVelocity)
+            .append(", maxA ").append(maxAcceleration)
+            .append(", maxCentripetalA ").append(maxCentripetalAcceleration);
+        return sb.toString();
+    }
+}
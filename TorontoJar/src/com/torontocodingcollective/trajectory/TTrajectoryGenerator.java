@@ -0,0 +1,170 @@
+package com.torontocodingcollective.trajectory;
+
+import com.torontocodingcollective.odometry.TPose;
+
+/**
+ * TTrajectoryGenerator creates a {@link TTrajectory} through a list of
+ * waypoints.
+ * <p>
+ * A {@link TQuinticHermiteSpline} is fitted between each pair of waypoints and
+ * the path is sampled at a spacing of about {@value #SAMPLE_SPACING} inch. The
+ * velocity at each sample is limited by the maximum velocity and by the
+ * maximum centripetal acceleration for the curvature of the path. A forward
+ * pass then limits the acceleration and a backward pass limits the
+ * deceleration, so the robot starts and ends the trajectory at rest.
+ * <p>
+ * Generating a trajectory is too slow to do in the robot loop. Trajectories
+ * should be generated before the match using the {@link TTrajectoryCache}.
+ */
+public class TTrajectoryGenerator {
+
+    /** Approximate distance between samples in inches */
+    public static final double SAMPLE_SPACING = 1.0;
+
+    /**
+     * Generate a trajectory
+     * 
+     * @param waypoints
+     *            poses that the path must pass through, at least two poses are
+     *            required. The heading of each waypoint is the direction of
+     *            travel through the waypoint.
+     * @param config
+     *            velocity and acceleration limits
+     * @return trajectory
+     * @throws IllegalArgumentException
+     *             if there are less than two waypoints or the limits are not
+     *             greater than zero
+     */
+    public static TTrajectory generate(TPose[] waypoints, TTrajectoryConfig config) {
+
+        if (waypoints == null || waypoints.length < 2) {
+            throw new IllegalArgumentException("At least two waypoints are required");
+        }
+
+        if (config.maxVelocity <= 0 || config.maxAcceleration <= 0 || config.maxCentripetalAcceleration <= 0) {
+            throw new IllegalArgumentException("Trajectory limits must be greater than zero: " + config);
+        }
+
+        // Fit the splines and count the samples
+        int splineCount = waypoints.length - 1;
+
+        TQuinticHermiteSpline[] splines = new TQuinticHermiteSpline[splineCount];
+        int[] splineSamples = new int[splineCount];
+
+        int size = 1;
+
+        for (int i = 0; i < splineCount; i++) {
+
+            splines[i] = new TQuinticHermiteSpline(waypoints[i], waypoints[i + 1]);
+
+            // The spline is longer than the distance between the waypoints
+            // when it curves, allow for the extra length.
+            double chord = waypoints[i].distanceTo(waypoints[i + 1]);
+            splineSamples[i] = Math.max(8, (int) Math.ceil(1.5 * chord / SAMPLE_SPACING));
+
+            size += splineSamples[i];
+        }
+
+        double[] x = new double[size];
+        double[] y = new double[size];
+        double[] heading = new double[size];
+        double[] curvature = new double[size];
+        double[] distance = new double[size];
+        double[] velocity = new double[size];
+
+        // Sample the splines. The first sample of each spline is
+        // the last sample of the previous spline.
+        int sample = 0;
+
+        for (int i = 0; i < splineCount; i++) {
+
+            TQuinticHermiteSpline spline = splines[i];
+
+            for (int j = (i == 0 ? 0 : 1); j <= splineSamples[i]; j++) {
+
+                double t = (double) j / splineSamples[i];
+
+                x[sample] = spline.getX(t);
+                y[sample] = spline.getY(t);
+                heading[sample] = spline.getHeading(t);
+                curvature[sample] = spline.getCurvature(t);
+
+                if (sample > 0) {
+                    distance[sample] = distance[sample - 1]
+                            + Math.hypot(x[sample] - x[sample - 1], y[sample] - y[sample - 1]);
+                }
+
+                sample++;
+            }
+        }
+
+        // Limit the velocity for the curvature
+        for (int i = 0; i < size; i++) {
+
+            velocity[i] = config.maxVelocity;
+
+            double absCurvature = Math.abs(curvature[i]);
+
+            if (absCurvature > 0) {
+                velocity[i] = Math.min(velocity[i], Math.sqrt(config.maxCentripetalAcceleration / absCurvature));
+            }
+        }
+
+        // Start and end at rest
+        velocity[0] = 0;
+        velocity[size - 1] = 0;
+
+        // Forward pass to limit the acceleration
+        for (int i = 1; i < size; i++) {
+
+            double ds = distance[i] - distance[i - 1];
+            double maxVelocity = Math.sqrt(velocity[i - 1] * velocity[i - 1] + 2 * config.maxAcceleration * ds);
+
+            velocity[i] = Math.min(velocity[i], maxVelocity);
+        }
+
+        // Backward pass to limit the deceleration
+        for (int i = size - 2; i >= 0; i--) {
+
+            double ds = distance[i + 1] - distance[i];
+            double maxVelocity = Math.sqrt(velocity[i + 1] * velocity[i + 1] + 2 * config.maxAcceleration * ds);
+
+            velocity[i] = Math.min(velocity[i], maxVelocity);
+        }
+
+        // Calculate the time of each sample and the acceleration to the
+        // next sample.
+        TTrajectory trajectory = new TTrajectory(size);
+
+        double time = 0;
+
+        for (int i = 0; i < size; i++) {
+
+            double acceleration = 0;
+
+            if (i < size - 1) {
+
+                double ds = distance[i + 1] - distance[i];
+
+                if (ds > 0) {
+                    acceleration = (velocity[i + 1] * velocity[i + 1] - velocity[i] * velocity[i]) / (2 * ds);
+                }
+            }
+
+            if (i > 0) {
+
+                double ds = distance[i] - distance[i - 1];
+                double averageVelocity = (velocity[i] + velocity[i - 1]) / 2.0;
+
+                if (averageVelocity > 0) {
+                    time += ds / averageVelocity;
+                }
+            }
+
+            trajectory.setSample(i, time, distance[i], x[i], y[i], heading[i], velocity[i], acceleration,
+                    curvature[i]);
+        }
+
+        return trajectory;
+    }
+}
@@ -0,0 +1,43 @@
+package com.torontocodingcollective.trajectory;
+
+/**
+ * TTrajectoryState is the state of the robot at one time along a
+ * {@link TTrajectory}.
+ * <p>
+ * The pose follows the {@link com.torontocodingcollective.odometry.TPose}
+ * convention (inches, heading in degrees increasing clockwise). The curvature
+ * is positive when the path turns in the direction of increasing heading.
+ * <p>
+ * The state is mutable so that a single instance can be reused every loop
+ * without creating garbage.
+ */
+public class TTrajectoryState {
+
+    /** Time from the start of the trajectory in seconds */
+    public double time;
+    /** Distance along the path in inches */
+    public double distance;
+    /** X coordinate in inches */
+    public double x;
+    /** Y coordinate in inches */
+    public double y;
+    /** Heading in degrees 0 <= heading < 360 */
+    public double heading;
+    /** Velocity along the path in inches/sec */
+    public double velocity;
+    /** Acceleration along the path in inches/sec^2 */
+    public double acceleration;
+    /** Curvature of the path in radians/inch */
+    public double curvature;
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("t ").append(time)
+            .append(" (").append(x).append(',').append(y).append(',').append(heading).append(')')
+            .append(" v ").append(velocity)
+            .append(" a ").append(acceleration)
+            .append(" k ").append(curvature);
+        return sb.toString();
+    }
+}
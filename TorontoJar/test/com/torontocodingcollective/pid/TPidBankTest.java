@@ -0,0 +1,79 @@
+package com.torontocodingcollective.pid;
+
+import com.torontocodingcollective.clock.TFakeClock;
+import com.torontocodingcollective.test.TTestCase;
+
+/**
+ * Checks that each PID in a {@link TPidBank} calculates the same output as a
+ * {@link TSpeedPID}, and that indexes outside the bank are rejected.
+ */
+public class TPidBankTest extends TTestCase {
+
+    @Override
+    public void run() {
+        checkMatchesSpeedPid();
+        checkIndexRange();
+    }
+
+    private void checkMatchesSpeedPid() {
+
+        TFakeClock clock = new TFakeClock();
+
+        TPidBank bank = new TPidBank(2);
+        bank.setClock(clock);
+
+        int index = bank.add(0.5, 0.05, 0.05, 0.9, 0);
+        bank.enable(index);
+
+        TSpeedPID speedPid = new TSpeedPID(0.5, 0.05, 0.05, 0.9, 0);
+        speedPid.setClock(clock);
+        speedPid.enable();
+
+        // Start both period measurements at the same time
+        bank.calculate();
+        speedPid.calculate(0);
+
+        double rate = 0;
+        double maxDifference = 0;
+
+        for (int i = 0; i < 200; i++) {
+
+            double setpoint = i < 100 ? 0.6 : -0.3;
+
+            bank.setSetpoint(index, setpoint);
+            speedPid.setSetpoint(setpoint);
+
+            clock.advance(0.02);
+
+            bank.setMeasurement(index, rate);
+            bank.calculate();
+            speedPid.calculate(rate);
+
+            maxDifference = Math.max(maxDifference, Math.abs(bank.get(index) - speedPid.get()));
+
+            // A first order response to the output
+            rate += (bank.get(index) - rate) * 0.2;
+        }
+
+        checkNear(0, maxDifference, 1e-9, "bank output difference from TSpeedPID");
+    }
+
+    private void checkIndexRange() {
+
+        TPidBank bank = new TPidBank(4);
+        bank.add(0.5, 0);
+
+        check(throwsIllegalArgument(() -> bank.get(1)), "index past the last PID added rejected");
+        check(throwsIllegalArgument(() -> bank.setSetpoint(-1, 0.5)), "negative index rejected");
+        check(!throwsIllegalArgument(() -> bank.setSetpoint(0, 0.5)), "index of an added PID accepted");
+    }
+
+    private static boolean throwsIllegalArgument(Runnable runnable) {
+        try {
+            runnable.run();
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,112 @@
+package com.torontocodingcollective.sensors.gyro;
+
+import com.torontocodingcollective.clock.TFakeClock;
+import com.torontocodingcollective.test.TTestCase;
+
+/**
+ * Checks the angular velocity gate, the consecutive reject limit, the rate
+ * consistency check and the median of a {@link TGyroFilter}. Each reading is
+ * one 20ms sample on a {@link TFakeClock}.
+ */
+public class TGyroFilterTest extends TTestCase {
+
+    private static final double SAMPLE_SEC = 0.02;
+
+    private final TFakeClock    clock      = new TFakeClock();
+
+    @Override
+    public void run() {
+        checkVelocityGate();
+        checkRejectLimit();
+        checkRateCheck();
+        checkMedian();
+    }
+
+    private TGyroFilter newFilter(double maxAngularVelocity, double rateTolerance, int medianWindowSize) {
+        TGyroFilter filter = new TGyroFilter(maxAngularVelocity, rateTolerance, medianWindowSize);
+        filter.setClock(clock);
+        return filter;
+    }
+
+    private double sample(TGyroFilter filter, double rawAngle) {
+        clock.advance(SAMPLE_SEC);
+        return filter.filter(rawAngle);
+    }
+
+    private double sample(TGyroFilter filter, double rawAngle, double rawRate) {
+        clock.advance(SAMPLE_SEC);
+        return filter.filter(rawAngle, rawRate);
+    }
+
+    private void checkVelocityGate() {
+
+        // 360 deg/sec allows 7.2 degrees per sample plus the noise allowance
+        TGyroFilter filter = newFilter(360, 0, 1);
+
+        sample(filter, 10);
+
+        checkNear(10, sample(filter, 20), 1e-9, "spike past the gate replaced by the last angle");
+        check(filter.getVelocityRejectCount() == 1, "spike counted as a velocity reject");
+
+        checkNear(17, sample(filter, 17), 1e-9, "change within the gate accepted");
+
+        // The gate follows the angle through the 360 degree wrap
+        TGyroFilter wrapFilter = newFilter(360, 0, 1);
+
+        sample(wrapFilter, 358);
+        checkNear(362, sample(wrapFilter, 2), 1e-9, "change across 360 accepted");
+        check(wrapFilter.getRejectCount() == 0, "no rejects across 360");
+    }
+
+    private void checkRejectLimit() {
+
+        TGyroFilter filter = newFilter(360, 0, 1);
+
+        sample(filter, 0);
+
+        // A real 90 degree change (ie. a recalibration) is rejected
+        // for the limit and then accepted.
+        for (int i = 0; i < TGyroFilter.MAX_CONSECUTIVE_REJECTS; i++) {
+            checkNear(0, sample(filter, 90), 1e-9, "held through reject " + (i + 1));
+        }
+
+        checkNear(90, sample(filter, 90), 1e-9, "accepted after the reject limit");
+        check(filter.getRejectCount() == TGyroFilter.MAX_CONSECUTIVE_REJECTS,
+                "rejects counted once per sample, was " + filter.getRejectCount());
+
+        checkNear(91, sample(filter, 91), 1e-9, "following the new angle");
+    }
+
+    private void checkRateCheck() {
+
+        // Turning at 100 deg/sec, 2 degrees per sample
+        TGyroFilter filter = newFilter(360, 50, 1);
+
+        sample(filter, 0, 100);
+        sample(filter, 2, 100);
+
+        // A 6 degree jump passes the gate but not the rate check, and is
+        // replaced by the last angle advanced by the rate.
+        checkNear(4, sample(filter, 8, 100), 1e-9, "jump replaced by the rate");
+        check(filter.getRateRejectCount() == 1, "jump counted as a rate reject");
+
+        checkNear(6, sample(filter, 6, 100), 1e-9, "reading on the rate accepted");
+    }
+
+    private void checkMedian() {
+
+        // No gate, so the spike is only removed by the median
+        TGyroFilter filter = newFilter(0, 0, 3);
+
+        sample(filter, 10);
+        sample(filter, 10);
+
+        checkNear(10, sample(filter, 25), 1e-9, "single spike removed by the median");
+        checkNear(10, sample(filter, 10), 1e-9, "angle after the spike");
+        checkNear(10, sample(filter, 10), 1e-9, "spike out of the window");
+
+        // A step is delayed by one sample
+        checkNear(10, sample(filter, 20), 1e-9, "step delayed one sample");
+        checkNear(20, sample(filter, 20), 1e-9, "step after one sample");
+    }
+}
@@ -0,0 +1,102 @@
+package com.torontocodingcollective.sensors.gyro;
+
+import java.util.Random;
+
+import com.torontocodingcollective.clock.TClock;
+import com.torontocodingcollective.test.TTestCase;
+
+/**
+ * Checks that the {@link THeadingEstimator} removes the drift of a gyro while
+ * the wheels slip and the encoders are reset, and that repeated updates with
+ * the same sample do not change the estimate.
+ * <p>
+ * The robot is driven kinematically (the encoder heading is exact apart from
+ * rounding and slip) so the results depend only on the estimator. On a real
+ * robot the encoder heading is only as good as the characterized effective
+ * track width.
+ */
+public class THeadingEstimatorTest extends TTestCase {
+
+    private static final double COUNTS_PER_INCH = 100;
+    private static final double TRACK_WIDTH     = 25;
+
+    private static final double PERIOD          = 0.02;
+    private static final double GYRO_DRIFT      = 0.5;
+
+    @Override
+    public void run() {
+        checkDrift();
+        checkRepeatedUpdate();
+    }
+
+    private void checkDrift() {
+
+        THeadingEstimator estimator = new THeadingEstimator(COUNTS_PER_INCH, TRACK_WIDTH);
+
+        Random random = new Random(7);
+
+        double heading = 0;
+        double left = 0;
+        double right = 0;
+
+        double maxGyroError = 0;
+        double maxFusedError = 0;
+
+        // 150 seconds at 50Hz, driving forward at 40 in/s
+        // while turning back and forth up to 60 deg/s
+        for (int i = 1; i <= 7500; i++) {
+
+            double time = i * PERIOD;
+
+            double headingChange = 60 * Math.sin(time * 0.4) * PERIOD;
+            heading += headingChange;
+
+            double turnDistance = Math.toRadians(headingChange) * TRACK_WIDTH / 2;
+            left += 40 * PERIOD + turnDistance;
+            right += 40 * PERIOD - turnDistance;
+
+            // The left wheel spins for 2 seconds every 20 seconds
+            if (i % 1000 > 900) {
+                left += 1.8;
+            }
+
+            // Reset the encoders part way through the match
+            if (i == 3000) {
+                left = 0;
+                right = 0;
+            }
+
+            double gyroAngle = heading + GYRO_DRIFT * time + 0.05 * random.nextGaussian();
+
+            double fusedHeading = estimator.update((long) (time * TClock.NANOS_PER_SECOND), gyroAngle,
+                    (int) Math.round(left * COUNTS_PER_INCH), (int) Math.round(right * COUNTS_PER_INCH));
+
+            maxGyroError = Math.max(maxGyroError, Math.abs(gyroAngle - heading));
+
+            // Allow one second for the bias to settle
+            if (i > 50) {
+                maxFusedError = Math.max(maxFusedError, Math.abs(fusedHeading - heading));
+            }
+        }
+
+        check(maxGyroError > 70, "gyro drift " + maxGyroError + " > 70 deg");
+        check(maxFusedError < 1.0, "fused heading error " + maxFusedError + " < 1 deg");
+        checkNear(GYRO_DRIFT, estimator.getBias(), 0.05, "estimated gyro bias");
+        check(estimator.getSlipCount() > 0, "wheel slip detected");
+    }
+
+    private void checkRepeatedUpdate() {
+
+        THeadingEstimator estimator = new THeadingEstimator(COUNTS_PER_INCH, TRACK_WIDTH);
+
+        estimator.update(0, 0, 0, 0);
+
+        long nanos = (long) (PERIOD * TClock.NANOS_PER_SECOND);
+        double heading = estimator.update(nanos, 1.0, 200, 0);
+
+        // Reading the same sample again must not filter it again
+        for (int i = 0; i < 10; i++) {
+            checkNear(heading, estimator.update(nanos, 1.0, 200, 0), 0, "heading after repeated update " + i);
+        }
+    }
+}
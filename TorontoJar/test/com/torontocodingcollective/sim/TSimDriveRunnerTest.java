@@ -0,0 +1,69 @@
+package com.torontocodingcollective.sim;
+
+import com.torontocodingcollective.subsystem.TDriveSubsystem.TSide;
+import com.torontocodingcollective.test.TTestCase;
+
+/**
+ * Closed loop checks of the speed PIDs and the gyro PID on a
+ * {@link TSimDriveModel} of a 120lb, 2 CIM per side, 10.71:1 drive with 6 inch
+ * wheels.
+ */
+public class TSimDriveRunnerTest extends TTestCase {
+
+    private static final double COUNTS_PER_REVOLUTION = 360;
+    private static final double MAX_ENCODER_SPEED     = 2600;
+
+    @Override
+    public void run() {
+        checkSpeedPid();
+        checkDriveOnHeading();
+        checkRotateToHeading();
+    }
+
+    private TSimDriveRunner newRunner() {
+        TSimDriveModel model = new TSimDriveModel(TSimMotor.CIM, 2, 10.71, 6, 24, 120);
+        return new TSimDriveRunner(model, COUNTS_PER_REVOLUTION, MAX_ENCODER_SPEED, 0.5, 0.05, 0.05, 0);
+    }
+
+    private void checkSpeedPid() {
+
+        TSimDriveRunner runner = newRunner();
+
+        // Different speeds on each side so the robot drives in an arc.
+        runner.setSpeed(0.6, 0.3);
+        runner.run(3.0);
+
+        checkNear(0.6, runner.getSpeed(TSide.LEFT), 0.02, "left speed");
+        checkNear(0.3, runner.getSpeed(TSide.RIGHT), 0.02, "right speed");
+        check(runner.getGyroAngle() > 90, "arc turns clockwise, angle " + runner.getGyroAngle());
+    }
+
+    private void checkDriveOnHeading() {
+
+        TSimDriveRunner runner = newRunner();
+
+        // The gyro PID must steer the robot onto a heading 10 degrees
+        // to the right and hold it at speed.
+        runner.setDriveOnHeading(0.5, 10);
+        runner.run(3.0);
+
+        checkNear(10, runner.getGyroAngle(), 1.0, "drive on heading angle");
+        checkNear(0.5, runner.getSpeed(TSide.LEFT), 0.02, "drive on heading left speed");
+        checkNear(0.5, runner.getSpeed(TSide.RIGHT), 0.02, "drive on heading right speed");
+        check(runner.getModel().getSpeedInches() > 50, "drive on heading moving forward");
+    }
+
+    private void checkRotateToHeading() {
+
+        TSimDriveRunner runner = newRunner();
+
+        // Rotate through the 0/360 boundary, the shortest path
+        // is 90 degrees counter-clockwise.
+        runner.setRotateToHeading(270, 0.5);
+        runner.run(3.0);
+
+        checkNear(-90, runner.getGyroAngle(), 2.0, "rotate to heading angle");
+        checkNear(0, runner.getSpeed(TSide.LEFT), 0.02, "rotate to heading left speed");
+        checkNear(0, runner.getSpeed(TSide.RIGHT), 0.02, "rotate to heading right speed");
+    }
+}
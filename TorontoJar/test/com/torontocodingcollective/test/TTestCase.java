@@ -0,0 +1,60 @@
+package com.torontocodingcollective.test;
+
+/**
+ * TTestCase is a set of checks run off the robot by the {@link TTestRunner}.
+ * <p>
+ * The tests must not use any wpilib classes that load the native libraries
+ * (the HAL, NetworkTables, Sendables or Subsystems) so that they can be run on
+ * a development machine.
+ */
+public abstract class TTestCase {
+
+    private int checkCount   = 0;
+    private int failureCount = 0;
+
+    /**
+     * Run all of the checks in this test case
+     */
+    public abstract void run();
+
+    /**
+     * Check a condition and report a failure if the condition is not met
+     *
+     * @param condition
+     *            {@code true} if the check passed
+     * @param description
+     *            the condition that was checked, reported on a failure
+     */
+    protected void check(boolean condition, String description) {
+        checkCount++;
+        if (!condition) {
+            failureCount++;
+            System.out.println("  FAILED: " + description);
+        }
+    }
+
+    /**
+     * Check that a value is within a tolerance of the expected value
+     *
+     * @param expected
+     *            the expected value
+     * @param actual
+     *            the measured value
+     * @param tolerance
+     *            the allowed difference
+     * @param description
+     *            the value that was checked, reported on a failure
+     */
+    protected void checkNear(double expected, double actual, double tolerance, String description) {
+        check(Math.abs(expected - actual) <= tolerance,
+                description + ": expected " + expected + " +/- " + tolerance + ", was " + actual);
+    }
+
+    int getCheckCount() {
+        return checkCount;
+    }
+
+    int getFailureCount() {
+        return failureCount;
+    }
+}
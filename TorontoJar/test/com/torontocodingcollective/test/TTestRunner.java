@@ -0,0 +1,44 @@
+package com.torontocodingcollective.test;
+
+import com.torontocodingcollective.pid.TPidBankTest;
+import com.torontocodingcollective.sensors.gyro.TGyroFilterTest;
+import com.torontocodingcollective.sensors.gyro.THeadingEstimatorTest;
+import com.torontocodingcollective.sim.TSimDriveRunnerTest;
+
+/**
+ * TTestRunner runs all of the TorontoJar test cases off the robot.
+ * <p>
+ * To run the tests, run the {@code test} target of the TorontoJar
+ * {@code build.xml}. The runner exits with a non-zero status if any check
+ * fails so that the build fails.
+ */
+public class TTestRunner {
+
+    public static void main(String[] args) {
+
+        TTestCase[] testCases = {
+                new TGyroFilterTest(),
+                new THeadingEstimatorTest(),
+                new TPidBankTest(),
+                new TSimDriveRunnerTest()
+        };
+
+        int failureCount = 0;
+
+        for (TTestCase testCase : testCases) {
+
+            System.out.println(testCase.getClass().getSimpleName());
+
+            testCase.run();
+
+            System.out.println("  " + testCase.getCheckCount() + " checks, "
+                    + testCase.getFailureCount() + " failed");
+
+            failureCount += testCase.getFailureCount();
+        }
+
+        if (failureCount > 0) {
+            System.exit(1);
+        }
+    }
+}
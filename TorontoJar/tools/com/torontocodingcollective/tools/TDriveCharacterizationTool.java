@@ -0,0 +1,325 @@
+package com.torontocodingcollective.tools;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.torontocodingcollective.TUtil;
+import com.torontocodingcollective.sysid.TDriveCharacterizationLog;
+import com.torontocodingcollective.sysid.TDriveCharacterizationTest;
+
+/**
+ * TDriveCharacterizationTool fits the drive feed forward and the track width
+ * from the files written by the
+ * {@link com.torontocodingcollective.commands.gyroDrive.TCharacterizeDriveCommand}.
+ * <p>
+ * The voltage of each wheel is fitted to the model
+ * <p>
+ * {@code voltage = kS * sign(velocity) + kV * velocity + kA * acceleration}
+ * <p>
+ * by least squares using the samples from all of the forward and backward
+ * tests. The acceleration is calculated from the recorded velocities. The
+ * effective track width is fitted from the rotation test as the difference in
+ * the left and right wheel distances per radian of rotation.
+ * <p>
+ * The results are printed in volts and inches, and as the constants used in
+ * {@code RobotConst} for
+ * {@link com.torontocodingcollective.subsystem.TDriveSubsystem#setSpeedFeedForward(double, double, double)}
+ * (normalized to the max encoder speed and a 12 volt battery).
+ * <p>
+ * To run the tool, copy the files from the roboRio
+ * ({@value TDriveCharacterizationLog#DEFAULT_DIRECTORY}) and run the
+ * {@code characterize} target of the TorontoJar {@code build.xml} with the file
+ * names in {@code -Dfiles="file..."}. Add {@code -o file} to the files to also
+ * write the constants to a file.
+ */
+public class TDriveCharacterizationTool {
+
+    /** Battery voltage used to normalize the output */
+    private static final double NOMINAL_VOLTAGE = 12.0;
+
+    // Samples slower than this are not moving and are not fitted
+    private static final double MIN_VELOCITY    = 1.0;   // inches/sec
+
+    private final List<double[]> feedForwardRows = new ArrayList<double[]>();
+    private final List<Double>   voltages        = new ArrayList<Double>();
+
+    private double               rotationSumXY   = 0;
+    private double               rotationSumXX   = 0;
+    private int                  rotationSamples = 0;
+
+    private double               encoderCountsPerInch = 0;
+    private double               maxEncoderSpeed      = 0;
+
+    public static void main(String[] args) throws IOException {
+
+        TDriveCharacterizationTool tool = new TDriveCharacterizationTool();
+
+        File outputFile = null;
+
+        for (int i = 0; i < args.length; i++) {
+
+            if (args[i].equals("-o") && i + 1 < args.length) {
+                outputFile = new File(args[++i]);
+                continue;
+            }
+
+            TDriveCharacterizationLog log = TDriveCharacterizationLog.read(new File(args[i]));
+            System.out.println("Read " + log.getSize() + " samples of " + log.getTest() + " from " + args[i]);
+
+            tool.add(log);
+        }
+
+        if (args.length == 0) {
+            System.out.println("Usage: TDriveCharacterizationTool [-o file] file...");
+            return;
+        }
+
+        tool.fit(outputFile);
+    }
+
+    /**
+     * Add the samples of a characterization log
+     * 
+     * @param log
+     *            to add
+     */
+    public void add(TDriveCharacterizationLog log) {
+
+        encoderCountsPerInch = log.getEncoderCountsPerInch();
+        maxEncoderSpeed = log.getMaxEncoderSpeed();
+
+        if (log.getTest().isRotation()) {
+            addRotation(log);
+            return;
+        }
+
+        // Use the central difference of the velocity for the acceleration
+        for (int i = 1; i < log.getSize() - 1; i++) {
+
+            double dt = log.getTime(i + 1) - log.getTime(i - 1);
+
+            if (dt <= 0) {
+                continue;
+            }
+
+            addWheel(log.getLeftVoltage(i), log.getLeftVelocity(i),
+                    (log.getLeftVelocity(i + 1) - log.getLeftVelocity(i - 1)) / dt);
+
+            addWheel(log.getRightVoltage(i), log.getRightVelocity(i),
+                    (log.getRightVelocity(i + 1) - log.getRightVelocity(i - 1)) / dt);
+        }
+    }
+
+    private void addRotation(TDriveCharacterizationLog log) {
+
+        if (log.getSize() == 0) {
+            return;
+        }
+
+        // The heading increases clockwise when the left wheel drives
+        // forward, so the wheel difference is trackWidth * rotation
+        double leftStart = log.getLeftPosition(0);
+        double rightStart = log.getRightPosition(0);
+        double headingStart = log.getHeading(0);
+
+        for (int i = 1; i < log.getSize(); i++) {
+
+            double wheelDifference = (log.getLeftPosition(i) - leftStart) - (log.getRightPosition(i) - rightStart);
+            double rotation = Math.toRadians(log.getHeading(i) - headingStart);
+
+            rotationSumXY += rotation * wheelDifference;
+            rotationSumXX += rotation * rotation;
+            rotationSamples++;
+        }
+    }
+
+    private void addWheel(double voltage, double velocity, double acceleration) {
+
+        if (Math.abs(velocity) < MIN_VELOCITY) {
+            return;
+        }
+
+        feedForwardRows.add(new double[] { Math.signum(velocity), velocity, acceleration });
+        voltages.add(voltage);
+    }
+
+    /**
+     * Fit the feed forward and track width and print the results
+     * 
+     * @param outputFile
+     *            to write the RobotConst values to, or {@code null} to only print
+     *            the results
+     * @throws IOException
+     *             if the output file cannot be written
+     */
+    public void fit(File outputFile) throws IOException {
+
+        StringBuilder constants = new StringBuilder();
+
+        if (feedForwardRows.size() < 3) {
+            System.out.println("Not enough forward or backward samples to fit the feed forward");
+        } else {
+
+            double[] k = leastSquares(feedForwardRows, voltages);
+
+            double kS = k[0];
+            double kV = k[1];
+            double kA = k[2];
+
+            System.out.println();
+            System.out.println("Feed forward (" + feedForwardRows.size() + " samples, r^2 "
+                    + TUtil.round(rSquared(feedForwardRows, voltages, k), 4) + ")");
+            System.out.println("  kS " + TUtil.round(kS, 4) + " volts");
+            System.out.println("  kV " + TUtil.round(kV, 5) + " volts/(inch/sec)");
+            System.out.println("  kA " + TUtil.round(kA, 5) + " volts/(inch/sec^2)");
+
+            // Normalize to the units of the speed PIDs
+            double maxSpeedInches = encoderCountsPerInch > 0 ? maxEncoderSpeed / encoderCountsPerInch : 0;
+
+            if (maxSpeedInches <= 0) {
+                System.out.println("The encoder counts per inch and max encoder speed are not set,"
+                        + " cannot normalize the feed forward");
+            } else {
+                constants.append("            DRIVE_SPEED_KS = ").append(TUtil.round(kS / NOMINAL_VOLTAGE, 4)).append(";\n");
+                constants.append("            DRIVE_SPEED_KV = ")
+                        .append(TUtil.round(kV * maxSpeedInches / NOMINAL_VOLTAGE, 4)).append(";\n");
+                constants.append("            DRIVE_SPEED_KA = ")
+                        .append(TUtil.round(kA * maxSpeedInches / NOMINAL_VOLTAGE, 4)).append(";\n");
+            }
+        }
+
+        if (rotationSamples == 0 || rotationSumXX == 0) {
+            System.out.println("No rotation samples to fit the track width");
+        } else {
+
+            double trackWidth = rotationSumXY / rotationSumXX;
+
+            System.out.println();
+            System.out.println("Track width (" + rotationSamples + " samples)");
+            System.out.println("  " + TUtil.round(trackWidth, 2) + " inches");
+
+            constants.append("    public static final double  DRIVE_TRACK_WIDTH             = ")
+                    .append(TUtil.round(trackWidth, 1)).append(";  // inches\n");
+        }
+
+        if (constants.length() == 0) {
+            return;
+        }
+
+        System.out.println();
+        System.out.println("RobotConst values");
+        System.out.println("-----------------");
+        System.out.print(constants);
+
+        if (outputFile != null) {
+
+            PrintWriter out = new PrintWriter(new FileWriter(outputFile));
+
+            try {
+                out.print(constants);
+            } finally {
+                out.close();
+            }
+
+            System.out.println("Wrote " + outputFile);
+        }
+    }
+
+    /**
+     * Solve the normal equations for the least squares fit of the rows to the
+     * values
+     */
+    private static double[] leastSquares(List<double[]> rows, List<Double> values) {
+
+        int n = rows.get(0).length;
+
+        // Augmented matrix [A'A | A'b]
+        double[][] m = new double[n][n + 1];
+
+        for (int r = 0; r < rows.size(); r++) {
+
+            double[] row = rows.get(r);
+            double value = values.get(r);
+
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    m[i][j] += row[i] * row[j];
+                }
+                m[i][n] += row[i] * value;
+            }
+        }
+
+        // Gaussian elimination with partial pivoting
+        for (int col = 0; col < n; col++) {
+
+            int pivot = col;
+            for (int i = col + 1; i < n; i++) {
+                if (Math.abs(m[i][col]) > Math.abs(m[pivot][col])) {
+                    pivot = i;
+                }
+            }
+
+            double[] temp = m[col];
+            m[col] = m[pivot];
+            m[pivot] = temp;
+
+            if (m[col][col] == 0) {
+                continue;
+            }
+
+            for (int i = 0; i < n; i++) {
+
+                if (i == col) {
+                    continue;
+                }
+
+                double factor = m[i][col] / m[col][col];
+
+                for (int j = col; j <= n; j++) {
+                    m[i][j] -= factor * m[col][j];
+                }
+            }
+        }
+
+        double[] result = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            result[i] = m[i][i] == 0 ? 0 : m[i][n] / m[i][i];
+        }
+
+        return result;
+    }
+
+    private static double rSquared(List<double[]> rows, List<Double> values, double[] k) {
+
+        double mean = 0;
+        for (double value : values) {
+            mean += value;
+        }
+        mean /= values.size();
+
+        double residual = 0;
+        double total = 0;
+
+        for (int r = 0; r < rows.size(); r++) {
+
+            double[] row = rows.get(r);
+
+            double predicted = 0;
+            for (int i = 0; i < k.length; i++) {
+                predicted += k[i] * row[i];
+            }
+
+            double value = values.get(r);
+
+            residual += (value - predicted) * (value - predicted);
+            total += (value - mean) * (value - mean);
+        }
+
+        return total == 0 ? 0 : 1 - residual / total;
+    }
+}